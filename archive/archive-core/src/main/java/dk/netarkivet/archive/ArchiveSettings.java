@@ -56,6 +56,16 @@ public class ArchiveSettings {
      */
     public static String ARCREPOSITORY_UPLOAD_RETRIES = "settings.archive.arcrepository.uploadRetries";
 
+    /**
+     * <b>settings.archive.arcrepository.storeThreads</b>: <br>
+     * The number of threads handling store requests and the upload and checksum replies belonging to them. With 1
+     * thread, the default, the messages are handled by the thread receiving them. With more threads, stores of
+     * different files are handled in parallel. The messages are then acknowledged when they are handed to the threads,
+     * so messages not yet handled are lost if the ArcRepository stops abruptly. The sender of a lost store request gets
+     * no reply, and retries the store after settings.common.arcrepositoryClient.storeTimeout.
+     */
+    public static String ARCREPOSITORY_STORE_THREADS = "settings.archive.arcrepository.storeThreads";
+
     /**
      * <b>settings.archive.bitarchive.minSpaceLeft</b>: <br>
      * The minimum amount of bytes left *in any dir* that we will allow a bitarchive machine to accept uploads with.
@@ -28,6 +28,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -71,6 +73,10 @@ import dk.netarkivet.common.utils.batch.ChecksumJob;
  * through the JMSArcRepositoryClient that contacts the appropriate (typically nearest) replica and retrieves data from
  * this archive. Batch execution is sent to the bitarchive replica(s), since batch cannot be executed on checksum
  * replicas. Correction operations are typically only allowed on one replica.
+ * <p>
+ * The store state of a file is only changed while holding the lock of that file, see {@link #getFileLock(String)}.
+ * Stores of different files therefore proceed in parallel, while the messages concerning one file are handled one at a
+ * time.
  */
 @SuppressWarnings({"deprecation"})
 public class ArcRepository implements CleanupIF {
@@ -90,23 +96,33 @@ public class ArcRepository implements CleanupIF {
     /** A Map of a Replica and their corresponding ReplicaClient. From this Map the relevant channels can be found. */
     private final Map<Replica, ReplicaClient> connectedReplicas = new HashMap<Replica, ReplicaClient>();
 
-    /** Map from MessageId to arcfiles for which there are outstanding checksum jobs. */
-    private final Map<String, String> outstandingChecksumFiles = new HashMap<String, String>();
-    
+    /** The number of locks that the files being stored are spread over. */
+    private static final int FILE_LOCK_STRIPES = 64;
+
+    /** The locks guarding the store state of the files, see {@link #getFileLock(String)}. */
+    private final Object[] fileLocks = new Object[FILE_LOCK_STRIPES];
+
+    /**
+     * Map from MessageId to arcfiles for which there are outstanding checksum jobs. Sending a checksum request and
+     * registering it is done while synchronized on this map, so a reply cannot be handled before it is registered.
+     */
+    private final Map<String, String> outstandingChecksumFiles = new ConcurrentHashMap<String, String>();
+
     /**
      * Map from filenames to remote files. Used for retrieving a remote file reference while a store operation is in
      * process.
      */
-    private final Map<String, RemoteFile> outstandingRemoteFiles = new HashMap<String, RemoteFile>();
+    private final Map<String, RemoteFile> outstandingRemoteFiles = new ConcurrentHashMap<String, RemoteFile>();
+
+    /** Map from filenames to the precomputed checksums given in the store messages, if any. */
+    private final Map<String, String> outstandingRemoteFilesC = new ConcurrentHashMap<String, String>();
 
-    private final Map<String, String> outstandingRemoteFilesC = new HashMap<String, String>();
-    
-    
     /**
      * Map from bitarchive names to Map from filenames to the number of times a file has been attempted uploaded to the
      * the bitarchive.
      */
-    private final Map<String, Map<String, Integer>> uploadRetries = new HashMap<String, Map<String, Integer>>();
+    private final ConcurrentMap<String, ConcurrentMap<String, Integer>> uploadRetries =
+            new ConcurrentHashMap<String, ConcurrentMap<String, Integer>>();
 
     /**
      * Constructor for the ArcRepository. Connects the ArcRepository to all BitArchives, and initialises admin data.
@@ -115,6 +131,9 @@ public class ArcRepository implements CleanupIF {
      * @throws IllegalState if inconsistent channel info is given in settings.
      */
     protected ArcRepository() throws IOFailure, IllegalState {
+        for (int i = 0; i < fileLocks.length; i++) {
+            fileLocks[i] = new Object();
+        }
         // UpdateableAdminData Throws IOFailure
         this.ad = AdminFactory.getInstance();
         this.arcReposhandler = new ArcRepositoryServer(this);
@@ -187,11 +206,24 @@ public class ArcRepository implements CleanupIF {
      * @throws IOFailure If file couldn't be stored.
      * @throws ArgumentNotValid If a input parameter is null.
      */
-    public synchronized void store(RemoteFile rf, StoreMessage replyInfo) throws IOFailure, ArgumentNotValid {
+    public void store(RemoteFile rf, StoreMessage replyInfo) throws IOFailure, ArgumentNotValid {
         ArgumentNotValid.checkNotNull(rf, "rf");
         ArgumentNotValid.checkNotNull(replyInfo, "replyInfo");
 
         final String filename = rf.getName();
+        synchronized (getFileLock(filename)) {
+            doStore(rf, filename, replyInfo);
+        }
+    }
+
+    /**
+     * Stores a file in all known replicas. Must be called holding the lock of the file.
+     *
+     * @param rf The remotefile to be stored.
+     * @param filename The name of the file to be stored.
+     * @param replyInfo A StoreMessage used to reply with success or failure.
+     */
+    private void doStore(RemoteFile rf, String filename, StoreMessage replyInfo) {
         log.info("Store started: '{}'", filename);
 
         // Record, that store of this filename is in progress
@@ -200,7 +232,12 @@ public class ArcRepository implements CleanupIF {
             log.info("File: '{}' was outstanding from the start.", filename);
         }
         outstandingRemoteFiles.put(filename, rf);
-        outstandingRemoteFilesC.put(filename, replyInfo.getPrecomputedChecksum()); // Hack
+        String precomputedChecksum = replyInfo.getPrecomputedChecksum();
+        if (precomputedChecksum != null) {
+            outstandingRemoteFilesC.put(filename, precomputedChecksum); // Hack
+        } else {
+            outstandingRemoteFilesC.remove(filename);
+        }
 
         if (ad.hasEntry(filename)) {
             // Any valid entry (and all existing entries are now
@@ -234,7 +271,7 @@ public class ArcRepository implements CleanupIF {
      * @param replica The replica where RemoteFile is to be stored.
      * @param replyInfo 
      */
-    private synchronized void startUpload(RemoteFile rf, ReplicaClient replicaClient, Replica replica, StoreMessage replyInfo) {
+    private void startUpload(RemoteFile rf, ReplicaClient replicaClient, Replica replica, StoreMessage replyInfo) {
         final String filename = rf.getName();
         log.debug("Upload started of file '{}' to replica '{}'", filename, replica.getId());
 
@@ -283,13 +320,38 @@ public class ArcRepository implements CleanupIF {
     private void sendChecksumRequestForFile(String filename, ReplicaClient replicaClient) {
         NetarkivetMessage msg;
 
-        // Retrieve the checksum of the file.
-        msg = replicaClient.sendGetChecksumMessage(Channels.getTheRepos(), filename);
+        synchronized (outstandingChecksumFiles) {
+            // Retrieve the checksum of the file.
+            msg = replicaClient.sendGetChecksumMessage(Channels.getTheRepos(), filename);
 
-        outstandingChecksumFiles.put(msg.getID(), filename);
+            outstandingChecksumFiles.put(msg.getID(), filename);
+        }
         log.debug("Checksum job message submitted for file '{}' with message id: '{}'", filename, msg.getID());
     }
 
+    /**
+     * Remove the registration of an outstanding checksum request.
+     *
+     * @param msgId The id of the message requesting the checksum.
+     * @return The name of the file whose checksum was requested, or null if no such request is outstanding.
+     */
+    private String removeOutstandingChecksumFile(String msgId) {
+        synchronized (outstandingChecksumFiles) {
+            return outstandingChecksumFiles.remove(msgId);
+        }
+    }
+
+    /**
+     * Get the lock guarding the store state of a file. The files are spread over a fixed number of locks by the hash
+     * of their names, so a file always gets the same lock.
+     *
+     * @param filename The name of a file.
+     * @return The lock of the file.
+     */
+    private Object getFileLock(String filename) {
+        return fileLocks[(filename.hashCode() & Integer.MAX_VALUE) % fileLocks.length];
+    }
+
     /**
      * Test whether the current state is such that we may send a reply for the file we are currently processing, and
      * send the reply if it is. We reply only when there is an outstanding message to reply to, and a) The file is
@@ -298,12 +360,14 @@ public class ArcRepository implements CleanupIF {
      *
      * @param arcFileName The arcfile we consider replying to.
      */
-    private synchronized void considerReplyingOnStore(String arcFileName) {
-        if (ad.hasReplyInfo(arcFileName)) {
-            if (isStoreCompleted(arcFileName)) {
-                replyOK(arcFileName, ad.removeReplyInfo(arcFileName));
-            } else if (oneReplicaHasFailed(arcFileName) && noReplicaInStateUploadStarted(arcFileName)) {
-                replyNotOK(arcFileName, ad.removeReplyInfo(arcFileName));
+    private void considerReplyingOnStore(String arcFileName) {
+        synchronized (getFileLock(arcFileName)) {
+            if (ad.hasReplyInfo(arcFileName)) {
+                if (isStoreCompleted(arcFileName)) {
+                    replyOK(arcFileName, ad.removeReplyInfo(arcFileName));
+                } else if (oneReplicaHasFailed(arcFileName) && noReplicaInStateUploadStarted(arcFileName)) {
+                    replyNotOK(arcFileName, ad.removeReplyInfo(arcFileName));
+                }
             }
         }
     }
@@ -314,7 +378,7 @@ public class ArcRepository implements CleanupIF {
      * @param arcFileName The file for which we are replying.
      * @param msg The message to reply to.
      */
-    private synchronized void replyOK(String arcFileName, StoreMessage msg) {
+    private void replyOK(String arcFileName, StoreMessage msg) {
         outstandingRemoteFiles.remove(arcFileName);
         outstandingRemoteFilesC.remove(arcFileName);
         clearRetries(arcFileName);
@@ -329,7 +393,7 @@ public class ArcRepository implements CleanupIF {
      * @param arcFileName The file for which we are replying.
      * @param msg The message to reply to.
      */
-    private synchronized void replyNotOK(String arcFileName, StoreMessage msg) {
+    private void replyNotOK(String arcFileName, StoreMessage msg) {
         outstandingRemoteFiles.remove(arcFileName);
         outstandingRemoteFilesC.remove(arcFileName);
         clearRetries(arcFileName);
@@ -450,16 +514,18 @@ public class ArcRepository implements CleanupIF {
      *
      * @param msg an UploadMessage.
      */
-    public synchronized void onUpload(UploadMessage msg) {
+    public void onUpload(UploadMessage msg) {
         ArgumentNotValid.checkNotNull(msg, "msg");
         log.debug("Received upload reply: {}", msg.toString());
 
         String repChannelName = resolveReplicaChannel(msg.getTo().getName());
 
-        if (msg.isOk()) {
-            processDataUploaded(msg.getArcfileName(), repChannelName);
-        } else {
-            processUploadFailed(msg.getArcfileName(), repChannelName);
+        synchronized (getFileLock(msg.getArcfileName())) {
+            if (msg.isOk()) {
+                processDataUploaded(msg.getArcfileName(), repChannelName);
+            } else {
+                processUploadFailed(msg.getArcfileName(), repChannelName);
+            }
         }
     }
 
@@ -476,7 +542,7 @@ public class ArcRepository implements CleanupIF {
      * @param replicaChannelName The name of the identification channel for the replica that uploaded it (THE_BAMON for
      * bitarchive and THE_CR for checksum).
      */
-    private synchronized void processDataUploaded(String arcfileName, String replicaChannelName) {
+    private void processDataUploaded(String arcfileName, String replicaChannelName) {
         log.debug("Data uploaded '{}' ,{}", arcfileName, replicaChannelName);
         ad.setState(arcfileName, replicaChannelName, ReplicaStoreState.DATA_UPLOADED);
 
@@ -508,19 +574,18 @@ public class ArcRepository implements CleanupIF {
      *
      * @param msg a BatchReplyMessage.
      */
-    public synchronized void onBatchReply(BatchReplyMessage msg) {
+    public void onBatchReply(BatchReplyMessage msg) {
         ArgumentNotValid.checkNotNull(msg, "msg");
         log.debug("BatchReplyMessage received: '{}'", msg);
 
-        if (!outstandingChecksumFiles.containsKey(msg.getReplyOfId())) {
+        String arcfileName = removeOutstandingChecksumFile(msg.getReplyOfId());
+        if (arcfileName == null) {
             // Message was NOT expected
             log.warn("Received batchreply message with unknown originating ID {}\n{}\n. Known IDs are: {}",
                     msg.getReplyOfId(), msg.toString(), outstandingChecksumFiles.keySet().toString());
             return;
         }
 
-        String arcfileName = outstandingChecksumFiles.remove(msg.getReplyOfId());
-
         // Check incoming message
         if (!msg.isOk()) {
             // Checksum job has ended with errors, but can contain checksum
@@ -575,9 +640,11 @@ public class ArcRepository implements CleanupIF {
         }
 
         // Process result
-        String orgCheckSum = ad.getCheckSum(arcfileName);
         String repChannel = resolveReplicaChannel(msg.getReplyTo().getName());
-        processCheckSum(arcfileName, repChannel, orgCheckSum, reportedChecksum, msg.isOk() && checksumReadOk);
+        synchronized (getFileLock(arcfileName)) {
+            String orgCheckSum = ad.getCheckSum(arcfileName);
+            processCheckSum(arcfileName, repChannel, orgCheckSum, reportedChecksum, msg.isOk() && checksumReadOk);
+        }
     }
 
     /**
@@ -585,20 +652,19 @@ public class ArcRepository implements CleanupIF {
      *
      * @param msg The message containing the checksum of a specific file.
      */
-    public synchronized void onChecksumReply(GetChecksumMessage msg) {
+    public void onChecksumReply(GetChecksumMessage msg) {
         ArgumentNotValid.checkNotNull(msg, "msg");
 
         log.debug("Received the reply to a GetChecksumMessage with ID: '{}'", msg.getID());
 
         // handle the case when unwanted reply.
-        if (!outstandingChecksumFiles.containsKey(msg.getID())) {
+        String arcfileName = removeOutstandingChecksumFile(msg.getID());
+        if (arcfileName == null) {
             log.warn("Received GetChecksumMessage with unknown originating ID {}\n{}\n. Known IDs are: {}",
                     msg.getReplyOfId(), msg.toString(), outstandingChecksumFiles.keySet().toString());
             return;
         }
 
-        String arcfileName = outstandingChecksumFiles.remove(msg.getID());
-
         // Check incoming message
         if (!msg.isOk()) {
             // Checksum job has ended with errors, but can contain checksum
@@ -620,12 +686,15 @@ public class ArcRepository implements CleanupIF {
         boolean checksumReadOk = true;
 
         // process the checksum.
-        String orgChecksum = ad.getCheckSum(arcfileName);
-        if (orgChecksum == null) {
-            throw new IllegalState("The admin checksum for file '" + arcfileName + "' is null. Should never happen.");
-        }
         String repChannelName = resolveReplicaChannel(msg.getTo().getName());
-        processCheckSum(arcfileName, repChannelName, orgChecksum, reportedChecksum, checksumReadOk);
+        synchronized (getFileLock(arcfileName)) {
+            String orgChecksum = ad.getCheckSum(arcfileName);
+            if (orgChecksum == null) {
+                throw new IllegalState("The admin checksum for file '" + arcfileName
+                        + "' is null. Should never happen.");
+            }
+            processCheckSum(arcfileName, repChannelName, orgChecksum, reportedChecksum, checksumReadOk);
+        }
     }
 
     /**
@@ -714,7 +783,7 @@ public class ArcRepository implements CleanupIF {
     /**
      * Process reporting of a checksum from a bitarchive for a specific file as part of a store operation for the file.
      * Verify that the checksum is correct, update the BitArchiveStoreState state. Invariant: upload-state is changed or
-     * retry count is increased.
+     * retry count is increased. Must be called holding the lock of the file.
      *
      * @param arcFileName The file being stored.
      * @param replicaChannelName The id of the replica reporting a checksum.
@@ -723,7 +792,7 @@ public class ArcRepository implements CleanupIF {
      * (except reply NOT ok from replica).
      * @param checksumReadOk Tells whether the checksum was read ok by batch job.
      */
-    private synchronized void processCheckSum(String arcFileName, String replicaChannelName, String orgChecksum,
+    private void processCheckSum(String arcFileName, String replicaChannelName, String orgChecksum,
             String reportedChecksum, boolean checksumReadOk) {
         log.debug("Checksum received for file '{}'... processing", arcFileName);
         ArgumentNotValid.checkNotNullOrEmpty(arcFileName, "String arcfileName");
@@ -827,10 +896,13 @@ public class ArcRepository implements CleanupIF {
      * @param arcfileName The name of a given ARC file.
      */
     private void incRetry(String replicaChannelName, String arcfileName) {
-        Map<String, Integer> replicaRetries = uploadRetries.get(replicaChannelName);
+        ConcurrentMap<String, Integer> replicaRetries = uploadRetries.get(replicaChannelName);
         if (replicaRetries == null) {
-            replicaRetries = new HashMap<String, Integer>();
-            uploadRetries.put(replicaChannelName, replicaRetries);
+            ConcurrentMap<String, Integer> newRetries = new ConcurrentHashMap<String, Integer>();
+            replicaRetries = uploadRetries.putIfAbsent(replicaChannelName, newRetries);
+            if (replicaRetries == null) {
+                replicaRetries = newRetries;
+            }
         }
 
         Integer retryCount = replicaRetries.get(arcfileName);
@@ -848,8 +920,7 @@ public class ArcRepository implements CleanupIF {
      * @param arcfileName The name of a given ARC file
      */
     private void clearRetries(String arcfileName) {
-        for (String replicaChannelName : uploadRetries.keySet()) {
-            Map<String, Integer> baretries = uploadRetries.get(replicaChannelName);
+        for (Map<String, Integer> baretries : uploadRetries.values()) {
             baretries.remove(arcfileName);
         }
     }
@@ -865,6 +936,19 @@ public class ArcRepository implements CleanupIF {
      * @param msg an AdminDataMessage object
      */
     public void updateAdminData(AdminDataMessage msg) {
+        ArgumentNotValid.checkNotNull(msg, "AdminDataMessage msg");
+        ArgumentNotValid.checkNotNullOrEmpty(msg.getFileName(), "String fileName");
+        synchronized (getFileLock(msg.getFileName())) {
+            doUpdateAdminData(msg);
+        }
+    }
+
+    /**
+     * Change admin data entry for a given file. Must be called holding the lock of the file.
+     *
+     * @param msg an AdminDataMessage object
+     */
+    private void doUpdateAdminData(AdminDataMessage msg) {
 
         if (!ad.hasEntry(msg.getFileName())) {
             throw new ArgumentNotValid("No admin entry exists for the file '" + msg.getFileName() + "'");
@@ -24,10 +24,14 @@ package dk.netarkivet.archive.arcrepository.distribute;
 
 import java.io.File;
 import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.netarkivet.archive.ArchiveSettings;
 import dk.netarkivet.archive.arcrepository.ArcRepository;
 import dk.netarkivet.archive.arcrepository.bitpreservation.AdminDataMessage;
 import dk.netarkivet.archive.bitarchive.distribute.BatchMessage;
@@ -58,6 +62,14 @@ public class ArcRepositoryServer extends ArchiveMessageHandler {
     private static final Logger log = LoggerFactory.getLogger(ArcRepositoryServer.class);
     /** The ArcRepository connected to this server. */
     private final ArcRepository ar;
+    /** How many seconds close() waits for the store threads to handle the messages already handed to them. */
+    private static final long STORE_THREADS_SHUTDOWN_SECONDS = 60;
+    /**
+     * The threads handling store requests and their replies, or null if they are handled by the thread receiving them.
+     * The messages are acknowledged when they are handed to the threads, see
+     * {@link ArchiveSettings#ARCREPOSITORY_STORE_THREADS}.
+     */
+    private final ExecutorService storeExecutor;
 
     /**
      * Creates and adds a ArcRepositoryMessageHandler as listener on the "TheArcrepos"-queue.
@@ -67,6 +79,13 @@ public class ArcRepositoryServer extends ArchiveMessageHandler {
     public ArcRepositoryServer(ArcRepository ar) {
         ArgumentNotValid.checkNotNull(ar, "ArcRepository ar");
         this.ar = ar;
+        int storeThreads = Settings.getInt(ArchiveSettings.ARCREPOSITORY_STORE_THREADS);
+        if (storeThreads > 1) {
+            log.info("Handling stores with {} threads", storeThreads);
+            storeExecutor = Executors.newFixedThreadPool(storeThreads);
+        } else {
+            storeExecutor = null;
+        }
         ChannelID channel = Channels.getTheRepos();
         log.info("Listening for arc repository messages on channel '{}'", channel);
         JMSConnectionFactory.getInstance().setListener(channel, this);
@@ -78,14 +97,32 @@ public class ArcRepositoryServer extends ArchiveMessageHandler {
      *
      * @param msg the message to be processed by the store command.
      */
-    public void visit(StoreMessage msg) {
+    public void visit(final StoreMessage msg) {
         ArgumentNotValid.checkNotNull(msg, "msg");
-        try {
-            ar.store(msg.getRemoteFile(), msg);
-        } catch (Throwable t) {
-            log.warn("Failed to handle store request", t);
-            msg.setNotOk(t);
-            JMSConnectionFactory.getInstance().reply(msg);
+        handleStoreTask(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ar.store(msg.getRemoteFile(), msg);
+                } catch (Throwable t) {
+                    log.warn("Failed to handle store request", t);
+                    msg.setNotOk(t);
+                    JMSConnectionFactory.getInstance().reply(msg);
+                }
+            }
+        });
+    }
+
+    /**
+     * Handle a task belonging to a store, either right away or by one of the store threads.
+     *
+     * @param task The task to handle.
+     */
+    private void handleStoreTask(Runnable task) {
+        if (storeExecutor == null) {
+            task.run();
+        } else {
+            storeExecutor.execute(task);
         }
     }
 
@@ -134,13 +171,18 @@ public class ArcRepositoryServer extends ArchiveMessageHandler {
      * @param msg a UploadMessage
      * @throws ArgumentNotValid If the message is null.
      */
-    public void visit(UploadMessage msg) throws ArgumentNotValid {
+    public void visit(final UploadMessage msg) throws ArgumentNotValid {
         ArgumentNotValid.checkNotNull(msg, "UploadMessage msg");
-        try {
-            ar.onUpload(msg);
-        } catch (Throwable t) {
-            log.warn("Failed to handle upload reply", t);
-        }
+        handleStoreTask(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ar.onUpload(msg);
+                } catch (Throwable t) {
+                    log.warn("Failed to handle upload reply", t);
+                }
+            }
+        });
     }
 
     /**
@@ -149,14 +191,19 @@ public class ArcRepositoryServer extends ArchiveMessageHandler {
      * @param msg a BatchReplyMessage
      * @throws ArgumentNotValid If the message is null.
      */
-    public void visit(BatchReplyMessage msg) throws ArgumentNotValid {
+    public void visit(final BatchReplyMessage msg) throws ArgumentNotValid {
         ArgumentNotValid.checkNotNull(msg, "BatchReplyMessage msg");
 
-        try {
-            ar.onBatchReply(msg);
-        } catch (Throwable t) {
-            log.warn("Failed to handle batch reply", t);
-        }
+        handleStoreTask(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ar.onBatchReply(msg);
+                } catch (Throwable t) {
+                    log.warn("Failed to handle batch reply", t);
+                }
+            }
+        });
     }
 
     /**
@@ -274,7 +321,7 @@ public class ArcRepositoryServer extends ArchiveMessageHandler {
      *
      * @param msg The GetChecksumMessage message.
      */
-    public void visit(GetChecksumMessage msg) {
+    public void visit(final GetChecksumMessage msg) {
         ArgumentNotValid.checkNotNull(msg, "GetChecksum msg");
 
         log.info("Received GetChecksumMessage '{}'.", msg);
@@ -282,11 +329,16 @@ public class ArcRepositoryServer extends ArchiveMessageHandler {
         // If it is a reply, then handle by arc-repository.
         // Otherwise send further.
         if (msg.getIsReply()) {
-            try {
-                ar.onChecksumReply(msg);
-            } catch (Throwable t) {
-                log.warn("Failed to handle GetChecksumMessage", t);
-            }
+            handleStoreTask(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ar.onChecksumReply(msg);
+                    } catch (Throwable t) {
+                        log.warn("Failed to handle GetChecksumMessage", t);
+                    }
+                }
+            });
         } else {
             try {
                 ReplicaClient rc = ar.getReplicaClientFromReplicaId(msg.getReplicaId());
@@ -321,10 +373,23 @@ public class ArcRepositoryServer extends ArchiveMessageHandler {
     }
 
     /**
-     * Removes the ArcRepositoryMessageHandler as listener.
+     * Removes the ArcRepositoryMessageHandler as listener, and stops the store threads. The messages already handed to
+     * the store threads have been acknowledged, so they are handled before the threads stop.
      */
     public void close() {
         JMSConnectionFactory.getInstance().removeListener(Channels.getTheRepos(), this);
+        if (storeExecutor != null) {
+            storeExecutor.shutdown();
+            try {
+                if (!storeExecutor.awaitTermination(STORE_THREADS_SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                    log.warn("Store threads did not finish handling their messages within {} seconds",
+                            STORE_THREADS_SHUTDOWN_SECONDS);
+                }
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while waiting for the store threads to finish", e);
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
 }
@@ -24,6 +24,13 @@ package dk.netarkivet.archive.arcrepository.distribute;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -165,30 +172,125 @@ public class JMSArcRepositoryClient extends Synchronizer implements ArcRepositor
      * @throws IOFailure If a wrong message is returned or the get operation failed.
      */
     public BitarchiveRecord get(String arcfile, long index) throws ArgumentNotValid, IOFailure {
-        ArgumentNotValid.checkNotNullOrEmpty(arcfile, "arcfile");
-        ArgumentNotValid.checkNotNegative(index, "index");
-        log.debug("Requesting get of record '{}:{}'", arcfile, index);
-        long start = System.currentTimeMillis();
-        GetMessage requestGetMsg = new GetMessage(Channels.getTheRepos(), replyQ, arcfile, index);
-        NetarkivetMessage replyNetMsg = sendAndWaitForOneReply(requestGetMsg, getTimeout);
-        long timePassed = System.currentTimeMillis() - start;
-        if (replyNetMsg != null) {
-            log.debug("Reply received after {} seconds", (timePassed / MILLISECONDS_PER_SECOND));
-        } else if (replyNetMsg == null) {
-            log.info("Request for record({}:{}) timed out after {} seconds. Returning null BitarchiveRecord", arcfile,
-                    index, (getTimeout / MILLISECONDS_PER_SECOND));
-            return null;
-        }
-        GetMessage replyGetMsg;
+        CompletableFuture<BitarchiveRecord> record = getAsync(arcfile, index);
         try {
-            replyGetMsg = (GetMessage) replyNetMsg;
-        } catch (ClassCastException e) {
-            throw new IOFailure("Received invalid argument reply: '" + replyNetMsg + "'", e);
+            return record.get();
+        } catch (InterruptedException e) {
+            record.cancel(false);
+            throw new IOFailure("Interrupted while waiting for record (" + arcfile + ":" + index + ")", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOFailure) {
+                throw (IOFailure) e.getCause();
+            }
+            throw new IOFailure("Get of record (" + arcfile + ":" + index + ") failed", e.getCause());
         }
-        if (!replyGetMsg.isOk()) {
-            throw new IOFailure("GetMessage failed: '" + replyGetMsg.getErrMsg() + "'");
+    }
+
+    /**
+     * Sends a GetMessage on the "TheArcrepos" queue without waiting for the reply. No thread is blocked while the
+     * record is fetched. The returned future is completed with null if no message is returned within
+     * Settings.ARCREPOSITORY_GET_TIMEOUT.
+     *
+     * @param arcfile The name of a file.
+     * @param index The offset of the wanted record in the file
+     * @return a future completed with the BitarchiveRecord-object, or with null if the request times out or the object
+     * is not found. If a wrong message is returned or the get operation failed, the future is completed exceptionally
+     * with an IOFailure.
+     * @throws ArgumentNotValid If the given arcfile is null or empty, or the given index is negative.
+     * @throws IOFailure If the request could not be sent.
+     */
+    @Override
+    public CompletableFuture<BitarchiveRecord> getAsync(final String arcfile, final long index)
+            throws ArgumentNotValid, IOFailure {
+        ArgumentNotValid.checkNotNullOrEmpty(arcfile, "arcfile");
+        ArgumentNotValid.checkNotNegative(index, "index");
+        return sendGetRequest(arcfile, new long[] {index}).thenApply(
+                new Function<BitarchiveRecord[], BitarchiveRecord>() {
+                    @Override
+                    public BitarchiveRecord apply(BitarchiveRecord[] records) {
+                        return records == null ? null : records[0];
+                    }
+                });
+    }
+
+    /**
+     * Sends one GetMessage for several records of the same file on the "TheArcrepos" queue without waiting for the
+     * reply. The bitarchive holding the file answers with all the records in one reply. The returned future is
+     * completed with null if no message is returned within Settings.ARCREPOSITORY_GET_TIMEOUT.
+     *
+     * @param arcfile The name of a file.
+     * @param indices The offsets of the wanted records in the file
+     * @return a future completed with the BitarchiveRecord-objects in the order of the offsets, or with null if the
+     * request times out or the file is not found. If a wrong message is returned or the get operation failed, the
+     * future is completed exceptionally with an IOFailure.
+     * @throws ArgumentNotValid If the given arcfile is null or empty, or indices is null, empty or contains a negative
+     * offset.
+     * @throws IOFailure If the request could not be sent.
+     */
+    @Override
+    public CompletableFuture<List<BitarchiveRecord>> getRecordsAsync(String arcfile, long[] indices)
+            throws ArgumentNotValid, IOFailure {
+        ArgumentNotValid.checkNotNullOrEmpty(arcfile, "arcfile");
+        ArgumentNotValid.checkNotNull(indices, "indices");
+        ArgumentNotValid.checkPositive(indices.length, "indices.length");
+        for (long index : indices) {
+            ArgumentNotValid.checkNotNegative(index, "index");
         }
-        return replyGetMsg.getRecord();
+        return sendGetRequest(arcfile, indices).thenApply(
+                new Function<BitarchiveRecord[], List<BitarchiveRecord>>() {
+                    @Override
+                    public List<BitarchiveRecord> apply(BitarchiveRecord[] records) {
+                        return records == null ? null : Arrays.asList(records);
+                    }
+                });
+    }
+
+    /**
+     * Sends a GetMessage for the given records and converts the reply.
+     *
+     * @param arcfile The name of a file.
+     * @param indices The offsets of the wanted records in the file
+     * @return a future completed with the records, or with null if the request times out. If the reply does not have a
+     * record for each offset, the future is completed exceptionally with an IOFailure.
+     */
+    private CompletableFuture<BitarchiveRecord[]> sendGetRequest(final String arcfile, final long[] indices) {
+        final String what = arcfile + ":" + (indices.length == 1 ? String.valueOf(indices[0]) : Arrays.toString(
+                indices));
+        log.debug("Requesting get of record '{}'", what);
+        final long start = System.currentTimeMillis();
+        GetMessage requestGetMsg = new GetMessage(Channels.getTheRepos(), replyQ, arcfile, indices);
+        CompletableFuture<NetarkivetMessage> reply = JMSConnectionFactory.getInstance().sendRequest(requestGetMsg,
+                getTimeout);
+        return reply.handle(new BiFunction<NetarkivetMessage, Throwable, BitarchiveRecord[]>() {
+            @Override
+            public BitarchiveRecord[] apply(NetarkivetMessage replyNetMsg, Throwable failure) {
+                if (failure instanceof TimeoutException) {
+                    log.info("Request for record({}) timed out after {} seconds. Returning null BitarchiveRecord",
+                            what, (getTimeout / MILLISECONDS_PER_SECOND));
+                    return null;
+                } else if (failure != null) {
+                    throw new IOFailure("Get of record (" + what + ") failed", failure);
+                }
+                long timePassed = System.currentTimeMillis() - start;
+                log.debug("Reply received after {} seconds", (timePassed / MILLISECONDS_PER_SECOND));
+                GetMessage replyGetMsg;
+                try {
+                    replyGetMsg = (GetMessage) replyNetMsg;
+                } catch (ClassCastException e) {
+                    throw new IOFailure("Received invalid argument reply: '" + replyNetMsg + "'", e);
+                }
+                if (!replyGetMsg.isOk()) {
+                    throw new IOFailure("GetMessage failed: '" + replyGetMsg.getErrMsg() + "'");
+                }
+                BitarchiveRecord[] records = replyGetMsg.getRecords();
+                if (records != null && records.length != indices.length) {
+                    // A bitarchive that only knows about single offsets answers with the first record only
+                    throw new IOFailure("Reply to get of record (" + what + ") has " + records.length
+                            + " records, expected " + indices.length);
+                }
+                return records;
+            }
+        });
     }
 
     /**
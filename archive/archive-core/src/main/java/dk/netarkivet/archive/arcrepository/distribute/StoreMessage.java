@@ -31,6 +31,7 @@ import dk.netarkivet.common.distribute.Channels;
 import dk.netarkivet.common.distribute.RemoteFile;
 import dk.netarkivet.common.distribute.RemoteFileFactory;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.NotImplementedException;
 import dk.netarkivet.common.utils.ChecksumCalculator;
 
 /**
@@ -52,7 +53,28 @@ public class StoreMessage extends ArchiveMessage {
         super(Channels.getTheRepos(), replyTo);
         ArgumentNotValid.checkNotNull(arcfile, "arcfile");
         theRemoteFile = RemoteFileFactory.getDistributefileInstance(arcfile);
-        precomputedChecksum = ChecksumCalculator.calculateMd5(arcfile);
+        precomputedChecksum = getChecksum(theRemoteFile, arcfile);
+    }
+
+    /**
+     * Get the MD5 checksum of the file to store. A remote file made for distribution uses checksums, and has
+     * normally calculated it already while reading the file, in which case the file is not read again.
+     *
+     * @param remoteFile The remote file made from the file.
+     * @param arcfile The file to store.
+     * @return The MD5 checksum of the file.
+     */
+    private static String getChecksum(RemoteFile remoteFile, File arcfile) {
+        String checksum = null;
+        try {
+            checksum = remoteFile.getChecksum();
+        } catch (NotImplementedException e) {
+            // Calculated below
+        }
+        if (checksum == null) {
+            checksum = ChecksumCalculator.calculateMd5(arcfile);
+        }
+        return checksum;
     }
 
     /**
@@ -28,13 +28,13 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,8 +68,11 @@ public abstract class AdminData {
      * Admindata version. oldVersionNumber is the earlier but still valid version.
      */
     private static final String OLD_VERSION_NUMBER = "0.3";
-    /** Map containing a mapping from arcfilename to ArcRepositoryEntry. */
-    protected Map<String, ArcRepositoryEntry> storeEntries = new HashMap<String, ArcRepositoryEntry>();
+    /**
+     * Map containing a mapping from arcfilename to ArcRepositoryEntry. Concurrent, as the ArcRepository updates entries
+     * of different files in parallel.
+     */
+    protected Map<String, ArcRepositoryEntry> storeEntries = new ConcurrentHashMap<String, ArcRepositoryEntry>();
     /**
      * General delimiter. TODO add constants class where these constants are placed.
      */
@@ -87,7 +90,7 @@ public abstract class AdminData {
      * List containing the names of all knownBitArchives. This list is updated in the setState() method But only used in
      * the toString() method.
      */
-    protected List<String> knownBitArchives = new ArrayList<String>();
+    protected List<String> knownBitArchives = new CopyOnWriteArrayList<String>();
 
     /** The File object for the admin data file. */
     protected final File adminDataFile;
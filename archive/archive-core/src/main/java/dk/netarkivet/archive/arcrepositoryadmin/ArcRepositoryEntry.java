@@ -25,9 +25,9 @@ package dk.netarkivet.archive.arcrepositoryadmin;
 
 import java.io.PrintWriter;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,7 +61,7 @@ public class ArcRepositoryEntry {
      * constructor initialization, this field should only be set in case of a correct operation (now or earlier). Note:
      * the value 2 below is a hint to the number of bitarchives in our system.
      */
-    private Map<String, ArchiveStoreState> storeStates = new HashMap<String, ArchiveStoreState>(2);
+    private Map<String, ArchiveStoreState> storeStates = new ConcurrentHashMap<String, ArchiveStoreState>(2);
 
     /**
      * The information used to reply about this entry being done. Once a reply has been sent, this entry is set to null.
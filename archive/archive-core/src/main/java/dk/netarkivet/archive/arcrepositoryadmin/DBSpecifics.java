@@ -37,6 +37,10 @@ import dk.netarkivet.common.utils.SettingsFactory;
  */
 public abstract class DBSpecifics extends SettingsFactory<DBSpecifics> {
 
+    /** The column definitions of the staging table created by {@link #createStagingTable(Connection)}. */
+    protected static final String STAGING_TABLE_COLUMNS = "( filename varchar(300) not null, checksum varchar(300), "
+            + "file_id bigint )";
+
     /** The instance of the DBSpecifics class. */
     private static DBSpecifics instance;
 
@@ -77,4 +81,54 @@ public abstract class DBSpecifics extends SettingsFactory<DBSpecifics> {
      * @return The name of a JDBC driver class
      */
     public abstract String getDriverClassName();
+
+    /**
+     * Create a temporary table for staging the entries of a checksum list or a file list before they are merged into
+     * the replicafileinfo table. The table has the columns filename varchar(300), checksum varchar(300) and file_id
+     * bigint, is only visible to the given connection, and must keep its rows across commits. It should be disposed of
+     * with {@link #dropStagingTable(Connection, String)}.
+     *
+     * @param c The DB connection to use.
+     * @return The name of the created table.
+     * @throws SQLException If there is a problem creating the table.
+     */
+    public abstract String createStagingTable(Connection c) throws SQLException;
+
+    /**
+     * Dispose of a temporary table created with {@link #createStagingTable(Connection)}. This can be expected to be
+     * called from within a finally clause, so it mustn't throw exceptions.
+     *
+     * @param c The DB connection to use.
+     * @param tableName The name of the temporary table.
+     */
+    public abstract void dropStagingTable(Connection c, String tableName);
+
+    /**
+     * Update the statistics of a staging table after it has been filled, so the database can plan the queries joining
+     * it with the replicafileinfo table. Does nothing by default.
+     *
+     * @param c The DB connection to use.
+     * @param tableName The name of the temporary table.
+     * @throws SQLException If there is a problem updating the statistics.
+     */
+    public void analyzeStagingTable(Connection c, String tableName) throws SQLException {
+    }
+
+    /**
+     * Get the statement that updates the replicafileinfo entries of a replica with the checksums of the files in a
+     * staging table. The entries also get new upload and filelist status, and new check times. The statement takes
+     * the parameters upload_status, filelist_status, checksum_status, checksum_checkdatetime, filelist_checkdatetime
+     * and replica_id, in that order.
+     * <p>
+     * By default this uses correlated subqueries, which refer to the staging table twice.
+     *
+     * @param tableName The name of the staging table.
+     * @return The update statement.
+     */
+    public String getStagedChecksumsUpdate(String tableName) {
+        return "UPDATE replicafileinfo SET checksum = ( SELECT s.checksum FROM " + tableName
+                + " s WHERE s.file_id = replicafileinfo.file_id ), upload_status = ?, filelist_status = ?, "
+                + "checksum_status = ?, checksum_checkdatetime = ?, filelist_checkdatetime = ? "
+                + "WHERE replica_id = ? AND file_id IN ( SELECT file_id FROM " + tableName + " )";
+    }
 }
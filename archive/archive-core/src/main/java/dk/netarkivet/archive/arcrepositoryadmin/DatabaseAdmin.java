@@ -22,10 +22,10 @@
  */
 package dk.netarkivet.archive.arcrepositoryadmin;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import dk.netarkivet.archive.arcrepository.distribute.StoreMessage;
 import dk.netarkivet.common.distribute.Channels;
@@ -45,8 +45,8 @@ public final class DatabaseAdmin implements Admin {
     private ReplicaCacheDatabase database;
     /** The current instance of this class, to avoid multiple instantiations. */
     private static DatabaseAdmin instance;
-    /** Administration of store messages. */
-    private Map<String, StoreMessage> storeEntries = new HashMap<String, StoreMessage>();
+    /** Administration of store messages. Concurrent, as the ArcRepository stores different files in parallel. */
+    private Map<String, StoreMessage> storeEntries = new ConcurrentHashMap<String, StoreMessage>();
 
     /**
      * Constructor. Initialises the access to the database.
@@ -81,7 +81,11 @@ public final class DatabaseAdmin implements Admin {
         ArgumentNotValid.checkNotNullOrEmpty(checksum, "String checksum");
 
         // insert this into the entries map.
-        storeEntries.put(filename, msg);
+        if (msg != null) {
+            storeEntries.put(filename, msg);
+        } else {
+            storeEntries.remove(filename);
+        }
 
         // insert into database.
         database.insertNewFileForUpload(filename, checksum);
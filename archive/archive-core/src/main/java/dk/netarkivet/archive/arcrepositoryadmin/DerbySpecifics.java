@@ -23,9 +23,16 @@
 
 package dk.netarkivet.archive.arcrepositoryadmin;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.utils.DBUtils;
+
 /**
  * Derby-specific implementation of DB methods.
  * <p>
@@ -35,4 +42,54 @@ import org.slf4j.LoggerFactory;
 public abstract class DerbySpecifics extends DBSpecifics {
     /** The log. */
     protected static final Logger log = LoggerFactory.getLogger(DerbySpecifics.class);
+
+    /**
+     * Create a temporary table for staging checksum or file list entries. The rows are kept across commits, and
+     * deleted on rollback.
+     *
+     * @param c The DB connection to use.
+     * @return The name of the created table.
+     * @throws SQLException If there is a problem creating the table.
+     */
+    @Override
+    public String createStagingTable(Connection c) throws SQLException {
+        ArgumentNotValid.checkNotNull(c, "Connection c");
+        String[] statements = {
+                "DECLARE GLOBAL TEMPORARY TABLE replicafileinfo_staging " + STAGING_TABLE_COLUMNS
+                        + " ON COMMIT PRESERVE ROWS NOT LOGGED ON ROLLBACK DELETE ROWS",
+                "CREATE INDEX session.staging_filename ON session.replicafileinfo_staging (filename)",
+                "CREATE INDEX session.staging_file_id ON session.replicafileinfo_staging (file_id)"};
+        for (String statement : statements) {
+            PreparedStatement s = c.prepareStatement(statement);
+            try {
+                s.execute();
+            } finally {
+                DBUtils.closeStatementIfOpen(s);
+            }
+        }
+        return "session.replicafileinfo_staging";
+    }
+
+    /**
+     * Dispose of a temporary table created with createStagingTable. This can be expected to be called from within a
+     * finally clause, so it mustn't throw exceptions.
+     *
+     * @param c The DB connection to use.
+     * @param tableName The name of the temporary table.
+     */
+    @Override
+    public void dropStagingTable(Connection c, String tableName) {
+        ArgumentNotValid.checkNotNull(c, "Connection c");
+        ArgumentNotValid.checkNotNullOrEmpty(tableName, "String tableName");
+        PreparedStatement s = null;
+        try {
+            s = c.prepareStatement("DROP TABLE " + tableName);
+            s.execute();
+            c.commit();
+        } catch (SQLException e) {
+            log.warn("Couldn't drop temporary table {}", tableName, e);
+        } finally {
+            DBUtils.closeStatementIfOpen(s);
+        }
+    }
 }
@@ -24,12 +24,15 @@ package dk.netarkivet.archive.arcrepositoryadmin;
 
 import java.io.File;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.PermissionDenied;
+import dk.netarkivet.common.utils.DBUtils;
 
 public class MySQLSpecifics extends DBSpecifics {
 
@@ -51,4 +54,60 @@ public class MySQLSpecifics extends DBSpecifics {
         return "com.mysql.jdbc.Driver";
     }
 
+    /**
+     * Create a temporary table for staging checksum or file list entries. The rows are kept across commits.
+     *
+     * @param c The DB connection to use.
+     * @return The name of the created table.
+     * @throws SQLException If there is a problem creating the table.
+     */
+    @Override
+    public String createStagingTable(Connection c) throws SQLException {
+        ArgumentNotValid.checkNotNull(c, "Connection c");
+        String[] statements = {"CREATE TEMPORARY TABLE replicafileinfo_staging " + STAGING_TABLE_COLUMNS,
+                "CREATE INDEX staging_filename ON replicafileinfo_staging (filename)",
+                "CREATE INDEX staging_file_id ON replicafileinfo_staging (file_id)"};
+        for (String statement : statements) {
+            PreparedStatement s = c.prepareStatement(statement);
+            try {
+                s.execute();
+            } finally {
+                DBUtils.closeStatementIfOpen(s);
+            }
+        }
+        return "replicafileinfo_staging";
+    }
+
+    /**
+     * MySQL cannot refer to a temporary table more than once in a statement, so this uses a multi-table update joining
+     * the staging table.
+     *
+     * @param tableName The name of the staging table.
+     * @return The update statement.
+     */
+    @Override
+    public String getStagedChecksumsUpdate(String tableName) {
+        return "UPDATE replicafileinfo JOIN " + tableName + " s ON s.file_id = replicafileinfo.file_id "
+                + "SET replicafileinfo.checksum = s.checksum, replicafileinfo.upload_status = ?, "
+                + "replicafileinfo.filelist_status = ?, replicafileinfo.checksum_status = ?, "
+                + "replicafileinfo.checksum_checkdatetime = ?, replicafileinfo.filelist_checkdatetime = ? "
+                + "WHERE replicafileinfo.replica_id = ?";
+    }
+
+    @Override
+    public void dropStagingTable(Connection c, String tableName) {
+        ArgumentNotValid.checkNotNull(c, "Connection c");
+        ArgumentNotValid.checkNotNullOrEmpty(tableName, "String tableName");
+        PreparedStatement s = null;
+        try {
+            s = c.prepareStatement("DROP TEMPORARY TABLE " + tableName);
+            s.execute();
+            c.commit();
+        } catch (SQLException e) {
+            log.warn("Couldn't drop temporary table {}", tableName, e);
+        } finally {
+            DBUtils.closeStatementIfOpen(s);
+        }
+    }
+
 }
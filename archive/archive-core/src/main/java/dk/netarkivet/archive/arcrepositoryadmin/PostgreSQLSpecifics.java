@@ -24,12 +24,15 @@ package dk.netarkivet.archive.arcrepositoryadmin;
 
 import java.io.File;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.PermissionDenied;
+import dk.netarkivet.common.utils.DBUtils;
 
 public class PostgreSQLSpecifics extends DBSpecifics {
 
@@ -60,4 +63,60 @@ public class PostgreSQLSpecifics extends DBSpecifics {
         return "org.postgresql.Driver";
     }
 
+    /**
+     * Create a temporary table for staging checksum or file list entries. The rows are kept across commits.
+     *
+     * @param c The DB connection to use.
+     * @return The name of the created table.
+     * @throws SQLException If there is a problem creating the table.
+     */
+    @Override
+    public String createStagingTable(Connection c) throws SQLException {
+        ArgumentNotValid.checkNotNull(c, "Connection c");
+        String[] statements = {"CREATE TEMPORARY TABLE replicafileinfo_staging " + STAGING_TABLE_COLUMNS,
+                "CREATE INDEX staging_filename ON replicafileinfo_staging (filename)",
+                "CREATE INDEX staging_file_id ON replicafileinfo_staging (file_id)"};
+        for (String statement : statements) {
+            PreparedStatement s = c.prepareStatement(statement);
+            try {
+                s.execute();
+            } finally {
+                DBUtils.closeStatementIfOpen(s);
+            }
+        }
+        return "replicafileinfo_staging";
+    }
+
+    @Override
+    public void dropStagingTable(Connection c, String tableName) {
+        ArgumentNotValid.checkNotNull(c, "Connection c");
+        ArgumentNotValid.checkNotNullOrEmpty(tableName, "String tableName");
+        PreparedStatement s = null;
+        try {
+            s = c.prepareStatement("DROP TABLE " + tableName);
+            s.execute();
+            c.commit();
+        } catch (SQLException e) {
+            log.warn("Couldn't drop temporary table {}", tableName, e);
+        } finally {
+            DBUtils.closeStatementIfOpen(s);
+        }
+    }
+
+    /**
+     * Temporary tables are not analyzed by autovacuum, so without this the planner has no idea of the size of the
+     * staging table.
+     */
+    @Override
+    public void analyzeStagingTable(Connection c, String tableName) throws SQLException {
+        ArgumentNotValid.checkNotNull(c, "Connection c");
+        ArgumentNotValid.checkNotNullOrEmpty(tableName, "String tableName");
+        PreparedStatement s = c.prepareStatement("ANALYZE " + tableName);
+        try {
+            s.execute();
+        } finally {
+            DBUtils.closeStatementIfOpen(s);
+        }
+    }
+
 }
@@ -75,13 +75,6 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
     /** The current instance. */
     private static ReplicaCacheDatabase instance;
 
-    /**
-     * The number of entries between logging in either file list or checksum list. This also controls how often the
-     * database connection is renewed in methods {@link #addChecksumInformation(File, Replica)} and
-     * {@link #addFileListInformation(File, Replica)}, where the operations can take hours, and seems to leak memory.
-     */
-    private final int LOGGING_ENTRY_INTERVAL = 1000;
-
     /** Waiting time in seconds before attempting to initialise the database again. */
     private final int WAIT_BEFORE_INIT_RETRY = 30;
 
@@ -726,8 +719,8 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
         FileUtils.sortFile(checksumOutputFile, sortedResult);
         final long datasize = FileUtils.countLines(sortedResult);
 
-        Set<Long> missingReplicaRFIs = null;
         Connection con = ArchiveDBConnection.get();
+        ReplicaFileInfoStaging staging = null;
         LineIterator lineIterator = null;
         try {
             // Make sure, that the replica exists in the database.
@@ -740,11 +733,9 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
 
             log.info("Starting processing of {} checksum entries for replica {}", datasize, replica.getId());
 
-            // retrieve the list of files already known by this cache.
-            // TODO This does not scale! Should the datastructure
-            // (missingReplicaRFIs) be disk-bound in some way, or optimized
-            // in some way, e.g. using it.unimi.dsi.fastutil.longs.LongArrayList
-            missingReplicaRFIs = ReplicaCacheHelpers.retrieveReplicaFileInfoGuidsForReplica(replica.getId(), con);
+            // Stage the entries in a temporary table, and merge them into
+            // the replicafileinfo table afterwards.
+            staging = new ReplicaFileInfoStaging(con, replica);
 
             // Initialize the String iterator
             lineIterator = new LineIterator(new FileReader(sortedResult));
@@ -752,19 +743,8 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
             String lastFilename = "";
             String lastChecksum = "";
 
-            int i = 0;
             while (lineIterator.hasNext()) {
                 String line = lineIterator.next();
-                // log that it is in progress every so often.
-                if ((i % LOGGING_ENTRY_INTERVAL) == 0) {
-                    log.info("Processed checksum list entry number {} for replica {}", i, replica);
-                    // Close connection, and open another one
-                    // to avoid memory-leak (NAS-2003)
-                    ArchiveDBConnection.release(con);
-                    con = ArchiveDBConnection.get();
-                    log.debug("Databaseconnection has now been renewed");
-                }
-                ++i;
 
                 // parse the input.
                 final KeyValuePair<String, String> entry = ChecksumJob.parseLine(line);
@@ -793,27 +773,16 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
                 lastFilename = filename;
                 lastChecksum = checksum;
 
-                // Process the current (filename + checksum) combo for this replica
-                // Remove the returned replicafileinfo guid from the missing entries.
-                missingReplicaRFIs.remove(ReplicaCacheHelpers.processChecksumline(filename, checksum, replica, con));
+                staging.add(filename, checksum);
             }
-        } catch (IOException e) {
-            throw new IOFailure("Unable to read checksum entries from file", e);
-        } finally {
-            ArchiveDBConnection.release(con);
-            LineIterator.closeQuietly(lineIterator);
-        }
 
-        con = ArchiveDBConnection.get();
-        try {
-            // go through the not found replicafileinfo for this replica to change
-            // their filelist_status to missing.
-            if (missingReplicaRFIs.size() > 0) {
-                log.warn("Found {} missing files for replica '{}'.", missingReplicaRFIs.size(), replica);
-                for (long rfi : missingReplicaRFIs) {
-                    // set the replicafileinfo in the database to missing.
-                    ReplicaCacheHelpers.updateReplicaFileInfoMissingFromFilelist(rfi, con);
-                }
+            staging.mergeStagedEntries(true);
+
+            // change the filelist_status of the replicafileinfo entries
+            // not found for this replica to missing.
+            int missingFiles = staging.markUnstagedFilesMissing();
+            if (missingFiles > 0) {
+                log.warn("Found {} missing files for replica '{}'.", missingFiles, replica);
             }
 
             // update the checksum updated date for this replica.
@@ -821,8 +790,17 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
             ReplicaCacheHelpers.updateFilelistDateForReplica(replica, con);
 
             log.info("Finished processing of {} checksum entries for replica {}", datasize, replica.getId());
+        } catch (IOException e) {
+            throw new IOFailure("Unable to read checksum entries from file", e);
+        } catch (SQLException e) {
+            throw new IOFailure("Unable to add checksum entries for replica '" + replica + "' to the database.\n"
+                    + ExceptionUtils.getSQLExceptionCause(e), e);
         } finally {
+            if (staging != null) {
+                staging.close();
+            }
             ArchiveDBConnection.release(con);
+            LineIterator.closeQuietly(lineIterator);
         }
     }
 
@@ -857,7 +835,7 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
         final long datasize = FileUtils.countLines(sortedResult);
 
         Connection con = ArchiveDBConnection.get();
-        Set<Long> missingReplicaRFIs = null;
+        ReplicaFileInfoStaging staging = null;
         LineIterator lineIterator = null;
         try {
             // Make sure, that the replica exists in the database.
@@ -870,28 +848,16 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
 
             log.info("Starting processing of {} filelist entries for replica {}", datasize, replica.getId());
 
-            // retrieve the list of files already known by this cache.
-            // TODO This does not scale! Should this datastructure
-            // (missingReplicaRFIs) be disk-bound in some way.
-            missingReplicaRFIs = ReplicaCacheHelpers.retrieveReplicaFileInfoGuidsForReplica(replica.getId(), con);
+            // Stage the entries in a temporary table, and merge them into
+            // the replicafileinfo table afterwards.
+            staging = new ReplicaFileInfoStaging(con, replica);
 
             // Initialize String iterator
             lineIterator = new LineIterator(new FileReader(sortedResult));
 
             String lastFileName = "";
-            int i = 0;
             while (lineIterator.hasNext()) {
                 String file = lineIterator.next();
-                // log that it is in progress every so often.
-                if ((i % LOGGING_ENTRY_INTERVAL) == 0) {
-                    log.info("Processed file list entry number {} for replica {}", i, replica);
-                    // Close connection, and open another one
-                    // to avoid memory-leak (NAS-2003)
-                    ArchiveDBConnection.release(con);
-                    con = ArchiveDBConnection.get();
-                    log.debug("Databaseconnection has now been renewed");
-                }
-                ++i;
 
                 // handle duplicates.
                 if (file.equals(lastFileName)) {
@@ -900,32 +866,31 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
                 }
 
                 lastFileName = file;
-                // Add information for one file, and remove the ReplicaRFI from the
-                // set of missing ones.
-                missingReplicaRFIs.remove(ReplicaCacheHelpers.addFileInformation(file, replica, con));
+                staging.add(file, null);
             }
-        } catch (IOException e) {
-            throw new IOFailure("Unable to read the filenames from file", e);
-        } finally {
-            ArchiveDBConnection.release(con);
-            LineIterator.closeQuietly(lineIterator);
-        }
 
-        con = ArchiveDBConnection.get();
-        try {
-            // go through the not found replicafileinfo for this replica to change
-            // their filelist_status to missing.
-            if (missingReplicaRFIs.size() > 0) {
-                log.warn("Found {} missing files for replica '{}'.", missingReplicaRFIs.size(), replica);
-                for (long rfi : missingReplicaRFIs) {
-                    // set the replicafileinfo in the database to missing.
-                    ReplicaCacheHelpers.updateReplicaFileInfoMissingFromFilelist(rfi, con);
-                }
+            staging.mergeStagedEntries(false);
+
+            // change the filelist_status of the replicafileinfo entries
+            // not found for this replica to missing.
+            int missingFiles = staging.markUnstagedFilesMissing();
+            if (missingFiles > 0) {
+                log.warn("Found {} missing files for replica '{}'.", missingFiles, replica);
             }
+
             // Update the date for filelist update for this replica.
             ReplicaCacheHelpers.updateFilelistDateForReplica(replica, con);
+        } catch (IOException e) {
+            throw new IOFailure("Unable to read the filenames from file", e);
+        } catch (SQLException e) {
+            throw new IOFailure("Unable to add filelist entries for replica '" + replica + "' to the database.\n"
+                    + ExceptionUtils.getSQLExceptionCause(e), e);
         } finally {
+            if (staging != null) {
+                staging.close();
+            }
             ArchiveDBConnection.release(con);
+            LineIterator.closeQuietly(lineIterator);
         }
     }
 
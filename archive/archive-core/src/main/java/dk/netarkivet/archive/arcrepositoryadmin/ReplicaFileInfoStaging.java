@@ -0,0 +1,247 @@
+/*
+ * #%L
+ * Netarchivesuite - archive
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.archive.arcrepositoryadmin;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Calendar;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.distribute.arcrepository.Replica;
+import dk.netarkivet.common.distribute.arcrepository.ReplicaStoreState;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.utils.DBUtils;
+import dk.netarkivet.common.utils.ExceptionUtils;
+import dk.netarkivet.common.utils.TimeUtils;
+
+/**
+ * Bulk ingest of the entries of a checksum list or a file list for a replica into the replicafileinfo table.
+ * <p>
+ * The entries are first inserted into a temporary staging table using JDBC batches, and then merged into the file and
+ * replicafileinfo tables with a few set-based statements, instead of several queries per entry. The staging table is
+ * bound to the given connection, so the same connection must be used from construction until {@link #close()}.
+ */
+class ReplicaFileInfoStaging {
+
+    /** The log. */
+    private static final Logger log = LoggerFactory.getLogger(ReplicaFileInfoStaging.class);
+
+    /** The number of entries inserted into the staging table per batch. */
+    private static final int BATCH_SIZE = 1000;
+
+    /** The number of entries between logging the progress of the staging. */
+    private static final int PROGRESS_INTERVAL = 100000;
+
+    /** The connection to the archive database. */
+    private final Connection con;
+
+    /** The replica the entries are for. */
+    private final Replica replica;
+
+    /** The name of the staging table. */
+    private final String stagingTable;
+
+    /** The statement for inserting entries into the staging table. */
+    private PreparedStatement insertStatement;
+
+    /** The number of entries added to the staging table so far. */
+    private long entries;
+
+    /** The number of entries added to the current batch. */
+    private int batchEntries;
+
+    /** The time the staging was started, in milliseconds. */
+    private final long startTime;
+
+    /**
+     * Create a staging table for the entries of a replica.
+     *
+     * @param con An open connection to the archive database.
+     * @param replica The replica the entries are for.
+     * @throws SQLException If the staging table cannot be created.
+     */
+    ReplicaFileInfoStaging(Connection con, Replica replica) throws SQLException {
+        ArgumentNotValid.checkNotNull(con, "Connection con");
+        ArgumentNotValid.checkNotNull(replica, "Replica replica");
+        this.con = con;
+        this.replica = replica;
+        this.startTime = System.currentTimeMillis();
+        this.stagingTable = DBSpecifics.getInstance().createStagingTable(con);
+        try {
+            insertStatement = con.prepareStatement("INSERT INTO " + stagingTable
+                    + " (filename, checksum) VALUES ( ?, ? )");
+        } catch (SQLException e) {
+            DBSpecifics.getInstance().dropStagingTable(con, stagingTable);
+            throw e;
+        }
+    }
+
+    /**
+     * Add an entry to the staging table. The entries are sent to the database in batches. Each filename must only be
+     * added once.
+     *
+     * @param filename The name of the file.
+     * @param checksum The checksum of the file, or null for file list entries.
+     * @throws SQLException If a batch cannot be inserted.
+     */
+    void add(String filename, String checksum) throws SQLException {
+        insertStatement.setString(1, filename);
+        insertStatement.setString(2, checksum);
+        insertStatement.addBatch();
+        ++entries;
+        if (++batchEntries == BATCH_SIZE) {
+            executeBatch();
+        }
+        if (entries % PROGRESS_INTERVAL == 0) {
+            logProgress("Staged");
+        }
+    }
+
+    /**
+     * Send the current batch to the database and commit it.
+     *
+     * @throws SQLException If the batch cannot be inserted.
+     */
+    private void executeBatch() throws SQLException {
+        if (batchEntries > 0) {
+            insertStatement.executeBatch();
+            con.commit();
+            batchEntries = 0;
+        }
+    }
+
+    /**
+     * Log the number of entries processed, and the throughput since the staging was started.
+     *
+     * @param action What has been done to the entries.
+     */
+    private void logProgress(String action) {
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        log.info("{} {} entries for replica {} in {} ({} entries/s)", action, entries, replica.getId(),
+                TimeUtils.readableTimeInterval(elapsed), entries * TimeUtils.SECOND_IN_MILLIS / elapsed);
+    }
+
+    /**
+     * Merge the staged entries into the file and replicafileinfo tables. Files that are not known already are created,
+     * with replicafileinfo entries for every replica. The replicafileinfo entries of this replica for the staged files
+     * get filelist_status OK; if checksums were staged, they also get the staged checksum, checksum_status UNKNOWN and
+     * upload_status UPLOAD_COMPLETED.
+     *
+     * @param withChecksums Whether the staged entries have checksums.
+     * @throws SQLException If the entries cannot be merged.
+     */
+    void mergeStagedEntries(boolean withChecksums) throws SQLException {
+        executeBatch();
+        logProgress("Staged");
+        DBSpecifics.getInstance().analyzeStagingTable(con, stagingTable);
+
+        int newFiles = executeUpdate("INSERT INTO file (filename) SELECT filename FROM " + stagingTable
+                + " WHERE NOT EXISTS ( SELECT 1 FROM file WHERE file.filename = " + stagingTable + ".filename )");
+        if (newFiles > 0) {
+            log.info("Inserted {} new files into the database from the entries for replica {}", newFiles,
+                    replica.getId());
+        }
+        executeUpdate("UPDATE " + stagingTable + " SET file_id = ( SELECT MIN(file.file_id) FROM file "
+                + "WHERE file.filename = " + stagingTable + ".filename )");
+        int newReplicaFileInfos = executeUpdate("INSERT INTO replicafileinfo "
+                + "(file_id, replica_id, filelist_status, checksum_status, upload_status) "
+                + "SELECT s.file_id, r.replica_id, " + FileListStatus.NO_FILELIST_STATUS.ordinal() + ", "
+                + ChecksumStatus.UNKNOWN.ordinal() + ", " + ReplicaStoreState.UNKNOWN_UPLOAD_STATE.ordinal() + " "
+                + "FROM " + stagingTable + " s, replica r WHERE NOT EXISTS ( SELECT 1 FROM replicafileinfo rfi "
+                + "WHERE rfi.file_id = s.file_id AND rfi.replica_id = r.replica_id )");
+        if (newReplicaFileInfos > 0) {
+            log.info("Inserted {} new replicafileinfo entries from the entries for replica {}", newReplicaFileInfos,
+                    replica.getId());
+        }
+
+        Date now = new Date(Calendar.getInstance().getTimeInMillis());
+        int updated;
+        if (withChecksums) {
+            updated = executeUpdate(DBSpecifics.getInstance().getStagedChecksumsUpdate(stagingTable),
+                    ReplicaStoreState.UPLOAD_COMPLETED.ordinal(), FileListStatus.OK.ordinal(),
+                    ChecksumStatus.UNKNOWN.ordinal(), now, now, replica.getId());
+        } else {
+            updated = executeUpdate("UPDATE replicafileinfo SET filelist_status = ?, filelist_checkdatetime = ? "
+                    + "WHERE replica_id = ? AND file_id IN ( SELECT file_id FROM " + stagingTable + " )",
+                    FileListStatus.OK.ordinal(), now, replica.getId());
+        }
+        log.info("Updated {} replicafileinfo entries for replica {} in {}", updated, replica.getId(),
+                TimeUtils.readableTimeInterval(System.currentTimeMillis() - startTime));
+    }
+
+    /**
+     * Mark the replicafileinfo entries of this replica for files that were not staged as missing. They get
+     * filelist_status MISSING and upload_status UPLOAD_FAILED.
+     *
+     * @return The number of entries marked as missing.
+     * @throws SQLException If the entries cannot be updated.
+     */
+    int markUnstagedFilesMissing() throws SQLException {
+        Date now = new Date(Calendar.getInstance().getTimeInMillis());
+        return executeUpdate("UPDATE replicafileinfo SET filelist_status = ?, filelist_checkdatetime = ?, "
+                + "upload_status = ? WHERE replica_id = ? AND NOT EXISTS ( SELECT 1 FROM " + stagingTable
+                + " s WHERE s.file_id = replicafileinfo.file_id )", FileListStatus.MISSING.ordinal(), now,
+                ReplicaStoreState.UPLOAD_FAILED.ordinal(), replica.getId());
+    }
+
+    /**
+     * Execute an update statement and commit it.
+     *
+     * @param sql The statement.
+     * @param args The arguments for the statement.
+     * @return The number of rows updated.
+     * @throws SQLException If the statement fails.
+     */
+    private int executeUpdate(String sql, Object... args) throws SQLException {
+        long start = System.currentTimeMillis();
+        PreparedStatement s = DBUtils.prepareStatement(con, sql, args);
+        try {
+            int rows = s.executeUpdate();
+            con.commit();
+            log.debug("Executed '{}' on {} rows in {} ms", sql, rows, System.currentTimeMillis() - start);
+            return rows;
+        } finally {
+            DBUtils.closeStatementIfOpen(s);
+        }
+    }
+
+    /**
+     * Roll back anything uncommitted and drop the staging table. This does not throw exceptions, so it can be called
+     * from a finally clause.
+     */
+    void close() {
+        DBUtils.closeStatementIfOpen(insertStatement);
+        try {
+            con.rollback();
+        } catch (SQLException e) {
+            log.warn("SQL error doing rollback after staging entries for replica {}\n{}", replica.getId(),
+                    ExceptionUtils.getSQLExceptionCause(e), e);
+        }
+        DBSpecifics.getInstance().dropStagingTable(con, stagingTable);
+    }
+
+}
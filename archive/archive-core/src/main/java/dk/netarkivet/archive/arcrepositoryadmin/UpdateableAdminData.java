@@ -211,7 +211,7 @@ public class UpdateableAdminData extends AdminData implements Admin {
      *
      * @throws IOFailure on trouble writing to file
      */
-    private void write() throws IOFailure {
+    private synchronized void write() throws IOFailure {
         // First write admindata to a temporary file.
         final File adminDataStore = adminDataFile;
         final File tmpDataStore = new File(adminDir, AdminData.ADMIN_FILE_NAME + ".tmp");
@@ -267,12 +267,13 @@ public class UpdateableAdminData extends AdminData implements Admin {
     }
 
     /**
-     * Write a particular entry to the admin data file. This will append the data to the end of the file.
+     * Write a particular entry to the admin data file. This will append the data to the end of the file. Appends and
+     * rewrites of the file are serialized, as entries of different files are updated in parallel.
      *
      * @param filename the name of the file which entry is to written to admin data file
      * @throws IOFailure If an exception occurs when accessing the file.
      */
-    private void write(String filename) throws IOFailure {
+    private synchronized void write(String filename) throws IOFailure {
         ArcRepositoryEntry entry = storeEntries.get(filename);
         File adminDataStore = adminDataFile;
         PrintWriter writer = null;
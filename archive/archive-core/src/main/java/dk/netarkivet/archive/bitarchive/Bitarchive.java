@@ -110,8 +110,9 @@ public class Bitarchive {
                         + barc.getSize());
             }
             File in = barc.getFilePath();
-            arcReader = ArchiveReaderFactory.get(in);
-            arc = arcReader.get(index);
+            // Open the reader directly at the record, instead of at the start of the file.
+            arcReader = ArchiveReaderFactory.get(in, index);
+            arc = arcReader.get();
             BitarchiveRecord result = new BitarchiveRecord(arc, arcfile);
 
             // release resources locked
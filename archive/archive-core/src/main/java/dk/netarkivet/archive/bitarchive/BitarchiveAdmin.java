@@ -25,13 +25,20 @@ package dk.netarkivet.archive.bitarchive;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
@@ -43,14 +50,18 @@ import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.exceptions.PermissionDenied;
 import dk.netarkivet.common.exceptions.UnknownID;
+import dk.netarkivet.common.management.SingleMBeanObject;
 import dk.netarkivet.common.utils.ApplicationUtils;
 import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.Settings;
 
 /**
  * This class handles file lookup and encapsulates the actual placement of files.
+ * <p>
+ * The names of the archived files are kept sorted, so files selected by a literal filename or a filename prefix, like
+ * most batch jobs run on a single file, are found without testing the names of all files.
  */
-public final class BitarchiveAdmin {
+public final class BitarchiveAdmin implements FileListStatistics {
 
     /** The class logger. */
     private static final Logger log = LoggerFactory.getLogger(BitarchiveAdmin.class);
@@ -68,6 +79,34 @@ public final class BitarchiveAdmin {
      */
     private Map<File, Long> archiveTime = Collections.synchronizedMap(new HashMap<File, Long>());
 
+    /**
+     * Map from the name of each archived file to where it is stored, sorted by name. It is updated along with
+     * archivedFiles, so a lookup does not have to probe every archive directory for the file, and files with a given
+     * prefix can be found by a range scan.
+     */
+    private final ConcurrentSkipListMap<String, File> fileIndex = new ConcurrentSkipListMap<String, File>();
+
+    /** The number of file selections answered from the filename index. */
+    private final LongAdder indexedSelections = new LongAdder();
+
+    /** The time spent on file selections answered from the filename index, in nanoseconds. */
+    private final LongAdder indexedSelectionNanos = new LongAdder();
+
+    /** The number of file selections that tested every filename. */
+    private final LongAdder scannedSelections = new LongAdder();
+
+    /** The time spent on file selections that tested every filename, in nanoseconds. */
+    private final LongAdder scannedSelectionNanos = new LongAdder();
+
+    /** The number of times the list of files in an archive directory has been read. */
+    private final LongAdder fileListUpdates = new LongAdder();
+
+    /** The time spent reading the lists of files in archive directories, in nanoseconds. */
+    private final LongAdder fileListUpdateNanos = new LongAdder();
+
+    /** The MBean this object is exposed as, or null if not registered. */
+    private SingleMBeanObject<FileListStatistics> singleMBeanObject;
+
     /** Singleton instance. */
     private static BitarchiveAdmin instance;
 
@@ -196,6 +235,7 @@ public final class BitarchiveAdmin {
         }
 
         log.debug("Updating the filelist for '{}'.", basedir);
+        long start = System.nanoTime();
         File filedir = new File(basedir, fileDirectoryName);
         if (Files.isSymbolicLink(filedir.toPath()) && !Files.isDirectory(filedir.toPath()) ) {
             log.warn("The 'directory' " + filedir.getAbsolutePath() + " is a symbolic link that appears to be unresolved. "
@@ -211,12 +251,28 @@ public final class BitarchiveAdmin {
             // ensure that only files are handled
             if ((new File(filedir, file)).isFile()) {
                 filenames.add(file);
+                indexFile(file, new File(filedir, file));
             } else {
                 log.warn("The file '{}' in directory {} is not a proper file.", file, filedir.getPath());
             }
         }
-        archivedFiles.put(basedir, filenames);
+        // Remove the files that are no longer in the directory from the index, after adding the current ones, so a
+        // concurrent lookup never misses a file that is there.
+        List<String> oldFilenames = archivedFiles.put(basedir, filenames);
+        if (oldFilenames != null) {
+            Set<String> currentFilenames = new HashSet<String>(filenames);
+            for (String file : oldFilenames) {
+                if (!currentFilenames.contains(file)) {
+                    unindexFile(file, new File(filedir, file));
+                }
+            }
+        }
         archiveTime.put(basedir, filedir.lastModified());
+        long time = System.nanoTime() - start;
+        fileListUpdates.increment();
+        fileListUpdateNanos.add(time);
+        log.debug("Updated the filelist of {} files for '{}' in {} ms", filenames.size(), basedir,
+                TimeUnit.NANOSECONDS.toMillis(time));
     }
 
     /**
@@ -327,6 +383,8 @@ public final class BitarchiveAdmin {
             throw new UnknownID("The directory " + basedir.getAbsolutePath() + " was not found in the map of known directories and files.");
         }
         fileList.add(arcFileName);
+        // Index the file under the canonical directory, like updateFileList() does.
+        indexFile(arcFileName, new File(new File(canonicalFile, Constants.FILE_DIRECTORY_NAME), arcFileName));
         archiveTime.put(canonicalFile, storagePath.lastModified());
         return storageFile;
     }
@@ -401,7 +459,9 @@ public final class BitarchiveAdmin {
     }
 
     /**
-     * Return an array of all files in this archive that match a given regular expression on the filename.
+     * Return an array of all files in this archive that match a given regular expression on the filename. If the
+     * expression is a literal filename, a literal prefix followed by <code>.*</code>, or alternatives of these, the
+     * files are found in the sorted index of filenames. Otherwise the expression is tested on every filename.
      *
      * @param regexp A precompiled regular expression matching whole filenames. This will probably be given to a
      * FilenameFilter
@@ -412,6 +472,83 @@ public final class BitarchiveAdmin {
         ArgumentNotValid.checkNotNull(regexp, "Pattern regexp");
         // Ensure that the filelist is up to date.
         verifyFilelistUpToDate();
+        long start = System.nanoTime();
+        FilenamePrefixes prefixes = FilenamePrefixes.of(regexp);
+        File[] result;
+        if (prefixes != null) {
+            result = getFilesWithPrefixes(regexp, prefixes);
+            long time = System.nanoTime() - start;
+            indexedSelections.increment();
+            indexedSelectionNanos.add(time);
+            log.debug("Found {} files matching '{}' in the filename index in {} us", result.length, regexp,
+                    TimeUnit.NANOSECONDS.toMicros(time));
+        } else {
+            result = getFilesMatchingByListing(regexp);
+            long time = System.nanoTime() - start;
+            scannedSelections.increment();
+            scannedSelectionNanos.add(time);
+            log.debug("Found {} files matching '{}' by testing all filenames in {} us", result.length, regexp,
+                    TimeUnit.NANOSECONDS.toMicros(time));
+        }
+        return result;
+    }
+
+    /**
+     * Find the files matching an expression by looking up the filenames starting with the prefixes of the expression
+     * in the filename index.
+     *
+     * @param regexp A regular expression matching whole filenames.
+     * @param prefixes The prefixes of the filenames the expression can match.
+     * @return The files in usable archive directories matching the expression.
+     */
+    private File[] getFilesWithPrefixes(Pattern regexp, FilenamePrefixes prefixes) {
+        Set<File> usableBasedirs = new HashSet<File>();
+        for (File archivePath : archivedFiles.keySet()) {
+            if (checkArchiveDir(new File(archivePath, fileDirectoryName))) {
+                usableBasedirs.add(archivePath);
+            }
+        }
+        Set<File> files = new LinkedHashSet<File>();
+        for (int i = 0; i < prefixes.size(); i++) {
+            String prefix = prefixes.getPrefix(i);
+            if (prefixes.isExact(i)) {
+                addIfMatching(prefix, fileIndex.get(prefix), regexp, usableBasedirs, files);
+            } else {
+                for (Map.Entry<String, File> entry : fileIndex.tailMap(prefix, true).entrySet()) {
+                    if (!entry.getKey().startsWith(prefix)) {
+                        break;
+                    }
+                    addIfMatching(entry.getKey(), entry.getValue(), regexp, usableBasedirs, files);
+                }
+            }
+        }
+        return files.toArray(new File[files.size()]);
+    }
+
+    /**
+     * Add a file from the filename index to a result, if its name matches an expression and it is in a usable archive
+     * directory.
+     *
+     * @param filename The name of the file.
+     * @param file The file from the index, or null if there is no file with the name.
+     * @param regexp A regular expression matching whole filenames.
+     * @param usableBasedirs The archive directories files may be found in.
+     * @param files The result.
+     */
+    private void addIfMatching(String filename, File file, Pattern regexp, Set<File> usableBasedirs, Set<File> files) {
+        if (file != null && usableBasedirs.contains(file.getParentFile().getParentFile())
+                && regexp.matcher(filename).matches()) {
+            files.add(file);
+        }
+    }
+
+    /**
+     * Find the files matching an expression by testing the name of every file in the archive.
+     *
+     * @param regexp A regular expression matching whole filenames.
+     * @return The files in usable archive directories matching the expression.
+     */
+    private File[] getFilesMatchingByListing(Pattern regexp) {
         List<File> files = new ArrayList<File>();
         for (File archivePath : archivedFiles.keySet()) {
             File archiveDir = new File(archivePath, fileDirectoryName);
@@ -427,7 +564,8 @@ public final class BitarchiveAdmin {
     }
 
     /**
-     * Return the path that a given arc file can be found in.
+     * Return the path that a given arc file can be found in. The file is found in the index of archived files, which
+     * is updated from the archive directories that have changed since the last update.
      *
      * @param arcFileName Name of an arc file (with no path)
      * @return A BitarchiveARCFile for the given file, or null if the file does not exist.
@@ -435,20 +573,164 @@ public final class BitarchiveAdmin {
     public BitarchiveARCFile lookup(String arcFileName) {
         ArgumentNotValid.checkNotNullOrEmpty(arcFileName, "arcFileName");
         verifyFilelistUpToDate();
-        for (File archivePath : archivedFiles.keySet()) {
-            File archiveDir = new File(archivePath, fileDirectoryName);
-            if (checkArchiveDir(archiveDir)) {
-                File archiveFile = new File(archiveDir, arcFileName);
-                if (archiveFile.exists()) {
-                    return new BitarchiveARCFile(arcFileName, archiveFile);
-                }
+        File archiveFile = fileIndex.get(arcFileName);
+        while (archiveFile != null) {
+            if (archiveFile.isFile()) {
+                return new BitarchiveARCFile(arcFileName, archiveFile);
             }
+            // The file has been moved since the directory was listed, e.g. to the attic.
+            log.debug("The arcfile '{}' is no longer at '{}'", arcFileName, archiveFile);
+            unindexFile(arcFileName, archiveFile);
+            archiveFile = fileIndex.get(arcFileName);
         }
         // the arcfile named "arcFileName" does not exist in this bitarchive.
         log.trace("The arcfile named '{}' does not exist in this bitarchve", arcFileName);
         return null;
     }
 
+    /**
+     * Remove a file from the list of archived files, after it has been moved out of its archive directory.
+     *
+     * @param storedFile The file, where it was stored in the archive.
+     * @throws ArgumentNotValid If storedFile is null.
+     */
+    public void fileRemoved(File storedFile) {
+        ArgumentNotValid.checkNotNull(storedFile, "File storedFile");
+        String filename = storedFile.getName();
+        File basedir = storedFile.getAbsoluteFile().getParentFile().getParentFile();
+        try {
+            basedir = basedir.getCanonicalFile();
+        } catch (IOException e) {
+            log.debug("Could not find canonical file for '{}'", basedir, e);
+        }
+        List<String> fileList = archivedFiles.get(basedir);
+        if (fileList != null) {
+            fileList.remove(filename);
+        }
+        File indexed = fileIndex.get(filename);
+        if (indexed != null && indexed.getParentFile().getParentFile().equals(basedir)) {
+            unindexFile(filename, indexed);
+        }
+    }
+
+    /**
+     * Add a file to the filename index. If a file with the same name is already indexed in another archive directory
+     * and is still there, that one is kept, as lookups have always found the file in the first archive directory
+     * having it, and a warning is logged.
+     *
+     * @param filename The name of the file.
+     * @param file The file, in the canonical archive directory.
+     */
+    private void indexFile(String filename, File file) {
+        File indexed = fileIndex.putIfAbsent(filename, file);
+        if (indexed != null && !indexed.equals(file)) {
+            if (indexed.isFile()) {
+                log.warn("The file '{}' is stored both at '{}' and at '{}'. Only '{}' will be found by lookups",
+                        filename, indexed, file, indexed);
+            } else {
+                fileIndex.replace(filename, indexed, file);
+            }
+        }
+    }
+
+    /**
+     * Remove a file from the filename index, if it is indexed at the given path. If a file with the same name is stored
+     * in another archive directory, that one is indexed instead.
+     *
+     * @param filename The name of the file.
+     * @param file The file that is no longer there.
+     */
+    private void unindexFile(String filename, File file) {
+        if (fileIndex.remove(filename, file)) {
+            for (File basedir : archivedFiles.keySet()) {
+                File other = new File(new File(basedir, fileDirectoryName), filename);
+                if (!other.equals(file) && other.isFile()) {
+                    indexFile(filename, other);
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getIndexedFileCount() {
+        return fileIndex.size();
+    }
+
+    @Override
+    public long getIndexedSelections() {
+        return indexedSelections.sum();
+    }
+
+    @Override
+    public long getAverageIndexedSelectionMicros() {
+        return average(indexedSelectionNanos, indexedSelections, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getScannedSelections() {
+        return scannedSelections.sum();
+    }
+
+    @Override
+    public long getAverageScannedSelectionMicros() {
+        return average(scannedSelectionNanos, scannedSelections, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getFileListUpdates() {
+        return fileListUpdates.sum();
+    }
+
+    @Override
+    public long getAverageFileListUpdateMillis() {
+        return average(fileListUpdateNanos, fileListUpdates, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param nanos A total time in nanoseconds.
+     * @param count A number of operations.
+     * @param unit The unit of the result.
+     * @return The average time of an operation, or 0 if there have been none.
+     */
+    private static long average(LongAdder nanos, LongAdder count, TimeUnit unit) {
+        long n = count.sum();
+        return n == 0 ? 0 : unit.convert(nanos.sum() / n, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Registers the statistics of the file lists as an mbean. Failing to do so is logged, but otherwise ignored, since
+     * the statistics are not needed for archiving.
+     */
+    public synchronized void register() {
+        if (singleMBeanObject != null) {
+            return;
+        }
+        try {
+            singleMBeanObject = new SingleMBeanObject<FileListStatistics>("dk.netarkivet.archive.bitarchive", this,
+                    FileListStatistics.class, ManagementFactory.getPlatformMBeanServer());
+            singleMBeanObject.register();
+        } catch (Exception e) {
+            log.warn("Unable to register the file list statistics as an mbean", e);
+            singleMBeanObject = null;
+        }
+    }
+
+    /**
+     * Unregisters the statistics mbean, if registered.
+     */
+    private synchronized void unregister() {
+        if (singleMBeanObject == null) {
+            return;
+        }
+        try {
+            singleMBeanObject.unregister();
+        } catch (Exception e) {
+            log.warn("Unable to unregister the file list statistics mbean", e);
+        }
+        singleMBeanObject = null;
+    }
+
     /**
      * Calculate how many bytes are used by all files in a directory.
      *
@@ -518,8 +800,10 @@ public final class BitarchiveAdmin {
      * Close down the bitarchive admin. Currently has no data to store.
      */
     public void close() {
+        unregister();
         archivedFiles.clear();
         archiveTime.clear();
+        fileIndex.clear();
         instance = null;
     }
 
@@ -0,0 +1,65 @@
+/*
+ * #%L
+ * Netarchivesuite - archive
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.archive.bitarchive;
+
+/**
+ * An interface for reading how the files of a bitarchive are found. Exposed as an MBean by {@link BitarchiveAdmin}.
+ */
+public interface FileListStatistics {
+
+    /**
+     * @return The number of files in the filename index.
+     */
+    int getIndexedFileCount();
+
+    /**
+     * @return The number of times the files for a batch job were found in the filename index.
+     */
+    long getIndexedSelections();
+
+    /**
+     * @return The average number of microseconds spent finding the files for a batch job in the filename index.
+     */
+    long getAverageIndexedSelectionMicros();
+
+    /**
+     * @return The number of times the files for a batch job were found by testing the name of every file.
+     */
+    long getScannedSelections();
+
+    /**
+     * @return The average number of microseconds spent finding the files for a batch job by testing every filename.
+     */
+    long getAverageScannedSelectionMicros();
+
+    /**
+     * @return The number of times the list of files in an archive directory has been read.
+     */
+    long getFileListUpdates();
+
+    /**
+     * @return The average number of milliseconds spent reading the list of files in an archive directory.
+     */
+    long getAverageFileListUpdateMillis();
+
+}
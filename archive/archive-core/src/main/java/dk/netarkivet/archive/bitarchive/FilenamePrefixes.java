@@ -0,0 +1,251 @@
+/*
+ * #%L
+ * Netarchivesuite - archive
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.archive.bitarchive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the literal text that every filename matched by a regular expression must start with, so the matching files
+ * can be found by looking up a range of a sorted index of filenames instead of testing every filename. This is
+ * possible for expressions that are a literal filename, like those made by
+ * {@link dk.netarkivet.common.utils.batch.FileBatchJob#processOnlyFileNamed(String)}, a literal prefix followed by
+ * <code>.*</code>, like <code>^123-.*</code>, or alternatives of these.
+ * <p>
+ * The filenames found from the prefixes must still be matched against the expression, as the prefixes only narrow
+ * down the candidates.
+ */
+final class FilenamePrefixes {
+
+    /** Characters with a special meaning in a regular expression outside a character class. */
+    private static final String METACHARACTERS = "[](){}.*+?^$|\\";
+
+    /** The prefixes. */
+    private final List<String> prefixes;
+
+    /** For each prefix, whether it is the whole filename rather than a prefix. */
+    private final List<Boolean> exact;
+
+    /**
+     * Create prefixes.
+     */
+    private FilenamePrefixes() {
+        this.prefixes = new ArrayList<String>();
+        this.exact = new ArrayList<Boolean>();
+    }
+
+    /**
+     * Find the prefixes of the filenames matched by an expression.
+     *
+     * @param regexp A regular expression matching whole filenames.
+     * @return The prefixes, or null if the expression is not made of literal filenames and prefixes, or if a prefix is
+     * empty, so all filenames must be tested.
+     */
+    static FilenamePrefixes of(Pattern regexp) {
+        if (regexp.flags() != 0) {
+            return null;
+        }
+        FilenamePrefixes result = new FilenamePrefixes();
+        if (!result.addAlternatives(regexp.pattern())) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of prefixes.
+     */
+    int size() {
+        return prefixes.size();
+    }
+
+    /**
+     * @param i The index of a prefix.
+     * @return The prefix.
+     */
+    String getPrefix(int i) {
+        return prefixes.get(i);
+    }
+
+    /**
+     * @param i The index of a prefix.
+     * @return true if the prefix is a whole filename, false if filenames starting with it may match.
+     */
+    boolean isExact(int i) {
+        return exact.get(i);
+    }
+
+    /**
+     * Add the prefixes of an expression consisting of alternatives separated by <code>|</code>.
+     *
+     * @param expression The expression.
+     * @return false if an alternative is not a literal or a prefix.
+     */
+    private boolean addAlternatives(String expression) {
+        List<String> alternatives = splitAlternatives(expression);
+        if (alternatives == null) {
+            return false;
+        }
+        if (alternatives.size() > 1) {
+            for (String alternative : alternatives) {
+                if (!addAlternatives(alternative)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        String group = getGroupContents(expression);
+        if (group != null) {
+            return addAlternatives(group);
+        }
+        return addTerm(expression);
+    }
+
+    /**
+     * Add a literal filename or prefix, optionally anchored with <code>^</code> and <code>$</code>.
+     *
+     * @param term The expression.
+     * @return false if the expression is not a literal filename or prefix, or the prefix is empty.
+     */
+    private boolean addTerm(String term) {
+        StringBuilder literal = new StringBuilder();
+        int length = term.length();
+        int i = term.startsWith("^") ? 1 : 0;
+        while (i < length) {
+            if (term.startsWith("\\Q", i)) {
+                int end = term.indexOf("\\E", i + 2);
+                if (end < 0) {
+                    end = length;
+                }
+                literal.append(term, i + 2, end);
+                i = end + 2;
+                continue;
+            }
+            char c = term.charAt(i);
+            if (c == '\\') {
+                // An escaped character other than a letter or digit is a literal.
+                if (i + 1 == length || Character.isLetterOrDigit(term.charAt(i + 1))) {
+                    return false;
+                }
+                literal.append(term.charAt(i + 1));
+                i += 2;
+            } else if (term.startsWith(".*", i) && (i + 2 == length || term.substring(i + 2).equals("$"))) {
+                return add(literal.toString(), false);
+            } else if (c == '$' && i + 1 == length) {
+                break;
+            } else if (METACHARACTERS.indexOf(c) >= 0) {
+                return false;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        return add(literal.toString(), true);
+    }
+
+    /**
+     * Add a prefix.
+     *
+     * @param prefix The prefix.
+     * @param isExact Whether the prefix is a whole filename.
+     * @return false if the prefix is empty.
+     */
+    private boolean add(String prefix, boolean isExact) {
+        if (prefix.isEmpty()) {
+            return false;
+        }
+        prefixes.add(prefix);
+        exact.add(isExact);
+        return true;
+    }
+
+    /**
+     * Split an expression at the <code>|</code> characters that are not inside a group, a character class or a quote.
+     *
+     * @param expression The expression.
+     * @return The alternatives, or null if the groups or quotes are unbalanced.
+     */
+    private static List<String> splitAlternatives(String expression) {
+        List<String> alternatives = new ArrayList<String>();
+        int depth = 0;
+        boolean inClass = false;
+        int start = 0;
+        int length = expression.length();
+        for (int i = 0; i < length; i++) {
+            char c = expression.charAt(i);
+            if (c == '\\') {
+                if (expression.startsWith("\\Q", i)) {
+                    int end = expression.indexOf("\\E", i + 2);
+                    if (end < 0) {
+                        return null;
+                    }
+                    i = end + 1;
+                } else {
+                    i++;
+                }
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (--depth < 0) {
+                    return null;
+                }
+            } else if (c == '|' && depth == 0) {
+                alternatives.add(expression.substring(start, i));
+                start = i + 1;
+            }
+        }
+        if (depth != 0 || inClass) {
+            return null;
+        }
+        alternatives.add(expression.substring(start));
+        return alternatives;
+    }
+
+    /**
+     * @param expression An expression without <code>|</code> outside groups.
+     * @return The expression inside the group if the expression is a single capturing or non-capturing group, or null
+     * if it is not.
+     */
+    private static String getGroupContents(String expression) {
+        if (expression.length() < 2 || expression.charAt(0) != '('
+                || expression.charAt(expression.length() - 1) != ')') {
+            return null;
+        }
+        String inner = expression.substring(1, expression.length() - 1);
+        if (inner.startsWith("?:")) {
+            inner = inner.substring(2);
+        } else if (inner.startsWith("?")) {
+            // Lookarounds, named groups and inline flags.
+            return null;
+        }
+        // The parentheses must belong together, as in "(a)" but not "(a)(b)".
+        List<String> alternatives = splitAlternatives(inner);
+        return alternatives == null ? null : inner;
+    }
+
+}
@@ -144,6 +144,7 @@ public class BitarchiveServer extends ArchiveMessageHandler implements CleanupIF
         con = JMSConnectionFactory.getInstance();
         con.setListener(allBa, this);
         baa = BitarchiveAdmin.getInstance();
+        baa.register();
         if (baa.hasEnoughSpace() && !baa.isReadonlyMode()) {
             con.setListener(anyBa, this);
             listening = true;
@@ -211,7 +212,7 @@ public class BitarchiveServer extends ArchiveMessageHandler implements CleanupIF
 
     /**
      * Process a get request and send the result back to the client. If the arcfile is not found on this bitarchive
-     * machine, nothing happens.
+     * machine, nothing happens. All the records asked for are sent back in one reply.
      *
      * @param msg a container for upload request
      * @throws ArgumentNotValid If the message is null.
@@ -219,23 +220,27 @@ public class BitarchiveServer extends ArchiveMessageHandler implements CleanupIF
     @Override
     public void visit(GetMessage msg) throws ArgumentNotValid {
         ArgumentNotValid.checkNotNull(msg, "GetMessage msg");
-        BitarchiveRecord bar;
-        log.trace("Processing getMessage({}:{}).", msg.getArcFile(), msg.getIndex());
+        long[] indices = msg.getIndices();
+        BitarchiveRecord[] bars = new BitarchiveRecord[indices.length];
+        log.trace("Processing getMessage({}:{}).", msg.getArcFile(), indices);
         try {
-            bar = ba.get(msg.getArcFile(), msg.getIndex());
+            for (int i = 0; i < indices.length; i++) {
+                bars[i] = ba.get(msg.getArcFile(), indices[i]);
+                if (bars[i] == null) {
+                    // The file is not on this machine, so some other bitarchive will answer.
+                    log.trace("Record({}:{}). not found on this BitarchiveServer", msg.getArcFile(), indices[i]);
+                    return;
+                }
+            }
         } catch (Throwable t) {
             log.warn("Error while processing get message '{}'", msg, t);
             msg.setNotOk(t);
             con.reply(msg);
             return;
         }
-        if (bar != null) {
-            msg.setRecord(bar);
-            log.debug("Sending reply: {}", msg.toString());
-            con.reply(msg);
-        } else {
-            log.trace("Record({}:{}). not found on this BitarchiveServer", msg.getArcFile(), msg.getIndex());
-        }
+        msg.setRecords(bars);
+        log.debug("Sending reply: {}", msg.toString());
+        con.reply(msg);
     }
 
     /**
@@ -338,6 +343,7 @@ public class BitarchiveServer extends ArchiveMessageHandler implements CleanupIF
                 msg.setNotOk(message);
                 return;
             }
+            baa.fileRemoved(foundFile);
             msg.setFile(moveTo);
 
             log.warn("Removed file '{}' with checksum '{}'", msg.getFileName(), msg.getCheckSum());
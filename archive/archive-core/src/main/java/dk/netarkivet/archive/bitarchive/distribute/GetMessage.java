@@ -23,22 +23,42 @@
 
 package dk.netarkivet.archive.bitarchive.distribute;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.util.Arrays;
+
 import dk.netarkivet.archive.distribute.ArchiveMessage;
 import dk.netarkivet.archive.distribute.ArchiveMessageVisitor;
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.arcrepository.BitarchiveRecord;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
 
 /**
- * Container for get requests.
+ * Container for get requests. A request may ask for several records from the same file at once; the records are then
+ * returned together in one reply, in the order the offsets were given.
+ * <p>
+ * The serialized form is kept compatible with nodes that only know about a single offset: the first offset and record
+ * are also written in the old <code>index</code> and <code>record</code> fields, and a message from such a node is read
+ * as a request for that single offset.
  */
-@SuppressWarnings({"serial"})
 public class GetMessage extends ArchiveMessage {
+    /** The serialVersionUID of the class before requests for several records were added. */
+    private static final long serialVersionUID = 7263270965063123501L;
+
+    /** The serialized fields: the fields of the single record message, followed by those for several records. */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("arcfile", String.class), new ObjectStreamField("index", long.class),
+            new ObjectStreamField("record", BitarchiveRecord.class), new ObjectStreamField("indices", long[].class),
+            new ObjectStreamField("records", BitarchiveRecord[].class)};
+
     /** the arcfile to retrieve an record from. */
     private String arcfile;
-    /** offset of the record to retrieve. */
-    private long index;
-    /** the retrieved record. */
-    private BitarchiveRecord record;
+    /** offsets of the records to retrieve. */
+    private long[] indices;
+    /** the retrieved records, one for each offset. */
+    private BitarchiveRecord[] records;
 
     /**
      * Constructor.
@@ -49,9 +69,25 @@ public class GetMessage extends ArchiveMessage {
      * @param index The offset of the arc-file.
      */
     public GetMessage(ChannelID to, ChannelID replyTo, String arcfile, long index) {
+        this(to, replyTo, arcfile, new long[] {index});
+    }
+
+    /**
+     * Constructor for a request for several records from the same file. The same offset may occur more than once, in
+     * which case the record is read once for each occurrence.
+     *
+     * @param to Where the message should be sent.
+     * @param replyTo where the reply of this message should be sent.
+     * @param arcfile The name of the file to retrieve the arc-records from.
+     * @param indices The offsets of the records in the arc-file.
+     * @throws ArgumentNotValid If indices is null or empty.
+     */
+    public GetMessage(ChannelID to, ChannelID replyTo, String arcfile, long[] indices) {
         super(to, replyTo);
+        ArgumentNotValid.checkNotNull(indices, "long[] indices");
+        ArgumentNotValid.checkPositive(indices.length, "indices.length");
         this.arcfile = arcfile;
-        this.index = index;
+        this.indices = indices.clone();
     }
 
     /**
@@ -64,30 +100,64 @@ public class GetMessage extends ArchiveMessage {
     }
 
     /**
-     * Index of the record to retrieve.
+     * Index of the record to retrieve. For a request for several records, this is the first of them.
      *
      * @return offset
      */
     public long getIndex() {
-        return index;
+        return indices[0];
     }
 
     /**
-     * Register retrieved record.
+     * Indices of all the records to retrieve.
+     *
+     * @return offsets, in the order the records are returned
+     */
+    public long[] getIndices() {
+        return indices.clone();
+    }
+
+    /**
+     * Register retrieved record. For a request for several records, this is the first of them.
      *
      * @param rec Record retrieved from arcfile at offset index
      */
     public void setRecord(BitarchiveRecord rec) {
-        record = rec;
+        if (records == null) {
+            records = new BitarchiveRecord[indices.length];
+        }
+        records[0] = rec;
     }
 
     /**
-     * Get the data retrieved from the arcfile.
+     * Register all retrieved records.
+     *
+     * @param recs Records retrieved from arcfile, one for each offset in {@link #getIndices()}
+     * @throws ArgumentNotValid If recs is null or does not have a record for each offset.
+     */
+    public void setRecords(BitarchiveRecord[] recs) {
+        ArgumentNotValid.checkNotNull(recs, "BitarchiveRecord[] recs");
+        ArgumentNotValid.checkTrue(recs.length == indices.length, "Expected " + indices.length + " records, got "
+                + recs.length);
+        records = recs.clone();
+    }
+
+    /**
+     * Get the data retrieved from the arcfile. For a request for several records, this is the first of them.
      *
      * @return Record from arcfile
      */
     public BitarchiveRecord getRecord() {
-        return record;
+        return records == null ? null : records[0];
+    }
+
+    /**
+     * Get all the data retrieved from the arcfile.
+     *
+     * @return Records from arcfile, one for each offset in {@link #getIndices()}, or null if no records were retrieved
+     */
+    public BitarchiveRecord[] getRecords() {
+        return records == null ? null : records.clone();
     }
 
     /**
@@ -100,13 +170,54 @@ public class GetMessage extends ArchiveMessage {
         v.visit(this);
     }
 
+    /**
+     * Write the message, including the first offset and record in the fields read by older nodes.
+     *
+     * @param s The stream the object is written to.
+     * @throws IOException If writing to the stream fails.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        ObjectOutputStream.PutField fields = s.putFields();
+        fields.put("arcfile", arcfile);
+        fields.put("index", indices[0]);
+        fields.put("record", getRecord());
+        fields.put("indices", indices);
+        fields.put("records", records);
+        s.writeFields();
+    }
+
+    /**
+     * Read the message. A message written by an older node only has the single offset and record fields, and is read
+     * as a request for one record.
+     *
+     * @param s The stream the object is read from.
+     * @throws IOException If reading from the stream fails.
+     * @throws ClassNotFoundException If the class of a serialized field is unknown.
+     */
+    private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = s.readFields();
+        arcfile = (String) fields.get("arcfile", null);
+        indices = (long[]) fields.get("indices", null);
+        records = (BitarchiveRecord[]) fields.get("records", null);
+        if (indices == null) {
+            indices = new long[] {fields.get("index", 0L)};
+            BitarchiveRecord record = (BitarchiveRecord) fields.get("record", null);
+            if (record != null) {
+                records = new BitarchiveRecord[] {record};
+            }
+        }
+    }
+
     /**
      * Retrieval of a string representation of this instance.
      *
      * @return The string representation of this instance.
      */
     public String toString() {
-        return super.toString() + " Arcfile: " + arcfile + " Offset: " + index;
+        if (indices.length == 1) {
+            return super.toString() + " Arcfile: " + arcfile + " Offset: " + indices[0];
+        }
+        return super.toString() + " Arcfile: " + arcfile + " Offsets: " + Arrays.toString(indices);
     }
 
 }
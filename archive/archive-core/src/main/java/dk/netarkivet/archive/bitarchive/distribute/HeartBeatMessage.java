@@ -22,8 +22,14 @@
  */
 package dk.netarkivet.archive.bitarchive.distribute;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import dk.netarkivet.archive.distribute.ArchiveMessage;
 import dk.netarkivet.archive.distribute.ArchiveMessageVisitor;
+import dk.netarkivet.common.distribute.BinaryMessageCodec;
+import dk.netarkivet.common.distribute.BinaryMessageFormat;
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.Channels;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
@@ -37,6 +43,10 @@ import dk.netarkivet.common.exceptions.ArgumentNotValid;
 @SuppressWarnings({"serial"})
 public class HeartBeatMessage extends ArchiveMessage {
 
+    static {
+        BinaryMessageCodec.registerFormat(HeartBeatMessage.class, new HeartBeatMessageFormat());
+    }
+
     /**
      * time when heartbeat occurred. Note that timestamps cannot be compared between processes.
      */
@@ -89,4 +99,34 @@ public class HeartBeatMessage extends ArchiveMessage {
     public void accept(ArchiveMessageVisitor v) {
         v.visit(this);
     }
+
+    /**
+     * The binary format of heartbeats, which are sent by every bitarchive application every minute.
+     */
+    private static class HeartBeatMessageFormat implements BinaryMessageFormat<HeartBeatMessage> {
+
+        @Override
+        public int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void write(HeartBeatMessage msg, DataOutput out) throws IOException {
+            out.writeLong(msg.timestamp);
+            out.writeUTF(msg.applicationId);
+        }
+
+        @Override
+        public HeartBeatMessage read(DataInput in, int version, ChannelID to, ChannelID replyTo) throws IOException {
+            if (version != 1) {
+                throw new IOException("Unknown version of heartbeat message format: " + version);
+            }
+            long timestamp = in.readLong();
+            String applicationId = in.readUTF();
+            HeartBeatMessage msg = new HeartBeatMessage(to, applicationId);
+            msg.timestamp = timestamp;
+            return msg;
+        }
+    }
+
 }
@@ -0,0 +1,228 @@
+/*
+ * #%L
+ * Netarchivesuite - archive
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.archive.arcrepository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.archive.ArchiveSettings;
+import dk.netarkivet.archive.arcrepository.distribute.StoreMessage;
+import dk.netarkivet.archive.arcrepositoryadmin.Admin;
+import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.common.distribute.JMSConnectionMockupMQ;
+import dk.netarkivet.common.distribute.arcrepository.Replica;
+import dk.netarkivet.common.distribute.arcrepository.ReplicaStoreState;
+import dk.netarkivet.common.exceptions.UnknownID;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.testutils.preconfigured.ReloadSettings;
+import dk.netarkivet.testutils.preconfigured.UseTestRemoteFile;
+
+/**
+ * Test of concurrent stores in the ArcRepository. The replicas are the JMS mockup, which just queues the upload
+ * messages, and the admin data is a mock where every write is slow.
+ */
+public class ArcRepositoryConcurrentStoreTester {
+
+    private static final File WORKING_DIR = new File("tests/dk/netarkivet/archive/arcrepository/data/concurrentstore");
+
+    /** The number of files stored concurrently. */
+    private static final int STORES = 8;
+
+    /** The time each admin data write takes. */
+    private static final long WRITE_MILLIS = 100;
+
+    ReloadSettings rs = new ReloadSettings();
+    UseTestRemoteFile rf = new UseTestRemoteFile();
+
+    private ArcRepository arc;
+
+    @Before
+    public void setUp() throws Exception {
+        rs.setUp();
+        rf.setUp();
+        JMSConnectionMockupMQ.useJMSConnectionMockupMQ();
+        FileUtils.removeRecursively(WORKING_DIR);
+        FileUtils.createDir(WORKING_DIR);
+        Settings.set(ArchiveSettings.ADMIN_CLASS, SlowAdmin.class.getName());
+        SlowAdmin.reset();
+        arc = ArcRepository.getInstance();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (arc != null) {
+            arc.close();
+        }
+        FileUtils.removeRecursively(WORKING_DIR);
+        rf.tearDown();
+        rs.tearDown();
+    }
+
+    /**
+     * Test that stores of different files do not wait for the admin data writes of each other.
+     */
+    @Test
+    public void testConcurrentStoresOfDifferentFiles() throws Exception {
+        final List<StoreMessage> messages = new ArrayList<StoreMessage>();
+        for (int i = 0; i < STORES; i++) {
+            File file = new File(WORKING_DIR, "store" + i + ".arc");
+            FileUtils.writeBinaryFile(file, ("content of file " + i).getBytes());
+            messages.add(new StoreMessage(Channels.getError(), file));
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final StoreMessage msg : messages) {
+            Thread thread = new Thread("Store-" + msg.getArcfileName()) {
+                public void run() {
+                    try {
+                        start.await();
+                        arc.store(msg.getRemoteFile(), msg);
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals("No store should fail: " + failures, 0, failures.size());
+        assertTrue("Every store should write admin data", SlowAdmin.writes.get() >= STORES);
+        assertTrue("Admin data writes of different files should overlap, but at most "
+                + SlowAdmin.maxConcurrentWrites.get() + " were concurrent", SlowAdmin.maxConcurrentWrites.get() > 1);
+    }
+
+    /**
+     * Admin data where each write takes {@link #WRITE_MILLIS}. Counts the writes, and how many of them run
+     * concurrently.
+     */
+    public static class SlowAdmin implements Admin {
+        static final AtomicInteger writes = new AtomicInteger();
+        static final AtomicInteger concurrentWrites = new AtomicInteger();
+        static final AtomicInteger maxConcurrentWrites = new AtomicInteger();
+
+        private final Map<String, String> checksums = new ConcurrentHashMap<String, String>();
+        private final Map<String, ReplicaStoreState> states = new ConcurrentHashMap<String, ReplicaStoreState>();
+
+        static void reset() {
+            writes.set(0);
+            concurrentWrites.set(0);
+            maxConcurrentWrites.set(0);
+        }
+
+        private static void slowWrite() {
+            writes.incrementAndGet();
+            int concurrent = concurrentWrites.incrementAndGet();
+            int max = maxConcurrentWrites.get();
+            while (concurrent > max && !maxConcurrentWrites.compareAndSet(max, concurrent)) {
+                max = maxConcurrentWrites.get();
+            }
+            try {
+                Thread.sleep(WRITE_MILLIS);
+            } catch (InterruptedException e) {
+                // Just stop waiting
+            } finally {
+                concurrentWrites.decrementAndGet();
+            }
+        }
+
+        public boolean hasEntry(String filename) {
+            return checksums.containsKey(filename);
+        }
+
+        public void addEntry(String filename, StoreMessage msg, String checksum) {
+            slowWrite();
+            checksums.put(filename, checksum);
+        }
+
+        public String getCheckSum(String filename) {
+            return checksums.get(filename);
+        }
+
+        public void setCheckSum(String filename, String checksum) {
+            slowWrite();
+            checksums.put(filename, checksum);
+        }
+
+        public boolean hasReplyInfo(String filename) {
+            return false;
+        }
+
+        public void setReplyInfo(String filename, StoreMessage msg) {
+        }
+
+        public StoreMessage removeReplyInfo(String filename) {
+            return null;
+        }
+
+        public ReplicaStoreState getState(String filename, String replicaChannelName) {
+            ReplicaStoreState state = states.get(filename + " " + replicaChannelName);
+            if (state == null) {
+                throw new UnknownID("No state for '" + filename + "' in '" + replicaChannelName + "'");
+            }
+            return state;
+        }
+
+        public boolean hasState(String filename, String repChannelId) {
+            return states.containsKey(filename + " " + repChannelId);
+        }
+
+        public void setState(String filename, String repChannelId, ReplicaStoreState state) {
+            slowWrite();
+            states.put(filename + " " + repChannelId, state);
+        }
+
+        public Set<String> getAllFileNames() {
+            return checksums.keySet();
+        }
+
+        public Set<String> getAllFileNames(Replica rep, ReplicaStoreState state) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() {
+        }
+    }
+
+}
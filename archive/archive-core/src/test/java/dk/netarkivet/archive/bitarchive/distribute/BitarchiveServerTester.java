@@ -26,7 +26,9 @@ package dk.netarkivet.archive.bitarchive.distribute;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -62,6 +64,7 @@ import dk.netarkivet.common.distribute.NetarkivetMessage;
 import dk.netarkivet.common.distribute.RemoteFile;
 import dk.netarkivet.common.distribute.RemoteFileFactory;
 import dk.netarkivet.common.distribute.TestRemoteFile;
+import dk.netarkivet.common.distribute.arcrepository.BitarchiveRecord;
 import dk.netarkivet.common.exceptions.BatchTermination;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.FileUtils;
@@ -343,6 +346,34 @@ public class BitarchiveServerTester {
         assertTrue("Reply should contain non-trivial amount of data", replyMsg.getRecord().getLength() > 1);
     }
 
+    /**
+     * Test that a get message for several records of a file is answered with all the records in one reply.
+     */
+    @Test
+    public void testVisitGetMessageSeveralRecords() {
+        Settings.set(ArchiveSettings.BITARCHIVE_SERVER_FILEDIR, BITARCHIVE1.getAbsolutePath());
+        Settings.set(CommonSettings.DIR_COMMONTEMPDIR, SERVER1.getAbsolutePath());
+        bas = BitarchiveServer.getInstance();
+        GenericMessageListener listener = new GenericMessageListener();
+        JMSConnectionMockupMQ con = (JMSConnectionMockupMQ) JMSConnectionFactory.getInstance();
+        con.setListener(Channels.getTheRepos(), listener);
+        // The same record twice, which must give two separate records
+        GetMessage msg = new GetMessage(Channels.getAllBa(), Channels.getTheRepos(), "NetarchiveSuite-upload1.arc",
+                new long[] {3L, 3L});
+        JMSConnectionMockupMQ.updateMsgID(msg, "AnId");
+        bas.visit(msg);
+        con.waitForConcurrentTasksToFinish();
+        assertEquals("Should have received exactly one message", 1, listener.messagesReceived.size());
+        GetMessage replyMsg = (GetMessage) listener.messagesReceived.get(0);
+        assertTrue("Reply message should be ok", replyMsg.isOk());
+        BitarchiveRecord[] records = replyMsg.getRecords();
+        assertEquals("Reply should contain a record for each offset", 2, records.length);
+        assertNotSame("Each offset should get its own record", records[0], records[1]);
+        assertEquals("Records for the same offset should have the same length", records[0].getLength(),
+                records[1].getLength());
+        assertSame("The first record should be the single record", records[0], replyMsg.getRecord());
+    }
+
     /**
      * Test the normal operation of trying to get a record of a file which is not present on this bitarchive.
      */
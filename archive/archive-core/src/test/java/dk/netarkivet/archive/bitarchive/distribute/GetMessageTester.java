@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * Netarchivesuite - archive - test
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.archive.bitarchive.distribute;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+
+import org.junit.Test;
+
+import dk.netarkivet.common.distribute.ChannelID;
+import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.testutils.Serial;
+
+/**
+ * Tests for GetMessage.
+ */
+public class GetMessageTester {
+    /** The serialVersionUID computed for GetMessage before requests for several records were added. */
+    private static final long OLD_SERIAL_VERSION_UID = 7263270965063123501L;
+
+    /**
+     * Verify that a request for a single record survives serialization.
+     */
+    @Test
+    public void testSerializeSingleIndex() throws Exception {
+        ChannelID to = Channels.getAllBa();
+        GetMessage message = new GetMessage(to, Channels.getThisReposClient(), "test.arc", 42L);
+        GetMessage copy = Serial.serial(message);
+        assertEquals("Arcfile should survive serialization", "test.arc", copy.getArcFile());
+        assertEquals("Index should survive serialization", 42L, copy.getIndex());
+        assertArrayEquals("Indices should survive serialization", new long[] {42L}, copy.getIndices());
+        assertNull("No record should have been retrieved", copy.getRecord());
+        assertEquals("String representation should be unchanged", message.toString(), copy.toString());
+    }
+
+    /**
+     * Verify that a request for several records survives serialization.
+     */
+    @Test
+    public void testSerializeSeveralIndices() throws Exception {
+        long[] indices = {1L, 5L, 1L};
+        GetMessage message = new GetMessage(Channels.getAllBa(), Channels.getThisReposClient(), "test.arc", indices);
+        GetMessage copy = Serial.serial(message);
+        assertArrayEquals("Indices should survive serialization", indices, copy.getIndices());
+        assertEquals("First index should be the index", 1L, copy.getIndex());
+        assertNull("No records should have been retrieved", copy.getRecords());
+    }
+
+    /**
+     * Verify that the serialized form can still be read by and from nodes that only know about a single offset: the
+     * serialVersionUID is unchanged and the old fields are still part of the serialized form.
+     */
+    @Test
+    public void testSerializedFormCompatibleWithSingleIndexMessage() {
+        ObjectStreamClass descriptor = ObjectStreamClass.lookup(GetMessage.class);
+        assertEquals("serialVersionUID should match the single offset message", OLD_SERIAL_VERSION_UID,
+                descriptor.getSerialVersionUID());
+        ObjectStreamField index = descriptor.getField("index");
+        assertNotNull("The index field should still be serialized", index);
+        assertEquals("The index field should still be a long", long.class, index.getType());
+        assertNotNull("The record field should still be serialized", descriptor.getField("record"));
+        assertNotNull("The arcfile field should still be serialized", descriptor.getField("arcfile"));
+    }
+}
@@ -29,6 +29,7 @@ import static org.junit.Assert.fail;
 
 import org.junit.Test;
 
+import dk.netarkivet.common.distribute.BinaryMessageCodec;
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.Channels;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
@@ -89,4 +90,19 @@ public class HeartBeatMessageTester {
 
         assertEquals("ApplicationID of HeartBeatMessage is not as excepted.", baID, hbm.getBitarchiveID());
     }
+
+    /**
+     * Verify that heartbeats survive the binary message codec.
+     */
+    @Test
+    public void testBinaryCodec() {
+        HeartBeatMessage hbm = new HeartBeatMessage(baMon, baID);
+        BinaryMessageCodec codec = new BinaryMessageCodec(-1);
+        HeartBeatMessage decoded = (HeartBeatMessage) codec.fromBytes(codec.toBytes(hbm));
+
+        assertEquals("Timestamp should survive encoding", hbm.getTimestamp(), decoded.getTimestamp());
+        assertEquals("ApplicationID should survive encoding", baID, decoded.getBitarchiveID());
+        assertEquals("Receiver should survive encoding", baMon, decoded.getTo());
+        assertEquals("Reply channel should survive encoding", hbm.getReplyTo(), decoded.getReplyTo());
+    }
 }
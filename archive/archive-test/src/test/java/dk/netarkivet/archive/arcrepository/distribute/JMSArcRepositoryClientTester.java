@@ -40,6 +40,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -73,7 +75,6 @@ import dk.netarkivet.common.distribute.NetarkivetMessage;
 import dk.netarkivet.common.distribute.NullRemoteFile;
 import dk.netarkivet.common.distribute.RemoteFile;
 import dk.netarkivet.common.distribute.RemoteFileFactory;
-import dk.netarkivet.common.distribute.Synchronizer;
 import dk.netarkivet.common.distribute.TestRemoteFile;
 import dk.netarkivet.common.distribute.arcrepository.ArcRepositoryClientFactory;
 import dk.netarkivet.common.distribute.arcrepository.BatchStatus;
@@ -236,6 +237,24 @@ public class JMSArcRepositoryClientTester {
         replyServer.close();
     }
 
+    /**
+     * Test that a reply with fewer records than requested, as sent by a bitarchive that only knows about single offsets,
+     * completes the request exceptionally instead of with a short list.
+     */
+    @Test
+    public void testGetRecordsAsyncRejectsShortReply() throws Exception {
+        DummyGetMessageReplyServer replyServer = new DummyGetMessageReplyServer();
+        replyServer.singleOffsetOnly = true;
+        try {
+            arc.getRecordsAsync("dummy.arc", new long[] {0L, 10L}).get(10, TimeUnit.SECONDS);
+            fail("A reply with one record for two offsets should fail");
+        } catch (ExecutionException e) {
+            assertTrue("Should fail with an IOFailure, not " + e.getCause(), e.getCause() instanceof IOFailure);
+        } finally {
+            replyServer.close();
+        }
+    }
+
     /**
      * This tests the getFile()-method returns a file via JMS. The reply file should contain a string:
      * <code>filename+" "+index</code>.
@@ -549,10 +568,10 @@ public class JMSArcRepositoryClientTester {
      */
     @Test
     public void testStoreFailed() throws NoSuchFieldException, IllegalAccessException {
-        // Set Synchronizers request field to null to get an appropriately
-        // late exception.
-        Field requests = ReflectUtils.getPrivateField(Synchronizer.class, "requests");
-        requests.set(arc, null);
+        // Set the pending requests field of the connection to null to get an
+        // appropriately late exception.
+        Field requests = ReflectUtils.getPrivateField(JMSConnection.class, "pendingRequests");
+        requests.set(JMSConnectionFactory.getInstance(), null);
         try {
             arc.store(ARCFILE);
             fail("Should have an IOFailure after forcing internal exception");
@@ -903,6 +922,8 @@ public class JMSArcRepositoryClientTester {
         JMSConnection conn = JMSConnectionFactory.getInstance();
         private BitarchiveRecord bar;
         public boolean noReply = false;
+        /** Answer like a bitarchive that only reads the first offset of a request. */
+        public boolean singleOffsetOnly = false;
 
         public DummyGetMessageReplyServer() {
             conn.setListener(Channels.getTheRepos(), this);
@@ -918,6 +939,14 @@ public class JMSArcRepositoryClientTester {
             }
             try {
                 GetMessage netMsg = (GetMessage) JMSConnection.unpack(msg);
+                if (singleOffsetOnly) {
+                    try {
+                        ReflectUtils.getPrivateField(GetMessage.class, "indices").set(netMsg,
+                                new long[] {netMsg.getIndex()});
+                    } catch (ReflectiveOperationException e) {
+                        throw new Error(e);
+                    }
+                }
 
                 final Map<String, Object> metadata = new HashMap<String, Object>();
                 for (Object aREQUIRED_VERSION_1_HEADER_FIELDS : ARCConstants.REQUIRED_VERSION_1_HEADER_FIELDS) {
@@ -51,6 +51,18 @@ public class DBTester {
         ReflectUtils.testUtilityConstructor(ArchiveDBConnection.class);
     }
 
+    /**
+     * MySQL refuses statements that refer to a temporary table more than once, so the checksum update must only refer
+     * to the staging table once.
+     */
+    @Test
+    public void testMySQLStagedChecksumsUpdate() {
+        String sql = new MySQLSpecifics().getStagedChecksumsUpdate("replicafileinfo_staging");
+        assertEquals("The staging table should only be referred to once in: " + sql, 1,
+                sql.split("replicafileinfo_staging", -1).length - 1);
+        assertEquals("The statement should take six parameters: " + sql, 6, sql.split("\\?", -1).length - 1);
+    }
+
     @Test
     public void testDerbyServerSpecifics() {
         DerbySpecifics ds = new DerbyServerSpecifics();
@@ -296,6 +296,36 @@ public class ReplicaCacheDatabaseTester {
         lr.stopRecorder();
     }
 
+    /**
+     * Test that file list and checksum entries for files not yet in the database create the files, and that the files
+     * of a replica not in a later list are marked as missing.
+     */
+    @Test
+    public void testAddEntriesForUnknownFiles() throws Exception {
+        Replica one = Replica.getReplicaFromId("ONE");
+        Replica two = Replica.getReplicaFromId("TWO");
+        cache.addFileListInformation(makeTemporaryFilelistFile(), one);
+
+        assertEquals("All files in the file list should have been created", 3, cache.retrieveAllFilenames().size());
+        assertEquals("The files should be found on replica 'ONE'", FileListStatus.OK,
+                cache.retrieveFileListStatus("TEST3", one));
+        assertEquals("The other replicas should not have a file list status yet", FileListStatus.NO_FILELIST_STATUS,
+                cache.retrieveFileListStatus("TEST3", two));
+
+        cache.addChecksumInformation(makeTemporaryChecksumFile1(), two);
+        assertEquals("The new file in the checksum list should have been created", 4,
+                cache.retrieveAllFilenames().size());
+        assertEquals("The checksum should have been stored", "0192837465",
+                cache.getReplicaFileInfo("TEST4", two).getChecksum());
+        assertEquals("No files should be missing for replica 'TWO'", 0, cache.getNumberOfMissingFilesInLastUpdate(two));
+
+        cache.addFileListInformation(makeTemporaryFilelistFile(), two);
+        assertEquals("TEST4 should now be missing for replica 'TWO'", FileListStatus.MISSING,
+                cache.retrieveFileListStatus("TEST4", two));
+        assertEquals("TEST4 should be the only missing file for replica 'TWO'", 1,
+                cache.getNumberOfMissingFilesInLastUpdate(two));
+    }
+
     private File makeTemporaryDuplicateFilelistFile() throws Exception {
         File res = new File(TestInfo.TEST_DIR, "filelist.out");
         FileWriter fw = new FileWriter(res);
@@ -367,6 +367,99 @@ public class BitarchiveAdminTester {
         assertTrue("Should have " + file4path + " but found " + filePaths, filePaths.contains(file4path));
     }
 
+    @Test
+    public void testGetFilesMatchingFromIndex() throws Exception {
+        File file1 = new File(new File(BA_DIR_1, FILEDIR), "file1").getCanonicalFile();
+        File file3 = new File(new File(BA_DIR_2, FILEDIR), "file3").getCanonicalFile();
+        File[] files = ad.getFilesMatching(Pattern.compile(Pattern.quote("file3")));
+        assertEquals("Should find the named file", Arrays.asList(file3), canonical(files));
+        files = ad.getFilesMatching(Pattern.compile("^fil.*"));
+        assertEquals("Should find all files with the prefix", 4, files.length);
+        files = ad.getFilesMatching(Pattern.compile("(" + Pattern.quote("file1") + "|" + Pattern.quote("file3") + ")"));
+        assertEquals("Should find both named files", Arrays.asList(file1, file3), canonical(files));
+        files = ad.getFilesMatching(Pattern.compile("file"));
+        assertEquals("Should not find files only starting with the name", 0, files.length);
+        assertEquals("All selections should be answered from the index", 4, ad.getIndexedSelections());
+        assertEquals("No selection should test every filename", 0, ad.getScannedSelections());
+
+        ad.getFilesMatching(Pattern.compile("file[24]"));
+        assertEquals("Character classes should test every filename", 1, ad.getScannedSelections());
+
+        FileUtils.removeRecursively(BA_DIR_2);
+        files = ad.getFilesMatching(Pattern.compile("file3"));
+        assertEquals("Should not find files in dead dir", 0, files.length);
+    }
+
+    @Test
+    public void testFileRemoved() throws Exception {
+        File file1 = new File(new File(BA_DIR_1, FILEDIR), "file1");
+        File moved = ad.getAtticPath(file1);
+        assertTrue("Should move file to attic", file1.renameTo(moved));
+        ad.fileRemoved(file1);
+        assertEquals("Should not find removed file", 0, ad.getFilesMatching(Pattern.compile("file1")).length);
+        assertEquals("Removed file should not be listed", 3, ad.getFiles().length);
+        assertEquals("Removed file should not be indexed", 3, ad.getIndexedFileCount());
+    }
+
+    @Test
+    public void testMoveToStorageIndexesFile() throws Exception {
+        File tempfile = ad.getTemporaryPath(ARC_FILE_NAME, 1L);
+        FileUtils.writeBinaryFile(tempfile, "abc".getBytes());
+        File finalfile = ad.moveToStorage(tempfile);
+        assertEquals("Stored file should be indexed", 5, ad.getIndexedFileCount());
+        BitarchiveARCFile file = ad.lookup(ARC_FILE_NAME);
+        assertNotNull("Should find stored file", file);
+        assertEquals("Should find the file where it was stored", finalfile.getCanonicalPath(), file.getFilePath()
+                .getCanonicalPath());
+        ad.updateFileList(finalfile.getParentFile().getParentFile());
+        assertEquals("Rereading the directory should not index the file twice", 5, ad.getIndexedFileCount());
+    }
+
+    @Test
+    public void testUpdateFileListRemovesFilesFromIndex() throws Exception {
+        assertTrue("Should delete file", new File(new File(BA_DIR_1, FILEDIR), "file2").delete());
+        new File(new File(BA_DIR_1, FILEDIR), "file5").createNewFile();
+        ad.updateFileList(BA_DIR_1);
+        assertEquals("Deleted file should be removed from the index when rereading", 4, ad.getIndexedFileCount());
+        assertNull("Should not find deleted file", ad.lookup("file2"));
+        assertNotNull("Should find new file", ad.lookup("file5"));
+        assertNotNull("Should still find files in other directory", ad.lookup("file3"));
+    }
+
+    @Test
+    public void testLookupAfterMoveToAttic() throws Exception {
+        File file1 = new File(new File(BA_DIR_1, FILEDIR), "file1");
+        assertTrue("Should move file to attic", file1.renameTo(ad.getAtticPath(file1)));
+        assertNull("Should not find file moved to the attic", ad.lookup("file1"));
+        assertEquals("File moved to the attic should be dropped from the index", 3, ad.getIndexedFileCount());
+        assertNotNull("Should still find other files", ad.lookup("file2"));
+    }
+
+    @Test
+    public void testLookupOfFileInTwoDirectories() throws Exception {
+        File file1 = new File(new File(BA_DIR_1, FILEDIR), "file1");
+        File duplicate = new File(new File(BA_DIR_2, FILEDIR), "file1");
+        FileUtils.copyFile(file1, duplicate);
+        ad.updateFileList(BA_DIR_2);
+        assertEquals("Should index the name once", 4, ad.getIndexedFileCount());
+        assertEquals("Should keep finding the file in the first directory", file1.getCanonicalPath(),
+                ad.lookup("file1").getFilePath().getCanonicalPath());
+
+        assertTrue("Should move file to attic", file1.renameTo(ad.getAtticPath(file1)));
+        BitarchiveARCFile file = ad.lookup("file1");
+        assertNotNull("Should find the file in the other directory when the first is gone", file);
+        assertEquals("Should find the file in the other directory", duplicate.getCanonicalPath(), file.getFilePath()
+                .getCanonicalPath());
+    }
+
+    private static List<File> canonical(File[] files) throws IOException {
+        List<File> result = new ArrayList<File>();
+        for (File f : files) {
+            result.add(f.getCanonicalFile());
+        }
+        return result;
+    }
+
     @Test
     public void testIsBitarchiveDirectory() throws IOException {
         assertTrue("Should find existing dir", ad.isBitarchiveDirectory(BA_DIR_1));
@@ -0,0 +1,85 @@
+/*
+ * #%L
+ * Netarchivesuite - archive
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library,
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.archive.bitarchive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the class FilenamePrefixes.
+ */
+public class FilenamePrefixesTester {
+
+    @Test
+    public void testLiteralFilenames() {
+        assertPrefix("42-1-20150101-00001.warc.gz", true, Pattern.quote("42-1-20150101-00001.warc.gz"));
+        assertPrefix("42-1-20150101-00001.warc.gz", true, "^42-1-20150101-00001\\.warc\\.gz$");
+        assertPrefix("a$b", true, "\\Qa$b\\E");
+    }
+
+    @Test
+    public void testPrefixes() {
+        assertPrefix("123-", false, "^123-.*");
+        assertPrefix("123-", false, "123-.*$");
+        assertPrefix("123-", false, "\\Q123-\\E.*");
+        assertPrefix("metadata-", false, "(metadata-.*)");
+        assertPrefix("metadata-", false, "(?:metadata-.*)");
+        assertPrefix("a", true, "(?:a)");
+    }
+
+    @Test
+    public void testAlternatives() {
+        FilenamePrefixes prefixes = FilenamePrefixes.of(Pattern.compile("(" + Pattern.quote("a.arc") + "|"
+                + Pattern.quote("b|c.arc") + "|(d-.*))"));
+        assertEquals(3, prefixes.size());
+        assertEquals("a.arc", prefixes.getPrefix(0));
+        assertEquals("b|c.arc", prefixes.getPrefix(1));
+        assertTrue(prefixes.isExact(1));
+        assertEquals("d-", prefixes.getPrefix(2));
+        assertFalse(prefixes.isExact(2));
+    }
+
+    @Test
+    public void testOtherExpressions() {
+        String[] expressions = {".*", "file.arc", "file[24]", "\\d+-.*", "a.*b", "(a)(b)", "(?:a)(?:b)", "(?i:a)",
+                "(?=a)", "a|.*", "a+", "^.*-metadata-.*"};
+        for (String expression : expressions) {
+            assertNull("Should find no prefixes in " + expression, FilenamePrefixes.of(Pattern.compile(expression)));
+        }
+        assertNull("Should find no prefixes with flags", FilenamePrefixes.of(Pattern.compile("a",
+                Pattern.CASE_INSENSITIVE)));
+    }
+
+    private static void assertPrefix(String prefix, boolean exact, String expression) {
+        FilenamePrefixes prefixes = FilenamePrefixes.of(Pattern.compile(expression));
+        assertEquals("Prefixes of " + expression, 1, prefixes.size());
+        assertEquals("Prefix of " + expression, prefix, prefixes.getPrefix(0));
+        assertEquals("Exact prefix of " + expression, exact, prefixes.isExact(0));
+    }
+}
@@ -79,6 +79,39 @@ public class CommonSettings {
      */
     public static String JMS_BROKER_RETRIES = "settings.common.jms.retries";
 
+    /**
+     * <b>settings.common.jms.codec.class</b>: <br>
+     * The codec used for encoding messages sent on JMS. Must implement dk.netarkivet.common.distribute.MessageCodec.
+     * The default is dk.netarkivet.common.distribute.SerializingMessageCodec, which sends all messages with Java
+     * serialization and is understood by applications of older versions. Use
+     * dk.netarkivet.common.distribute.BinaryMessageCodec for the compact binary format once all applications have been
+     * upgraded to a version that can decode it. Received messages are decoded regardless of this setting.
+     */
+    public static String JMS_MESSAGE_CODEC = "settings.common.jms.codec.class";
+
+    /**
+     * <b>settings.common.jms.codec.compressionThreshold</b>: <br>
+     * Messages encoded with the binary codec are compressed if their body is larger than this number of bytes. A
+     * negative value disables compression.
+     */
+    public static String JMS_MESSAGE_CODEC_COMPRESSION_THRESHOLD = "settings.common.jms.codec.compressionThreshold";
+
+    /**
+     * <b>settings.common.jms.codec.allowedClassPrefix</b>: <br>
+     * The prefixes of the names of the classes that may be read from messages received in the binary format with a
+     * Java serialized body. Repeat the setting for each prefix. Add the package of any batch job or other class sent in
+     * messages that is not covered by the defaults.
+     */
+    public static String JMS_MESSAGE_CODEC_ALLOWED_CLASS_PREFIX = "settings.common.jms.codec.allowedClassPrefix";
+
+    /**
+     * <b>settings.common.jms.codec.formattedMessageClass</b>: <br>
+     * The message classes with a binary format, which are loaded when the binary codec is created so their formats are
+     * registered before messages are received. Repeat the setting for each class. Classes that are not available to an
+     * application are skipped. Messages of other classes in the binary format are rejected.
+     */
+    public static String JMS_MESSAGE_CODEC_FORMATTED_MESSAGE_CLASS = "settings.common.jms.codec.formattedMessageClass";
+
     /**
      * <b>settings.common.http.port</b>: <br>
      * The *unique* (per host) port number that may or may not be used to serve http.
@@ -112,6 +145,14 @@ public class CommonSettings {
      */
     public static String BATCH_DEFAULT_TIMEOUT = "settings.common.batch.defaultBatchTimeout";
 
+    /**
+     * <b>settings.common.batch.maxThreads</b>: <br/>
+     * The maximum number of threads used for processing files in a batch job. Files are grouped by the directory they
+     * reside in, and each directory is read by at most one thread at a time, so a bitarchive with several archive
+     * directories on separate disks can process them in parallel. A value of 1 processes all files sequentially.
+     */
+    public static String BATCH_MAX_THREADS = "settings.common.batch.maxThreads";
+
     /**
      * <b>settings.common.monitorregistryClient.class</b>: <br>
      * Which class to use for monitor registry. Must implement the interface
@@ -144,6 +185,27 @@ public class CommonSettings {
      */
     public static String UNIX_SORT_USE_COMMON_TEMP_DIR = "settings.common.unixSort.useCommonTempDir";
 
+    /**
+     * <b>settings.common.sort.useUnixSort</b>: <br>
+     * If true, CDX files and crawl logs are sorted by forking the Unix sort command, which is the legacy behavior.
+     * By default the value is false, and files are sorted inside the JVM by
+     * {@link dk.netarkivet.common.utils.ExternalSorter}.
+     */
+    public static String SORT_USE_UNIX_SORT = "settings.common.sort.useUnixSort";
+
+    /**
+     * <b>settings.common.sort.memoryBudget</b>: <br>
+     * The number of bytes of lines held in memory when sorting files inside the JVM. Larger files are sorted in chunks
+     * of this size, written to temporary files and merged.
+     */
+    public static String SORT_MEMORY_BUDGET = "settings.common.sort.memoryBudget";
+
+    /**
+     * <b>settings.common.sort.threads</b>: <br>
+     * The number of chunks sorted at the same time when sorting files inside the JVM.
+     */
+    public static String SORT_THREADS = "settings.common.sort.threads";
+
     /**
      * <b>settings.common.cacheDir</b>: <br>
      * The name of the directory where cache data global to the entire machine can be stored. Various kinds of caches
@@ -0,0 +1,428 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.Settings;
+
+/**
+ * A message codec sending messages as JMS BytesMessages in a compact, versioned binary format.
+ * <p>
+ * Message classes that are sent often register a {@link BinaryMessageFormat} with
+ * {@link #registerFormat(Class, BinaryMessageFormat)}, normally in a static initializer of the message class. The
+ * classes given by the setting {@link CommonSettings#JMS_MESSAGE_CODEC_FORMATTED_MESSAGE_CLASS} are loaded when a codec
+ * is created from the settings, so their formats are registered before any message is received. Messages of classes
+ * without a registered format are written with standard Java serialization inside the same frame. A frame consists
+ * of:
+ * <ol>
+ * <li>the version of the frame layout (one byte),</li>
+ * <li>flags telling whether the body is serialized and whether it is compressed (one byte),</li>
+ * <li>the name of the message class,</li>
+ * <li>the body. For a registered format, this is the version of the format, the channels of the message, the fields
+ * written by the format, and the rest of the fields common to all messages. The body is compressed with deflate if it
+ * is larger than the compression threshold and compression makes it smaller.</li>
+ * </ol>
+ * Serialized bodies may only contain classes whose names start with one of the prefixes given by the setting
+ * {@link CommonSettings#JMS_MESSAGE_CODEC_ALLOWED_CLASS_PREFIX}. Messages with other classes are rejected before the
+ * classes are loaded. The class named in a frame that is not serialized is only looked up among the registered
+ * formats, and never loaded.
+ * <p>
+ * Instances are thread safe.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(BinaryMessageCodec.class);
+
+    /** The version of the frame layout written by this codec. */
+    static final int FRAME_VERSION = 1;
+
+    /** Flag set when the body is Java serialization of the message rather than a registered format. */
+    static final int FLAG_SERIALIZED = 1;
+
+    /** Flag set when the body is compressed. */
+    static final int FLAG_COMPRESSED = 2;
+
+    /** The registered formats, by the name of the message class. */
+    private static final Map<String, BinaryMessageFormat<?>> formats =
+            new ConcurrentHashMap<String, BinaryMessageFormat<?>>();
+
+    /** Bodies larger than this number of bytes are compressed. A negative value disables compression. */
+    private final int compressionThreshold;
+
+    /** The prefixes of the names of the classes that may be read from serialized bodies. */
+    private final String[] allowedClassPrefixes;
+
+    /**
+     * Create a codec with the compression threshold from the setting
+     * {@link CommonSettings#JMS_MESSAGE_CODEC_COMPRESSION_THRESHOLD}.
+     */
+    public BinaryMessageCodec() {
+        this(Settings.getInt(CommonSettings.JMS_MESSAGE_CODEC_COMPRESSION_THRESHOLD));
+    }
+
+    /**
+     * Create a codec with a given compression threshold. The message classes given by the setting
+     * {@link CommonSettings#JMS_MESSAGE_CODEC_FORMATTED_MESSAGE_CLASS} are loaded, so they register their formats.
+     *
+     * @param compressionThreshold Bodies larger than this number of bytes are compressed. A negative value disables
+     * compression.
+     */
+    public BinaryMessageCodec(int compressionThreshold) {
+        this(compressionThreshold, Settings.getAll(CommonSettings.JMS_MESSAGE_CODEC_ALLOWED_CLASS_PREFIX));
+        loadFormattedMessageClasses(Settings.getAll(CommonSettings.JMS_MESSAGE_CODEC_FORMATTED_MESSAGE_CLASS));
+    }
+
+    /**
+     * Create a codec with a given compression threshold and classes allowed in serialized bodies.
+     *
+     * @param compressionThreshold Bodies larger than this number of bytes are compressed. A negative value disables
+     * compression.
+     * @param allowedClassPrefixes The prefixes of the names of the classes that may be read from serialized bodies.
+     * @throws ArgumentNotValid If allowedClassPrefixes is null.
+     */
+    BinaryMessageCodec(int compressionThreshold, String... allowedClassPrefixes) {
+        ArgumentNotValid.checkNotNull(allowedClassPrefixes, "String... allowedClassPrefixes");
+        this.compressionThreshold = compressionThreshold;
+        this.allowedClassPrefixes = allowedClassPrefixes.clone();
+    }
+
+    /**
+     * Register the binary format of a message class. Messages of exactly this class are then written with the format
+     * rather than with Java serialization. Registering a format for a class replaces any earlier format for it.
+     *
+     * @param messageClass The message class.
+     * @param format The format of the class.
+     * @param <T> The message class.
+     * @throws ArgumentNotValid If either argument is null.
+     */
+    public static <T extends NetarkivetMessage> void registerFormat(Class<T> messageClass,
+            BinaryMessageFormat<T> format) {
+        ArgumentNotValid.checkNotNull(messageClass, "Class<T> messageClass");
+        ArgumentNotValid.checkNotNull(format, "BinaryMessageFormat<T> format");
+        formats.put(messageClass.getName(), format);
+    }
+
+    /**
+     * Load and initialize message classes, so the formats registered by their static initializers are known. Classes
+     * that are not on the classpath of this application are skipped, as their messages are not received by it.
+     *
+     * @param classNames The names of the message classes.
+     */
+    static void loadFormattedMessageClasses(String... classNames) {
+        ClassLoader loader = BinaryMessageCodec.class.getClassLoader();
+        for (String className : classNames) {
+            try {
+                Class.forName(className, true, loader);
+            } catch (ClassNotFoundException e) {
+                log.debug("Message class '{}' is not available. Its binary format is not registered", className);
+            }
+        }
+    }
+
+    @Override
+    public Message encode(Session session, NetarkivetMessage msg) throws JMSException {
+        ArgumentNotValid.checkNotNull(session, "Session session");
+        BytesMessage message = session.createBytesMessage();
+        message.writeBytes(toBytes(msg));
+        return message;
+    }
+
+    @Override
+    public NetarkivetMessage decode(Message msg) throws JMSException, ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(msg, "Message msg");
+        if (!(msg instanceof BytesMessage)) {
+            throw new ArgumentNotValid("Invalid message type: " + msg.getClass());
+        }
+        BytesMessage bytesMessage = (BytesMessage) msg;
+        // The message may have been read before, e.g. by another listener.
+        bytesMessage.reset();
+        byte[] bytes = new byte[(int) bytesMessage.getBodyLength()];
+        bytesMessage.readBytes(bytes);
+        return fromBytes(bytes);
+    }
+
+    /**
+     * Write a message as a frame.
+     *
+     * @param msg The message to write.
+     * @return The frame.
+     * @throws ArgumentNotValid If msg is null.
+     * @throws IOFailure If the message cannot be written.
+     */
+    @SuppressWarnings("unchecked")
+    public byte[] toBytes(NetarkivetMessage msg) {
+        ArgumentNotValid.checkNotNull(msg, "NetarkivetMessage msg");
+        String className = msg.getClass().getName();
+        BinaryMessageFormat<NetarkivetMessage> format = (BinaryMessageFormat<NetarkivetMessage>) formats
+                .get(className);
+        try {
+            int flags = 0;
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            if (format != null) {
+                DataOutputStream out = new DataOutputStream(body);
+                out.writeShort(format.getVersion());
+                out.writeUTF(msg.getTo().getName());
+                out.writeUTF(msg.getReplyTo().getName());
+                format.write(msg, out);
+                msg.writeState(out);
+                out.flush();
+            } else {
+                flags |= FLAG_SERIALIZED;
+                ObjectOutputStream out = new ObjectOutputStream(body);
+                out.writeObject(msg);
+                out.close();
+            }
+            byte[] bodyBytes = body.toByteArray();
+            if (compressionThreshold >= 0 && bodyBytes.length > compressionThreshold) {
+                byte[] compressed = compress(bodyBytes);
+                if (compressed.length < bodyBytes.length) {
+                    flags |= FLAG_COMPRESSED;
+                    bodyBytes = compressed;
+                }
+            }
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(bodyBytes.length + className.length() + 4);
+            DataOutputStream out = new DataOutputStream(frame);
+            out.writeByte(FRAME_VERSION);
+            out.writeByte(flags);
+            out.writeUTF(className);
+            out.write(bodyBytes);
+            out.flush();
+            return frame.toByteArray();
+        } catch (IOException e) {
+            throw new IOFailure("Could not encode message of type " + className, e);
+        }
+    }
+
+    /**
+     * Read a message from a frame written by {@link #toBytes(NetarkivetMessage)}.
+     *
+     * @param bytes The frame.
+     * @return The message.
+     * @throws ArgumentNotValid If bytes is null, or is not a valid frame.
+     */
+    public NetarkivetMessage fromBytes(byte[] bytes) {
+        ArgumentNotValid.checkNotNull(bytes, "byte[] bytes");
+        String className = "Unknown class";
+        try {
+            DataInputStream frame = new DataInputStream(new ByteArrayInputStream(bytes));
+            int frameVersion = frame.readUnsignedByte();
+            if (frameVersion > FRAME_VERSION) {
+                throw new ArgumentNotValid("Unsupported message frame version " + frameVersion);
+            }
+            int flags = frame.readUnsignedByte();
+            className = frame.readUTF();
+            InputStream body = frame;
+            if ((flags & FLAG_COMPRESSED) != 0) {
+                body = new InflaterInputStream(body);
+            }
+            NetarkivetMessage msg;
+            if ((flags & FLAG_SERIALIZED) != 0) {
+                Object object = new FilteringObjectInputStream(body, allowedClassPrefixes).readObject();
+                if (!(object instanceof NetarkivetMessage)) {
+                    throw new ArgumentNotValid("Invalid message type: " + className);
+                }
+                msg = (NetarkivetMessage) object;
+            } else {
+                BinaryMessageFormat<?> format = getFormat(className);
+                DataInputStream in = new DataInputStream(body);
+                int version = in.readUnsignedShort();
+                ChannelID to = new ChannelID(in.readUTF());
+                ChannelID replyTo = new ChannelID(in.readUTF());
+                msg = format.read(in, version, to, replyTo);
+                msg.readState(to, replyTo, in);
+            }
+            return msg;
+        } catch (IOException e) {
+            String message = "Message invalid. Unable to decode message: " + className;
+            log.warn(message, e);
+            throw new ArgumentNotValid(message, e);
+        } catch (ClassNotFoundException e) {
+            String message = "Message invalid. Unknown class in message: " + className;
+            log.warn(message, e);
+            throw new ArgumentNotValid(message, e);
+        }
+    }
+
+    /**
+     * Find the registered format of a message class. The class itself is not loaded, as its name is read from the
+     * message.
+     *
+     * @param className The name of the message class.
+     * @return The format.
+     * @throws ArgumentNotValid If the class has no registered format.
+     */
+    private static BinaryMessageFormat<?> getFormat(String className) {
+        BinaryMessageFormat<?> format = formats.get(className);
+        if (format == null) {
+            throw new ArgumentNotValid("No binary message format registered for " + className);
+        }
+        return format;
+    }
+
+    /**
+     * An ObjectInputStream that only resolves classes whose names start with one of a list of prefixes. Arrays are
+     * allowed if their component type is, and primitive types always are.
+     */
+    private static class FilteringObjectInputStream extends ObjectInputStream {
+        /** The prefixes of the names of the allowed classes. */
+        private final String[] allowedClassPrefixes;
+
+        /**
+         * Create a stream reading from the given input.
+         *
+         * @param in The input.
+         * @param allowedClassPrefixes The prefixes of the names of the allowed classes.
+         * @throws IOException If the stream header cannot be read.
+         */
+        FilteringObjectInputStream(InputStream in, String[] allowedClassPrefixes) throws IOException {
+            super(in);
+            this.allowedClassPrefixes = allowedClassPrefixes;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            checkAllowed(desc.getName());
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+            for (String name : interfaces) {
+                checkAllowed(name);
+            }
+            return super.resolveProxyClass(interfaces);
+        }
+
+        /**
+         * Check that a class may be read.
+         *
+         * @param className The name of the class, as given by the stream.
+         * @throws InvalidClassException If the class is not allowed.
+         */
+        private void checkAllowed(String className) throws InvalidClassException {
+            String name = className;
+            while (name.startsWith("[")) {
+                name = name.substring(1);
+            }
+            if (name.length() == 1) {
+                // An array of a primitive type
+                return;
+            }
+            if (name.startsWith("L") && name.endsWith(";")) {
+                name = name.substring(1, name.length() - 1);
+            }
+            for (String prefix : allowedClassPrefixes) {
+                if (name.startsWith(prefix)) {
+                    return;
+                }
+            }
+            throw new InvalidClassException(className, "Class not allowed in messages, see the setting "
+                    + CommonSettings.JMS_MESSAGE_CODEC_ALLOWED_CLASS_PREFIX);
+        }
+    }
+
+    /**
+     * Compress bytes with deflate.
+     *
+     * @param bytes The bytes to compress.
+     * @return The compressed bytes.
+     * @throws IOException Never, as all is done in memory.
+     */
+    private static byte[] compress(byte[] bytes) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2);
+            DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater);
+            out.write(bytes);
+            out.close();
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Write a string that may be null. Unlike {@link DataOutput#writeUTF(String)}, strings of any length are allowed.
+     *
+     * @param out The output to write to.
+     * @param s The string, or null.
+     * @throws IOException If writing fails.
+     */
+    public static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Read a string written by {@link #writeString(DataOutput, String)}.
+     *
+     * @param in The input to read from.
+     * @return The string, or null.
+     * @throws IOException If reading fails.
+     */
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
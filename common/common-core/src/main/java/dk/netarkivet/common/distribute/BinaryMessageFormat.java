@@ -0,0 +1,70 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The binary format of the fields of one message class, used by the {@link BinaryMessageCodec}. Only the fields
+ * declared by the message class and its superclasses below {@link NetarkivetMessage} are handled by the format; the
+ * fields common to all messages are written and restored by the codec.
+ * <p>
+ * A format has a version, which is written with every message. If the format is changed, the version must be raised,
+ * and {@link #read(DataInput, int, ChannelID, ChannelID)} must still be able to read messages written with the older versions.
+ *
+ * @param <T> The message class handled by the format.
+ */
+public interface BinaryMessageFormat<T extends NetarkivetMessage> {
+
+    /**
+     * @return The version of the format written by {@link #write(NetarkivetMessage, DataOutput)}.
+     */
+    int getVersion();
+
+    /**
+     * Write the fields of a message.
+     *
+     * @param msg The message to write.
+     * @param out The output to write to.
+     * @throws IOException If writing fails.
+     */
+    void write(T msg, DataOutput out) throws IOException;
+
+    /**
+     * Read the fields written by {@link #write(NetarkivetMessage, DataOutput)}, and create a message from them.
+     * <p>
+     * The channels of the message are given for use with the constructor of the message. They, and the other fields
+     * common to all messages, are restored by the codec after the message has been created.
+     *
+     * @param in The input to read from.
+     * @param version The version of the format the message was written with.
+     * @param to The channel the message was sent to.
+     * @param replyTo The channel replies to the message are expected on.
+     * @return A new message.
+     * @throws IOException If reading fails, or the version is unknown.
+     */
+    T read(DataInput in, int version, ChannelID to, ChannelID replyTo) throws IOException;
+
+}
@@ -91,6 +91,15 @@ public class ChannelID implements Serializable {
         this.name = constructName(appPref, replicaId, useNodeId, useAppInstId, isTopic);
     }
 
+    /**
+     * Constructor of a channel with a name that has already been constructed, e.g. by the sender of a message.
+     *
+     * @param name The full name of the channel.
+     */
+    ChannelID(String name) {
+        this.name = name;
+    }
+
     /**
      * Constructs a channel name according to the specifications of channels in the NetarchiveSuite Developer Manual.
      *
@@ -26,8 +26,19 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 
+import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
@@ -53,6 +64,7 @@ import dk.netarkivet.common.exceptions.PermissionDenied;
 import dk.netarkivet.common.utils.CleanupHook;
 import dk.netarkivet.common.utils.CleanupIF;
 import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.SettingsFactory;
 import dk.netarkivet.common.utils.TimeUtils;
 
 /**
@@ -101,6 +113,28 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     /** Shutdown hook that closes the JMS connection. */
     protected Thread closeHook;
 
+    /** The codec used for encoding sent messages. Created on first use from settings. */
+    private volatile MessageCodec messageCodec;
+
+    /** Decoder for messages received as ObjectMessages. */
+    private static final MessageCodec OBJECT_MESSAGE_DECODER = new SerializingMessageCodec();
+
+    /** Decoder for messages received as BytesMessages. The compression threshold is only used for encoding. */
+    private static final MessageCodec BYTES_MESSAGE_DECODER = new BinaryMessageCodec(-1);
+
+    /** Requests sent with {@link #sendRequest(NetarkivetMessage, long)} awaiting a reply, by the id of the request. */
+    private final ConcurrentMap<String, CompletableFuture<NetarkivetMessage>> pendingRequests =
+            new ConcurrentHashMap<String, CompletableFuture<NetarkivetMessage>>();
+
+    /**
+     * Held for reading while a request is sent and registered as pending, and for writing when a reply to an
+     * unregistered request is received. A reply that overtakes the registration of its request thereby waits for it.
+     */
+    private final ReentrantReadWriteLock pendingRequestsLock = new ReentrantReadWriteLock();
+
+    /** Times out pending requests. Shared by all connections, and created on first use. */
+    private static ScheduledExecutorService requestTimeoutScheduler;
+
     /** Singleton pattern is be used for this class. This is the one and only instance. */
     protected static JMSConnection instance;
 
@@ -219,6 +253,103 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
         sendMessage(msg, msg.getReplyTo());
     }
 
+    /**
+     * Send a request, and get a future that is completed with the reply. No thread is blocked while waiting for the
+     * reply. Replies are matched with requests by {@link #completeRequest(NetarkivetMessage)}, so the reply channel of
+     * the request must have a listener that passes replies on to that method, such as a {@link Synchronizer}.
+     * <p>
+     * The future is completed in the thread that receives the reply, so actions depending on it should be short or
+     * given an executor of their own.
+     *
+     * @param msg The request to send.
+     * @param timeout The number of milliseconds to wait for the reply, or zero for no timeout. When the timeout
+     * expires, the future is completed exceptionally with a {@link TimeoutException}.
+     * @return A future completed with the reply.
+     * @throws ArgumentNotValid If msg is null or timeout is negative.
+     * @throws IOFailure If the request could not be sent.
+     */
+    public CompletableFuture<NetarkivetMessage> sendRequest(NetarkivetMessage msg, final long timeout) {
+        ArgumentNotValid.checkNotNull(msg, "NetarkivetMessage msg");
+        ArgumentNotValid.checkNotNegative(timeout, "long timeout");
+        final CompletableFuture<NetarkivetMessage> reply = new CompletableFuture<NetarkivetMessage>();
+        final String id;
+        pendingRequestsLock.readLock().lock();
+        try {
+            send(msg);
+            id = msg.getID();
+            pendingRequests.put(id, reply);
+        } finally {
+            pendingRequestsLock.readLock().unlock();
+        }
+        final ScheduledFuture<?> timeoutTask;
+        if (timeout > 0) {
+            timeoutTask = getRequestTimeoutScheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    reply.completeExceptionally(new TimeoutException("No reply to message " + id + " within "
+                            + timeout + " ms"));
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        } else {
+            timeoutTask = null;
+        }
+        // Whether completed by a reply, a timeout or the caller, the request is no longer pending.
+        reply.whenComplete(new BiConsumer<NetarkivetMessage, Throwable>() {
+            @Override
+            public void accept(NetarkivetMessage replyMsg, Throwable failure) {
+                pendingRequests.remove(id, reply);
+                if (timeoutTask != null) {
+                    timeoutTask.cancel(false);
+                }
+            }
+        });
+        return reply;
+    }
+
+    /**
+     * Complete the pending request that a message is a reply to, if any.
+     *
+     * @param replyMsg A received message.
+     * @return true if the message was a reply to a request sent with {@link #sendRequest(NetarkivetMessage, long)}
+     * that had not yet been completed, false otherwise.
+     * @throws ArgumentNotValid If replyMsg is null.
+     */
+    public boolean completeRequest(NetarkivetMessage replyMsg) {
+        ArgumentNotValid.checkNotNull(replyMsg, "NetarkivetMessage replyMsg");
+        String requestId = replyMsg.getReplyOfId();
+        CompletableFuture<NetarkivetMessage> request = pendingRequests.remove(requestId);
+        if (request == null) {
+            // The reply may have been received before its request was registered. Wait for requests being sent.
+            pendingRequestsLock.writeLock().lock();
+            try {
+                request = pendingRequests.remove(requestId);
+            } finally {
+                pendingRequestsLock.writeLock().unlock();
+            }
+        }
+        return request != null && request.complete(replyMsg);
+    }
+
+    /**
+     * @return The scheduler timing out requests, created if necessary.
+     */
+    private static synchronized ScheduledExecutorService getRequestTimeoutScheduler() {
+        if (requestTimeoutScheduler == null) {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "JMSConnection-request-timeouts");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            // Most requests are answered long before they time out, so don't keep their timeouts around.
+            scheduler.setRemoveOnCancelPolicy(true);
+            requestTimeoutScheduler = scheduler;
+        }
+        return requestTimeoutScheduler;
+    }
+
     /**
      * Method adds a listener to the given queue or topic.
      *
@@ -273,6 +404,20 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
         return QSession.createBrowser(queue);
     }
 
+    /**
+     * Get the number of messages on a queue as reported by the statistics of the broker, without browsing the queue.
+     * This implementation knows no broker statistics and always returns -1; implementations for brokers publishing
+     * statistics should override it.
+     *
+     * @param queueID The ChannelID for a specified queue.
+     * @param since Only use statistics reported after this time, in milliseconds since the epoch.
+     * @return The number of messages on the queue, or -1 if the broker has not reported it since the given time.
+     */
+    public int getReportedQueueDepth(ChannelID queueID, long since) {
+        ArgumentNotValid.checkNotNull(queueID, "ChannelID queueID");
+        return -1;
+    }
+
     /**
      * Provides a QueueSession instance. Functionality for retrieving a <code>QueueSession</code> object isen't
      * available on the generic <code>JMSConnectionFactory</code>
@@ -330,28 +475,29 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     }
 
     /**
-     * Unwraps a NetarkivetMessage from an ObjectMessage.
+     * Unwraps a NetarkivetMessage from an ObjectMessage or a BytesMessage. Messages are decoded according to their JMS
+     * message type, so messages sent with any {@link MessageCodec} are understood.
      *
-     * @param msg a javax.jms.ObjectMessage
+     * @param msg a javax.jms.ObjectMessage or javax.jms.BytesMessage
      * @return a NetarkivetMessage
      * @throws ArgumentNotValid when msg in valid or format of JMS Object message is invalid
      */
     public static NetarkivetMessage unpack(Message msg) throws ArgumentNotValid {
         ArgumentNotValid.checkNotNull(msg, "msg");
 
-        ObjectMessage objMsg;
-        try {
-            objMsg = (ObjectMessage) msg;
-        } catch (ClassCastException e) {
+        MessageCodec decoder;
+        if (msg instanceof ObjectMessage) {
+            decoder = OBJECT_MESSAGE_DECODER;
+        } else if (msg instanceof BytesMessage) {
+            decoder = BYTES_MESSAGE_DECODER;
+        } else {
             log.warn("Invalid message type: {}", msg.getClass());
             throw new ArgumentNotValid("Invalid message type: " + msg.getClass());
         }
 
         NetarkivetMessage netMsg;
-        String classname = "Unknown class"; // for error reporting purposes
         try {
-            classname = objMsg.getObject().getClass().getName();
-            netMsg = (NetarkivetMessage) objMsg.getObject();
+            netMsg = decoder.decode(msg);
             // Note: Id is only updated if the message does not already have an
             // id. On unpack, this means the first time the message is received.
 
@@ -360,11 +506,11 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
             // netMsg.updateId(randomID);
 
             netMsg.updateId(msg.getJMSMessageID());
-        } catch (ClassCastException e) {
-            log.warn("Invalid message type: {}", classname, e);
-            throw new ArgumentNotValid("Invalid message type: " + classname, e);
+        } catch (ArgumentNotValid e) {
+            log.warn("Invalid message: {}", e.getMessage(), e);
+            throw e;
         } catch (Exception e) {
-            String message = "Message invalid. Unable to unpack message: " + classname;
+            String message = "Message invalid. Unable to unpack message";
             log.warn(message, e);
             throw new ArgumentNotValid(message, e);
         }
@@ -373,9 +519,22 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     }
 
     /**
-     * Submit an ObjectMessage to the destination channel.
+     * Get the codec used for encoding sent messages, as given by the setting
+     * {@link CommonSettings#JMS_MESSAGE_CODEC}.
+     *
+     * @return The message codec.
+     */
+    protected MessageCodec getMessageCodec() {
+        if (messageCodec == null) {
+            messageCodec = SettingsFactory.getInstance(CommonSettings.JMS_MESSAGE_CODEC);
+        }
+        return messageCodec;
+    }
+
+    /**
+     * Submit a message to the destination channel.
      *
-     * @param nMsg the NetarkivetMessage to be wrapped and send as an ObjectMessage
+     * @param nMsg the NetarkivetMessage to be encoded with the message codec and sent
      * @param to the destination channel
      * @throws IOFailure if message failed to be sent.
      */
@@ -540,16 +699,16 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     }
 
     /**
-     * Sends an ObjectMessage on a queue destination.
+     * Sends a message on a queue destination.
      *
-     * @param msg the NetarkivetMessage to be wrapped and send as an ObjectMessage.
+     * @param msg the NetarkivetMessage to be encoded with the message codec and sent.
      * @param to the destination topic.
      * @throws JMSException if message failed to be sent.
      */
     private void doSend(NetarkivetMessage msg, ChannelID to) throws JMSException {
         connectionLock.readLock().lock();
         try {
-            ObjectMessage message = getSession().createObjectMessage(msg);
+            Message message = getMessageCodec().encode(getSession(), msg);
             synchronized (msg) {
                 getProducer(to.getName()).send(message);
                 // Note: Id is only updated if the message does not already have
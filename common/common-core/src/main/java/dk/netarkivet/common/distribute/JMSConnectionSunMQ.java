@@ -23,9 +23,17 @@
 package dk.netarkivet.common.distribute;
 
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.jms.Connection;
 import javax.jms.Destination;
+import javax.jms.ExceptionListener;
 import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
 import javax.jms.QueueConnection;
 import javax.jms.QueueSession;
 import javax.jms.Session;
@@ -95,6 +103,19 @@ public class JMSConnectionSunMQ extends JMSConnection {
 
     private QueueConnection qConnection;
 
+    /** Prefix of the topics where the broker publishes the statistics of a queue. */
+    private static final String QUEUE_METRICS_TOPIC_PREFIX = "mq.metrics.destination.queue.";
+
+    /** The connection receiving the statistics of queues from the broker. Created on first use. */
+    private Connection metricsConnection;
+
+    /** The session receiving the statistics of queues from the broker. */
+    private Session metricsSession;
+
+    /** The latest statistics reported by the broker for each subscribed queue, by queue name. */
+    private final Map<String, ReportedQueueDepth> reportedQueueDepths =
+            new ConcurrentHashMap<String, ReportedQueueDepth>();
+
     /** Constructor. */
     public JMSConnectionSunMQ() {
         super();
@@ -156,6 +177,7 @@ public class JMSConnectionSunMQ extends JMSConnection {
     public void cleanup() {
         synchronized (JMSConnectionSunMQ.class) {
             instance = null;
+            closeMetricsConnection();
             super.cleanup();
         }
     }
@@ -187,4 +209,97 @@ public class JMSConnectionSunMQ extends JMSConnection {
         return qConnection.createQueueSession(transacted, Session.AUTO_ACKNOWLEDGE);
     }
 
+    /**
+     * Get the number of messages on a queue from the metrics the broker publishes on the topic
+     * <code>mq.metrics.destination.queue.&lt;queue name&gt;</code>. The topic is subscribed to on the first call for a
+     * queue, so the first call returns -1. The broker only publishes metrics every imq.metrics.topic.interval seconds,
+     * and not at all if imq.metrics.topic.enabled is false.
+     *
+     * @param queueID The ChannelID for a specified queue.
+     * @param since Only use statistics reported after this time, in milliseconds since the epoch.
+     * @return The number of messages on the queue, or -1 if the broker has not reported it since the given time.
+     */
+    @Override
+    public synchronized int getReportedQueueDepth(ChannelID queueID, long since) {
+        ArgumentNotValid.checkNotNull(queueID, "ChannelID queueID");
+        String queueName = queueID.getName();
+        ReportedQueueDepth depth = reportedQueueDepths.get(queueName);
+        if (depth == null) {
+            // Only try once; without statistics the queue is browsed instead.
+            reportedQueueDepths.put(queueName, new ReportedQueueDepth(-1, Long.MIN_VALUE));
+            try {
+                subscribeToQueueMetrics(queueName);
+            } catch (JMSException e) {
+                log.info("Could not subscribe to the statistics of queue '{}'", queueName, e);
+            }
+            return -1;
+        }
+        return depth.time > since ? depth.count : -1;
+    }
+
+    /**
+     * Start receiving the metrics of a queue, opening the metrics connection if necessary.
+     *
+     * @param queueName The name of the queue.
+     * @throws JMSException If the metrics topic cannot be subscribed to.
+     */
+    private void subscribeToQueueMetrics(final String queueName) throws JMSException {
+        if (metricsConnection == null) {
+            metricsConnection = getConnectionFactory().createConnection();
+            metricsConnection.setExceptionListener(new ExceptionListener() {
+                @Override
+                public void onException(JMSException e) {
+                    log.warn("Lost the connection receiving queue statistics from the broker", e);
+                    closeMetricsConnection();
+                }
+            });
+            metricsSession = metricsConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            metricsConnection.start();
+        }
+        MessageConsumer consumer = metricsSession.createConsumer(new Topic(QUEUE_METRICS_TOPIC_PREFIX + queueName));
+        consumer.setMessageListener(new MessageListener() {
+            @Override
+            public void onMessage(Message message) {
+                try {
+                    long numMsgs = ((MapMessage) message).getLong("numMsgs");
+                    reportedQueueDepths.put(queueName,
+                            new ReportedQueueDepth((int) numMsgs, System.currentTimeMillis()));
+                } catch (JMSException | ClassCastException e) {
+                    log.debug("Ignoring unreadable statistics of queue '{}'", queueName, e);
+                }
+            }
+        });
+        log.info("Subscribed to the statistics of queue '{}'", queueName);
+    }
+
+    /**
+     * Close the connection receiving queue statistics and forget the statistics, so the queues are subscribed to again
+     * when asked for. Will ignore trouble, and simply log it.
+     */
+    private synchronized void closeMetricsConnection() {
+        if (metricsConnection != null) {
+            try {
+                metricsConnection.close();
+            } catch (JMSException e) {
+                log.debug("Error closing the connection receiving queue statistics.", e);
+            }
+        }
+        metricsConnection = null;
+        metricsSession = null;
+        reportedQueueDepths.clear();
+    }
+
+    /** A number of messages on a queue, as reported by the broker. */
+    private static final class ReportedQueueDepth {
+        /** The number of messages. */
+        final int count;
+        /** When it was reported, in milliseconds since the epoch. */
+        final long time;
+
+        ReportedQueueDepth(int count, long time) {
+            this.count = count;
+            this.time = time;
+        }
+    }
+
 }
@@ -0,0 +1,59 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * Converts NetarchiveSuite messages to and from the JMS messages sent on the wire. The codec used for sending is
+ * selected with the setting {@link dk.netarkivet.common.CommonSettings#JMS_MESSAGE_CODEC}. Received messages are
+ * always decoded according to their JMS message type, so applications using different codecs can talk to each other.
+ */
+public interface MessageCodec {
+
+    /**
+     * Encode a message as a JMS message.
+     *
+     * @param session The session to create the JMS message in.
+     * @param msg The message to encode.
+     * @return A JMS message ready to be sent.
+     * @throws JMSException If the JMS message could not be created.
+     */
+    Message encode(Session session, NetarkivetMessage msg) throws JMSException;
+
+    /**
+     * Decode a message from a JMS message created by {@link #encode(Session, NetarkivetMessage)}.
+     *
+     * @param msg The JMS message.
+     * @return The decoded message.
+     * @throws JMSException If the content of the JMS message could not be read.
+     * @throws ArgumentNotValid If the JMS message is not of the type made by this codec, or does not contain a
+     * NetarkivetMessage.
+     */
+    NetarkivetMessage decode(Message msg) throws JMSException, ArgumentNotValid;
+
+}
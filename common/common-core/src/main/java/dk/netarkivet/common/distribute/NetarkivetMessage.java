@@ -22,6 +22,9 @@
  */
 package dk.netarkivet.common.distribute;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
@@ -203,6 +206,37 @@ public abstract class NetarkivetMessage implements Serializable {
         return s;
     }
 
+    /**
+     * Write the state common to all messages except the channels, for the {@link BinaryMessageCodec}.
+     *
+     * @param out The output to write to.
+     * @throws IOException If writing fails.
+     */
+    synchronized void writeState(DataOutput out) throws IOException {
+        BinaryMessageCodec.writeString(out, id);
+        BinaryMessageCodec.writeString(out, replyOfId);
+        out.writeBoolean(isOk);
+        BinaryMessageCodec.writeString(out, errMsg);
+    }
+
+    /**
+     * Restore the channels of this message, and the state written by {@link #writeState(DataOutput)}. This replaces
+     * the values set by the constructor of the message.
+     *
+     * @param to The channel the message was sent to.
+     * @param replyTo The channel replies are expected on.
+     * @param in The input to read from.
+     * @throws IOException If reading fails.
+     */
+    synchronized void readState(ChannelID to, ChannelID replyTo, DataInput in) throws IOException {
+        this.to = to;
+        this.replyTo = replyTo;
+        id = BinaryMessageCodec.readString(in);
+        replyOfId = BinaryMessageCodec.readString(in);
+        isOk = in.readBoolean();
+        errMsg = BinaryMessageCodec.readString(in);
+    }
+
     /**
      * Invoke default method for deserializing object.
      *
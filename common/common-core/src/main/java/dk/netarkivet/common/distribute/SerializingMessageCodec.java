@@ -0,0 +1,60 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import java.io.Serializable;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * A message codec sending messages as JMS ObjectMessages, using standard Java serialization.
+ */
+public class SerializingMessageCodec implements MessageCodec {
+
+    @Override
+    public Message encode(Session session, NetarkivetMessage msg) throws JMSException {
+        ArgumentNotValid.checkNotNull(session, "Session session");
+        ArgumentNotValid.checkNotNull(msg, "NetarkivetMessage msg");
+        return session.createObjectMessage(msg);
+    }
+
+    @Override
+    public NetarkivetMessage decode(Message msg) throws JMSException, ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(msg, "Message msg");
+        if (!(msg instanceof ObjectMessage)) {
+            throw new ArgumentNotValid("Invalid message type: " + msg.getClass());
+        }
+        Serializable object = ((ObjectMessage) msg).getObject();
+        if (!(object instanceof NetarkivetMessage)) {
+            throw new ArgumentNotValid("Invalid message type: "
+                    + (object == null ? "null" : object.getClass().getName()));
+        }
+        return (NetarkivetMessage) object;
+    }
+
+}
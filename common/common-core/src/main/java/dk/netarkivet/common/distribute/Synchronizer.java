@@ -22,7 +22,9 @@
  */
 package dk.netarkivet.common.distribute;
 
-import java.util.Hashtable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 import javax.jms.Message;
 import javax.jms.MessageListener;
@@ -36,43 +38,24 @@ import dk.netarkivet.common.exceptions.IOFailure;
 /**
  * Converts an asynchronous call to a synchronous call. The method sendAndWaitForOneReply() is a blocking call which
  * responds when a reply is received or returns null on timeout.
+ * <p>
+ * A Synchronizer must listen on the reply channel of the requests. It passes received replies on to
+ * {@link JMSConnection#completeRequest(NetarkivetMessage)}, so it also serves replies to requests sent without
+ * blocking with {@link JMSConnection#sendRequest(NetarkivetMessage, long)}.
  */
 public class Synchronizer implements MessageListener {
 
     private static final Logger log = LoggerFactory.getLogger(Synchronizer.class);
 
-    /** Collection containing messages on which a reply is awaited. */
-    private final Hashtable<String, NetarkivetMessage> requests;
-
-    /** Collection containing reply messages which have not yet been returned to the caller. */
-    private Hashtable<String, NetarkivetMessage> replies;
-
-    /**
-     * Initialise maps containing requests and replies.
-     */
-    public Synchronizer() {
-        requests = new Hashtable<String, NetarkivetMessage>();
-        replies = new Hashtable<String, NetarkivetMessage>();
-    }
-
     /**
-     * Receives replies from a message queue and triggers the blocked call in sendAndWaitForOneReply().
+     * Receives replies from a message queue and completes the request they are a reply to.
      *
      * @param msg an ObjectMessage containing a NetarkivetMessage.
      */
     public void onMessage(Message msg) {
         ArgumentNotValid.checkNotNull(msg, "msg");
         NetarkivetMessage naMsg = JMSConnection.unpack(msg);
-        NetarkivetMessage requestMsg;
-        synchronized (requests) {
-            requestMsg = requests.get(naMsg.getReplyOfId());
-        }
-        if (requestMsg != null) {
-            synchronized (requestMsg) {
-                replies.put(naMsg.getReplyOfId(), naMsg);
-                requestMsg.notifyAll();
-            }
-        } else {
+        if (!JMSConnectionFactory.getInstance().completeRequest(naMsg)) {
             log.warn("Received unexpected reply for unknown message '{}' of type '{}'. Ignored!!: {}",
                     naMsg.getReplyOfId(), naMsg.getClass().getName(), naMsg.toString());
         }
@@ -80,58 +63,29 @@ public class Synchronizer implements MessageListener {
 
     /**
      * Sends a message to a message queue and blocks the method invocation until a reply arrives. If it times out a null
-     * is returned. If a spurious wakeup is received and a timeout is set, the method will carry on waiting for the
-     * reply until the total timeout time has been used up. If a spurious wakeup is received and no timeout is set the
-     * method will just go back to waiting
+     * is returned.
      *
      * @param msg the request message
      * @param timeout the timeout in milliseconds (or zero for no timeout)
      * @return a reply message from the receiver of the request or null if timed out.
+     * @throws IOFailure if interrupted while waiting for the reply.
      */
     public NetarkivetMessage sendAndWaitForOneReply(NetarkivetMessage msg, long timeout) {
         ArgumentNotValid.checkNotNull(msg, "msg");
-        boolean noTimeout = (timeout == 0);
-        JMSConnection con = JMSConnectionFactory.getInstance();
-        synchronized (msg) {
-            synchronized (requests) {
-                con.send(msg);
-                requests.put(msg.getID(), msg);
-            }
-            try {
-                while (!replies.containsKey(msg.getID())) {
-                    long timeBeforeWait = System.currentTimeMillis();
-                    msg.wait(timeout);
-                    synchronized (requests) {
-                        if (!replies.containsKey(msg.getID())) {
-                            // At this point we either got an unexpected wakeup
-                            // or timed out
-                            long timeAfterWait = System.currentTimeMillis();
-                            // the new timeout value
-                            timeout -= timeAfterWait - timeBeforeWait;
-                            if (noTimeout || timeout > 0) { // Unexpected wakeup
-                                log.debug("Unexpected wakeup for {}", msg.toString());
-                            } else {
-                                // timed out
-                                // NB! if timeout is exactly zero here then this
-                                // counts as a timeout. Otherwise we would call
-                                // wait(0) on the next loop with disastrous
-                                // results
-                                requests.remove(msg.getID());
-                                log.debug("Timed out waiting for reply to {}", msg.toString());
-                                return null;
-                            }
-                        }
-                    }
-                }
-            } catch (InterruptedException e) {
-                throw new IOFailure("Interrupted while waiting for reply to " + msg, e);
-            }
-        }
-        // If we get here, we must have received the expected reply
-        synchronized (requests) {
-            requests.remove(msg.getID());
+        CompletableFuture<NetarkivetMessage> reply = JMSConnectionFactory.getInstance().sendRequest(msg, timeout);
+        try {
+            NetarkivetMessage replyMsg = reply.get();
             log.debug("Received reply for message: {}", msg.toString());
-            return replies.remove(msg.getID());
+            return replyMsg;
+        } catch (InterruptedException e) {
+            reply.cancel(false);
+            throw new IOFailure("Interrupted while waiting for reply to " + msg, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                log.debug("Timed out waiting for reply to {}", msg.toString());
+                return null;
+            }
+            throw new IOFailure("Failed while waiting for reply to " + msg, e.getCause());
         }
     }
 
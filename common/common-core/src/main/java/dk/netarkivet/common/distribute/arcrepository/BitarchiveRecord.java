@@ -122,7 +122,9 @@ public class BitarchiveRecord implements Serializable {
                 File localTmpFile = null;
                 try {
                     localTmpFile = File.createTempFile("BitarchiveRecord-" + fileName, ".tmp", FileUtils.getTempDir());
-                    record.dump(new FileOutputStream(localTmpFile));
+                    try (OutputStream out = new FileOutputStream(localTmpFile)) {
+                        record.dump(out);
+                    }
                     objectAsRemoteFile = RemoteFileFactory.getMovefileInstance(localTmpFile);
                     isStoredAsRemoteFile = true;
                 } catch (IOException e) {
@@ -31,6 +31,7 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
@@ -42,6 +43,7 @@ import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.exceptions.IllegalState;
 import dk.netarkivet.common.exceptions.PermissionDenied;
 import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.FileDigester;
 import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.common.utils.batch.BatchLocalFiles;
@@ -306,16 +308,21 @@ public class LocalArcRepositoryClient implements ArcRepositoryClient {
         ArgumentNotValid.checkNotNullOrEmpty(replicaId, "String replicaId");
 
         try {
-            List<String> checksums = new ArrayList<String>();
-            // go through the different storageDirs and find files and checksums.
+            // go through the different storageDirs and find files.
+            List<File> files = new ArrayList<File>();
             for (File dir : storageDirs) {
-                // go through all file and calculate the checksum
-                for (File entry : dir.listFiles()) {
-                    String checksum = ChecksumCalculator.calculateMd5(entry);
-                    String filename = entry.getName();
-
-                    checksums.add(ChecksumJob.makeLine(filename, checksum));
-                }
+                files.addAll(Arrays.asList(dir.listFiles()));
+            }
+            // calculate the checksums, reading the storageDirs in parallel if they are on separate disks.
+            Map<File, Map<String, byte[]>> digests = FileDigester.digestFiles(files, 1, ChecksumCalculator.MD5);
+            if (digests.size() < files.size()) {
+                throw new IOFailure("Could not calculate the checksum of " + (files.size() - digests.size())
+                        + " files, see the log for details");
+            }
+            List<String> checksums = new ArrayList<String>();
+            for (Map.Entry<File, Map<String, byte[]>> digest : digests.entrySet()) {
+                String checksum = ChecksumCalculator.toHex(digest.getValue().get(ChecksumCalculator.MD5));
+                checksums.add(ChecksumJob.makeLine(digest.getKey().getName(), checksum));
             }
 
             // create a file with the results.
@@ -23,6 +23,10 @@
 package dk.netarkivet.common.distribute.arcrepository;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
@@ -48,6 +52,65 @@ public interface ViewerArcRepositoryClient extends AutoCloseable{
      */
     BitarchiveRecord get(String arcfile, long index) throws ArgumentNotValid;
 
+    /**
+     * Gets a single ARC record out of the ArcRepository without waiting for it. This allows many records to be
+     * requested at the same time without a thread for each. The default implementation fetches the record with
+     * {@link #get(String, long)} before returning.
+     *
+     * @param arcfile The name of a file containing the desired record.
+     * @param index The offset of the desired record in the file
+     * @return a future completed with the BitarchiveRecord-object, or with null if the request times out or the object
+     * is not found. If the get operation fails, the future is completed exceptionally with an IOFailure.
+     * @throws ArgumentNotValid If arcfile is null or empty, or index is negative.
+     */
+    default CompletableFuture<BitarchiveRecord> getAsync(String arcfile, long index) throws ArgumentNotValid {
+        CompletableFuture<BitarchiveRecord> record = new CompletableFuture<BitarchiveRecord>();
+        try {
+            record.complete(get(arcfile, index));
+        } catch (IOFailure e) {
+            record.completeExceptionally(e);
+        }
+        return record;
+    }
+
+    /**
+     * Gets several ARC records from the same file out of the ArcRepository without waiting for them. Implementations
+     * backed by a remote archive should fetch all the records in one request. The default implementation combines
+     * calls to {@link #getAsync(String, long)}.
+     *
+     * @param arcfile The name of a file containing the desired records.
+     * @param indices The offsets of the desired records in the file. The same offset may occur more than once.
+     * @return a future completed with a list of the BitarchiveRecord-objects in the order of the offsets, or with null
+     * if the request times out or any of the records is not found. If the get operation fails, the future is completed
+     * exceptionally with an IOFailure.
+     * @throws ArgumentNotValid If arcfile is null or empty, or indices is null or empty.
+     */
+    default CompletableFuture<List<BitarchiveRecord>> getRecordsAsync(String arcfile, long[] indices)
+            throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNullOrEmpty(arcfile, "String arcfile");
+        ArgumentNotValid.checkNotNull(indices, "long[] indices");
+        ArgumentNotValid.checkPositive(indices.length, "indices.length");
+        final List<CompletableFuture<BitarchiveRecord>> parts = new ArrayList<CompletableFuture<BitarchiveRecord>>();
+        for (long index : indices) {
+            parts.add(getAsync(arcfile, index));
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[parts.size()])).thenApply(
+                new Function<Void, List<BitarchiveRecord>>() {
+                    @Override
+                    public List<BitarchiveRecord> apply(Void ignored) {
+                        List<BitarchiveRecord> records = new ArrayList<BitarchiveRecord>(parts.size());
+                        for (CompletableFuture<BitarchiveRecord> part : parts) {
+                            BitarchiveRecord record = part.join();
+                            if (record == null) {
+                                return null;
+                            }
+                            records.add(record);
+                        }
+                        return records;
+                    }
+                });
+    }
+
     /**
      * Retrieves a file from an ArcRepository and places it in a local file.
      *
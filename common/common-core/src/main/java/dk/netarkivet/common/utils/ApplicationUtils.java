@@ -146,6 +146,7 @@ public abstract class ApplicationUtils {
         // Start the remote management connector
         try {
             MBeanConnectorCreator.exposeJMXMBeanServer();
+            SettingsLookupCounter.getInstance().register();
             log.trace("Added remote management for {}", appName);
         } catch (Throwable e) {
             logExceptionAndPrint("Could not add remote management for class " + appName, e);
@@ -199,6 +200,7 @@ public abstract class ApplicationUtils {
         // Start the remote management connector
         try {
             MBeanConnectorCreator.exposeJMXMBeanServer();
+            SettingsLookupCounter.getInstance().register();
             log.trace("Added remote management for {}", appName);
         } catch (Throwable e) {
             logExceptionAndPrint("Could not add remote management for class " + appName, e);
@@ -23,22 +23,20 @@
 package dk.netarkivet.common.utils;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-
-import org.apache.commons.io.IOUtils;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import dk.netarkivet.common.Constants;
-import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.exceptions.IllegalState;
 
 /**
- * Calculates MD5 or SHA1 checksums on files using the built-in Java methods.
+ * Calculates MD5, SHA1 or other checksums on files using the built-in Java methods. Files are read with a
+ * {@link FileDigester}.
  */
 public final class ChecksumCalculator {
 
@@ -46,6 +44,8 @@ public final class ChecksumCalculator {
     public static final String MD5 = "MD5";
     /** Defines the SHA1 checksum algorithm */
     public static final String SHA1 = "SHA1";
+    /** Defines the SHA-256 checksum algorithm */
+    public static final String SHA256 = "SHA-256";
 
     /**
      * Calculate MD5 for a file.
@@ -54,19 +54,7 @@ public final class ChecksumCalculator {
      * @return The MD5 sum of a file as a 32 characters long Hex string.
      */
     public static String calculateMd5(final File src) {
-        ArgumentNotValid.checkNotNull(src, "File src");
-        ArgumentNotValid.checkTrue(src.isFile(), "Argument should be a file");
-        // Get the MD5 and return it
-        try {
-            final FileInputStream fileInputStream = new FileInputStream(src);
-            try {
-                return calculateMd5(fileInputStream);
-            } finally {
-                IOUtils.closeQuietly(fileInputStream);
-            }
-        } catch (FileNotFoundException e) {
-            throw new IOFailure("Could not read file '" + src.getAbsolutePath() + "'", e);
-        }
+        return toHex(digestFile(src, MD5));
     }
 
     /**
@@ -76,19 +64,23 @@ public final class ChecksumCalculator {
      * @return The SHA-1 sum of a file as a 32 characters long Hex string.
      */
     public static String calculateSha1(final File src) {
-        ArgumentNotValid.checkNotNull(src, "File src");
-        ArgumentNotValid.checkTrue(src.isFile(), "Argument should be a file");
-        // Get the SHA-1 digest and return it
-        try {
-            final FileInputStream fileInputStream = new FileInputStream(src);
-            try {
-                return calculateSha1(fileInputStream);
-            } finally {
-                IOUtils.closeQuietly(fileInputStream);
-            }
-        } catch (FileNotFoundException e) {
-            throw new IOFailure("Could not read file '" + src.getAbsolutePath() + "'", e);
+        return toHex(digestFile(src, SHA1));
+    }
+
+    /**
+     * Calculate several digests of a file, reading it only once.
+     *
+     * @param src The file to calculate digests for.
+     * @param algorithms The digest algorithms, e.g. {@link #MD5}, {@link #SHA1} and {@link #SHA256}.
+     * @return The digest for each algorithm as a Hex string, in the order given.
+     * @see FileDigester#digest(File, String...)
+     */
+    public static Map<String, String> calculateDigests(final File src, final String... algorithms) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, byte[]> digest : FileDigester.digest(src, algorithms).entrySet()) {
+            result.put(digest.getKey(), toHex(digest.getValue()));
         }
+        return result;
     }
 
     /**
@@ -169,19 +161,16 @@ public final class ChecksumCalculator {
         return new String(hexchars);
     }
 
+    /**
+     * Calculate a digest of a file.
+     *
+     * @param src The file to calculate the digest for.
+     * @param digestAlgorithm The digest algorithm to use.
+     * @return The digest of the file.
+     * @throws IOFailure If the file cannot be read.
+     */
     public static byte[] digestFile(File src, String digestAlgorithm) {
-        ArgumentNotValid.checkNotNull(src, "File src");
-        ArgumentNotValid.checkTrue(src.isFile(), "Argument should be a file");
-        try {
-            FileInputStream fileInputStream = new FileInputStream(src);
-            try {
-                return digestInputStream(fileInputStream, digestAlgorithm);
-            } finally {
-                IOUtils.closeQuietly(fileInputStream);
-            }
-        } catch (FileNotFoundException e) {
-            throw new IOFailure("Could not read file '" + src.getAbsolutePath() + "'", e);
-        }
+        return FileDigester.digest(src, digestAlgorithm).get(digestAlgorithm);
     }
 
     public static byte[] digestInputStream(InputStream instream, String algorithm) {
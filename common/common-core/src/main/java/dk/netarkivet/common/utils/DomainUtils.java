@@ -22,8 +22,6 @@
  */
 package dk.netarkivet.common.utils;
 
-import java.util.regex.Matcher;
-
 import dk.netarkivet.common.Constants;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 
@@ -48,7 +46,22 @@ public final class DomainUtils {
      */
     public static boolean isValidDomainName(String domainName) {
         ArgumentNotValid.checkNotNull(domainName, "String domainName");
-        return TLD.getInstance().getValidDomainMatcher().matcher(domainName).matches();      
+        return isValidDomainName(domainName, 0, domainName.length());
+    }
+
+    /**
+     * Check if a part of a character sequence is a valid domain. A valid domain is an IP address or a domain name part
+     * followed by a TLD as defined in settings. This does not allocate any objects.
+     *
+     * @param s A character sequence containing the name of a domain.
+     * @param start The start of the domain name in s (inclusive).
+     * @param end The end of the domain name in s (exclusive).
+     * @return true if s[start, end) is a valid domain; otherwise it returns false.
+     * @throws ArgumentNotValid if s is null or start and end are not a valid range in s.
+     */
+    public static boolean isValidDomainName(CharSequence s, int start, int end) {
+        ArgumentNotValid.checkNotNull(s, "CharSequence s");
+        return isIpAddress(s, start, end) || TLD.getInstance().getPublicSuffixTrie().isDomainName(s, start, end);
     }
 
     /**
@@ -64,18 +77,60 @@ public final class DomainUtils {
      */
     public static String domainNameFromHostname(String hostname) {
         ArgumentNotValid.checkNotNull(hostname, "String hostname");
-        String result = hostname;
+        int start = domainNameStart(hostname, 0, hostname.length());
+        if (start < 0) {
+            return null;
+        }
+        return hostname.substring(start);
+    }
+
+    /**
+     * Find the domain name in a part of a character sequence containing a hostname, as defined by
+     * {@link #domainNameFromHostname(String)}. This does not allocate any objects, so it can be used on e.g. a slice
+     * of a crawl log line.
+     *
+     * @param s A character sequence containing a hostname or IP address.
+     * @param start The start of the hostname in s (inclusive).
+     * @param end The end of the hostname in s (exclusive).
+     * @return The index in s where the domain name starts (the domain name always ends at end), or -1 if no valid
+     * domain could be obtained from the given hostname.
+     * @throws ArgumentNotValid if s is null or start and end are not a valid range in s.
+     */
+    public static int domainNameStart(CharSequence s, int start, int end) {
+        ArgumentNotValid.checkNotNull(s, "CharSequence s");
         // IP addresses are kept as-is, others are trimmed down.
-        if (!Constants.IP_KEY_REGEXP.matcher(hostname).matches()) {
-            Matcher matcher = TLD.getInstance().getHostnamePattern().matcher(hostname);
-            if (matcher.matches()) {
-                result = matcher.group(2);
-            }
+        if (isIpAddress(s, start, end)) {
+            return start;
         }
-        if (isValidDomainName(result)) {
-            return result;
+        return TLD.getInstance().getPublicSuffixTrie().domainNameStart(s, start, end);
+    }
+
+    /**
+     * Check if a part of a character sequence is an IP address, as matched by {@link Constants#IP_KEY_REGEXP}: four
+     * groups of one to three digits separated by dots.
+     *
+     * @param s A character sequence.
+     * @param start The start of the part to check (inclusive).
+     * @param end The end of the part to check (exclusive).
+     * @return true if s[start, end) is an IP address.
+     */
+    private static boolean isIpAddress(CharSequence s, int start, int end) {
+        int groups = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > 3) {
+                    return false;
+                }
+            } else if (c == '.' && digits > 0 && groups < 3) {
+                groups++;
+                digits = 0;
+            } else {
+                return false;
+            }
         }
-        return null;
+        return groups == 3 && digits > 0;
     }
 
     /**
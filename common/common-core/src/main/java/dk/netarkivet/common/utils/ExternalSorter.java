@@ -0,0 +1,689 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+
+/**
+ * Sorts and merges text files line by line inside the JVM, giving the same result as the Unix sort command run with
+ * <code>LC_ALL=C</code>, without forking a process for every file.
+ * <p>
+ * Lines are compared as unsigned bytes. In crawl log mode lines are ordered by the text from their fourth whitespace
+ * separated field to the end of the line, leading blanks ignored, and then by the whole line, like
+ * <code>sort -k 4b</code>. Every line of the output ends with a newline.
+ * <p>
+ * Input larger than the memory budget is read in chunks, which are sorted in parallel and written to temporary run
+ * files. The runs are then merged with a k-way merge. The output is written to a temporary file beside the output file
+ * and renamed when complete, so the output file may be one of the input files.
+ */
+public class ExternalSorter {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(ExternalSorter.class);
+
+    /** The estimated memory used for a line in addition to its bytes: the array, the {@link Line} and references. */
+    private static final int LINE_OVERHEAD = 56;
+
+    /** The smallest chunk read into memory before it is written to a run, whatever the memory budget. */
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
+    /** The maximal number of files merged at the same time. More files are merged in several passes. */
+    private static final int MAX_MERGE_WIDTH = 64;
+
+    /** The size of the buffer used for each file read or written. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The maximal amount of memory in bytes used for lines read into memory. */
+    private final long memoryBudget;
+
+    /** The number of chunks sorted and written at the same time. */
+    private final int threads;
+
+    /** The directory for run files, or null for the system temporary directory. */
+    private final File tempDir;
+
+    /** Whether lines are ordered like crawl log lines, on the fourth field. */
+    private final boolean crawlLogKey;
+
+    /** The order of lines. */
+    private final Comparator<Line> comparator = new Comparator<Line>() {
+        @Override
+        public int compare(Line line1, Line line2) {
+            if (line1.prefix != line2.prefix) {
+                return Long.compareUnsigned(line1.prefix, line2.prefix);
+            }
+            if (crawlLogKey) {
+                int result = compareBytes(line1.bytes, line1.keyStart, line2.bytes, line2.keyStart);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return compareBytes(line1.bytes, 0, line2.bytes, 0);
+        }
+    };
+
+    /**
+     * Create a sorter.
+     *
+     * @param memoryBudget The maximal amount of memory in bytes used for lines read into memory.
+     * @param threads The number of chunks sorted and written at the same time.
+     * @param tempDir The directory for run files, or null for the system temporary directory.
+     * @param crawlLogKey Whether lines are ordered like crawl log lines, on the fourth field.
+     * @throws ArgumentNotValid If memoryBudget or threads are not positive.
+     */
+    public ExternalSorter(long memoryBudget, int threads, File tempDir, boolean crawlLogKey) {
+        ArgumentNotValid.checkPositive(memoryBudget, "long memoryBudget");
+        ArgumentNotValid.checkPositive(threads, "int threads");
+        this.memoryBudget = memoryBudget;
+        this.threads = threads;
+        this.tempDir = tempDir;
+        this.crawlLogKey = crawlLogKey;
+    }
+
+    /**
+     * Create a sorter with the memory budget and threads given by the settings
+     * {@link CommonSettings#SORT_MEMORY_BUDGET} and {@link CommonSettings#SORT_THREADS}.
+     *
+     * @param tempDir The directory for run files, or null for the system temporary directory.
+     * @param crawlLogKey Whether lines are ordered like crawl log lines, on the fourth field.
+     * @return A new sorter.
+     */
+    public static ExternalSorter fromSettings(File tempDir, boolean crawlLogKey) {
+        return new ExternalSorter(Settings.getLong(CommonSettings.SORT_MEMORY_BUDGET),
+                Settings.getInt(CommonSettings.SORT_THREADS), tempDir, crawlLogKey);
+    }
+
+    /**
+     * Sort the lines of a file.
+     *
+     * @param input The file to sort.
+     * @param output The file to write the sorted lines to.
+     * @throws ArgumentNotValid If input or output is null.
+     * @throws IOFailure If the files cannot be read or written.
+     */
+    public void sort(File input, File output) {
+        ArgumentNotValid.checkNotNull(input, "File input");
+        sort(Collections.singletonList(input), output);
+    }
+
+    /**
+     * Sort the lines of a number of files into one file.
+     *
+     * @param inputs The files to sort.
+     * @param output The file to write the sorted lines to.
+     * @throws ArgumentNotValid If inputs or output is null.
+     * @throws IOFailure If the files cannot be read or written.
+     */
+    public void sort(List<File> inputs, File output) {
+        ArgumentNotValid.checkNotNull(inputs, "List<File> inputs");
+        ArgumentNotValid.checkNotNull(output, "File output");
+        long start = System.currentTimeMillis();
+        List<File> runs = new ArrayList<File>();
+        try {
+            List<Line> lines = createRuns(inputs, runs);
+            if (lines != null) {
+                Line[] sorted = lines.toArray(new Line[lines.size()]);
+                lines = null;
+                if (threads > 1) {
+                    Arrays.parallelSort(sorted, comparator);
+                } else {
+                    Arrays.sort(sorted, comparator);
+                }
+                File target = createTargetFile(output);
+                writeLines(sorted, target);
+                moveTargetFile(target, output);
+            } else {
+                mergeRuns(runs, output, true);
+            }
+        } catch (IOException e) {
+            throw new IOFailure("Could not sort " + inputs + " into '" + output + "'", e);
+        } finally {
+            for (File run : runs) {
+                FileUtils.remove(run);
+            }
+        }
+        log.debug("Sorted {} into '{}' using {} runs in {} ms", inputs, output, runs.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Merge files which are already sorted into one sorted file.
+     *
+     * @param inputs The sorted files.
+     * @param output The file to write the merged lines to.
+     * @throws ArgumentNotValid If inputs or output is null.
+     * @throws IOFailure If the files cannot be read or written.
+     */
+    public void merge(List<File> inputs, File output) {
+        ArgumentNotValid.checkNotNull(inputs, "List<File> inputs");
+        ArgumentNotValid.checkNotNull(output, "File output");
+        try {
+            mergeRuns(inputs, output, false);
+        } catch (IOException e) {
+            throw new IOFailure("Could not merge " + inputs + " into '" + output + "'", e);
+        }
+    }
+
+    /**
+     * Compare two lines in the order of this sorter.
+     *
+     * @param line1 A line without the newline.
+     * @param line2 Another line without the newline.
+     * @return A negative number, zero or a positive number as line1 is less than, equal to or greater than line2.
+     */
+    public int compareLines(byte[] line1, byte[] line2) {
+        ArgumentNotValid.checkNotNull(line1, "byte[] line1");
+        ArgumentNotValid.checkNotNull(line2, "byte[] line2");
+        return comparator.compare(toLine(line1), toLine(line2));
+    }
+
+    /**
+     * Find the sort key of a line.
+     *
+     * @param bytes A line without the newline.
+     * @return The line with its sort key.
+     */
+    private Line toLine(byte[] bytes) {
+        int keyStart = crawlLogKey ? crawlLogKeyStart(bytes) : 0;
+        long prefix = 0;
+        for (int i = 0; i < 8; i++) {
+            prefix <<= 8;
+            if (keyStart + i < bytes.length) {
+                prefix |= bytes[keyStart + i] & 0xff;
+            }
+        }
+        return new Line(bytes, keyStart, prefix);
+    }
+
+    /**
+     * Compare the ends of two byte arrays as unsigned bytes.
+     *
+     * @param bytes1 The first array.
+     * @param from1 The index in the first array to compare from.
+     * @param bytes2 The second array.
+     * @param from2 The index in the second array to compare from.
+     * @return A negative number, zero or a positive number as the first array is less than, equal to or greater than
+     * the second.
+     */
+    private static int compareBytes(byte[] bytes1, int from1, byte[] bytes2, int from2) {
+        int length1 = bytes1.length - from1;
+        int length2 = bytes2.length - from2;
+        int length = Math.min(length1, length2);
+        for (int i = 0; i < length; i++) {
+            int result = (bytes1[from1 + i] & 0xff) - (bytes2[from2 + i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return length1 - length2;
+    }
+
+    /**
+     * Find where the sort key of a crawl log line starts. As with sort, a field is any blanks followed by non-blanks,
+     * and the blanks before the fourth field are skipped.
+     *
+     * @param line A crawl log line.
+     * @return The index of the first character of the key, or the length of the line if the line has no fourth field.
+     */
+    private static int crawlLogKeyStart(byte[] line) {
+        int pos = 0;
+        for (int field = 0; field < 3; field++) {
+            while (pos < line.length && isBlank(line[pos])) {
+                pos++;
+            }
+            while (pos < line.length && !isBlank(line[pos])) {
+                pos++;
+            }
+        }
+        while (pos < line.length && isBlank(line[pos])) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * @param b A byte of a line.
+     * @return Whether the byte is a blank in the C locale.
+     */
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * Read the input files into chunks, and sort and write each chunk to a run file. If all the input fits in one
+     * chunk, no runs are written and the lines are returned instead.
+     *
+     * @param inputs The files to read.
+     * @param runs The list to add the run files to, in the order they are created.
+     * @return All the lines of the input, if no runs were needed, otherwise null.
+     * @throws IOException If reading or writing fails.
+     */
+    private List<Line> createRuns(List<File> inputs, List<File> runs) throws IOException {
+        // One chunk may be read while the others are sorted and written.
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, memoryBudget / (threads + 1));
+        ExecutorService executor = null;
+        Deque<Future<File>> pending = new ArrayDeque<Future<File>>();
+        try {
+            List<Line> chunk = new ArrayList<Line>();
+            long chunkBytes = 0;
+            for (File input : inputs) {
+                LineReader reader = new LineReader(input);
+                try {
+                    byte[] line;
+                    while ((line = reader.readLine()) != null) {
+                        chunk.add(toLine(line));
+                        chunkBytes += line.length + LINE_OVERHEAD;
+                        if (chunkBytes >= chunkSize) {
+                            if (executor == null) {
+                                executor = Executors.newFixedThreadPool(threads);
+                            }
+                            while (pending.size() >= threads) {
+                                runs.add(waitFor(pending.removeFirst()));
+                            }
+                            pending.addLast(executor.submit(new RunWriter(chunk)));
+                            chunk = new ArrayList<Line>();
+                            chunkBytes = 0;
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+            if (executor == null) {
+                return chunk;
+            }
+            if (!chunk.isEmpty()) {
+                pending.addLast(executor.submit(new RunWriter(chunk)));
+            }
+            while (!pending.isEmpty()) {
+                runs.add(waitFor(pending.removeFirst()));
+            }
+            return null;
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+                // Only left when failing: let the runs being written finish, and delete them.
+                for (Future<File> future : pending) {
+                    try {
+                        FileUtils.remove(waitFor(future));
+                    } catch (IOException e) {
+                        log.debug("Discarding failed sort run", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for a run to be written.
+     *
+     * @param future The writing of the run.
+     * @return The run file.
+     * @throws IOException If writing the run failed or the thread was interrupted.
+     */
+    private static File waitFor(Future<File> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing sort run", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to write sort run", e.getCause());
+        }
+    }
+
+    /**
+     * Merge files into the output file. If there are more than {@link #MAX_MERGE_WIDTH} files, they are first merged
+     * in groups into temporary runs.
+     *
+     * @param files The sorted files.
+     * @param output The file to write the merged lines to.
+     * @param deleteFiles Whether the given files are temporary runs, to be deleted once merged.
+     * @throws IOException If reading or writing fails.
+     */
+    private void mergeRuns(List<File> files, File output, boolean deleteFiles) throws IOException {
+        List<File> current = files;
+        boolean temporary = deleteFiles;
+        while (current.size() > MAX_MERGE_WIDTH) {
+            List<File> merged = new ArrayList<File>();
+            try {
+                for (int i = 0; i < current.size(); i += MAX_MERGE_WIDTH) {
+                    List<File> group = current.subList(i, Math.min(i + MAX_MERGE_WIDTH, current.size()));
+                    File run = File.createTempFile("sort", ".run", tempDir);
+                    merged.add(run);
+                    mergeFiles(group, run);
+                    if (temporary) {
+                        for (File file : group) {
+                            FileUtils.remove(file);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                for (File run : merged) {
+                    FileUtils.remove(run);
+                }
+                throw e;
+            }
+            current = merged;
+            temporary = true;
+        }
+        File target = createTargetFile(output);
+        try {
+            mergeFiles(current, target);
+        } finally {
+            if (temporary && current != files) {
+                for (File run : current) {
+                    FileUtils.remove(run);
+                }
+            }
+        }
+        moveTargetFile(target, output);
+    }
+
+    /**
+     * Merge sorted files into one, using a binary heap of the indices of the files ordered by their current line.
+     *
+     * @param files The sorted files.
+     * @param output The file to write to.
+     * @throws IOException If reading or writing fails.
+     */
+    private void mergeFiles(List<File> files, File output) throws IOException {
+        LineReader[] readers = new LineReader[files.size()];
+        Line[] heads = new Line[files.size()];
+        int[] heap = new int[files.size()];
+        int size = 0;
+        try {
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = new LineReader(files.get(i));
+                byte[] line = readers[i].readLine();
+                if (line != null) {
+                    heads[i] = toLine(line);
+                    heap[size++] = i;
+                }
+            }
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(heap, size, i, heads);
+            }
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(output), BUFFER_SIZE);
+            try {
+                while (size > 0) {
+                    int first = heap[0];
+                    out.write(heads[first].bytes);
+                    out.write('\n');
+                    byte[] line = readers[first].readLine();
+                    if (line != null) {
+                        heads[first] = toLine(line);
+                    } else {
+                        heads[first] = null;
+                        heap[0] = heap[--size];
+                    }
+                    siftDown(heap, size, 0, heads);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            for (LineReader reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Move an entry of the heap down until it is not greater than its children.
+     *
+     * @param heap The indices of the files, ordered by their current line.
+     * @param size The number of entries in the heap.
+     * @param pos The position of the entry to move.
+     * @param heads The current line of each file.
+     */
+    private void siftDown(int[] heap, int size, int pos, Line[] heads) {
+        int entry = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && comparator.compare(heads[heap[child + 1]], heads[heap[child]]) < 0) {
+                child++;
+            }
+            if (comparator.compare(heads[heap[child]], heads[entry]) >= 0) {
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = entry;
+    }
+
+    /**
+     * Write lines to a file, each followed by a newline.
+     *
+     * @param lines The lines to write.
+     * @param file The file to write to.
+     * @throws IOException If writing fails.
+     */
+    private static void writeLines(Line[] lines, File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+        try {
+            for (Line line : lines) {
+                out.write(line.bytes);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Create the temporary file the output is written to, in the directory of the output file.
+     *
+     * @param output The output file.
+     * @return A new empty file.
+     * @throws IOException If the file cannot be created.
+     */
+    private static File createTargetFile(File output) throws IOException {
+        return File.createTempFile(output.getName(), ".sorting", output.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Replace the output file with the completely written temporary file.
+     *
+     * @param target The temporary file.
+     * @param output The output file.
+     * @throws IOException If the file cannot be moved.
+     */
+    private static void moveTargetFile(File target, File output) throws IOException {
+        try {
+            Files.move(target.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            FileUtils.remove(target);
+            throw e;
+        }
+    }
+
+    /**
+     * Sorts a chunk of lines and writes it to a new run file.
+     */
+    private class RunWriter implements Callable<File> {
+
+        /** The lines to sort. */
+        private final List<Line> lines;
+
+        /**
+         * @param lines The lines to sort.
+         */
+        RunWriter(List<Line> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public File call() throws IOException {
+            Line[] sorted = lines.toArray(new Line[lines.size()]);
+            lines.clear();
+            Arrays.sort(sorted, comparator);
+            File run = File.createTempFile("sort", ".run", tempDir);
+            try {
+                writeLines(sorted, run);
+            } catch (IOException e) {
+                FileUtils.remove(run);
+                throw e;
+            }
+            return run;
+        }
+
+    }
+
+    /**
+     * A line with the position of its sort key, and the first eight bytes of the key to compare most lines quickly.
+     */
+    private static final class Line {
+
+        /** The line without the newline. */
+        private final byte[] bytes;
+
+        /** The index in the line where the sort key starts. */
+        private final int keyStart;
+
+        /** The first eight bytes of the key as an unsigned number, padded with zero bytes if the key is shorter. */
+        private final long prefix;
+
+        /**
+         * @param bytes The line without the newline.
+         * @param keyStart The index in the line where the sort key starts.
+         * @param prefix The first eight bytes of the key.
+         */
+        Line(byte[] bytes, int keyStart, long prefix) {
+            this.bytes = bytes;
+            this.keyStart = keyStart;
+            this.prefix = prefix;
+        }
+
+    }
+
+    /**
+     * Reads the lines of a file as bytes. A last line without a newline is also returned.
+     */
+    private static class LineReader implements Closeable {
+
+        /** The file being read. */
+        private final InputStream in;
+
+        /** The bytes read from the file but not yet returned. */
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        /** The position of the next byte in the buffer. */
+        private int pos;
+
+        /** The number of bytes in the buffer. */
+        private int limit;
+
+        /**
+         * @param file The file to read.
+         * @throws IOException If the file cannot be opened.
+         */
+        LineReader(File file) throws IOException {
+            this.in = new FileInputStream(file);
+        }
+
+        /**
+         * @return The next line without the newline, or null at the end of the file.
+         * @throws IOException If reading fails.
+         */
+        byte[] readLine() throws IOException {
+            byte[] partial = null;
+            int partialLength = 0;
+            while (true) {
+                if (pos >= limit) {
+                    pos = 0;
+                    limit = Math.max(0, in.read(buffer));
+                    if (limit == 0) {
+                        return partial == null ? null : Arrays.copyOf(partial, partialLength);
+                    }
+                }
+                int start = pos;
+                while (pos < limit && buffer[pos] != '\n') {
+                    pos++;
+                }
+                int length = pos - start;
+                boolean endOfLine = pos < limit;
+                if (endOfLine) {
+                    pos++;
+                    if (partial == null) {
+                        return Arrays.copyOfRange(buffer, start, start + length);
+                    }
+                }
+                if (partial == null) {
+                    partial = new byte[Math.max(2 * length, 128)];
+                } else if (partialLength + length > partial.length) {
+                    partial = Arrays.copyOf(partial, Math.max(2 * partial.length, partialLength + length));
+                }
+                System.arraycopy(buffer, start, partial, partialLength, length);
+                partialLength += length;
+                if (endOfLine) {
+                    return Arrays.copyOf(partial, partialLength);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+    }
+
+}
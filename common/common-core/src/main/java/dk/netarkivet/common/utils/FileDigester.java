@@ -0,0 +1,222 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+
+/**
+ * Calculates message digests of files. Each file is read once, through a FileChannel into a large direct buffer, and
+ * every requested digest is updated from the same buffer, so e.g. MD5 and SHA-1 of a file cost one read of it.
+ * <p>
+ * Several files can be digested in parallel with a fixed number of threads for each file system, so archive
+ * directories on separate disks are read at the same time without making a single disk seek between files.
+ */
+public final class FileDigester {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(FileDigester.class);
+
+    /** The size of the direct buffers files are read into. */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** The maximal number of unused buffers kept for reuse. */
+    private static final int MAX_POOLED_BUFFERS = 8;
+
+    /** Unused buffers, kept because direct buffers are expensive to allocate and are only freed by the GC. */
+    private static final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /** Utility class, do not initialise. */
+    private FileDigester() {
+    }
+
+    /**
+     * Calculate digests of a file in one pass over it.
+     *
+     * @param file The file to digest.
+     * @param algorithms The digest algorithms to use, e.g. {@link ChecksumCalculator#MD5} and
+     * {@link ChecksumCalculator#SHA1}.
+     * @return The digest for each algorithm, in the order given.
+     * @throws ArgumentNotValid If file is null or not a file, or no algorithms are given.
+     * @throws IOFailure If the file cannot be read.
+     * @throws dk.netarkivet.common.exceptions.IllegalState If an algorithm is not available.
+     */
+    public static Map<String, byte[]> digest(File file, String... algorithms) {
+        ArgumentNotValid.checkNotNull(file, "File file");
+        ArgumentNotValid.checkTrue(file.isFile(), "Argument should be a file");
+        ArgumentNotValid.checkTrue(algorithms != null && algorithms.length > 0, "At least one algorithm is required");
+        MessageDigest[] digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = ChecksumCalculator.getMessageDigest(algorithms[i]);
+        }
+        ByteBuffer buffer = takeBuffer();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                for (MessageDigest digest : digests) {
+                    buffer.mark();
+                    digest.update(buffer);
+                    buffer.reset();
+                }
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            throw new IOFailure("Could not read file '" + file.getAbsolutePath() + "'", e);
+        } finally {
+            returnBuffer(buffer);
+        }
+        Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+        for (int i = 0; i < algorithms.length; i++) {
+            result.put(algorithms[i], digests[i].digest());
+        }
+        return result;
+    }
+
+    /**
+     * Calculate digests of a number of files, reading files on different file systems in parallel.
+     *
+     * @param files The files to digest.
+     * @param threadsPerDisk The number of files read at the same time from each file system.
+     * @param algorithms The digest algorithms to use.
+     * @return The digests of each file as returned by {@link #digest(File, String...)}, in the order of the files.
+     * Files that could not be read are logged and left out.
+     * @throws ArgumentNotValid If files is null, threadsPerDisk is not positive or no algorithms are given.
+     * @throws IOFailure If interrupted while waiting for the files to be read.
+     */
+    public static Map<File, Map<String, byte[]>> digestFiles(Collection<File> files, int threadsPerDisk,
+            final String... algorithms) {
+        ArgumentNotValid.checkNotNull(files, "Collection<File> files");
+        ArgumentNotValid.checkPositive(threadsPerDisk, "int threadsPerDisk");
+        ArgumentNotValid.checkTrue(algorithms != null && algorithms.length > 0, "At least one algorithm is required");
+        Map<Object, Queue<File>> filesPerDisk = new LinkedHashMap<Object, Queue<File>>();
+        for (File file : files) {
+            Object disk;
+            try {
+                disk = Files.getFileStore(file.toPath());
+            } catch (IOException e) {
+                // Unreadable files fail when digested, group them by directory until then
+                disk = file.getAbsoluteFile().getParentFile();
+            }
+            Queue<File> diskFiles = filesPerDisk.get(disk);
+            if (diskFiles == null) {
+                diskFiles = new ConcurrentLinkedQueue<File>();
+                filesPerDisk.put(disk, diskFiles);
+            }
+            diskFiles.add(file);
+        }
+
+        final Map<File, Map<String, byte[]>> digests = new ConcurrentHashMap<File, Map<String, byte[]>>();
+        int threads = 0;
+        for (Queue<File> diskFiles : filesPerDisk.values()) {
+            threads += Math.min(threadsPerDisk, diskFiles.size());
+        }
+        if (threads > 0) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            try {
+                for (final Queue<File> diskFiles : filesPerDisk.values()) {
+                    for (int i = 0; i < Math.min(threadsPerDisk, diskFiles.size()); i++) {
+                        results.add(executor.submit(new Runnable() {
+                            public void run() {
+                                File file;
+                                while ((file = diskFiles.poll()) != null && !Thread.currentThread().isInterrupted()) {
+                                    try {
+                                        digests.put(file, digest(file, algorithms));
+                                    } catch (RuntimeException e) {
+                                        log.warn("Could not digest file '{}'", file, e);
+                                    }
+                                }
+                            }
+                        }));
+                    }
+                }
+                for (Future<?> result : results) {
+                    result.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOFailure("Interrupted while digesting " + files.size() + " files", e);
+            } catch (ExecutionException e) {
+                throw new IOFailure("Unexpected error while digesting files", e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        Map<File, Map<String, byte[]>> result = new LinkedHashMap<File, Map<String, byte[]>>();
+        for (File file : files) {
+            Map<String, byte[]> fileDigests = digests.get(file);
+            if (fileDigests != null) {
+                result.put(file, fileDigests);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return A cleared buffer from the pool, or a new one if the pool is empty.
+     */
+    private static ByteBuffer takeBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Put a buffer back in the pool, unless the pool is full.
+     *
+     * @param buffer A buffer taken by {@link #takeBuffer()}.
+     */
+    private static void returnBuffer(ByteBuffer buffer) {
+        if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+            bufferPool.offer(buffer);
+        }
+    }
+
+}
@@ -937,30 +937,8 @@ public class FileUtils {
      * @throws IOFailure if there were errors running the sort process, or if the file does not exist.
      */
     public static void sortCrawlLog(File file, File toFile) {
-        ArgumentNotValid.checkNotNull(file, "File file");
-        ArgumentNotValid.checkNotNull(toFile, "File toFile");
-        if (!file.exists()) {
-            String errMsg = "The file '" + file.getAbsolutePath() + "' does not exist.";
-            log.warn(errMsg);
-            throw new IOFailure(errMsg);
-        }
-
-        File sortTempDir = null;
-        if (Settings.getBoolean(CommonSettings.UNIX_SORT_USE_COMMON_TEMP_DIR)) {
-            sortTempDir = FileUtils.getTempDir();
-            if (!sortTempDir.isDirectory()) {
-            	log.warn("We should be using commontempdir {} in the sort process, but the directory doesn't exist", 
-            			sortTempDir.getAbsolutePath());
-            	sortTempDir = null;
-            }
-        }
         boolean sortLikeCrawllog = true;
-        int error = ProcessUtils.runUnixSort(file, toFile, sortTempDir, sortLikeCrawllog);
-        if (error != 0) {
-            final String errMsg = "Error code " + error + " sorting crawl log '" + file + "'";
-            log.warn(errMsg);
-            throw new IOFailure(errMsg);
-        }
+        sortLines(file, toFile, sortLikeCrawllog, "crawl log");
     }
 
     /**
@@ -971,40 +949,34 @@ public class FileUtils {
      * @throws IOFailure if there were errors running the sort process, or if the file does not exist.
      */
     public static void sortCrawlLogOnTimestamp(File file, File toFile) {
-        ArgumentNotValid.checkNotNull(file, "File file");
-        ArgumentNotValid.checkNotNull(toFile, "File toFile");
-        if (!file.exists()) {
-            String errMsg = "The file '" + file.getAbsolutePath() + "' does not exist.";
-            log.warn(errMsg);
-            throw new IOFailure(errMsg);
-        }
-
-        File sortTempDir = null;
-        if (Settings.getBoolean(CommonSettings.UNIX_SORT_USE_COMMON_TEMP_DIR)) {
-            sortTempDir = FileUtils.getTempDir();
-            if (!sortTempDir.isDirectory()) {
-            	log.warn("We should be using commontempdir {} in the sort process, but the directory doesn't exist", 
-            			sortTempDir.getAbsolutePath());
-            	sortTempDir = null;
-            }
-        }
         boolean sortLikeCrawllog = false;
-        int error = ProcessUtils.runUnixSort(file, toFile, sortTempDir, sortLikeCrawllog);
-        if (error != 0) {
-            final String errMsg = "Error code " + error + " sorting crawl log '" + file + "'";
-            log.warn(errMsg);
-            throw new IOFailure(errMsg);
-        }
+        sortLines(file, toFile, sortLikeCrawllog, "crawl log");
     }
 
     /**
-     * Sort a CDX file according to our standard for CDX file sorting. This method depends on the Unix sort() command.
+     * Sort a CDX file according to our standard for CDX file sorting, which is the byte order of the lines, like the
+     * Unix sort command with LC_ALL=C.
      *
      * @param file The raw unsorted CDX file.
      * @param toFile The file that the result will be put into.
      * @throws IOFailure If the file does not exist, or could not be sorted
      */
     public static void sortCDX(File file, File toFile) {
+        boolean sortLikeCrawllog = false;
+        sortLines(file, toFile, sortLikeCrawllog, "cdx file");
+    }
+
+    /**
+     * Sort the lines of a file in byte order, either inside the JVM with an {@link ExternalSorter}, or with the Unix
+     * sort command if {@link CommonSettings#SORT_USE_UNIX_SORT} is true.
+     *
+     * @param file The file containing the unsorted data.
+     * @param toFile The file that the sorted data can be put into.
+     * @param sortLikeCrawllog If true, sort on the fourth field and then the whole line, like "sort -k 4b".
+     * @param description What kind of file is sorted, for error messages.
+     * @throws IOFailure If the file does not exist, or could not be sorted
+     */
+    private static void sortLines(File file, File toFile, boolean sortLikeCrawllog, String description) {
         ArgumentNotValid.checkNotNull(file, "File file");
         ArgumentNotValid.checkNotNull(toFile, "File toFile");
         if (!file.exists()) {
@@ -1012,27 +984,36 @@ public class FileUtils {
             log.warn(errMsg);
             throw new IOFailure(errMsg);
         }
-        boolean sortLikeCrawllog = false;
+
         File sortTempDir = null;
         if (Settings.getBoolean(CommonSettings.UNIX_SORT_USE_COMMON_TEMP_DIR)) {
             sortTempDir = FileUtils.getTempDir();
             if (!sortTempDir.isDirectory()) {
-            	log.warn("We should be using commontempdir {} in the sort process, but the directory doesn't exist", 
-            			sortTempDir.getAbsolutePath());
-            	sortTempDir = null;
+                log.warn("We should be using commontempdir {} in the sort process, but the directory doesn't exist",
+                        sortTempDir.getAbsolutePath());
+                sortTempDir = null;
             }
-
+        }
+        if (!Settings.getBoolean(CommonSettings.SORT_USE_UNIX_SORT)) {
+            try {
+                ExternalSorter.fromSettings(sortTempDir, sortLikeCrawllog).sort(file, toFile);
+            } catch (IOFailure e) {
+                log.warn("Error sorting {} '{}'", description, file.getAbsolutePath(), e);
+                throw e;
+            }
+            return;
         }
         int error = ProcessUtils.runUnixSort(file, toFile, sortTempDir, sortLikeCrawllog);
         if (error != 0) {
-            final String errMsg = "Error code " + error + " sorting cdx file '" + file.getAbsolutePath() + "'";
+            final String errMsg = "Error code " + error + " sorting " + description + " '" + file.getAbsolutePath()
+                    + "'";
             log.warn(errMsg);
             throw new IOFailure(errMsg);
         }
     }
 
     /**
-     * Sort a file using UNIX sort.
+     * Sort a file in byte order, like UNIX sort.
      *
      * @param file the file that you want to sort.
      * @param toFile The destination file.
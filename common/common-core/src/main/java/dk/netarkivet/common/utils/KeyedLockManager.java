@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IllegalState;
+
+/**
+ * Exclusive locks identified by strings, for example file names. Threads locking different keys never wait for each
+ * other, while threads locking the same key are serialized. A lock only exists while it is held or waited for, so the
+ * number of keys used over time does not matter, unlike when synchronizing on interned strings.
+ * <p>
+ * The locks are reentrant. They only guard against other threads in the same JVM; combine them with a
+ * {@link java.nio.channels.FileLock} to guard against other processes.
+ * <p>
+ * The time spent waiting for locks is counted. Usage:
+ * <pre>
+ * locks.lock(key);
+ * try {
+ *     ...
+ * } finally {
+ *     locks.unlock(key);
+ * }
+ * </pre>
+ */
+public class KeyedLockManager {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(KeyedLockManager.class);
+
+    /** The locks held or waited for, by key. Also used as lock for the entries. */
+    private final Map<String, Entry> locks = new HashMap<String, Entry>();
+
+    /** The number of times a lock has been taken. */
+    private final LongAdder acquisitions = new LongAdder();
+
+    /** The number of times a lock was held by another thread when asked for. */
+    private final LongAdder contended = new LongAdder();
+
+    /** The total number of nanoseconds spent waiting for locks. */
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * Take the lock of a key, waiting until no other thread holds it.
+     *
+     * @param key The key to lock.
+     * @throws ArgumentNotValid If key is null.
+     */
+    public void lock(String key) {
+        ArgumentNotValid.checkNotNull(key, "String key");
+        Entry entry;
+        synchronized (locks) {
+            entry = locks.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                locks.put(key, entry);
+            }
+            entry.users++;
+        }
+        if (!entry.lock.tryLock()) {
+            log.debug("Waiting for the lock on '{}'", key);
+            long start = System.nanoTime();
+            entry.lock.lock();
+            long waited = System.nanoTime() - start;
+            contended.increment();
+            waitNanos.add(waited);
+            log.debug("Got the lock on '{}' after waiting {} ms", key, TimeUnit.NANOSECONDS.toMillis(waited));
+        }
+        acquisitions.increment();
+    }
+
+    /**
+     * Release the lock of a key taken by this thread with {@link #lock(String)}.
+     *
+     * @param key The key to unlock.
+     * @throws ArgumentNotValid If key is null.
+     * @throws IllegalState If this thread does not hold the lock of the key.
+     */
+    public void unlock(String key) {
+        ArgumentNotValid.checkNotNull(key, "String key");
+        synchronized (locks) {
+            Entry entry = locks.get(key);
+            if (entry == null || !entry.lock.isHeldByCurrentThread()) {
+                throw new IllegalState("The lock on '" + key + "' is not held by this thread");
+            }
+            entry.lock.unlock();
+            if (--entry.users == 0) {
+                locks.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @return The number of keys currently locked or waited for.
+     */
+    public int getActiveKeys() {
+        synchronized (locks) {
+            return locks.size();
+        }
+    }
+
+    /**
+     * @return The number of times a lock has been taken.
+     */
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * @return The number of times a lock had to be waited for, because another thread held it.
+     */
+    public long getContendedAcquisitions() {
+        return contended.sum();
+    }
+
+    /**
+     * @return The total number of milliseconds spent waiting for locks held by other threads.
+     */
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+    }
+
+    /** The lock of a key, and the number of times it is held or waited for. */
+    private static class Entry {
+        /** The lock. */
+        final ReentrantLock lock = new ReentrantLock();
+        /** The number of lock calls not yet matched by an unlock call. Guarded by the map of locks. */
+        int users;
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * A trie of public suffixes (TLDs), keyed on the characters of the suffixes read from right to left. It is used to find
+ * the domain name part of a hostname in a single pass from the end of the hostname, without building a regular
+ * expression of all known suffixes, and without allocating objects for the lookup.
+ * <p>
+ * The lookups have the same semantics as the regular expressions in {@link TLD}: A domain name is a single name part
+ * consisting of characters matching {@link DomainUtils#DOMAINNAME_CHAR_REGEX_STRING} followed by a dot and a known
+ * suffix, and of several candidates the one with the longest suffix wins. Lookups are case sensitive.
+ * <p>
+ * Instances are immutable once constructed, and may be shared between threads.
+ */
+public final class PublicSuffixTrie {
+
+    /** Node in the trie. The children are kept sorted on their key, to allow binary search. */
+    private static final class Node {
+        /** Shared empty key array for leaf nodes. */
+        private static final char[] NO_KEYS = new char[0];
+        /** Shared empty child array for leaf nodes. */
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        /** The sorted keys of the children of this node. */
+        private char[] keys = NO_KEYS;
+        /** The children of this node, in the same order as the keys. */
+        private Node[] children = NO_CHILDREN;
+        /** True if the characters on the path from the root to this node form a known suffix. */
+        private boolean isSuffix;
+
+        /**
+         * Find a child of this node.
+         *
+         * @param c The key of the child.
+         * @return The child, or null if this node has no child with the given key.
+         */
+        private Node getChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        /**
+         * Find a child of this node, adding it if not present.
+         *
+         * @param c The key of the child.
+         * @return The (possibly new) child.
+         */
+        private Node getOrAddChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int insertAt = -(i + 1);
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            Node child = new Node();
+            newKeys[insertAt] = c;
+            newChildren[insertAt] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+
+    /** The root of the trie, representing the empty suffix. */
+    private final Node root = new Node();
+
+    /** The number of distinct suffixes in the trie. */
+    private int size;
+
+    /**
+     * Build a trie from a collection of suffixes, without leading dots (e.g. "dk" and "co.uk").
+     *
+     * @param suffixes The known suffixes.
+     * @throws ArgumentNotValid if suffixes is null.
+     */
+    public PublicSuffixTrie(Collection<String> suffixes) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(suffixes, "Collection<String> suffixes");
+        for (String suffix : suffixes) {
+            if (suffix == null || suffix.isEmpty()) {
+                continue;
+            }
+            Node node = root;
+            for (int i = suffix.length() - 1; i >= 0; i--) {
+                node = node.getOrAddChild(suffix.charAt(i));
+            }
+            if (!node.isSuffix) {
+                node.isSuffix = true;
+                size++;
+            }
+        }
+    }
+
+    /**
+     * @return The number of distinct suffixes in this trie.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether a part of a character sequence is exactly a known suffix.
+     *
+     * @param s The character sequence.
+     * @param start The start of the part to check (inclusive).
+     * @param end The end of the part to check (exclusive).
+     * @return True if s[start, end) is a known suffix.
+     */
+    public boolean isSuffix(CharSequence s, int start, int end) {
+        checkBounds(s, start, end);
+        Node node = root;
+        for (int i = end - 1; i >= start && node != null; i--) {
+            node = node.getChild(s.charAt(i));
+        }
+        return node != null && node != root && node.isSuffix;
+    }
+
+    /**
+     * Check whether a part of a character sequence is a domain name, that is a single name part followed by a dot and
+     * a known suffix. This does not accept IP addresses.
+     *
+     * @param s The character sequence.
+     * @param start The start of the part to check (inclusive).
+     * @param end The end of the part to check (exclusive).
+     * @return True if s[start, end) is a domain name.
+     */
+    public boolean isDomainName(CharSequence s, int start, int end) {
+        checkBounds(s, start, end);
+        int dot = start;
+        while (dot < end && s.charAt(dot) != '.') {
+            dot++;
+        }
+        return dot < end && isNamePart(s, start, dot) && isSuffix(s, dot + 1, end);
+    }
+
+    /**
+     * Find the domain name of a hostname, that is the longest known suffix of the hostname that is preceded by a dot
+     * and a valid name part. This does not handle IP addresses.
+     *
+     * @param s The character sequence containing the hostname.
+     * @param start The start of the hostname (inclusive).
+     * @param end The end of the hostname (exclusive).
+     * @return The index in s where the domain name starts (it always ends at end), or -1 if the hostname does not end
+     * with a domain name.
+     */
+    public int domainNameStart(CharSequence s, int start, int end) {
+        checkBounds(s, start, end);
+        int domainStart = -1;
+        Node node = root;
+        for (int i = end - 1; i > start && node != null; i--) {
+            char c = s.charAt(i);
+            if (c == '.' && node.isSuffix && node != root) {
+                // s[i + 1, end) is a known suffix, check the name part in front of the dot.
+                int partStart = i - 1;
+                while (partStart >= start && s.charAt(partStart) != '.') {
+                    partStart--;
+                }
+                partStart++;
+                if (isNamePart(s, partStart, i)) {
+                    // Longer suffixes are found later, and take precedence.
+                    domainStart = partStart;
+                }
+            }
+            node = node.getChild(c);
+        }
+        return domainStart;
+    }
+
+    /**
+     * Check that a part of a character sequence is a valid, non-empty name part of a domain name.
+     *
+     * @param s The character sequence.
+     * @param start The start of the part to check (inclusive).
+     * @param end The end of the part to check (exclusive).
+     * @return True if the part is non-empty and all characters are valid in a domain name part.
+     */
+    private static boolean isNamePart(CharSequence s, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (!isDomainNameChar(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a character is valid in a domain name part. This is the character class of
+     * {@link DomainUtils#DOMAINNAME_CHAR_REGEX_STRING}: letters, digits, hyphens and anything outside of ASCII.
+     *
+     * @param c A character.
+     * @return True if the character is valid in a domain name part.
+     */
+    static boolean isDomainNameChar(char c) {
+        return c == '-' || (c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c > '\u007f';
+    }
+
+    /**
+     * Check the arguments for a lookup.
+     *
+     * @param s The character sequence.
+     * @param start The start of the part to check (inclusive).
+     * @param end The end of the part to check (exclusive).
+     * @throws ArgumentNotValid if s is null or start and end are not a valid range in s.
+     */
+    private static void checkBounds(CharSequence s, int start, int end) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(s, "CharSequence s");
+        if (start < 0 || end > s.length() || start > end) {
+            throw new ArgumentNotValid("Invalid range [" + start + ", " + end + ") of sequence of length "
+                    + s.length());
+        }
+    }
+
+}
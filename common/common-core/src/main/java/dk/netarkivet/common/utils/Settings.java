@@ -26,7 +26,9 @@ import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +45,11 @@ import dk.netarkivet.common.exceptions.UnknownID;
  * specified by the system property {@link #SETTINGS_FILE_PROPERTY}, multiple files can be separated by
  * {@link File#pathSeparator}, that is ':' on linux and ';' on windows; or if that property is not set, the default
  * location is {@link #DEFAULT_SETTINGS_FILEPATH}.
+ * <p>
+ * Lookups are served from an immutable snapshot of all loaded settings, so they do not need to lock or evaluate XPath
+ * expressions. The snapshot is rebuilt by {@link #reload()} and after the settings have been changed by
+ * {@link #set(String, String...)} or {@link #addDefaultClasspathSettings(String)}. The number of lookups per key is
+ * counted by {@link SettingsLookupCounter}.
  */
 public class Settings {
 
@@ -61,6 +68,12 @@ public class Settings {
      */
     private static final List<SimpleXml> defaultClasspathSettingsXmlList;
 
+    /**
+     * An immutable map from every key in the loaded settings to its value(s), taken from the first settings xml that
+     * contains the key. Null when it must be rebuilt from the settings xml files, which is done on the next lookup.
+     */
+    private static volatile Map<String, SettingValue> snapshot;
+
     static {
         // All static initialization in one place
         fileSettingsXmlList = Collections.synchronizedList(new ArrayList<SimpleXml>());
@@ -126,27 +139,17 @@ public class Settings {
      */
     public static String get(String key) throws UnknownID, IOFailure, ArgumentNotValid {
         ArgumentNotValid.checkNotNullOrEmpty(key, "String key");
+        SettingsLookupCounter.getInstance().count(key);
         String val = System.getProperty(key);
         if (val != null) {
             return val;
         }
 
-        // Key not in System.properties try loaded data instead
-        synchronized (fileSettingsXmlList) {
-            for (SimpleXml settingsXml : fileSettingsXmlList) {
-                if (settingsXml.hasKey(key)) {
-                    return settingsXml.getString(key);
-                }
-            }
-        }
-
-        // Key not in file based settings, try classpath settings instead
-        synchronized (defaultClasspathSettingsXmlList) {
-            for (SimpleXml settingsXml : defaultClasspathSettingsXmlList) {
-                if (settingsXml.hasKey(key)) {
-                    return settingsXml.getString(key);
-                }
-            }
+        // Key not in System.properties try loaded data instead. The snapshot holds the value from the first file
+        // based settings with the key, falling back to the classpath settings.
+        SettingValue setting = getSnapshot().get(key);
+        if (setting != null) {
+            return setting.value;
         }
         throw new UnknownID("No match for key '" + key + "' in settings");
     }
@@ -250,6 +253,7 @@ public class Settings {
      */
     public static String[] getAll(String key) throws UnknownID, ArgumentNotValid {
         ArgumentNotValid.checkNotNullOrEmpty(key, "key");
+        SettingsLookupCounter.getInstance().count(key);
         String val = System.getProperty(key);
         if (val != null) {
             return new String[] {val};
@@ -258,31 +262,12 @@ public class Settings {
             System.out.print("The list of loaded data settings is empty. Is this OK?");
         }
         // Key not in System.properties try loaded data instead
-        synchronized (fileSettingsXmlList) {
-            for (SimpleXml settingsXml : fileSettingsXmlList) {
-                List<String> result = settingsXml.getList(key);
-                if (result.size() == 0) {
-                    continue;
-                }
-                if (log.isDebugEnabled()) {
-                    log.debug("Value found in loaded data: {}", StringUtils.conjoin(",", result));
-                }
-                return result.toArray(new String[result.size()]);
-            }
-        }
-
-        // Key not in file based settings, try settings from classpath
-        synchronized (defaultClasspathSettingsXmlList) {
-            for (SimpleXml settingsXml : defaultClasspathSettingsXmlList) {
-                List<String> result = settingsXml.getList(key);
-                if (result.size() == 0) {
-                    continue;
-                }
-                if (log.isDebugEnabled()) {
-                    log.debug("Value found in classpath data: {}", StringUtils.conjoin(",", result));
-                }
-                return result.toArray(new String[result.size()]);
+        SettingValue setting = getSnapshot().get(key);
+        if (setting != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Value found in loaded data: {}", StringUtils.conjoin(",", setting.values));
             }
+            return setting.values.clone();
         }
         throw new UnknownID("No match for key '" + key + "' in settings");
     }
@@ -298,7 +283,7 @@ public class Settings {
      * @throws ArgumentNotValid if key or values are null
      * @throws UnknownID if the key does not already exist
      */
-    public static void set(String key, String... values) {
+    public static synchronized void set(String key, String... values) {
         ArgumentNotValid.checkNotNullOrEmpty(key, "key");
         ArgumentNotValid.checkNotNull(values, "values");
 
@@ -311,6 +296,7 @@ public class Settings {
         } else {
             simpleXml.add(key, values);
         }
+        snapshot = null;
     }
 
     /**
@@ -339,6 +325,8 @@ public class Settings {
             fileSettingsXmlList.clear();
             fileSettingsXmlList.addAll(simpleXmlList);
         }
+        snapshot = null;
+        buildSnapshot();
     }
 
     /**
@@ -346,17 +334,88 @@ public class Settings {
      *
      * @param defaultClasspathSettingsPath the given default classpath setting.
      */
-    public static void addDefaultClasspathSettings(String defaultClasspathSettingsPath) {
+    public static synchronized void addDefaultClasspathSettings(String defaultClasspathSettingsPath) {
         ArgumentNotValid.checkNotNullOrEmpty(defaultClasspathSettingsPath, "String defaultClasspathSettingsPath");
         InputStream stream = Thread.currentThread().getContextClassLoader()
                 .getResourceAsStream(defaultClasspathSettingsPath);
         if (stream != null) {
             defaultClasspathSettingsXmlList.add(new SimpleXml(stream));
+            snapshot = null;
         } else {
             log.warn("Unable to read the settings file represented by path: '{}'", defaultClasspathSettingsPath);
         }
     }
 
+    /**
+     * Get the current snapshot of the loaded settings, building it if the settings have changed since it was last
+     * built.
+     *
+     * @return An immutable map from settings keys to their values.
+     */
+    private static Map<String, SettingValue> getSnapshot() {
+        Map<String, SettingValue> current = snapshot;
+        if (current == null) {
+            current = buildSnapshot();
+        }
+        return current;
+    }
+
+    /**
+     * Build the snapshot of the loaded settings, unless another thread has already done so. File based settings take
+     * precedence over classpath settings, and earlier settings files over later ones.
+     *
+     * @return An immutable map from settings keys to their values.
+     */
+    private static synchronized Map<String, SettingValue> buildSnapshot() {
+        if (snapshot == null) {
+            Map<String, SettingValue> newSnapshot = new HashMap<String, SettingValue>();
+            addToSnapshot(newSnapshot, fileSettingsXmlList);
+            addToSnapshot(newSnapshot, defaultClasspathSettingsXmlList);
+            snapshot = Collections.unmodifiableMap(newSnapshot);
+            log.debug("Built settings snapshot with {} keys", newSnapshot.size());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Add the keys of the given settings xml files to the snapshot being built, unless already present.
+     *
+     * @param newSnapshot The snapshot being built.
+     * @param settingsXmlList The settings xml files to add keys from.
+     */
+    private static void addToSnapshot(Map<String, SettingValue> newSnapshot, List<SimpleXml> settingsXmlList) {
+        synchronized (settingsXmlList) {
+            for (SimpleXml settingsXml : settingsXmlList) {
+                for (String key : settingsXml.getKeys()) {
+                    if (!newSnapshot.containsKey(key) && settingsXml.hasKey(key)) {
+                        List<String> values = settingsXml.getList(key);
+                        newSnapshot.put(key, new SettingValue(settingsXml.getString(key), values.toArray(new String[values
+                                .size()])));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The value(s) of a single setting in the snapshot.
+     */
+    private static final class SettingValue {
+        /** The trimmed text of the first element, as returned by {@link Settings#get(String)}. */
+        private final String value;
+        /** The text of all the elements, as returned by {@link Settings#getAll(String)}. */
+        private final String[] values;
+
+        /**
+         * @param value The trimmed text of the first element.
+         * @param values The text of all the elements.
+         */
+        private SettingValue(String value, String[] values) {
+            this.value = value;
+            this.values = values;
+        }
+    }
+
     /**
      * Get a tree view of a part of the settings. Note: settings read with this mechanism do not support overriding with
      * system properties!
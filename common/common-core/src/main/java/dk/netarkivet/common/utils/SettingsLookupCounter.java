@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.management.SingleMBeanObject;
+
+/**
+ * Counts the lookups made through {@link Settings}, per settings key. Counting is done without locking, so it can be
+ * done on every lookup. The counts can be read over JMX once {@link #register()} has been called.
+ */
+public class SettingsLookupCounter implements SettingsLookupStatistics {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(SettingsLookupCounter.class);
+
+    /** The single instance of this class. */
+    private static final SettingsLookupCounter instance = new SettingsLookupCounter();
+
+    /** The lookup counts for each key looked up. */
+    private final ConcurrentMap<String, LongAdder> counts = new ConcurrentHashMap<String, LongAdder>();
+
+    /** The MBean this object is exposed as, or null if not registered. */
+    private SingleMBeanObject<SettingsLookupStatistics> singleMBeanObject;
+
+    /** Private constructor to enforce the singleton. */
+    private SettingsLookupCounter() {
+    }
+
+    /**
+     * @return The single instance of this class.
+     */
+    public static SettingsLookupCounter getInstance() {
+        return instance;
+    }
+
+    /**
+     * Count a lookup of the given key.
+     *
+     * @param key The settings key looked up.
+     */
+    void count(String key) {
+        LongAdder counter = counts.get(key);
+        if (counter == null) {
+            LongAdder newCounter = new LongAdder();
+            counter = counts.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.increment();
+    }
+
+    /**
+     * Get the number of lookups of the given key.
+     *
+     * @param key A settings key.
+     * @return The number of times the key has been looked up since startup or the last reset.
+     */
+    public long getLookupCount(String key) {
+        LongAdder counter = counts.get(key);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    @Override
+    public long getTotalLookups() {
+        long total = 0;
+        for (LongAdder counter : counts.values()) {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public String[] getLookupCounts() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>();
+        for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<String, Long>(entry.getKey(), entry.getValue().sum()));
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                int result = o2.getValue().compareTo(o1.getValue());
+                return result != 0 ? result : o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        String[] result = new String[entries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = entries.get(i).getKey() + ": " + entries.get(i).getValue();
+        }
+        return result;
+    }
+
+    @Override
+    public void resetLookupCounts() {
+        counts.clear();
+    }
+
+    /**
+     * Registers this object as an mbean. Failing to do so is logged, but otherwise ignored, since the statistics are
+     * not essential to the application.
+     */
+    public synchronized void register() {
+        if (singleMBeanObject != null) {
+            return;
+        }
+        try {
+            singleMBeanObject = new SingleMBeanObject<SettingsLookupStatistics>("dk.netarkivet.common.settings",
+                    this, SettingsLookupStatistics.class, ManagementFactory.getPlatformMBeanServer());
+            singleMBeanObject.register();
+        } catch (Exception e) {
+            log.warn("Unable to register the settings lookup statistics as an mbean", e);
+            singleMBeanObject = null;
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+/**
+ * An interface for reading how often the individual settings have been looked up through {@link Settings}. Exposed
+ * as an MBean by {@link SettingsLookupCounter}.
+ */
+public interface SettingsLookupStatistics {
+
+    /**
+     * Get the total number of lookups made through {@link Settings#get(String)} and {@link Settings#getAll(String)}
+     * since startup or the last reset.
+     *
+     * @return The total number of lookups.
+     */
+    long getTotalLookups();
+
+    /**
+     * Get the number of lookups for each settings key, as strings of the form "key: count", with the most looked up
+     * keys first.
+     *
+     * @return The lookup count for each key looked up since startup or the last reset.
+     */
+    String[] getLookupCounts();
+
+    /**
+     * Reset all lookup counts to zero.
+     */
+    void resetLookupCounts();
+
+}
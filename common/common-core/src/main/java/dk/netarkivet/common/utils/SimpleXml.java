@@ -28,8 +28,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.dom4j.Document;
 import org.dom4j.Element;
@@ -279,6 +281,33 @@ public class SimpleXml {
         return results;
     }
 
+    /**
+     * Get the dotted paths of all elements in the document, in document order and without duplicates. Each returned
+     * path can be given to {@link #hasKey(String)}, {@link #getString(String)} and {@link #getList(String)}.
+     *
+     * @return the set of keys for all elements in this document
+     */
+    public Set<String> getKeys() {
+        Set<String> keys = new LinkedHashSet<String>();
+        addKeys(xmlDoc.getRootElement(), xmlDoc.getRootElement().getName(), keys);
+        return keys;
+    }
+
+    /**
+     * Add the key of the given element and the keys of all its descendants to the given set.
+     *
+     * @param element the element to add keys for
+     * @param key the dotted path of the element
+     * @param keys the set to add the keys to
+     */
+    private void addKeys(Element element, String key, Set<String> keys) {
+        keys.add(key);
+        for (Object child : element.elements()) {
+            Element childElement = (Element) child;
+            addKeys(childElement, key + "." + childElement.getName(), keys);
+        }
+    }
+
     /**
      * Save the current settings as an XML file.
      *
@@ -23,10 +23,22 @@
 
 package dk.netarkivet.common.utils.batch;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,11 +46,19 @@ import org.slf4j.LoggerFactory;
 import dk.netarkivet.common.CommonSettings;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.BatchTermination;
+import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.Settings;
 
 /**
  * Class for running FileBatchJobs on a set of local files. The constructor takes an array of files to be processed and
  * the run() method takes a FileBatchJob and applies it to each file in turn.
+ * <p>
+ * If more than one thread is allowed (see {@link CommonSettings#BATCH_MAX_THREADS}) and the job allows concurrent
+ * processing (see {@link FileBatchJob#allowsConcurrentProcessing()}, which jobs must opt in to), the files are grouped
+ * by the directory they reside in, and the directories are processed in parallel with one thread per directory. In a
+ * bitarchive each archive directory is normally a separate mount, so each disk is read by exactly one thread. The
+ * output of each file is buffered in memory by the thread processing it and appended to the output of the job when the
+ * file is done, so the output of a single file is never interleaved with that of others.
  */
 public class BatchLocalFiles {
 
@@ -48,6 +68,9 @@ public class BatchLocalFiles {
     /** The list of files to run batch jobs on. */
     private File[] files;
 
+    /** The maximum number of threads processing files concurrently. */
+    private final int maxThreads;
+
     /** The last time logging was performed. Initial 0 to ensure logging the first time. */
     private long lastLoggingDate = 0;
     /** The time when the batchjob was started. */
@@ -55,17 +78,31 @@ public class BatchLocalFiles {
 
     /**
      * Given an array of files, constructs a BatchLocalFiles instance to be used in running a batch job over those
-     * files.
+     * files. The number of threads used is read from settings.
      *
      * @param incomingFiles The files that should be used processed by the batchjob
      * @throws ArgumentNotValid if incomingFiles is null or contains a null entry
      */
     public BatchLocalFiles(File[] incomingFiles) throws ArgumentNotValid {
+        this(incomingFiles, Settings.getInt(CommonSettings.BATCH_MAX_THREADS));
+    }
+
+    /**
+     * Given an array of files, constructs a BatchLocalFiles instance to be used in running a batch job over those
+     * files using at most the given number of threads.
+     *
+     * @param incomingFiles The files that should be used processed by the batchjob
+     * @param maxThreads The maximum number of threads processing files concurrently. 1 means sequential processing.
+     * @throws ArgumentNotValid if incomingFiles is null or contains a null entry, or if maxThreads is not positive.
+     */
+    public BatchLocalFiles(File[] incomingFiles, int maxThreads) throws ArgumentNotValid {
         ArgumentNotValid.checkNotNull(incomingFiles, "incomingFiles");
+        ArgumentNotValid.checkPositive(maxThreads, "int maxThreads");
         for (int i = 0; i < incomingFiles.length; i++) {
             ArgumentNotValid.checkNotNull(incomingFiles[i], "Null element at index " + i + " in file list for batch.");
         }
         this.files = incomingFiles;
+        this.maxThreads = maxThreads;
     }
 
     /**
@@ -82,37 +119,14 @@ public class BatchLocalFiles {
         job.filesFailed = new HashSet<File>();
         try {
             job.initialize(os);
-            // count the files (used for logging).
-            int fileCount = 0;
             // the time in milliseconds between the status logging
             long logInterval = Settings.getLong(CommonSettings.BATCH_LOGGING_INTERVAL);
             // get the time for starting the batchjob (used for logging).
             startTime = new Date().getTime();
-            // Process each file:
-            for (File file : files) {
-                fileCount++;
-                if (job.getFilenamePattern().matcher(file.getName()).matches()) {
-                    long currentTime = new Date().getTime();
-                    // perform logging if necessary.
-                    if (lastLoggingDate + logInterval < currentTime) {
-                        log.info(
-                                "The batchjob '{}' has run for {} seconds and has reached file '{}', which is number {} out of {}",
-                                job.getClass(), (currentTime - startTime) / 1000, file.getName(), fileCount,
-                                files.length);
-                        // set that we have just logged.
-                        lastLoggingDate = currentTime;
-                    }
-                    processFile(job, file, os);
-                }
-
-                // check whether the batchjob should stop.
-                if (Thread.currentThread().isInterrupted()) {
-                    // log and throw an error (not exception, they are caught!)
-                    String errMsg = "The batchjob '" + job.toString() + "' has been interrupted and will terminate!";
-                    log.warn(errMsg);
-                    // TODO make new exception to thrown instead.
-                    throw new BatchTermination(errMsg);
-                }
+            if (maxThreads > 1 && job.allowsConcurrentProcessing()) {
+                runConcurrently(job, os, logInterval);
+            } else {
+                runSequentially(job, os, logInterval);
             }
         } catch (Exception e) {
             // TODO Consider adding this initialization exception to the list
@@ -143,7 +157,150 @@ public class BatchLocalFiles {
     }
 
     /**
-     * Process a single file.
+     * Run the job on each file in turn in the current thread.
+     *
+     * @param job The job to run
+     * @param os Where to put the output.
+     * @param logInterval The time in milliseconds between the status logging
+     * @throws BatchTermination If the current thread is interrupted.
+     */
+    private void runSequentially(FileBatchJob job, OutputStream os, long logInterval) throws BatchTermination {
+        // count the files (used for logging).
+        int fileCount = 0;
+        // Process each file:
+        for (File file : files) {
+            fileCount++;
+            if (job.getFilenamePattern().matcher(file.getName()).matches()) {
+                logProgress(job, file, fileCount, files.length, logInterval);
+                processFile(job, file, os);
+            }
+
+            // check whether the batchjob should stop.
+            checkInterrupted(job);
+        }
+    }
+
+    /**
+     * Run the job on the files with one thread per directory, using at most maxThreads threads. Returns when all files
+     * have been processed.
+     *
+     * @param job The job to run
+     * @param os Where to put the output.
+     * @param logInterval The time in milliseconds between the status logging
+     * @throws BatchTermination If the current thread is interrupted.
+     * @throws IOFailure If the output of a file could not be written to os.
+     */
+    private void runConcurrently(final FileBatchJob job, final OutputStream os, final long logInterval)
+            throws BatchTermination, IOFailure {
+        final Map<File, List<File>> filesPerDir = new LinkedHashMap<File, List<File>>();
+        int matchingFiles = 0;
+        for (File file : files) {
+            if (job.getFilenamePattern().matcher(file.getName()).matches()) {
+                File dir = file.getAbsoluteFile().getParentFile();
+                List<File> dirFiles = filesPerDir.get(dir);
+                if (dirFiles == null) {
+                    dirFiles = new ArrayList<File>();
+                    filesPerDir.put(dir, dirFiles);
+                }
+                dirFiles.add(file);
+                matchingFiles++;
+            }
+        }
+        final int totalFiles = matchingFiles;
+        final AtomicInteger fileCount = new AtomicInteger();
+        int threads = Math.min(maxThreads, Math.max(filesPerDir.size(), 1));
+        log.debug("Running batchjob '{}' on {} files in {} directories using {} threads", job.getClass(),
+                totalFiles, filesPerDir.size(), threads);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<Future<?>>();
+        try {
+            for (final List<File> dirFiles : filesPerDir.values()) {
+                results.add(executor.submit(new Runnable() {
+                    public void run() {
+                        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                        for (File file : dirFiles) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                return;
+                            }
+                            logProgress(job, file, fileCount.incrementAndGet(), totalFiles, logInterval);
+                            buffer.reset();
+                            processFile(job, file, buffer);
+                            synchronized (os) {
+                                try {
+                                    buffer.writeTo(os);
+                                } catch (IOException e) {
+                                    throw new IOFailure("Could not write output from processing file '" + file
+                                            + "' with job " + job, e);
+                                }
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            // Wait for the threads to finish their current file, so the job is not finished while files are still
+            // being processed.
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e1) {
+                log.debug("Interrupted while waiting for batch threads to stop", e1);
+            }
+            Thread.currentThread().interrupt();
+            checkInterrupted(job);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOFailure("Unexpected error while running batchjob " + job, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Log the status of the job, if the logging interval has passed since the last logging.
+     *
+     * @param job The job that does the processing
+     * @param file The file about to be processed
+     * @param fileCount The number of the file about to be processed
+     * @param totalFiles The number of files
+     * @param logInterval The time in milliseconds between the status logging
+     */
+    private synchronized void logProgress(FileBatchJob job, File file, int fileCount, int totalFiles,
+            long logInterval) {
+        long currentTime = new Date().getTime();
+        // perform logging if necessary.
+        if (lastLoggingDate + logInterval < currentTime) {
+            log.info("The batchjob '{}' has run for {} seconds and has reached file '{}', which is number {} out of {}",
+                    job.getClass(), (currentTime - startTime) / 1000, file.getName(), fileCount, totalFiles);
+            // set that we have just logged.
+            lastLoggingDate = currentTime;
+        }
+    }
+
+    /**
+     * Throw a BatchTermination if the current thread has been interrupted.
+     *
+     * @param job The job that is running
+     * @throws BatchTermination If the current thread is interrupted.
+     */
+    private void checkInterrupted(FileBatchJob job) throws BatchTermination {
+        if (Thread.currentThread().isInterrupted()) {
+            // log and throw an error (not exception, they are caught!)
+            String errMsg = "The batchjob '" + job.toString() + "' has been interrupted and will terminate!";
+            log.warn(errMsg);
+            // TODO make new exception to thrown instead.
+            throw new BatchTermination(errMsg);
+        }
+    }
+
+    /**
+     * Process a single file. May be called concurrently for different files.
      *
      * @param job The job that does the processing
      * @param file The file to process
@@ -160,9 +317,11 @@ public class BatchLocalFiles {
             // job.addException(currentFile, currentOffset, outputOffset, e)
             log.warn("Exception while processing file {} with job {}", file, job, e);
         }
-        job.noOfFilesProcessed++;
-        if (!success) {
-            job.filesFailed.add(file);
+        synchronized (job) {
+            job.noOfFilesProcessed++;
+            if (!success) {
+                job.filesFailed.add(file);
+            }
         }
     }
 
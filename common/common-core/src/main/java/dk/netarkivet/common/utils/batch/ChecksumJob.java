@@ -86,6 +86,16 @@ public class ChecksumJob extends FileBatchJob {
         return true;
     }
 
+    /**
+     * Each file is checksummed on its own and gives one line of output, so files may be processed concurrently.
+     *
+     * @return true
+     */
+    @Override
+    public boolean allowsConcurrentProcessing() {
+        return true;
+    }
+
     /**
      * Finishing the job requires nothing particular.
      *
@@ -189,6 +189,18 @@ public abstract class FileBatchJob implements Serializable {
         return exceptions;
     }
 
+    /**
+     * Tells whether processFile() may be called concurrently for different files. If true, BatchLocalFiles may process
+     * several files at the same time, each with its own OutputStream which is held in memory until the file is done and
+     * then appended to the job output. Only jobs that keep no state between processFile() calls and write little output
+     * per file should override this to return true.
+     *
+     * @return True if files may be processed concurrently by this job. False by default.
+     */
+    public boolean allowsConcurrentProcessing() {
+        return false;
+    }
+
     /**
      * Processes the concatenated result files. This is intended to be overridden by batchjobs, who they wants a
      * different post-processing process than concatenation.
@@ -215,7 +227,7 @@ public abstract class FileBatchJob implements Serializable {
      * offset could not be found.
      * @param e The exception thrown. This exception must be serializable.
      */
-    protected void addException(File currentFile, long currentOffset, long outputOffset, Exception e) {
+    protected synchronized void addException(File currentFile, long currentOffset, long outputOffset, Exception e) {
         if (!maxExceptionsReached()) {
             exceptions.add(new ExceptionOccurrence(currentFile, currentOffset, outputOffset, e));
         } else {
@@ -234,7 +246,7 @@ public abstract class FileBatchJob implements Serializable {
      * offset could not be found.
      * @param e The exception thrown. This exception must be serializable.
      */
-    protected void addInitializeException(long outputOffset, Exception e) {
+    protected synchronized void addInitializeException(long outputOffset, Exception e) {
         if (!maxExceptionsReached()) {
             exceptions.add(new ExceptionOccurrence(true, outputOffset, e));
         } else {
@@ -250,7 +262,7 @@ public abstract class FileBatchJob implements Serializable {
      * offset could not be found.
      * @param e The exception thrown. This exception must be serializable.
      */
-    protected void addFinishException(long outputOffset, Exception e) {
+    protected synchronized void addFinishException(long outputOffset, Exception e) {
         if (!maxExceptionsReached()) {
             exceptions.add(new ExceptionOccurrence(false, outputOffset, e));
         } else {
@@ -279,7 +291,7 @@ public abstract class FileBatchJob implements Serializable {
      *
      * @return True if the maximum number of exceptions (MAX_EXCEPTIONS) has been recorded already.
      */
-    protected boolean maxExceptionsReached() {
+    protected synchronized boolean maxExceptionsReached() {
         return exceptions.size() >= ExceptionOccurrence.MAX_EXCEPTIONS;
     }
 
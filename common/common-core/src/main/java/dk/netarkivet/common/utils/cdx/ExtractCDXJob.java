@@ -143,6 +143,16 @@ public class ExtractCDXJob extends ARCBatchJob {
         printFields(fieldsread, os);
     }
 
+    /**
+     * CDX lines are generated from each record alone, so files may be processed concurrently.
+     *
+     * @return true
+     */
+    @Override
+    public boolean allowsConcurrentProcessing() {
+        return true;
+    }
+
     /**
      * End of the batch job.
      *
@@ -184,6 +184,16 @@ public class WARCExtractCDXJob extends WARCBatchJob {
         printFields(fieldsread, os);
     }
 
+    /**
+     * CDX lines are generated from each record alone, so files may be processed concurrently.
+     *
+     * @return true
+     */
+    @Override
+    public boolean allowsConcurrentProcessing() {
+        return true;
+    }
+
     /**
      * End of the batch job.
      *
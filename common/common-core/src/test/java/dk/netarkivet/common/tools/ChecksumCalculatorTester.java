@@ -26,15 +26,22 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
 
 import org.junit.Test;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.FileDigester;
 
 public class ChecksumCalculatorTester {
 
@@ -66,6 +73,48 @@ public class ChecksumCalculatorTester {
         }
     }
 
+    @Test
+    public void testCalculateDigestsOfFile() throws IOException, NoSuchAlgorithmException {
+        SecureRandom random = new SecureRandom();
+        // Larger than the buffer of the FileDigester, and not a multiple of it
+        byte[] payload = new byte[3 * 1024 * 1024 + 17];
+        random.nextBytes(payload);
+        File file = writeTempFile(payload);
+        File emptyFile = writeTempFile(new byte[0]);
+
+        Map<String, String> digests = ChecksumCalculator.calculateDigests(file, ChecksumCalculator.MD5,
+                ChecksumCalculator.SHA1, ChecksumCalculator.SHA256);
+        assertEquals(Arrays.asList(ChecksumCalculator.MD5, ChecksumCalculator.SHA1, ChecksumCalculator.SHA256),
+                Arrays.asList(digests.keySet().toArray()));
+        for (String algorithm : digests.keySet()) {
+            MessageDigest md = MessageDigest.getInstance(algorithm);
+            assertEquals("The " + algorithm + " digest should be calculated in the same pass",
+                    convertToHex(md.digest(payload), md.getDigestLength()), digests.get(algorithm));
+        }
+        assertEquals(ChecksumCalculator.calculateMd5(new ByteArrayInputStream(payload)),
+                ChecksumCalculator.calculateMd5(file));
+        assertEquals(ChecksumCalculator.calculateMd5(new byte[0]), ChecksumCalculator.calculateMd5(emptyFile));
+
+        Map<File, Map<String, byte[]>> fileDigests = FileDigester.digestFiles(
+                Arrays.asList(file, emptyFile, new File(file.getPath() + ".missing")), 2, ChecksumCalculator.MD5);
+        assertEquals("Files that cannot be read should be left out", Arrays.asList(file, emptyFile),
+                Arrays.asList(fileDigests.keySet().toArray()));
+        assertEquals(digests.get(ChecksumCalculator.MD5),
+                ChecksumCalculator.toHex(fileDigests.get(file).get(ChecksumCalculator.MD5)));
+    }
+
+    private static File writeTempFile(byte[] content) throws IOException {
+        File file = File.createTempFile("checksum", ".bin");
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
     /** The radix used for converting to hex (base 16). */
     private static final int RADIX_SIXTEEN = 16;
 
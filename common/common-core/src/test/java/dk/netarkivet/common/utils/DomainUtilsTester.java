@@ -10,10 +10,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
 
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import dk.netarkivet.common.Constants;
+
 public class DomainUtilsTester {
 	@Test
 	public void canRetrieveTLDsFromPublisuffixFile() {
@@ -80,6 +84,48 @@ public class DomainUtilsTester {
         }
     }
     
+    /**
+     * Test that the public suffix trie gives the same results as the TLD regular expressions, and that the slice
+     * methods work on part of a longer sequence.
+     */
+    @Test
+    public void testPublicSuffixTrieMatchesRegexp() {
+        String[] parts = {"www", "a", "bbc", "co", "uk", "dk", "com", "", "-", "æø", "x_y", "[]", "1", "kommune",
+                "jp", "tokyo", "github", "io", "blogspot", ".", "net", "k12", "ak", "us"};
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int labels = 1 + random.nextInt(5);
+            for (int j = 0; j < labels; j++) {
+                if (j > 0) {
+                    sb.append('.');
+                }
+                sb.append(parts[random.nextInt(parts.length)]);
+            }
+            String hostname = sb.toString();
+            String expected = null;
+            if (Constants.IP_KEY_REGEXP.matcher(hostname).matches()) {
+                expected = hostname;
+            } else {
+                Matcher matcher = TLD.getInstance().getHostnamePattern().matcher(hostname);
+                if (matcher.matches()) {
+                    expected = matcher.group(2);
+                }
+            }
+            assertEquals("Domain name of '" + hostname + "' should match regexp", expected,
+                    DomainUtils.domainNameFromHostname(hostname));
+            assertEquals("Validity of '" + hostname + "' should match regexp",
+                    TLD.getInstance().getValidDomainMatcher().matcher(hostname).matches(),
+                    DomainUtils.isValidDomainName(hostname));
+            String line = "2005-05-06T11:47:26.550Z 200 " + hostname + " http://example.org/";
+            int start = line.indexOf(' ', line.indexOf(' ') + 1) + 1;
+            int end = start + hostname.length();
+            int domainStart = DomainUtils.domainNameStart(line, start, end);
+            assertEquals("Domain name of slice '" + hostname + "' should match", expected,
+                    domainStart < 0 ? null : line.substring(domainStart, end));
+        }
+    }
+
     @Test
     public void testExtraTLDInSettingsFiles() {
     	String oldprop = System.getProperty(Settings.SETTINGS_FILE_PROPERTY);
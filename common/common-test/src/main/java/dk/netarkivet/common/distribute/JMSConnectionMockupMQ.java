@@ -89,6 +89,9 @@ public class JMSConnectionMockupMQ extends JMSConnection {
      */
     protected Map<String, TestDestination> destinations;
 
+    /** The codec used for all sent messages. */
+    private static final MessageCodec OBJECT_MESSAGE_CODEC = new SerializingMessageCodec();
+
     /** Constructor. Does nothing, initConnection is used for setup. */
     protected JMSConnectionMockupMQ() {
         super();
@@ -113,6 +116,17 @@ public class JMSConnectionMockupMQ extends JMSConnection {
         destinations = new HashMap<String, TestDestination>();
     }
 
+    /**
+     * The test session only supports ObjectMessages, and tests rely on receiving the very objects that were sent, so
+     * messages are always sent with the serializing codec.
+     *
+     * @return A codec sending ObjectMessages.
+     */
+    @Override
+    protected MessageCodec getMessageCodec() {
+        return OBJECT_MESSAGE_CODEC;
+    }
+
     protected ConnectionFactory getConnectionFactory() throws JMSException {
         return new JMSConnectionMockupMQ.TestConnectionFactory();
     }
@@ -0,0 +1,340 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.testutils.preconfigured.ReloadSettings;
+
+/**
+ * Unit tests for the BinaryMessageCodec class.
+ */
+@SuppressWarnings({"serial"})
+public class BinaryMessageCodecTester {
+    private static final ChannelID toQ = Channels.getAnyBa();
+    private static final ChannelID replyToQ = Channels.getError();
+
+    /** Set when the class {@link UnloadedMessage} is initialized. */
+    private static volatile boolean unloadedMessageInitialized;
+
+    /** Set when the class {@link EagerMessage} is initialized. */
+    private static volatile boolean eagerMessageInitialized;
+
+    private ReloadSettings rs = new ReloadSettings();
+
+    @Before
+    public void setUp() {
+        rs.setUp();
+    }
+
+    @After
+    public void tearDown() {
+        rs.tearDown();
+    }
+
+    /**
+     * Verify that a message with a registered format is written with it, and that all fields, including those common
+     * to all messages, survive encoding and decoding.
+     */
+    @Test
+    public void testRoundTripWithFormat() {
+        FormattedMessage msg = new FormattedMessage(toQ, replyToQ, "payload \u00e6", 42L);
+        msg.updateId("ID1");
+        msg.setNotOk("First error");
+        msg.setNotOk("Second error");
+
+        BinaryMessageCodec codec = new BinaryMessageCodec(-1);
+        byte[] bytes = codec.toBytes(msg);
+        assertEquals("The frame should start with the frame version", BinaryMessageCodec.FRAME_VERSION, bytes[0]);
+        assertEquals("A registered format should be used", 0, bytes[1] & BinaryMessageCodec.FLAG_SERIALIZED);
+
+        FormattedMessage decoded = (FormattedMessage) codec.fromBytes(bytes);
+        assertEquals("payload \u00e6", decoded.payload);
+        assertEquals(42L, decoded.number);
+        assertEquals(toQ, decoded.getTo());
+        assertEquals(replyToQ, decoded.getReplyTo());
+        assertEquals("ID1", decoded.getID());
+        assertEquals("ID1", decoded.getReplyOfId());
+        assertFalse("The error state should be kept", decoded.isOk());
+        assertEquals(msg.getErrMsg(), decoded.getErrMsg());
+    }
+
+    /**
+     * Verify that messages without a registered format are serialized, and can be decoded.
+     */
+    @Test
+    public void testRoundTripWithoutFormat() {
+        UnformattedMessage msg = new UnformattedMessage(toQ, replyToQ, "payload");
+        BinaryMessageCodec codec = new BinaryMessageCodec(-1);
+        byte[] bytes = codec.toBytes(msg);
+        assertTrue("Java serialization should be used",
+                (bytes[1] & BinaryMessageCodec.FLAG_SERIALIZED) != 0);
+
+        UnformattedMessage decoded = (UnformattedMessage) codec.fromBytes(bytes);
+        assertEquals("payload", decoded.payload);
+        assertEquals(toQ, decoded.getTo());
+        assertTrue("Message should be ok", decoded.isOk());
+        assertFalse("Message should not have an id before it is sent", decoded.hasBeenSent());
+    }
+
+    /**
+     * Verify that serialized bodies with classes that are not allowed are rejected.
+     */
+    @Test
+    public void testSerializedClassesMustBeAllowed() {
+        UnformattedMessage msg = new UnformattedMessage(toQ, replyToQ, "payload");
+        byte[] bytes = new BinaryMessageCodec(-1).toBytes(msg);
+        try {
+            new BinaryMessageCodec(-1, "java.").fromBytes(bytes);
+            fail("A message class that is not allowed should be rejected");
+        } catch (ArgumentNotValid e) {
+            // Expected
+        }
+        UnformattedMessage decoded = (UnformattedMessage) new BinaryMessageCodec(-1, "java.", "dk.netarkivet.")
+                .fromBytes(bytes);
+        assertEquals("payload", decoded.payload);
+    }
+
+    /**
+     * Verify that only bodies larger than the threshold are compressed, and that compressed messages are decoded.
+     */
+    @Test
+    public void testCompression() {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            payload.append("http://www.example.org/page").append(i % 10).append('\n');
+        }
+        FormattedMessage msg = new FormattedMessage(toQ, replyToQ, payload.toString(), 1L);
+
+        byte[] uncompressed = new BinaryMessageCodec(-1).toBytes(msg);
+        assertEquals("Compression should be disabled", 0, uncompressed[1] & BinaryMessageCodec.FLAG_COMPRESSED);
+        byte[] belowThreshold = new BinaryMessageCodec(uncompressed.length).toBytes(msg);
+        assertEquals("Small bodies should not be compressed", 0,
+                belowThreshold[1] & BinaryMessageCodec.FLAG_COMPRESSED);
+
+        BinaryMessageCodec codec = new BinaryMessageCodec(1024);
+        byte[] compressed = codec.toBytes(msg);
+        assertTrue("Large bodies should be compressed", (compressed[1] & BinaryMessageCodec.FLAG_COMPRESSED) != 0);
+        assertTrue("Compression should make the frame smaller", compressed.length < uncompressed.length / 4);
+        assertEquals(payload.toString(), ((FormattedMessage) codec.fromBytes(compressed)).payload);
+
+        UnformattedMessage serialized = new UnformattedMessage(toQ, replyToQ, payload.toString());
+        compressed = codec.toBytes(serialized);
+        assertTrue("Large serialized bodies should be compressed",
+                (compressed[1] & BinaryMessageCodec.FLAG_COMPRESSED) != 0);
+        assertEquals(payload.toString(), ((UnformattedMessage) codec.fromBytes(compressed)).payload);
+    }
+
+    /**
+     * Verify that frames which cannot be decoded are rejected with ArgumentNotValid.
+     */
+    @Test
+    public void testInvalidFrames() {
+        BinaryMessageCodec codec = new BinaryMessageCodec(-1);
+        byte[] bytes = codec.toBytes(new FormattedMessage(toQ, replyToQ, "payload", 1L));
+
+        byte[] newerVersion = bytes.clone();
+        newerVersion[0] = BinaryMessageCodec.FRAME_VERSION + 1;
+        try {
+            codec.fromBytes(newerVersion);
+            fail("Frames of an unknown version should not be accepted");
+        } catch (ArgumentNotValid e) {
+            // Expected
+        }
+
+        byte[] truncated = new byte[bytes.length - 5];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        try {
+            codec.fromBytes(truncated);
+            fail("Truncated frames should not be accepted");
+        } catch (ArgumentNotValid e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Verify that a frame naming a class without a registered format is rejected without loading the class.
+     */
+    @Test
+    public void testUnregisteredClassIsNotLoaded() throws IOException {
+        BinaryMessageCodec codec = new BinaryMessageCodec(-1);
+        byte[] bytes = renameMessageClass(codec.toBytes(new FormattedMessage(toQ, replyToQ, "payload", 1L)),
+                UnloadedMessage.class.getName());
+        try {
+            codec.fromBytes(bytes);
+            fail("A message class without a registered format should be rejected");
+        } catch (ArgumentNotValid e) {
+            // Expected
+        }
+        assertFalse("The class named in the message should not be loaded", unloadedMessageInitialized);
+    }
+
+    /**
+     * Verify that the message classes given in the settings register their formats when a codec is created, so their
+     * messages are decoded before any of them has been created in this JVM.
+     */
+    @Test
+    public void testFormattedMessageClassesAreLoaded() throws IOException {
+        byte[] bytes = renameMessageClass(new BinaryMessageCodec(-1).toBytes(new FormattedMessage(toQ, replyToQ,
+                "payload", 1L)), EagerMessage.class.getName());
+        assertFalse("The message class should not be loaded before the codec is created", eagerMessageInitialized);
+
+        Settings.set(CommonSettings.JMS_MESSAGE_CODEC_FORMATTED_MESSAGE_CLASS, EagerMessage.class.getName(),
+                "dk.netarkivet.no.such.Message");
+        BinaryMessageCodec codec = new BinaryMessageCodec(-1);
+        assertTrue("The message class should be loaded when the codec is created", eagerMessageInitialized);
+        EagerMessage decoded = (EagerMessage) codec.fromBytes(bytes);
+        assertEquals("payload", decoded.payload);
+        assertEquals(toQ, decoded.getTo());
+    }
+
+    /**
+     * Replace the name of the message class in a frame.
+     *
+     * @param frame A frame written by the codec.
+     * @param className The class name to write instead.
+     * @return The new frame.
+     */
+    private static byte[] renameMessageClass(byte[] frame, String className) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(result);
+        out.writeByte(in.readUnsignedByte());
+        out.writeByte(in.readUnsignedByte());
+        in.readUTF();
+        out.writeUTF(className);
+        byte[] buffer = new byte[frame.length];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        out.flush();
+        return result.toByteArray();
+    }
+
+    /** A message with a registered binary format. */
+    private static class FormattedMessage extends NetarkivetMessage {
+        static {
+            BinaryMessageCodec.registerFormat(FormattedMessage.class, new BinaryMessageFormat<FormattedMessage>() {
+                @Override
+                public int getVersion() {
+                    return 1;
+                }
+
+                @Override
+                public void write(FormattedMessage msg, DataOutput out) throws IOException {
+                    BinaryMessageCodec.writeString(out, msg.payload);
+                    out.writeLong(msg.number);
+                }
+
+                @Override
+                public FormattedMessage read(DataInput in, int version, ChannelID to, ChannelID replyTo)
+                        throws IOException {
+                    return new FormattedMessage(to, replyTo, BinaryMessageCodec.readString(in), in.readLong());
+                }
+            });
+        }
+
+        private final String payload;
+        private final long number;
+
+        public FormattedMessage(ChannelID to, ChannelID replyTo, String payload, long number) {
+            super(to, replyTo);
+            this.payload = payload;
+            this.number = number;
+        }
+    }
+
+    /** A message without a registered binary format. */
+    private static class UnformattedMessage extends NetarkivetMessage {
+        private final String payload;
+
+        public UnformattedMessage(ChannelID to, ChannelID replyTo, String payload) {
+            super(to, replyTo);
+            this.payload = payload;
+        }
+    }
+
+    /** A message class that is only named in messages, and never used otherwise. */
+    private static class UnloadedMessage extends NetarkivetMessage {
+        static {
+            unloadedMessageInitialized = true;
+        }
+
+        public UnloadedMessage(ChannelID to, ChannelID replyTo) {
+            super(to, replyTo);
+        }
+    }
+
+    /** A message class that registers the same format as {@link FormattedMessage}, loaded from the settings. */
+    private static class EagerMessage extends NetarkivetMessage {
+        static {
+            eagerMessageInitialized = true;
+            BinaryMessageCodec.registerFormat(EagerMessage.class, new BinaryMessageFormat<EagerMessage>() {
+                @Override
+                public int getVersion() {
+                    return 1;
+                }
+
+                @Override
+                public void write(EagerMessage msg, DataOutput out) throws IOException {
+                    BinaryMessageCodec.writeString(out, msg.payload);
+                    out.writeLong(msg.number);
+                }
+
+                @Override
+                public EagerMessage read(DataInput in, int version, ChannelID to, ChannelID replyTo)
+                        throws IOException {
+                    return new EagerMessage(to, replyTo, BinaryMessageCodec.readString(in), in.readLong());
+                }
+            });
+        }
+
+        private final String payload;
+        private final long number;
+
+        public EagerMessage(ChannelID to, ChannelID replyTo, String payload, long number) {
+            super(to, replyTo);
+            this.payload = payload;
+            this.number = number;
+        }
+    }
+}
@@ -23,6 +23,7 @@
 package dk.netarkivet.common.distribute;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -30,6 +31,10 @@ import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.jms.Message;
 import javax.jms.MessageListener;
@@ -334,6 +339,40 @@ public class SynchronizerTester {
         assertNull("Should have returned null, not " + sr.received, sr.received);
     }
 
+    /**
+     * Tests that sendRequest() returns a future which is completed when the reply is received.
+     */
+    @Test
+    public void testSendRequestCompletedByReply() throws Exception {
+        NetarkivetMessage msg = new TestMessage(toQ, replyToQ);
+        /**
+         * The sender is also the listener. Avoids the need for creating a separate server thread for replying.
+         */
+        con.setListener(toQ, new Synchronizer());
+        CompletableFuture<NetarkivetMessage> reply = con.sendRequest(msg, 0);
+        assertEquals("The reply message should correspond to the request message", msg,
+                reply.get(WAIT_TIME, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests that the future returned by sendRequest() fails with a TimeoutException if no reply is received in time,
+     * and that a late reply is ignored.
+     */
+    @Test
+    public void testSendRequestTimeout() throws Exception {
+        NetarkivetMessage msg = new TestMessage(toQ, replyToQ);
+        con.setListener(replyToQ, new Synchronizer());
+        CompletableFuture<NetarkivetMessage> reply = con.sendRequest(msg, SHORT_TIME);
+        try {
+            reply.get(WAIT_TIME, TimeUnit.SECONDS);
+            fail("The request should have timed out");
+        } catch (ExecutionException e) {
+            assertTrue("Should fail with a TimeoutException, not " + e.getCause(),
+                    e.getCause() instanceof TimeoutException);
+        }
+        assertFalse("A reply after the timeout should not complete the request", con.completeRequest(msg));
+    }
+
     /**
      * @param sr a Thread wrapper for the Synchronizer.
      */
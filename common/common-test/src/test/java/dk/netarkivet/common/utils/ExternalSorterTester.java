@@ -0,0 +1,236 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for the ExternalSorter class.
+ */
+public class ExternalSorterTester {
+
+    private static final Logger log = LoggerFactory.getLogger(ExternalSorterTester.class);
+
+    private static final File WORKING = new File("tests/dk/netarkivet/common/utils/working/externalsorter");
+    private static final File TEMP_DIR = new File(WORKING, "tmp");
+    private static final File INPUT = new File(WORKING, "input.txt");
+    private static final File OUTPUT = new File(WORKING, "output.txt");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    /** Unsigned byte order of lines, as ISO-8859-1 maps each byte to the character with the same value. */
+    private static final Comparator<String> BYTE_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String s1, String s2) {
+            return s1.compareTo(s2);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        FileUtils.removeRecursively(WORKING);
+        FileUtils.createDir(TEMP_DIR);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.removeRecursively(WORKING);
+    }
+
+    @Test
+    public void testSortsInByteOrder() throws IOException {
+        writeFile(INPUT, "b\n\u00e6ble\nB\n\na b\na\tb\nab\nno newline at end");
+        new ExternalSorter(1024 * 1024, 1, TEMP_DIR, false).sort(INPUT, OUTPUT);
+        assertArrayEquals("Lines should be sorted by their bytes, and the last line should get a newline",
+                new String[] {"", "B", "a\tb", "a b", "ab", "b", "no newline at end", "\u00e6ble"},
+                readLines(OUTPUT).toArray());
+        assertEquals("Temporary files should be removed", 0, TEMP_DIR.list().length);
+    }
+
+    @Test
+    public void testSortsCrawlLogOnFourthField() throws IOException {
+        writeFile(INPUT, "2014-01-02T10:00:00.000Z   200       1234 http://b.dk/ LL http://a.dk/\n"
+                + "2014-01-01T10:00:00.000Z   200       1234 http://c.dk/ LL http://a.dk/\n"
+                + "2014-01-03T10:00:00.000Z   404 12 http://a.dk/ - -\n"
+                + "2014-01-01T10:00:00.000Z   200    12 http://a.dk/ - -\n" + "short line\n");
+        new ExternalSorter(1024 * 1024, 1, TEMP_DIR, true).sort(INPUT, OUTPUT);
+        assertArrayEquals("Lines should be sorted on the url, then on the whole line", new String[] {"short line",
+                "2014-01-01T10:00:00.000Z   200    12 http://a.dk/ - -",
+                "2014-01-03T10:00:00.000Z   404 12 http://a.dk/ - -",
+                "2014-01-02T10:00:00.000Z   200       1234 http://b.dk/ LL http://a.dk/",
+                "2014-01-01T10:00:00.000Z   200       1234 http://c.dk/ LL http://a.dk/"}, readLines(OUTPUT).toArray());
+    }
+
+    @Test
+    public void testSortsInRunsLargerThanMemoryBudget() throws IOException {
+        List<String> lines = writeRandomLines(INPUT, 200000, new Random(42));
+        Collections.sort(lines, BYTE_ORDER);
+        new ExternalSorter(1, 3, TEMP_DIR, false).sort(INPUT, OUTPUT);
+        assertEquals("All lines should be sorted across the runs", lines, readLines(OUTPUT));
+        assertEquals("Runs should be removed", 0, TEMP_DIR.list().length);
+    }
+
+    @Test
+    public void testSortsSeveralFilesIntoOne() throws IOException {
+        File input2 = new File(WORKING, "input2.txt");
+        writeFile(INPUT, "c\na\n");
+        writeFile(input2, "d\nb\n");
+        new ExternalSorter(1024 * 1024, 1, TEMP_DIR, false).sort(Arrays.asList(INPUT, input2), OUTPUT);
+        assertArrayEquals("Lines of both files should be sorted", new String[] {"a", "b", "c", "d"},
+                readLines(OUTPUT).toArray());
+    }
+
+    @Test
+    public void testMergesSortedFiles() throws IOException {
+        List<File> inputs = new ArrayList<File>();
+        List<String> expected = new ArrayList<String>();
+        // More files than are merged at once
+        for (int i = 0; i < 100; i++) {
+            File input = new File(WORKING, "sorted" + i + ".txt");
+            writeFile(input, "line" + (i % 10) + "\nline" + (i % 10) + "x\n");
+            inputs.add(input);
+            expected.add("line" + (i % 10));
+            expected.add("line" + (i % 10) + "x");
+        }
+        Collections.sort(expected, BYTE_ORDER);
+        new ExternalSorter(1024 * 1024, 1, TEMP_DIR, false).merge(inputs, OUTPUT);
+        assertEquals("The files should be merged", expected, readLines(OUTPUT));
+        assertTrue("The input files should be kept", inputs.get(0).exists());
+        assertEquals("Intermediate runs should be removed", 0, TEMP_DIR.list().length);
+    }
+
+    @Test
+    public void testOutputMayBeInput() throws IOException {
+        writeFile(INPUT, "b\na\n");
+        new ExternalSorter(1024 * 1024, 1, TEMP_DIR, false).sort(INPUT, INPUT);
+        assertArrayEquals("The file should be sorted in place", new String[] {"a", "b"}, readLines(INPUT).toArray());
+        assertArrayEquals("No temporary output file should be left", new String[] {INPUT.getName(), TEMP_DIR.getName()},
+                sortedNames(WORKING));
+    }
+
+    /**
+     * Compares the time used to sort a large CDX-like file with the sorter and with the Unix sort command. The size of
+     * the file in bytes is given by the system property externalsorter.benchmark.bytes, default 100 MB. Needs Unix
+     * sort and disk space for the input three times. Only run with the fullTest profile.
+     */
+    @Test
+    @Category(SlowTest.class)
+    public void benchmarkAgainstUnixSort() throws IOException {
+        long size = Long.getLong("externalsorter.benchmark.bytes", 100L * 1024 * 1024);
+        Random random = new Random(42);
+        BufferedWriter writer = new BufferedWriter(new FileWriter(INPUT));
+        try {
+            long written = 0;
+            while (written < size) {
+                String domain = Long.toString(random.nextLong() & 0xffffffL, 36);
+                String path = Long.toString(random.nextLong() & 0xffffffffffL, 36);
+                String line = "dk," + domain + ")/" + path + " 2014" + (1000000000L + random.nextInt(1000000000))
+                        + " http://www." + domain + ".dk/" + path + " text/html 200 "
+                        + Long.toString(random.nextLong() & Long.MAX_VALUE, 36) + " - - " + random.nextInt()
+                        + " 1-1-20140101000000-00001.warc.gz";
+                writer.write(line);
+                writer.write('\n');
+                written += line.length() + 1;
+            }
+        } finally {
+            writer.close();
+        }
+        File unixOutput = new File(WORKING, "unix.txt");
+
+        long start = System.currentTimeMillis();
+        ExternalSorter.fromSettings(TEMP_DIR, false).sort(INPUT, OUTPUT);
+        long sorterTime = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        assertEquals("Unix sort should succeed", 0, ProcessUtils.runUnixSort(INPUT, unixOutput, TEMP_DIR, false));
+        long unixTime = System.currentTimeMillis() - start;
+
+        log.info("Sorting {} bytes: ExternalSorter {} ms, Unix sort {} ms", INPUT.length(), sorterTime, unixTime);
+        assertEquals("Both sorts should give the same result", ChecksumCalculator.calculateMd5(unixOutput),
+                ChecksumCalculator.calculateMd5(OUTPUT));
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(ISO_8859_1));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (String line : new String(FileUtils.readBinaryFile(file), ISO_8859_1).split("\n", -1)) {
+            lines.add(line);
+        }
+        assertEquals("The output should end with a newline", "", lines.remove(lines.size() - 1));
+        return lines;
+    }
+
+    private static String[] sortedNames(File dir) {
+        String[] names = dir.list();
+        Arrays.sort(names);
+        return names;
+    }
+
+    private static List<String> writeRandomLines(File file, int count, Random random) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            StringBuilder line = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                char c = (char) (random.nextInt(255) + 1);
+                line.append(c == '\n' ? ' ' : c);
+            }
+            lines.add(line.toString());
+            content.append(line).append('\n');
+        }
+        writeFile(file, content.toString());
+        return lines;
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import dk.netarkivet.common.exceptions.IllegalState;
+
+/**
+ * Unit tests for the class KeyedLockManager.
+ */
+public class KeyedLockManagerTester {
+
+    @Test
+    public void testDifferentKeysDoNotBlock() throws Exception {
+        final KeyedLockManager locks = new KeyedLockManager();
+        locks.lock("a");
+        try {
+            final CountDownLatch locked = new CountDownLatch(1);
+            Thread other = new Thread() {
+                public void run() {
+                    locks.lock("b");
+                    try {
+                        locked.countDown();
+                    } finally {
+                        locks.unlock("b");
+                    }
+                }
+            };
+            other.start();
+            assertTrue("Another key should be lockable while 'a' is held", locked.await(10, TimeUnit.SECONDS));
+            other.join();
+        } finally {
+            locks.unlock("a");
+        }
+        assertEquals("No contention expected between different keys", 0, locks.getContendedAcquisitions());
+        assertEquals(2, locks.getAcquisitions());
+    }
+
+    @Test
+    public void testSameKeyIsSerialized() throws Exception {
+        final KeyedLockManager locks = new KeyedLockManager();
+        final AtomicBoolean gotLock = new AtomicBoolean();
+        locks.lock(new String("key"));
+        Thread other = new Thread() {
+            public void run() {
+                locks.lock(new String("key"));
+                try {
+                    gotLock.set(true);
+                } finally {
+                    locks.unlock("key");
+                }
+            }
+        };
+        try {
+            other.start();
+            // Wait until the other thread is waiting for the lock.
+            while (other.getState() != Thread.State.WAITING && other.isAlive()) {
+                Thread.sleep(10);
+            }
+            assertFalse("The lock should not be taken while held by another thread", gotLock.get());
+        } finally {
+            locks.unlock("key");
+        }
+        other.join();
+        assertTrue("The lock should be taken when released", gotLock.get());
+        assertEquals(1, locks.getContendedAcquisitions());
+    }
+
+    @Test
+    public void testLocksAreForgottenWhenReleased() {
+        KeyedLockManager locks = new KeyedLockManager();
+        for (int i = 0; i < 1000; i++) {
+            String key = "key" + i;
+            locks.lock(key);
+            locks.lock(key);
+            assertEquals(1, locks.getActiveKeys());
+            locks.unlock(key);
+            locks.unlock(key);
+        }
+        assertEquals("No locks should be kept after being released", 0, locks.getActiveKeys());
+    }
+
+    @Test
+    public void testUnlockWithoutLockFails() {
+        KeyedLockManager locks = new KeyedLockManager();
+        try {
+            locks.unlock("key");
+            fail("Unlocking a lock not held should fail");
+        } catch (IllegalState e) {
+            // Expected
+        }
+    }
+
+}
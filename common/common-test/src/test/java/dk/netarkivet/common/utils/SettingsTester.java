@@ -29,6 +29,7 @@ import static org.junit.Assert.fail;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.After;
@@ -210,6 +211,42 @@ public class SettingsTester {
         }
     }
 
+    /**
+     * Test that lookups served from the settings snapshot agree with the settings file, follow changes made with set,
+     * and are counted.
+     */
+    @Test
+    public void testSnapshotMatchesSettingsFile() {
+        SimpleXml settingsXml = new SimpleXml(new File(TestInfo.SETTINGSFILENAME));
+        for (String key : settingsXml.getKeys()) {
+            if (System.getProperty(key) == null) {
+                assertEquals("Value of '" + key + "' should match the settings file", settingsXml.getString(key),
+                        Settings.get(key));
+                assertEquals("Values of '" + key + "' should match the settings file", settingsXml.getList(key),
+                        Arrays.asList(Settings.getAll(key)));
+            }
+        }
+
+        String key = "settings.for.test.purposes6";
+        long lookups = SettingsLookupCounter.getInstance().getLookupCount(key);
+        Settings.set(key, "first", "second");
+        assertEquals("Should see the value just set", "first", Settings.get(key));
+        String[] values = Settings.getAll(key);
+        values[0] = "changed";
+        assertEquals("Changing the returned array must not change the setting", "first", Settings.getAll(key)[0]);
+        Settings.set(key, "third");
+        assertEquals("Should see the value just updated", "third", Settings.get(key));
+        assertEquals("Lookups should have been counted", lookups + 4,
+                SettingsLookupCounter.getInstance().getLookupCount(key));
+        Settings.reload();
+        try {
+            Settings.get(key);
+            fail("Reload should forget the value set");
+        } catch (UnknownID e) {
+            // expected
+        }
+    }
+
     /*
      * public void testValidateWithXSD() throws Exception { String settingsFileProperty =
      * Settings.SETTINGS_FILE_PROPERTY; System.setProperty(settingsFileProperty, new File(TestInfo.TEMPDIR,
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -35,6 +36,8 @@ import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
 
+import dk.netarkivet.common.utils.FileUtils;
+
 /**
  * Unit test for BatchLocalFiles.
  */
@@ -201,6 +204,57 @@ public class BatchLocalFilesTester {
         assertEquals(1, finished);
     }
 
+    /**
+     * Verify that files in different directories are processed concurrently, that every file is processed once with
+     * its output kept together, and that failed files are collected.
+     */
+    @Test
+    public void testConcurrentRun() throws IOException {
+        File baseDir = new File(FileUtils.getTempDir(), "BatchLocalFilesTester");
+        FileUtils.removeRecursively(baseDir);
+        try {
+            File[] dirFiles = new File[6];
+            for (int i = 0; i < dirFiles.length; i++) {
+                File dir = new File(baseDir, "dir" + (i % 3));
+                FileUtils.createDir(dir);
+                dirFiles[i] = new File(dir, "file" + i);
+                FileUtils.writeBinaryFile(dirFiles[i], ("content" + i).getBytes());
+            }
+            FileBatchJob job = new FileBatchJob() {
+                public void initialize(OutputStream os) {
+                }
+
+                public boolean processFile(File file, OutputStream os) {
+                    try {
+                        os.write((file.getName() + "\n").getBytes());
+                    } catch (IOException e) {
+                        return false;
+                    }
+                    return !file.getName().equals("file4");
+                }
+
+                public void finish(OutputStream os) {
+                }
+
+                @Override
+                public boolean allowsConcurrentProcessing() {
+                    return true;
+                }
+            };
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new BatchLocalFiles(dirFiles, 3).run(job, out);
+            assertEquals("Should have processed all files", dirFiles.length, job.getNoOfFilesProcessed());
+            assertEquals("Should have one failed file", 1, job.getFilesFailed().size());
+            Set<String> lines = new HashSet<String>(Arrays.asList(out.toString().split("\n")));
+            assertEquals("Should have one line per file", dirFiles.length, lines.size());
+            for (File f : dirFiles) {
+                assertTrue("Should have output for " + f, lines.contains(f.getName()));
+            }
+        } finally {
+            FileUtils.removeRecursively(baseDir);
+        }
+    }
+
     /**
      * A very simple FileBatchJob that simply counts relevant method calls in the parents class's designated fields.
      */
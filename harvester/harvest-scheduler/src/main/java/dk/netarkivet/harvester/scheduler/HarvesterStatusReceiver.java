@@ -100,12 +100,16 @@ public class HarvesterStatusReceiver extends HarvesterMessageHandler implements
         log.info("limitSubmittedJobsInQueue: {}", limitSubmittedJobsInQueue);
         if (limitSubmittedJobsInQueue) {
         	log.info("submittedJobsInQueueThreshold: {}", submittedJobsInQueueThreshold);
+        	qController.register();
         }
     }
 
     @Override
     public void shutdown() {
         jmsConnection.removeListener(HarvesterChannels.getHarvesterStatusChannel(), this);
+        if (qController != null) {
+            qController.unregister();
+        }
     }
 
     /**
@@ -130,6 +134,8 @@ public class HarvesterStatusReceiver extends HarvesterMessageHandler implements
         	int currentCount = qController.getCount(relevantChannelId);
         	if (currentCount < submittedJobsInQueueThreshold) {
         		jobDispatcher.submitNextNewJob(channel);
+        		// Count the queue again next time, including the job just submitted
+        		qController.resetCount(relevantChannelId);
         	} else {
         		log.debug("No jobs submitted to channel {} after receiving ready message from {}. "
         				+ "Already {} jobs submitted to channel ", relevantChannelId, message.getApplicationInstanceId(),
@@ -1,6 +1,10 @@
 package dk.netarkivet.harvester.scheduler;
 
+import java.lang.management.ManagementFactory;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.jms.JMSException;
 import javax.jms.QueueBrowser;
@@ -12,60 +16,241 @@ import org.slf4j.LoggerFactory;
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.JMSConnection;
 import dk.netarkivet.common.distribute.JMSConnectionFactory;
+import dk.netarkivet.common.management.SingleMBeanObject;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.harvester.HarvesterSettings;
 
 /**
  * Helper class to test the status of the number of submitted jobs on our JMS Queues.
  * Uses the same QueueSession for all calls to getCount() to avoid memory-leak caused by accumulation
  * of imqConsumerReader threads.
+ * <p>
+ * Counting the messages by browsing a queue transfers every queued message from the broker, so the counts are reused
+ * for {@link HarvesterSettings#SCHEDULER_SUBMITTED_JOBS_IN_QUEUE_CACHE_TIME} milliseconds, and taken from the
+ * statistics published by the broker when these are recent enough. The queue is only browsed when neither is
+ * available. Call {@link #resetCount(ChannelID)} after sending to a queue, so the new message is counted. How the counts
+ * were answered can be followed through the {@link QueueCountStatistics} MBean, see {@link #register()}.
  */
-public class QueueController {
+public class QueueController implements QueueCountStatistics {
 
     /** The logger to use. */
     private static final Logger log = LoggerFactory.getLogger(QueueController.class);
-    
+
     /** Connection to JMS provider. */
-    private JMSConnection jmsConnection; 
+    private JMSConnection jmsConnection;
     /** The current qSession. */
     QueueSession qSession = null;
-    
+
+    /** How many milliseconds a count is reused. */
+    private final long cacheTime;
+
+    /** The maximum age in milliseconds of statistics reported by the broker. 0 means never use them. */
+    private final long statisticsMaxAge;
+
+    /** The latest count of each queue, by queue name. */
+    private final Map<String, QueueCount> counts = new HashMap<String, QueueCount>();
+
+    /** The number of counts answered with a reused count. */
+    private long cachedCounts = 0;
+
+    /** The number of counts answered with statistics reported by the broker. */
+    private long reportedCounts = 0;
+
+    /** The number of counts answered by browsing the queue. */
+    private long browsedCounts = 0;
+
+    /** The total number of nanoseconds spent getting statistics and browsing queues. */
+    private long countNanos = 0;
+
+    /** The MBean this object is exposed as, or null if not registered. */
+    private SingleMBeanObject<QueueCountStatistics> singleMBeanObject;
+
     public QueueController() {
-        this.jmsConnection = JMSConnectionFactory.getInstance();
+        this(JMSConnectionFactory.getInstance(),
+                Settings.getLong(HarvesterSettings.SCHEDULER_SUBMITTED_JOBS_IN_QUEUE_CACHE_TIME),
+                Settings.getLong(HarvesterSettings.SCHEDULER_SUBMITTED_JOBS_IN_QUEUE_STATISTICS_MAX_AGE));
     }
-    
+
     /**
-     * Retrieve the number of current messages defined by the given queueID. 
+     * Create a controller using the given connection and limits.
+     *
+     * @param jmsConnection The connection to the JMS broker.
+     * @param cacheTime How many milliseconds a count is reused.
+     * @param statisticsMaxAge The maximum age in milliseconds of statistics reported by the broker, 0 to always browse.
+     */
+    QueueController(JMSConnection jmsConnection, long cacheTime, long statisticsMaxAge) {
+        this.jmsConnection = jmsConnection;
+        this.cacheTime = cacheTime;
+        this.statisticsMaxAge = statisticsMaxAge;
+    }
+
+    /**
+     * Retrieve the number of current messages defined by the given queueID.
      * @param queueID a given QueueID
      * @return the number of current messages defined by the given queueID
      */
     synchronized int getCount(ChannelID queueID) {
+        long now = System.currentTimeMillis();
+        QueueCount queueCount = counts.get(queueID.getName());
+        if (queueCount == null) {
+            queueCount = new QueueCount();
+            counts.put(queueID.getName(), queueCount);
+        } else if (queueCount.count >= 0 && now - queueCount.countTime < cacheTime) {
+            ++cachedCounts;
+            return queueCount.count;
+        }
+
+        long start = System.nanoTime();
+        int count = -1;
+        if (statisticsMaxAge > 0) {
+            // Statistics reported before the last message was sent do not count it.
+            count = getJMSConnection().getReportedQueueDepth(queueID,
+                    Math.max(now - statisticsMaxAge, queueCount.resetTime));
+        }
+        String source;
+        if (count >= 0) {
+            ++reportedCounts;
+            source = "broker statistics";
+        } else {
+            ++browsedCounts;
+            source = "browsing";
+            count = browse(queueID);
+        }
+        long nanos = System.nanoTime() - start;
+        countNanos += nanos;
+        log.debug("Counted {} messages in queue '{}' by {} in {} ms", count, queueID.getName(), source,
+                TimeUnit.NANOSECONDS.toMillis(nanos));
+
+        if (count < 0) {
+            // The queue could not be browsed. Don't keep that.
+            return 0;
+        }
+        queueCount.count = count;
+        queueCount.countTime = now;
+        return count;
+    }
+
+    /**
+     * Forget the count of a queue, so it is counted again the next time it is asked for. Statistics reported by the
+     * broker before now are not used for it either.
+     *
+     * @param queueID a given QueueID
+     */
+    synchronized void resetCount(ChannelID queueID) {
+        QueueCount queueCount = counts.get(queueID.getName());
+        if (queueCount == null) {
+            queueCount = new QueueCount();
+            counts.put(queueID.getName(), queueCount);
+        }
+        queueCount.count = -1;
+        queueCount.resetTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @return The number of counts answered with a count reused from an earlier call.
+     */
+    @Override
+    public synchronized long getCachedCounts() {
+        return cachedCounts;
+    }
+
+    /**
+     * @return The number of counts answered with statistics reported by the broker.
+     */
+    @Override
+    public synchronized long getReportedCounts() {
+        return reportedCounts;
+    }
+
+    /**
+     * @return The number of counts answered by browsing the queue.
+     */
+    @Override
+    public synchronized long getBrowsedCounts() {
+        return browsedCounts;
+    }
+
+    /**
+     * @return The total number of milliseconds spent counting messages, not including reused counts.
+     */
+    @Override
+    public synchronized long getTotalCountMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(countNanos);
+    }
+
+    /**
+     * Registers the queue count statistics as an mbean. Failing to do so is logged, but otherwise ignored, since the
+     * statistics are not needed for scheduling.
+     */
+    public synchronized void register() {
+        if (singleMBeanObject != null) {
+            return;
+        }
+        try {
+            singleMBeanObject = new SingleMBeanObject<QueueCountStatistics>("dk.netarkivet.harvester.scheduler",
+                    this, QueueCountStatistics.class, ManagementFactory.getPlatformMBeanServer());
+            singleMBeanObject.register();
+        } catch (Exception e) {
+            log.warn("Unable to register the queue count statistics as an mbean", e);
+            singleMBeanObject = null;
+        }
+    }
+
+    /**
+     * Unregisters the statistics mbean, if registered.
+     */
+    public synchronized void unregister() {
+        if (singleMBeanObject == null) {
+            return;
+        }
+        try {
+            singleMBeanObject.unregister();
+        } catch (Exception e) {
+            log.warn("Unable to unregister the queue count statistics mbean", e);
+        }
+        singleMBeanObject = null;
+    }
+
+    /**
+     * @return The JMS connection, fetched anew from the factory if it was dropped after an error.
+     */
+    private JMSConnection getJMSConnection() {
+        if (jmsConnection == null) {
+            jmsConnection = JMSConnectionFactory.getInstance();
+            log.info("Fetched a new JMSConnection from the factory");
+        }
+        return jmsConnection;
+    }
+
+    /**
+     * Count the messages of a queue by browsing all of them.
+     *
+     * @param queueID a given QueueID
+     * @return the number of current messages in the queue, or -1 if the queue could not be browsed
+     */
+    private int browse(ChannelID queueID) {
         QueueBrowser qBrowser = null;
         int submittedCounter = 0;
         try {
-            if (jmsConnection == null) {
-                jmsConnection = JMSConnectionFactory.getInstance();
-                log.info("Fetched a new JMSConnection from the factory");
-            }
             if (qSession == null) {
-                qSession = jmsConnection.getQueueSession();
+                qSession = getJMSConnection().getQueueSession();
                 log.info("Created a new QueueSession");
             }
             qBrowser = jmsConnection.createQueueBrowser(queueID, qSession);
             Enumeration msgs = qBrowser.getEnumeration();
 
-            if ( !msgs.hasMoreElements() ) {
-                return 0;
-            } else { 
-                while (msgs.hasMoreElements()) { 
-                    msgs.nextElement();
-                    submittedCounter++;
-                }
+            while (msgs.hasMoreElements()) {
+                msgs.nextElement();
+                submittedCounter++;
             }
         } catch (JMSException e) {
             log.warn("JMSException thrown: ", e);
-            jmsConnection = null; 
+            jmsConnection = null;
             qSession = null;
+            return -1;
         } catch (Exception e1) {
             log.warn("Unexpected exception of type {} thrown: ", e1.getClass().getName(), e1);
+            return -1;
         } finally {
             if (qBrowser != null) {
                 try {
@@ -79,4 +264,14 @@ public class QueueController {
 
         return submittedCounter;
     }
+
+    /** The latest count of a queue. */
+    private static class QueueCount {
+        /** The number of messages counted, or -1 if the queue must be counted again. */
+        int count = -1;
+        /** When the messages were counted, in milliseconds since the epoch. */
+        long countTime;
+        /** When the count was last reset, in milliseconds since the epoch. */
+        long resetTime;
+    }
 }
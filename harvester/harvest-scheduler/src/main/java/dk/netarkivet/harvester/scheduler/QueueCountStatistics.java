@@ -0,0 +1,51 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.scheduler;
+
+/**
+ * An interface for reading how the number of jobs in the harvest job queues are counted. Exposed as an MBean by
+ * {@link QueueController}.
+ */
+public interface QueueCountStatistics {
+
+    /**
+     * @return The number of counts answered with a count reused from an earlier call.
+     */
+    long getCachedCounts();
+
+    /**
+     * @return The number of counts answered with statistics reported by the broker.
+     */
+    long getReportedCounts();
+
+    /**
+     * @return The number of counts answered by browsing the queue.
+     */
+    long getBrowsedCounts();
+
+    /**
+     * @return The total number of milliseconds spent counting messages, not including reused counts.
+     */
+    long getTotalCountMillis();
+
+}
@@ -22,17 +22,22 @@
  */
 package dk.netarkivet.harvester.scheduler.jobgen;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IllegalState;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.harvester.HarvesterSettings;
 import dk.netarkivet.harvester.datamodel.Constants;
@@ -45,6 +50,7 @@ import dk.netarkivet.harvester.datamodel.HarvestDefinition;
 import dk.netarkivet.harvester.datamodel.HarvestDefinitionDAO;
 import dk.netarkivet.harvester.datamodel.HeritrixTemplate;
 import dk.netarkivet.harvester.datamodel.Job;
+import dk.netarkivet.harvester.datamodel.JobDAO;
 import dk.netarkivet.harvester.datamodel.PartialHarvest;
 import dk.netarkivet.harvester.datamodel.Schedule;
 import dk.netarkivet.harvester.datamodel.SeedList;
@@ -58,6 +64,9 @@ import dk.netarkivet.harvester.datamodel.eav.EAV;
  * The base algorithm iterates over domain configurations within the harvest definition, and according to the
  * configuration ({@link HarvesterSettings#JOBGEN_DOMAIN_CONFIG_SUBSET_SIZE}, constitutes a subset of domain
  * configurations from which one or more jobs will be generated.
+ * <p>
+ * Finished jobs are handed to {@link #storeJob(HarvestDefinition, Job)}, which stores them in batches on a separate
+ * thread while the generation goes on. All jobs are stored when {@link #generateJobs(HarvestDefinition)} returns.
  */
 abstract class AbstractJobGenerator implements JobGenerator {
 
@@ -72,6 +81,15 @@ abstract class AbstractJobGenerator implements JobGenerator {
     /** Is deduplication enabled or disabled in the settings? */
     private final boolean DEDUPLICATION_ENABLED = Settings.getBoolean(HarvesterSettings.DEDUPLICATION_ENABLED);
 
+    /** How many jobs to store in one transaction. */
+    private final int WRITER_BATCH_SIZE = Settings.getInt(HarvesterSettings.JOBGEN_WRITER_BATCH_SIZE);
+
+    /** How many finished jobs may wait to be stored before the generation waits for them. */
+    private final int WRITER_QUEUE_SIZE = Settings.getInt(HarvesterSettings.JOBGEN_WRITER_QUEUE_SIZE);
+
+    /** The writers storing the jobs of the harvest definitions being processed, by harvest definition id. */
+    private final Map<Long, JobWriter> writers = new HashMap<Long, JobWriter>();
+
     @Override
     public int generateJobs(HarvestDefinition harvest) {
         log.info("Generating jobs for harvestdefinition #{} using class '{}'", harvest.getOid(), this.getClass());
@@ -82,27 +100,34 @@ abstract class AbstractJobGenerator implements JobGenerator {
         if (harvest.isSnapShot()) {
             HarvestDefinitionDAO.getInstance().update(harvest);
         }
-        while (domainConfigurations.hasNext()) {
-            List<DomainConfiguration> subset = new ArrayList<DomainConfiguration>();
-            while (domainConfigurations.hasNext() && subset.size() < DOMAIN_CONFIG_SUBSET_SIZE) {
-                subset.add(domainConfigurations.next());
-            }
+        startJobWriter(harvest);
+        try {
+            while (domainConfigurations.hasNext()) {
+                List<DomainConfiguration> subset = new ArrayList<DomainConfiguration>();
+                while (domainConfigurations.hasNext() && subset.size() < DOMAIN_CONFIG_SUBSET_SIZE) {
+                    subset.add(domainConfigurations.next());
+                }
 
-            final Comparator<DomainConfiguration> domainConfigurationSubsetComparator = getDomainConfigurationSubsetComparator(
-                    harvest);
-            log.trace("Sorting domains with instance of " + domainConfigurationSubsetComparator.getClass().getName());
-            Collections.sort(subset, domainConfigurationSubsetComparator);
-            log.trace("{} domainconfigs now sorted and ready to processing for harvest #{}", subset.size(),
-                    harvest.getOid());
-            if (subset.size() == 0) {
-                log.warn("Processing a domain config subset of zero size for HD #{}.", harvest.getOid());
-            }
-            jobsMade += processDomainConfigurationSubset(harvest, subset.iterator());
-            if (jobsMade == 0) {
-                log.warn("Created 0 jobs for HD #{} from domain cfg subset size {}.", harvest.getOid(), subset.size());
-            } else {
-                log.info("Now created {} jobs for HD #{} from domain cfg subset size {}.", jobsMade, harvest.getOid(), subset.size());
+                final Comparator<DomainConfiguration> domainConfigurationSubsetComparator =
+                        getDomainConfigurationSubsetComparator(harvest);
+                log.trace("Sorting domains with instance of " + domainConfigurationSubsetComparator.getClass().getName());
+                Collections.sort(subset, domainConfigurationSubsetComparator);
+                log.trace("{} domainconfigs now sorted and ready to processing for harvest #{}", subset.size(),
+                        harvest.getOid());
+                if (subset.size() == 0) {
+                    log.warn("Processing a domain config subset of zero size for HD #{}.", harvest.getOid());
+                }
+                jobsMade += processDomainConfigurationSubset(harvest, subset.iterator());
+                if (jobsMade == 0) {
+                    log.warn("Created 0 jobs for HD #{} from domain cfg subset size {}.", harvest.getOid(), subset.size());
+                } else {
+                    log.info("Now created {} jobs for HD #{} from domain cfg subset size {}.", jobsMade, harvest.getOid(), subset.size());
+                }
             }
+            jobsMade += finishJobGeneration(harvest);
+        } finally {
+            closeIfCloseable(domainConfigurations);
+            stopJobWriter(harvest);
         }
 
         if (!harvest.isSnapShot()) {
@@ -186,6 +211,84 @@ abstract class AbstractJobGenerator implements JobGenerator {
     protected abstract int processDomainConfigurationSubset(HarvestDefinition harvest,
             Iterator<DomainConfiguration> domainConfSubset);
 
+    /**
+     * Called when all domain configurations of the harvest have been processed, while jobs can still be stored with
+     * {@link #storeJob(HarvestDefinition, Job)}. Override to store jobs that are still under construction.
+     *
+     * @param harvest the {@link HarvestDefinition} being processed.
+     * @return The number of jobs stored
+     */
+    protected int finishJobGeneration(HarvestDefinition harvest) {
+        return 0;
+    }
+
+    /**
+     * Store a finished job. The job is written to the database in a batch with other jobs of the harvest, on a
+     * separate thread; this waits if too many jobs are already waiting to be written. The job must not be changed
+     * afterwards.
+     *
+     * @param harvest the {@link HarvestDefinition} being processed.
+     * @param job the finished job
+     * @throws IllegalState If the jobs of the harvest are not being generated
+     * @throws dk.netarkivet.common.exceptions.IOFailure If writing earlier jobs of the harvest failed
+     */
+    protected void storeJob(HarvestDefinition harvest, Job job) {
+        JobWriter writer;
+        synchronized (writers) {
+            writer = writers.get(harvest.getOid());
+        }
+        if (writer == null) {
+            throw new IllegalState("No jobs are being generated for HD #" + harvest.getOid());
+        }
+        writer.write(job);
+    }
+
+    /**
+     * Start a writer for the jobs of a harvest.
+     *
+     * @param harvest the {@link HarvestDefinition} being processed.
+     * @throws IllegalState If jobs are already being generated for the harvest
+     */
+    private void startJobWriter(HarvestDefinition harvest) {
+        synchronized (writers) {
+            if (writers.containsKey(harvest.getOid())) {
+                throw new IllegalState("Jobs are already being generated for HD #" + harvest.getOid());
+            }
+            writers.put(harvest.getOid(),
+                    new JobWriter(JobDAO.getInstance(), harvest.getOid(), WRITER_BATCH_SIZE, WRITER_QUEUE_SIZE));
+        }
+    }
+
+    /**
+     * Wait until all jobs of a harvest are written, and stop its writer.
+     *
+     * @param harvest the {@link HarvestDefinition} being processed.
+     * @throws dk.netarkivet.common.exceptions.IOFailure If writing the jobs failed
+     */
+    private void stopJobWriter(HarvestDefinition harvest) {
+        JobWriter writer;
+        synchronized (writers) {
+            writer = writers.remove(harvest.getOid());
+        }
+        writer.close();
+    }
+
+    /**
+     * Close the domain configurations of a harvest, if they hold resources like a database connection. Closing them
+     * before they are exhausted, for instance after an error, releases those resources.
+     *
+     * @param domainConfigurations The iterator of the domain configurations of the harvest.
+     */
+    private void closeIfCloseable(Iterator<DomainConfiguration> domainConfigurations) {
+        if (domainConfigurations instanceof Closeable) {
+            try {
+                ((Closeable) domainConfigurations).close();
+            } catch (IOException e) {
+                log.warn("Failed to close the domain configurations", e);
+            }
+        }
+    }
+
     @Override
     public boolean canAccept(Job job, DomainConfiguration cfg, DomainConfiguration previousCfg) {
         log.trace("Comparing current cfg {} with previous cfg {} when adding configs to HD #{}", cfg, previousCfg, job.getOrigHarvestDefinitionID());
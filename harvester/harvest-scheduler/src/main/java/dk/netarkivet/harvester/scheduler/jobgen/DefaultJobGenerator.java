@@ -36,7 +36,6 @@ import dk.netarkivet.harvester.HarvesterSettings;
 import dk.netarkivet.harvester.datamodel.DomainConfiguration;
 import dk.netarkivet.harvester.datamodel.HarvestDefinition;
 import dk.netarkivet.harvester.datamodel.Job;
-import dk.netarkivet.harvester.datamodel.JobDAO;
 import dk.netarkivet.harvester.datamodel.NumberUtils;
 import dk.netarkivet.harvester.datamodel.eav.EAV;
 
@@ -157,7 +156,6 @@ public class DefaultJobGenerator extends AbstractJobGenerator {
         int jobsMade = 0;
         Job job = null;
         log.debug("Adding domainconfigs with the same order.xml for harvest #{}", harvest.getOid());
-        JobDAO dao = JobDAO.getInstance();
         DomainConfiguration previousDomainConf = null;
         while (domainConfSubset.hasNext()) {
             DomainConfiguration cfg = domainConfSubset.next();
@@ -177,7 +175,7 @@ public class DefaultJobGenerator extends AbstractJobGenerator {
                 if (job != null) {
                     // If we're done with a job, write it out
                     ++jobsMade;
-                    dao.create(job);
+                    storeJob(harvest, job);
                 }
                 job = getNewJob(harvest, cfg);
                 log.trace("Created new job for harvest #{} to add configuration {} for domain {}", harvest.getOid(),
@@ -193,7 +191,6 @@ public class DefaultJobGenerator extends AbstractJobGenerator {
         if (job != null) {
             ++jobsMade;
             editJobOrderXml(job);
-            dao.create(job);
             if (log.isTraceEnabled()) {
                 log.trace("Generated job: '{}'", job.toString());
                 StringBuilder logMsg = new StringBuilder("Job configurationsDomain:");
@@ -202,6 +199,7 @@ public class DefaultJobGenerator extends AbstractJobGenerator {
                 }
                 log.trace(logMsg.toString());
             }
+            storeJob(harvest, job);
             log.debug("Created {} jobs for harvest #{}", jobsMade, harvest.getOid());
         }
         return jobsMade;
@@ -36,7 +36,6 @@ import dk.netarkivet.harvester.HarvesterSettings;
 import dk.netarkivet.harvester.datamodel.DomainConfiguration;
 import dk.netarkivet.harvester.datamodel.HarvestDefinition;
 import dk.netarkivet.harvester.datamodel.Job;
-import dk.netarkivet.harvester.datamodel.JobDAO;
 
 /**
  * Job generator implementation. Generates jobs with a fixed number of domain configurations. Configuration allows to
@@ -150,9 +149,6 @@ public class FixedDomainConfigurationCountJobGenerator extends AbstractJobGenera
     /** The singleton instance. */
     public static FixedDomainConfigurationCountJobGenerator instance;
 
-    /** The job DAO instance (singleton). */
-    private JobDAO dao = JobDAO.getInstance();
-
     private FixedDomainConfigurationCountJobGenerator() {
         this.state = new HashMap<Long, HarvestJobGenerationState>();
     }
@@ -182,31 +178,36 @@ public class FixedDomainConfigurationCountJobGenerator extends AbstractJobGenera
     @Override
     public int generateJobs(HarvestDefinition harvest) {
         //this is a map form domain-cfgs to jobs. It will be empty if newly created.
-        HarvestJobGenerationState jobsUnderConstruction = getOrCreateStateForHarvest(harvest);
+        getOrCreateStateForHarvest(harvest);
 
         try {
-            int jobsComplete = super.generateJobs(harvest);
-
-            // Look if we have jobs that have not reached their limit, but are complete
-            // as we have finished processing the harvest
-            if (!jobsUnderConstruction.isEmpty()) {
-                log.debug("Finished generating jobs for HD #{} and found {} job(s) still under construction. This/these will"
-                        + "now be finalised and committed to the DB.", harvest.getOid(), jobsUnderConstruction.size());
-                for (Job job : jobsUnderConstruction.values()) {
-                    // The job is ready, post-process and store it in DB
-                    editJobOrderXml(job);
-                    dao.create(job);
-
-                    // Increment counter
-                    ++jobsComplete;
-                }
-            }
-            return jobsComplete;
+            return super.generateJobs(harvest);
         } finally {
             dropStateForHarvest(harvest);
         }
     }
 
+    @Override
+    protected int finishJobGeneration(HarvestDefinition harvest) {
+        HarvestJobGenerationState jobsUnderConstruction = getExistingStateForHarvest(harvest);
+        int jobsComplete = 0;
+        // Look if we have jobs that have not reached their limit, but are complete
+        // as we have finished processing the harvest
+        if (!jobsUnderConstruction.isEmpty()) {
+            log.debug("Finished generating jobs for HD #{} and found {} job(s) still under construction. This/these will"
+                    + "now be finalised and committed to the DB.", harvest.getOid(), jobsUnderConstruction.size());
+            for (Job job : jobsUnderConstruction.values()) {
+                // The job is ready, post-process and store it in DB
+                editJobOrderXml(job);
+                storeJob(harvest, job);
+
+                // Increment counter
+                ++jobsComplete;
+            }
+        }
+        return jobsComplete;
+    }
+
     @Override
     protected int processDomainConfigurationSubset(HarvestDefinition harvest,
             Iterator<DomainConfiguration> domainConfSubset) {
@@ -243,7 +244,7 @@ public class FixedDomainConfigurationCountJobGenerator extends AbstractJobGenera
                     // The job is ready, post-process and store it in DB
                     editJobOrderXml(match);
                     log.debug("Storing job {} to DB.", match);
-                    dao.create(match);
+                    storeJob(harvest, match);
 
                     // Increment counter
                     ++jobsComplete;
@@ -0,0 +1,197 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.scheduler.jobgen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.exceptions.IllegalState;
+import dk.netarkivet.harvester.HarvesterSettings;
+import dk.netarkivet.harvester.datamodel.Job;
+import dk.netarkivet.harvester.datamodel.JobDAO;
+
+/**
+ * Stores the jobs made by a job generator for one harvest definition. The jobs are written on a separate thread, so
+ * the job generator can go on grouping domain configurations while earlier jobs are serialized and inserted. The
+ * waiting jobs are written in batches with {@link JobDAO#create(List)}, one transaction per batch.
+ * <p>
+ * The number of waiting jobs is bounded: when the queue is full, {@link #write(Job)} waits until the writer thread
+ * catches up. {@link #close()} waits until all jobs have been written. If writing a batch fails, the writer stops and
+ * the failure is thrown by the next call to {@link #write(Job)} or {@link #close()}.
+ * <p>
+ * The batch size and the queue size are set by {@link HarvesterSettings#JOBGEN_WRITER_BATCH_SIZE} and
+ * {@link HarvesterSettings#JOBGEN_WRITER_QUEUE_SIZE}.
+ */
+class JobWriter {
+
+    /** Logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(JobWriter.class);
+
+    /** How many milliseconds to wait for the queue before checking the state of the writer again. */
+    private static final long POLL_INTERVAL = 100L;
+
+    /** The DAO used to store the jobs. */
+    private final JobDAO dao;
+
+    /** The id of the harvest definition the jobs belong to. */
+    private final Long harvestId;
+
+    /** The maximum number of jobs written in one transaction. */
+    private final int batchSize;
+
+    /** The jobs waiting to be written. */
+    private final BlockingQueue<Job> queue;
+
+    /** The thread writing the jobs. */
+    private final Thread thread;
+
+    /** Set when no more jobs will be added. */
+    private volatile boolean closed = false;
+
+    /** The exception that stopped the writer thread, if any. */
+    private volatile RuntimeException failure;
+
+    /** The number of jobs written so far. Only changed by the writer thread. */
+    private volatile int jobsWritten = 0;
+
+    /**
+     * Create a writer and start its thread.
+     *
+     * @param dao The DAO to store the jobs with.
+     * @param harvestId The id of the harvest definition the jobs belong to, used for logging.
+     * @param batchSize The maximum number of jobs to write in one transaction.
+     * @param queueSize The maximum number of jobs waiting to be written.
+     * @throws ArgumentNotValid If dao or harvestId is null, or batchSize or queueSize is not positive.
+     */
+    JobWriter(JobDAO dao, Long harvestId, int batchSize, int queueSize) {
+        ArgumentNotValid.checkNotNull(dao, "JobDAO dao");
+        ArgumentNotValid.checkNotNull(harvestId, "Long harvestId");
+        ArgumentNotValid.checkPositive(batchSize, "int batchSize");
+        ArgumentNotValid.checkPositive(queueSize, "int queueSize");
+        this.dao = dao;
+        this.harvestId = harvestId;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<Job>(queueSize);
+        this.thread = new Thread("JobWriter-HD#" + harvestId) {
+            @Override
+            public void run() {
+                writeJobs();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queue a finished job to be written. The job must not be changed afterwards. Waits while the queue is full.
+     *
+     * @param job The job to write.
+     * @throws ArgumentNotValid If job is null.
+     * @throws IllegalState If the writer is closed.
+     * @throws IOFailure If writing earlier jobs failed, or if interrupted while waiting.
+     */
+    void write(Job job) {
+        ArgumentNotValid.checkNotNull(job, "Job job");
+        if (closed) {
+            throw new IllegalState("The job writer for HD #" + harvestId + " is closed");
+        }
+        try {
+            do {
+                checkFailure();
+            } while (!queue.offer(job, POLL_INTERVAL, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOFailure("Interrupted while waiting to write " + job + " for HD #" + harvestId, e);
+        }
+    }
+
+    /**
+     * Wait until all queued jobs have been written, and stop the writer thread.
+     *
+     * @throws IOFailure If writing the jobs failed, or if interrupted while waiting.
+     */
+    void close() {
+        closed = true;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOFailure("Interrupted while waiting for the jobs of HD #" + harvestId + " to be written", e);
+        }
+        checkFailure();
+        log.debug("Wrote {} jobs for HD #{}", jobsWritten, harvestId);
+    }
+
+    /**
+     * @return The number of jobs written so far.
+     */
+    int getJobsWritten() {
+        return jobsWritten;
+    }
+
+    /**
+     * Throw the failure of the writer thread, if it has failed.
+     *
+     * @throws IOFailure If the writer thread has failed.
+     */
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IOFailure("Failed to write the jobs of HD #" + harvestId, failure);
+        }
+    }
+
+    /** The loop of the writer thread: write batches of jobs until closed and the queue is empty. */
+    private void writeJobs() {
+        List<Job> batch = new ArrayList<Job>(batchSize);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Job job = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (job == null) {
+                    continue;
+                }
+                batch.add(job);
+                queue.drainTo(batch, batchSize - 1);
+                long start = System.currentTimeMillis();
+                dao.create(batch);
+                jobsWritten += batch.size();
+                log.debug("Wrote {} jobs for HD #{} in {} ms", batch.size(), harvestId,
+                        System.currentTimeMillis() - start);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            failure = new IOFailure("Interrupted while writing the jobs of HD #" + harvestId, e);
+        } catch (RuntimeException e) {
+            log.warn("Failed to write {} jobs for HD #{}", batch.size(), harvestId, e);
+            failure = e;
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package dk.netarkivet.harvester.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import javax.jms.JMSException;
+import javax.jms.QueueBrowser;
+import javax.jms.QueueSession;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.distribute.ChannelID;
+import dk.netarkivet.common.distribute.JMSConnection;
+import dk.netarkivet.harvester.datamodel.HarvestChannel;
+import dk.netarkivet.harvester.distribute.HarvesterChannels;
+
+public class QueueControllerTest {
+    private static final ChannelID QUEUE = HarvesterChannels.getHarvestJobChannelId(new HarvestChannel("FOCUSED",
+            false, true, ""));
+    private JMSConnection jmsConnection;
+    private QueueSession queueSession;
+
+    @Before
+    public void setUp() throws Exception {
+        jmsConnection = mock(JMSConnection.class);
+        queueSession = mock(QueueSession.class);
+        when(jmsConnection.getQueueSession()).thenReturn(queueSession);
+        when(jmsConnection.getReportedQueueDepth(any(ChannelID.class), anyLong())).thenReturn(-1);
+    }
+
+    @Test
+    public void testCountIsReusedUntilReset() throws JMSException {
+        setQueueContents("job1", "job2");
+        QueueController controller = new QueueController(jmsConnection, 60000L, 0L);
+
+        assertEquals(2, controller.getCount(QUEUE));
+        setQueueContents("job1", "job2", "job3");
+        assertEquals("The count should be reused", 2, controller.getCount(QUEUE));
+        controller.resetCount(QUEUE);
+        assertEquals("The queue should be counted again after a reset", 3, controller.getCount(QUEUE));
+
+        assertEquals(1, controller.getCachedCounts());
+        assertEquals(2, controller.getBrowsedCounts());
+        assertEquals(0, controller.getReportedCounts());
+        verify(jmsConnection, times(0)).getReportedQueueDepth(any(ChannelID.class), anyLong());
+    }
+
+    @Test
+    public void testCountIsNotReusedWhenExpired() throws JMSException {
+        setQueueContents("job1");
+        QueueController controller = new QueueController(jmsConnection, 0L, 0L);
+
+        assertEquals(1, controller.getCount(QUEUE));
+        setQueueContents();
+        assertEquals(0, controller.getCount(QUEUE));
+        assertEquals(2, controller.getBrowsedCounts());
+    }
+
+    @Test
+    public void testBrokerStatisticsAreUsed() throws JMSException {
+        setQueueContents("job1", "job2");
+        when(jmsConnection.getReportedQueueDepth(eq(QUEUE), anyLong())).thenReturn(5);
+        QueueController controller = new QueueController(jmsConnection, 0L, 60000L);
+
+        assertEquals("The broker statistics should be used instead of browsing", 5, controller.getCount(QUEUE));
+        assertEquals(1, controller.getReportedCounts());
+        assertEquals(0, controller.getBrowsedCounts());
+    }
+
+    @Test
+    public void testBrowsingWhenNoBrokerStatistics() throws JMSException {
+        setQueueContents("job1", "job2");
+        QueueController controller = new QueueController(jmsConnection, 0L, 60000L);
+
+        assertEquals(2, controller.getCount(QUEUE));
+        assertEquals(0, controller.getReportedCounts());
+        assertEquals(1, controller.getBrowsedCounts());
+    }
+
+    @Test
+    public void testFailedCountIsNotReused() throws JMSException {
+        when(jmsConnection.createQueueBrowser(QUEUE, queueSession)).thenThrow(new RuntimeException("Broker down"));
+        QueueController controller = new QueueController(jmsConnection, 60000L, 0L);
+
+        assertEquals(0, controller.getCount(QUEUE));
+        assertEquals(0, controller.getCount(QUEUE));
+        assertEquals("A failed count should not be reused", 0, controller.getCachedCounts());
+    }
+
+    @Test
+    public void testStatisticsAreExposedAsMBean() throws Exception {
+        setQueueContents("job1", "job2");
+        QueueController controller = new QueueController(jmsConnection, 60000L, 0L);
+        controller.getCount(QUEUE);
+        controller.getCount(QUEUE);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("dk.netarkivet.harvester.scheduler:*");
+
+        controller.register();
+        try {
+            Set<ObjectName> names = server.queryNames(pattern, null);
+            assertEquals("The statistics should be registered once", 1, names.size());
+            ObjectName name = names.iterator().next();
+            assertEquals(1L, server.getAttribute(name, "BrowsedCounts"));
+            assertEquals(1L, server.getAttribute(name, "CachedCounts"));
+        } finally {
+            controller.unregister();
+        }
+        assertEquals("The statistics should be unregistered", 0, server.queryNames(pattern, null).size());
+    }
+
+    private void setQueueContents(String... messages) throws JMSException {
+        QueueBrowser browser = mock(QueueBrowser.class);
+        when(browser.getEnumeration()).thenReturn(Collections.enumeration(Arrays.asList(messages)));
+        when(jmsConnection.createQueueBrowser(QUEUE, queueSession)).thenReturn(browser);
+    }
+}
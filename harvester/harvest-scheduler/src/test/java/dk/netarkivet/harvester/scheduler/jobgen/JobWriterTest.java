@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.scheduler.jobgen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.exceptions.IllegalState;
+import dk.netarkivet.harvester.datamodel.Job;
+import dk.netarkivet.harvester.datamodel.JobDAO;
+
+public class JobWriterTest {
+    private JobDAO jobDaoMock = mock(JobDAO.class);
+
+    @Test
+    public void testWriteJobsInBatches() {
+        final List<List<Job>> batches = new ArrayList<List<Job>>();
+        doAnswer(new Answer<Void>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                batches.add(new ArrayList<Job>((List<Job>) invocation.getArguments()[0]));
+                return null;
+            }
+        }).when(jobDaoMock).create(anyListOf(Job.class));
+
+        JobWriter writer = new JobWriter(jobDaoMock, 1L, 2, 1);
+        List<Job> jobs = new ArrayList<Job>();
+        for (int i = 0; i < 5; i++) {
+            Job job = mock(Job.class);
+            jobs.add(job);
+            writer.write(job);
+        }
+        writer.close();
+
+        List<Job> written = new ArrayList<Job>();
+        for (List<Job> batch : batches) {
+            assertTrue("No batch should be larger than the batch size", batch.size() <= 2);
+            written.addAll(batch);
+        }
+        assertEquals("All jobs should be written in the order they were given", jobs, written);
+        assertEquals(5, writer.getJobsWritten());
+    }
+
+    @Test
+    public void testWriteFailure() {
+        doThrow(new IOFailure("Database down")).when(jobDaoMock).create(anyListOf(Job.class));
+        JobWriter writer = new JobWriter(jobDaoMock, 1L, 10, 10);
+        writer.write(mock(Job.class));
+        try {
+            writer.close();
+            fail("The failure of the writer should be thrown");
+        } catch (IOFailure e) {
+            assertEquals("Database down", e.getCause().getMessage());
+        }
+        assertEquals(0, writer.getJobsWritten());
+    }
+
+    @Test(expected = IllegalState.class)
+    public void testWriteAfterClose() {
+        JobWriter writer = new JobWriter(jobDaoMock, 1L, 10, 10);
+        writer.close();
+        writer.write(mock(Job.class));
+    }
+}
@@ -96,6 +96,28 @@ public class HarvesterSettings {
      * Default schedule for selective harvesting,. No default by default.
      */
     public static String DOMAIN_CONFIG_SCHEDULE = "settings.harvester.datamodel.domain.defaultSchedule";
+
+    /**
+     * <b>settings.harvester.datamodel.domain.cacheSize</b>: <br>
+     * The maximum number of domains kept in the caches of the domain DAO, one for domains and one for sparse domains.
+     * The least recently used domains are dropped when more are read. 0 turns the caches off.
+     */
+    public static String DOMAIN_CACHE_SIZE = "settings.harvester.datamodel.domain.cacheSize";
+
+    /**
+     * <b>settings.harvester.datamodel.domain.cacheTime</b>: <br>
+     * The maximum number of milliseconds a domain is kept in the caches of the domain DAO. Cached domains are also
+     * checked against the edition in the database before use, but changes to sparse domains made by other applications
+     * are only seen after this time.
+     */
+    public static String DOMAIN_CACHE_TIME = "settings.harvester.datamodel.domain.cacheTime";
+
+    /**
+     * <b>settings.harvester.datamodel.domain.historyPageSize</b>: <br>
+     * The number of harvests read at a time from the harvest history of a domain. The history of a domain read from
+     * the database is only read when used, newest harvests first, and often only the newest ones are needed.
+     */
+    public static String DOMAIN_HISTORY_PAGE_SIZE = "settings.harvester.datamodel.domain.historyPageSize";
     
     /**
      * <b>settings.harvester.scheduler.jobGen.config.errorFactorPrevResult</b>: <br>
@@ -221,6 +243,20 @@ public class HarvesterSettings {
      * Default value is false.
      */
     public static String USE_ALTERNATE_SNAPSHOT_JOBGENERATION_METHOD = "settings.harvester.scheduler.jobGen.useAlternateSnapshotJobgenerationMethod";
+
+    /**
+     * <b>settings.harvester.scheduler.jobGen.writerBatchSize</b>: <br>
+     * The maximum number of generated jobs written to the database in one transaction. The jobs are written by a
+     * separate thread while the job generator goes on grouping domain configurations. The default value is 50.
+     */
+    public static String JOBGEN_WRITER_BATCH_SIZE = "settings.harvester.scheduler.jobGen.writerBatchSize";
+
+    /**
+     * <b>settings.harvester.scheduler.jobGen.writerQueueSize</b>: <br>
+     * The maximum number of generated jobs waiting to be written to the database. When the queue is full, the job
+     * generator waits for the writer, so the jobs in memory stay bounded. The default value is 200.
+     */
+    public static String JOBGEN_WRITER_QUEUE_SIZE = "settings.harvester.scheduler.jobGen.writerQueueSize";
     
     /**
      * <b>settings.harvester.scheduler.jobtimeouttime</b>:<br />
@@ -254,6 +290,20 @@ public class HarvesterSettings {
      */
     public static String HARVEST_CONTROLLER_OLDJOBSDIR = "settings.harvester.harvesting.oldjobsDir";
 
+    /**
+     * <b>settings.harvester.harvesting.upload.concurrentUploads</b>: <br>
+     * The number of archive files of a job that are stored in the archive repository at the same time. The metadata
+     * files of the job are only uploaded when all other archive files have been uploaded. The default is 4.
+     */
+    public static String HARVEST_UPLOAD_CONCURRENT_UPLOADS = "settings.harvester.harvesting.upload.concurrentUploads";
+
+    /**
+     * <b>settings.harvester.harvesting.upload.maxBytesPerSecond</b>: <br>
+     * The maximum average number of bytes per second uploaded by a harvester. Uploads are delayed so the bytes of the
+     * files started stay within this rate. The default is 0, which means no limit.
+     */
+    public static String HARVEST_UPLOAD_MAX_BYTES_PER_SECOND = "settings.harvester.harvesting.upload.maxBytesPerSecond";
+
     /**
      * <b>settings.harvester.harvesting.channel</b>: <br>
      * Harvest channel to take jobs from. This is the default channel assigned to the harvest controller.
@@ -349,6 +399,23 @@ public class HarvesterSettings {
      */
 	public static String SCHEDULER_SUBMITTED_JOBS_IN_QUEUE_LIMIT = "settings.harvester.scheduler.submittedJobsInQueueLimit";
 
+    /**
+     * <b>settings.harvester.scheduler.submittedJobsInQueueCacheTime</b>: <br>
+     * How many milliseconds the counted number of submitted messages in a harvestchannel is reused, before the queue
+     * is counted again. The count is always renewed after a job is submitted to the channel. Not used if
+     * SCHEDULER_LIMIT_SUBMITTED_JOBS_IN_QUEUE is false. Default value is: 10000
+     */
+    public static String SCHEDULER_SUBMITTED_JOBS_IN_QUEUE_CACHE_TIME = "settings.harvester.scheduler.submittedJobsInQueueCacheTime";
+
+    /**
+     * <b>settings.harvester.scheduler.submittedJobsInQueueStatisticsMaxAge</b>: <br>
+     * The maximum age in milliseconds of the queue statistics published by the JMS broker, for them to be used instead
+     * of browsing the queue. The Sun/Open MQ broker publishes them every imq.metrics.topic.interval seconds (60 by
+     * default). Set to 0 to always browse the queue. Not used if SCHEDULER_LIMIT_SUBMITTED_JOBS_IN_QUEUE is false.
+     * Default value is: 90000
+     */
+    public static String SCHEDULER_SUBMITTED_JOBS_IN_QUEUE_STATISTICS_MAX_AGE = "settings.harvester.scheduler.submittedJobsInQueueStatisticsMaxAge";
+
     /**
      * <b>settings.harvester.harvesting.frontier.frontierReportWaitTime</b>:<br>
      * Time interval in seconds to wait between two requests to generate a full frontier report. Default value is 600
@@ -472,6 +539,13 @@ public class HarvesterSettings {
      */
     public static String DISREGARD_SEEDURL_INFORMATION_IN_CRAWLLOG = "settings.harvester.harvesting.harvestReport.disregardSeedURLInfo";
 
+    /**
+     * <b>settings.harvester.harvesting.harvestReport.parserThreads</b>:<br/>
+     * The number of threads used for parsing the crawl.log of a harvest into domain statistics. Large crawl logs are
+     * split into chunks that are parsed in parallel. The default is 0, which means one thread per available processor.
+     */
+    public static String HARVEST_REPORT_PARSER_THREADS = "settings.harvester.harvesting.harvestReport.parserThreads";
+
     /**
      * <b>settings.harvester.harvesting.deduplication.enabled</b>:<br/>
      * This setting tells the system whether or not to use deduplication. This setting is true by default.
@@ -723,6 +797,21 @@ public class HarvesterSettings {
      */
     public static String INDEXSERVER_INDEXING_LOOKFORDATAINOTHERBITARCHIVEREPLICAS = "settings.harvester.indexserver.lookfordataInAllBitarchiveReplicas";
 
+    /**
+     * <b>settings.harvester.indexserver.cache.maxBytes</b>: <br>
+     * The maximum number of bytes used by the files of the index caches of an application. When exceeded, cached
+     * files not in use are deleted according to settings.harvester.indexserver.cache.evictionPolicy. The value 0 means
+     * no limit. The default is 0.
+     */
+    public static String INDEXSERVER_CACHE_MAX_BYTES = "settings.harvester.indexserver.cache.maxBytes";
+
+    /**
+     * <b>settings.harvester.indexserver.cache.evictionPolicy</b>: <br>
+     * Which cached files to delete first when the index caches use more than settings.harvester.indexserver.cache
+     * .maxBytes: LRU for the least recently used, LFU for the least frequently used. The default is LRU.
+     */
+    public static String INDEXSERVER_CACHE_EVICTION_POLICY = "settings.harvester.indexserver.cache.evictionPolicy";
+
     /***************************/
     /* Viewerproxy - settings. */
     /***************************/
@@ -402,6 +402,16 @@ public class Domain extends ExtendableEntity implements Named {
         return history;
     }
 
+    /**
+     * Set the domain history. Only for use by the DAO, before any configurations are added.
+     *
+     * @param history the domain history
+     */
+    void setHistory(DomainHistory history) {
+        ArgumentNotValid.checkNotNull(history, "history");
+        this.history = history;
+    }
+
     /**
      * Get a specific seedlist previously added to this domain.
      *
@@ -23,6 +23,8 @@
 package dk.netarkivet.harvester.datamodel;
 
 import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
@@ -191,10 +193,28 @@ public abstract class DomainDAO implements DAO, Iterable<Domain> {
      */
     public abstract Iterator<Domain> getAllDomainsInSnapshotHarvestOrder();
 
+    /**
+     * Gets the default configurations of all domains that are not aliases, in the order expected by snapshot harvest
+     * job generation. Configurations with EAV attributes come first. The configurations are read as the iterator
+     * proceeds, and only hold what is needed to generate jobs from them.
+     *
+     * @return Iterator of the default configurations. It holds a database connection until it is iterated to the end,
+     * so if it may not be, it must be closed as a {@link java.io.Closeable}.
+     */
+    public abstract Iterator<DomainConfiguration> getDefaultConfigurationsInSnapshotHarvestOrder();
+
     /**
      * Reset the singleton. Only for use in tests! TODO remove this, no test methods in business classes!
      */
-    static void resetSingleton() {
+    static synchronized void resetSingleton() {
+        if (instance != null) {
+            for (ReadThroughCache<?> cache : Arrays.asList(instance.getDomainCache(),
+                    instance.getSparseDomainCache())) {
+                if (cache != null) {
+                    cache.unregister();
+                }
+            }
+        }
         instance = null;
     }
 
@@ -310,6 +330,43 @@ public abstract class DomainDAO implements DAO, Iterable<Domain> {
      */
     public abstract DomainHistory getDomainHistory(String domainName);
 
+    /**
+     * Get a page of the harvest history of a domain, newest harvests first. To get the next page, call again with the
+     * time of the last harvest of the page.
+     *
+     * @param domainName A name of a specific domain.
+     * @param before Only get harvests made before this time, or null to get the newest harvests.
+     * @param maxCount The number of harvests to get. More are returned if several harvests were made at the time of the
+     * last harvest of the page, so all of them are in the page.
+     * @return The harvests, sorted like in {@link DomainHistory}. Fewer than maxCount harvests means that there are no
+     * older harvests.
+     * @throws ArgumentNotValid if domainName is null or empty, or maxCount is not positive.
+     */
+    public abstract List<HarvestInfo> getDomainHistoryPage(String domainName, Date before, int maxCount);
+
+    /**
+     * Read the seeds of a seedlist.
+     *
+     * @param seedlistID The ID of the seedlist.
+     * @return The seeds separated by newlines.
+     * @throws UnknownID if there is no seedlist with the given ID.
+     */
+    abstract String readSeeds(long seedlistID);
+
+    /**
+     * Get the cache of domains read with {@link #read(String)} and {@link #readKnown(String)}, for its statistics.
+     *
+     * @return The cache of domains.
+     */
+    public abstract ReadThroughCache<?> getDomainCache();
+
+    /**
+     * Get the cache of domains read with {@link #readSparse(String)}, for its statistics.
+     *
+     * @return The cache of sparse domains.
+     */
+    public abstract ReadThroughCache<?> getSparseDomainCache();
+
     /**
      * Use a glob-like matcher to find a subset of domains.
      * <p>
@@ -36,10 +36,12 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -52,7 +54,9 @@ import dk.netarkivet.common.exceptions.UnknownID;
 import dk.netarkivet.common.utils.DBUtils;
 import dk.netarkivet.common.utils.DomainUtils;
 import dk.netarkivet.common.utils.FilterIterator;
+import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.common.utils.StringUtils;
+import dk.netarkivet.harvester.HarvesterSettings;
 import dk.netarkivet.harvester.datamodel.eav.EAV;
 import dk.netarkivet.harvester.datamodel.eav.EAV.AttributeAndType;
 import dk.netarkivet.harvester.datamodel.extendedfield.ExtendedFieldValue;
@@ -74,6 +78,15 @@ public class DomainDBDAO extends DomainDAO {
     /** The log. */
     private static final Logger log = LoggerFactory.getLogger(DomainDBDAO.class);
 
+    /** The domains read lately, by name, apart from their seeds and harvest history. */
+    private final ReadThroughCache<DomainRecord> domainCache;
+
+    /** The sparse domains read lately, by name. */
+    private final ReadThroughCache<SparseDomain> sparseDomainCache;
+
+    /** The number of harvests read at a time from the harvest history of a domain. */
+    private final int historyPageSize;
+
     /**
      * Creates a database-based implementation of the DomainDAO. Will check that all schemas have correct versions, and
      * update the ones that haven't.
@@ -98,6 +111,13 @@ public class DomainDBDAO extends DomainDAO {
         } finally {
             HarvestDBConnection.release(connection);
         }
+        int cacheSize = Settings.getInt(HarvesterSettings.DOMAIN_CACHE_SIZE);
+        long cacheTime = Settings.getLong(HarvesterSettings.DOMAIN_CACHE_TIME);
+        domainCache = new ReadThroughCache<DomainRecord>("domain", cacheSize, cacheTime);
+        sparseDomainCache = new ReadThroughCache<SparseDomain>("sparse domain", cacheSize, cacheTime);
+        domainCache.register();
+        sparseDomainCache.register();
+        historyPageSize = Settings.getInt(HarvesterSettings.DOMAIN_HISTORY_PAGE_SIZE);
     }
 
     @Override
@@ -199,6 +219,7 @@ public class DomainDBDAO extends DomainDAO {
             throw new IOFailure(message, e);
         } finally {
             DBUtils.rollbackIfNeeded(connection, "creating", d);
+            invalidate(d.getName());
         }
     }
 
@@ -260,7 +281,10 @@ public class DomainDBDAO extends DomainDAO {
 
             updateOwnerInfo(connection, d);
 
-            updateHarvestInfo(connection, d);
+            // A history that has not been read from the database cannot have been changed
+            if (d.getHistory().isLoaded()) {
+                updateHarvestInfo(connection, d);
+            }
 
             saveExtendedFieldValues(connection, d);
 
@@ -281,9 +305,20 @@ public class DomainDBDAO extends DomainDAO {
             DBUtils.closeStatementIfOpen(s);
             DBUtils.rollbackIfNeeded(connection, "updating", d);
             HarvestDBConnection.release(connection);
+            invalidate(d.getName());
         }
     }
 
+    /**
+     * Drop a domain from the caches, so it is read from the database the next time.
+     *
+     * @param domainName The name of the domain.
+     */
+    private void invalidate(String domainName) {
+        domainCache.invalidate(domainName);
+        sparseDomainCache.invalidate(domainName);
+    }
+
     /**
      * Update the list of passwords for the given domain, keeping IDs where applicable.
      *
@@ -348,9 +383,19 @@ public class DomainDBDAO extends DomainDAO {
                 + "WHERE domain_id = ?", d.getID());
         PreparedStatement s = c.prepareStatement("UPDATE seedlists SET comments = ?, " + "seeds = ? "
                 + "WHERE name = ? AND domain_id = ?");
+        PreparedStatement commentsStatement = c.prepareStatement("UPDATE seedlists SET comments = ? "
+                + "WHERE name = ? AND domain_id = ?");
         for (Iterator<SeedList> sls = d.getAllSeedLists(); sls.hasNext();) {
             SeedList sl = sls.next();
-            if (oldNames.containsKey(sl.getName())) {
+            if (oldNames.containsKey(sl.getName()) && !sl.isLoaded()) {
+                // Seeds that have not been read from the database cannot have been changed
+                DBUtils.setComments(commentsStatement, 1, sl, Constants.MAX_COMMENT_SIZE);
+                commentsStatement.setString(2, sl.getName());
+                commentsStatement.setLong(3, d.getID());
+                commentsStatement.executeUpdate();
+                commentsStatement.clearParameters();
+                oldNames.remove(sl.getName());
+            } else if (oldNames.containsKey(sl.getName())) {
                 DBUtils.setComments(s, 1, sl, Constants.MAX_COMMENT_SIZE);
                 DBUtils.setClobMaxLength(s, 2, sl.getSeedsAsString(), Constants.MAX_SEED_LIST_SIZE, sl, "seedlist");
                 s.setString(3, sl.getName());
@@ -363,6 +408,7 @@ public class DomainDBDAO extends DomainDAO {
                 insertSeedlist(c, d, sl);
             }
         }
+        commentsStatement.close();
         s.close();
         s = c.prepareStatement("DELETE FROM seedlists WHERE seedlist_id = ?");
         for (Long gone : oldNames.values()) {
@@ -746,10 +792,39 @@ public class DomainDBDAO extends DomainDAO {
     }
 
     @Override
-    protected synchronized Domain readKnown(Connection c, String domainName) {
+    protected synchronized Domain readKnown(final Connection c, String domainName) {
         ArgumentNotValid.checkNotNullOrEmpty(domainName, "domainName");
         ArgumentNotValid.checkTrue(DomainUtils.isValidDomainName(domainName), "Invalid domain name " + domainName);
-        Domain result;
+        DomainRecord record = domainCache.get(domainName, new ReadThroughCache.Loader<DomainRecord>() {
+            @Override
+            public DomainRecord load(String name) {
+                return readDomainRecord(c, name);
+            }
+
+            @Override
+            public boolean isCurrent(String name, DomainRecord cached) {
+                // Every change of a domain increases its edition, also when made by other applications
+                Long edition = DBUtils.selectLongValue(c, "SELECT edition FROM domains WHERE name = ?", name);
+                return edition != null && edition == cached.edition;
+            }
+        });
+        try {
+            return buildDomain(record);
+        } catch (SQLException e) {
+            throw new IOFailure("SQL Error while reading domain " + domainName + "\n", e);
+        }
+    }
+
+    /**
+     * Read a domain from the database, apart from the seeds of its seedlists and its harvest history, which are read
+     * when used.
+     *
+     * @param c A connection to the database
+     * @param domainName The name of an existing domain
+     * @return The domain as read from the database
+     * @throws IOFailure on trouble reading the domain
+     */
+    private DomainRecord readDomainRecord(Connection c, String domainName) {
         PreparedStatement s = null;
         try {
             s = c.prepareStatement("SELECT domains.domain_id, " + "domains.comments, " + "domains.crawlertraps, "
@@ -775,10 +850,6 @@ public class DomainDBDAO extends DomainDAO {
             String alias = res.getString(6);
             Date lastAliasUpdate = DBUtils.getDateMaybeNull(res, 7);
             s.close();
-            Domain d = new Domain(domainName);
-            d.setComments(comments);
-            // don't throw exception if illegal regexps are found.
-            boolean strictMode = false; 
             String[] traps = crawlertraps.split("\n");
             List<String> insertList = new ArrayList<String>();
             for (String trap: traps) {
@@ -787,97 +858,159 @@ public class DomainDBDAO extends DomainDAO {
                 }
             }
             log.trace("Found {} crawlertraps for domain '{}' in database", insertList.size(), domainName);
-            d.setCrawlerTraps(insertList, strictMode);
-            d.setID(domainId);
-            d.setEdition(edition);
+            AliasInfo aliasInfo = null;
             if (alias != null) {
-                d.setAliasInfo(new AliasInfo(domainName, alias, lastAliasUpdate));
+                aliasInfo = new AliasInfo(domainName, alias, lastAliasUpdate);
             }
-
-            readSeedlists(c, d);
-            readPasswords(c, d);
-            readConfigurations(c, d);
-            // Now that configs are in, we can set the default
-            d.setDefaultConfiguration(defaultconfig);
-            readOwnerInfo(c, d);
-            readHistoryInfo(c, d);
-
-            result = d;
+            DomainRecord record = new DomainRecord(domainName, domainId, comments, insertList, edition,
+                    defaultconfig, aliasInfo);
+
+            readSeedlists(c, record);
+            readPasswords(c, record);
+            readConfigurations(c, record);
+            readOwnerInfo(c, record);
+            return record;
         } catch (SQLException e) {
             throw new IOFailure("SQL Error while reading domain " + domainName + "\n", e);
+        } finally {
+            DBUtils.closeStatementIfOpen(s);
+        }
+    }
+
+    /**
+     * Build a new domain from what was read from the database. The seeds of its seedlists and its harvest history are
+     * read when used. The attributes of its configurations are read here, since they can be changed without changing
+     * the edition of the domain.
+     *
+     * @param record The domain as read from the database
+     * @return A new domain
+     * @throws SQLException If database errors occur.
+     */
+    private Domain buildDomain(DomainRecord record) throws SQLException {
+        Domain d = new Domain(record.name);
+        d.setHistory(new PagedDomainHistory(record.name, historyPageSize));
+        d.setComments(record.comments);
+        // don't throw exception if illegal regexps are found.
+        boolean strictMode = false;
+        d.setCrawlerTraps(record.crawlerTraps, strictMode);
+        d.setID(record.id);
+        d.setEdition(record.edition);
+        if (record.aliasInfo != null) {
+            d.setAliasInfo(record.aliasInfo);
         }
 
-        return result;
+        for (SeedListRecord seedlist : record.seedlists) {
+            d.addSeedList(new SeedList(seedlist.name, seedlist.comments, seedlist.id));
+        }
+        for (Password password : record.passwords) {
+            d.addPassword(password);
+        }
+        for (ConfigurationRecord config : record.configurations) {
+            List<SeedList> seedlists = new ArrayList<SeedList>();
+            for (String seedlistName : config.seedlistNames) {
+                seedlists.add(d.getSeedList(seedlistName));
+            }
+            List<Password> passwords = new ArrayList<Password>();
+            for (String passwordName : config.passwordNames) {
+                passwords.add(d.getPassword(passwordName));
+            }
+            DomainConfiguration dc = new DomainConfiguration(config.name, d, seedlists, passwords);
+            dc.setOrderXmlName(config.orderXmlName);
+            dc.setMaxObjects(config.maxObjects);
+            dc.setMaxRequestRate(config.maxRequestRate);
+            dc.setComments(config.comments);
+            dc.setMaxBytes(config.maxBytes);
+            dc.setID(config.id);
+            d.addConfiguration(dc);
+
+            // EAV
+            List<AttributeAndType> attributesAndTypes = EAV.getInstance().getAttributesAndTypes(EAV.DOMAIN_TREE_ID,
+                    (int) config.id);
+            dc.setAttributesAndTypes(attributesAndTypes);
+        }
+        // Now that configs are in, we can set the default
+        d.setDefaultConfiguration(record.defaultConfig);
+        for (DomainOwnerInfo ownerinfo : record.ownerInfos) {
+            d.addOwnerInfo(ownerinfo);
+        }
+        return d;
     }
 
     /**
      * Read the configurations for the domain. This should not be called until after passwords and seedlists are read.
      *
      * @param c A connection to the database
-     * @param d The domain being read. Its ID must be set.
+     * @param record The domain being read.
      * @throws SQLException If database errors occur.
      */
-    private void readConfigurations(Connection c, Domain d) throws SQLException {
-        // Read the configurations now that passwords and seedlists exist
+    private void readConfigurations(Connection c, DomainRecord record) throws SQLException {
+        // The seedlists and passwords of all the configurations are read at once
+        Map<Long, List<String>> seedlistNames = readNamesByConfiguration(c, "SELECT config_seedlists.config_id, "
+                + "seedlists.name FROM seedlists, config_seedlists WHERE seedlists.domain_id = ?"
+                + "  AND config_seedlists.seedlist_id = seedlists.seedlist_id", record.id);
+        Map<Long, List<String>> passwordNames = readNamesByConfiguration(c, "SELECT config_passwords.config_id, "
+                + "passwords.name FROM passwords, config_passwords WHERE passwords.domain_id = ?"
+                + "  AND config_passwords.password_id = passwords.password_id", record.id);
         PreparedStatement s = c.prepareStatement("SELECT " + "config_id, " + "configurations.name, " + "comments, "
                 + "ordertemplates.name, " + "maxobjects, " + "maxrate, " + "maxbytes"
                 + " FROM configurations, ordertemplates " + "WHERE domain_id = ?"
                 + "  AND configurations.template_id = " + "ordertemplates.template_id");
-        s.setLong(1, d.getID());
+        s.setLong(1, record.id);
         ResultSet res = s.executeQuery();
         while (res.next()) {
             long domainconfigId = res.getLong(1);
             String domainconfigName = res.getString(2);
-            String domainConfigComments = res.getString(3);
-            String order = res.getString(4);
-            long maxobjects = res.getLong(5);
-            int maxrate = res.getInt(6);
-            long maxbytes = res.getLong(7);
-            PreparedStatement s1 = c.prepareStatement("SELECT seedlists.name " + "FROM seedlists, config_seedlists "
-                    + "WHERE config_seedlists.config_id = ? " + "AND config_seedlists.seedlist_id = "
-                    + "seedlists.seedlist_id");
-            s1.setLong(1, domainconfigId);
-            ResultSet seedlistResultset = s1.executeQuery();
-            List<SeedList> seedlists = new ArrayList<SeedList>();
-            while (seedlistResultset.next()) {
-                seedlists.add(d.getSeedList(seedlistResultset.getString(1)));
-            }
-            s1.close();
-            if (seedlists.isEmpty()) {
-                String message = "Configuration " + domainconfigName + " of " + d + " has no seedlists";
+            List<String> seedlists = seedlistNames.get(domainconfigId);
+            if (seedlists == null) {
+                String message = "Configuration " + domainconfigName + " of " + record.name + " has no seedlists";
                 log.warn(message);
                 throw new IOFailure(message);
             }
-
-            s1 = c.prepareStatement("SELECT passwords.name FROM passwords, config_passwords "
-                    + "WHERE config_passwords.config_id = ? AND config_passwords.password_id = passwords.password_id");
-            s1.setLong(1, domainconfigId);
-            ResultSet passwordResultset = s1.executeQuery();
-            List<Password> passwords = new ArrayList<Password>();
-            while (passwordResultset.next()) {
-                passwords.add(d.getPassword(passwordResultset.getString(1)));
+            List<String> passwords = passwordNames.get(domainconfigId);
+            if (passwords == null) {
+                passwords = Collections.emptyList();
             }
-            DomainConfiguration dc = new DomainConfiguration(domainconfigName, d, seedlists, passwords);
-            dc.setOrderXmlName(order);
-            dc.setMaxObjects(maxobjects);
-            dc.setMaxRequestRate(maxrate);
-            dc.setComments(domainConfigComments);
-            dc.setMaxBytes(maxbytes);
-            dc.setID(domainconfigId);
-            d.addConfiguration(dc);
-            s1.close();
-
-            // EAV
-            List<AttributeAndType> attributesAndTypes = EAV.getInstance().getAttributesAndTypes(EAV.DOMAIN_TREE_ID, (int)domainconfigId);
-            dc.setAttributesAndTypes(attributesAndTypes);
+            record.configurations.add(new ConfigurationRecord(domainconfigId, domainconfigName, res.getString(3),
+                    res.getString(4), res.getLong(5), res.getInt(6), res.getLong(7), seedlists, passwords));
         }
-        if (!d.getAllConfigurations().hasNext()) {
-            String message = "Loaded domain " + d + " with no configurations";
+        s.close();
+        if (record.configurations.isEmpty()) {
+            String message = "Loaded domain " + record.name + " with no configurations";
             log.warn(message);
             throw new IOFailure(message);
         }
     }
 
+    /**
+     * Read names of seedlists or passwords used by the configurations of a domain.
+     *
+     * @param c A connection to the database
+     * @param query A query selecting a configuration ID and a name, with the ID of the domain as parameter
+     * @param domainId The ID of the domain
+     * @return The names, by configuration ID
+     * @throws SQLException If database errors occur.
+     */
+    private static Map<Long, List<String>> readNamesByConfiguration(Connection c, String query, long domainId)
+            throws SQLException {
+        Map<Long, List<String>> names = new HashMap<Long, List<String>>();
+        PreparedStatement s = c.prepareStatement(query);
+        try {
+            s.setLong(1, domainId);
+            ResultSet res = s.executeQuery();
+            while (res.next()) {
+                List<String> configNames = names.get(res.getLong(1));
+                if (configNames == null) {
+                    configNames = new ArrayList<String>();
+                    names.put(res.getLong(1), configNames);
+                }
+                configNames.add(res.getString(2));
+            }
+        } finally {
+            s.close();
+        }
+        return names;
+    }
+
     @Override
     public List<Long> findUsedConfigurations(Long domainID) {
         Connection connection = HarvestDBConnection.get();
@@ -909,104 +1042,88 @@ public class DomainDBDAO extends DomainDAO {
      * Read owner info entries for the domain.
      *
      * @param c A connection to the database
-     * @param d The domain being read. Its ID must be set.
+     * @param record The domain being read.
      * @throws SQLException If database errors occur.
      */
-    private void readOwnerInfo(Connection c, Domain d) throws SQLException {
+    private void readOwnerInfo(Connection c, DomainRecord record) throws SQLException {
         // Read owner info
         PreparedStatement s = c.prepareStatement("SELECT ownerinfo_id, created, info"
                 + " FROM ownerinfo WHERE domain_id = ?");
-        s.setLong(1, d.getID());
+        s.setLong(1, record.id);
         ResultSet res = s.executeQuery();
         while (res.next()) {
             final DomainOwnerInfo ownerinfo = new DomainOwnerInfo(new Date(res.getTimestamp(2).getTime()),
                     res.getString(3));
             ownerinfo.setID(res.getLong(1));
-            d.addOwnerInfo(ownerinfo);
-        }
-    }
-
-    /**
-     * Read history info entries for the domain.
-     *
-     * @param c A connection to the database
-     * @param d The domain being read. Its ID must be set.
-     * @throws SQLException If database errors occur.
-     */
-    private void readHistoryInfo(Connection c, Domain d) throws SQLException {
-        // Read history info
-        PreparedStatement s = c.prepareStatement("SELECT historyinfo_id, stopreason, " + "objectcount, bytecount, "
-                + "name, job_id, harvest_id, harvest_time " + "FROM historyinfo, configurations "
-                + "WHERE configurations.domain_id = ?" + "  AND historyinfo.config_id = configurations.config_id");
-        s.setLong(1, d.getID());
-        ResultSet res = s.executeQuery();
-        while (res.next()) {
-            long hiID = res.getLong(1);
-            int stopreasonNum = res.getInt(2);
-            StopReason stopreason = StopReason.getStopReason(stopreasonNum);
-            long objectCount = res.getLong(3);
-            long byteCount = res.getLong(4);
-            String configName = res.getString(5);
-            Long jobId = res.getLong(6);
-            if (res.wasNull()) {
-                jobId = null;
-            }
-            long harvestId = res.getLong(7);
-            Date harvestTime = new Date(res.getTimestamp(8).getTime());
-            HarvestInfo hi;
-            // XML DAOs didn't keep the job id in harvestinfo, so some
-            // entries will be null.
-            hi = new HarvestInfo(harvestId, jobId, d.getName(), configName, harvestTime, byteCount, objectCount,
-                    stopreason);
-            hi.setID(hiID);
-            d.getHistory().addHarvestInfo(hi);
+            record.ownerInfos.add(ownerinfo);
         }
+        s.close();
     }
 
     /**
      * Read passwords for the domain.
      *
      * @param c A connection to the database
-     * @param d The domain being read. Its ID must be set.
+     * @param record The domain being read.
      * @throws SQLException If database errors occur.
      */
-    private void readPasswords(Connection c, Domain d) throws SQLException {
+    private void readPasswords(Connection c, DomainRecord record) throws SQLException {
         PreparedStatement s = c.prepareStatement("SELECT password_id, name, comments, url, "
                 + "realm, username, password " + "FROM passwords WHERE domain_id = ?");
-        s.setLong(1, d.getID());
+        s.setLong(1, record.id);
         ResultSet res = s.executeQuery();
         while (res.next()) {
             final Password pwd = new Password(res.getString(2), res.getString(3), res.getString(4), res.getString(5),
                     res.getString(6), res.getString(7));
             pwd.setID(res.getLong(1));
-            d.addPassword(pwd);
+            record.passwords.add(pwd);
         }
+        s.close();
     }
 
     /**
-     * Read seedlists for the domain.
+     * Read seedlists for the domain, without their seeds.
      *
      * @param c A connection to the database
-     * @param d The domain being read. Its ID must be set.
+     * @param record The domain being read.
      * @throws SQLException If database errors occur.
      */
-    private void readSeedlists(Connection c, Domain d) throws SQLException {
-        PreparedStatement s = c.prepareStatement("SELECT seedlist_id, name, comments, seeds"
+    private void readSeedlists(Connection c, DomainRecord record) throws SQLException {
+        PreparedStatement s = c.prepareStatement("SELECT seedlist_id, name, comments"
                 + " FROM seedlists WHERE domain_id = ?");
-        s.setLong(1, d.getID());
+        s.setLong(1, record.id);
         ResultSet res = s.executeQuery();
         while (res.next()) {
-            final SeedList seedlist = getSeedListFromResultset(res);
-            d.addSeedList(seedlist);
+            record.seedlists.add(new SeedListRecord(res.getLong(1), res.getString(2), res.getString(3)));
         }
         s.close();
-        if (!d.getAllSeedLists().hasNext()) {
-            final String msg = "Domain " + d + " loaded with no seedlists";
+        if (record.seedlists.isEmpty()) {
+            final String msg = "Domain " + record.name + " loaded with no seedlists";
             log.warn(msg);
             throw new IOFailure(msg);
         }
     }
 
+    @Override
+    String readSeeds(long seedlistID) {
+        Connection c = HarvestDBConnection.get();
+        PreparedStatement s = null;
+        try {
+            s = c.prepareStatement("SELECT seeds FROM seedlists WHERE seedlist_id = ?");
+            s.setLong(1, seedlistID);
+            ResultSet res = s.executeQuery();
+            if (!res.next()) {
+                throw new UnknownID("No seedlist with ID " + seedlistID);
+            }
+            return getSeedsFromResultset(res, 1);
+        } catch (SQLException e) {
+            throw new IOFailure("SQL Error while reading the seeds of seedlist " + seedlistID + "\n", e);
+        } finally {
+            DBUtils.closeStatementIfOpen(s);
+            HarvestDBConnection.release(c);
+        }
+    }
+
     /**
      * Make SeedList based on entry from seedlists (id, name, comments, seeds).
      *
@@ -1014,24 +1131,35 @@ public class DomainDBDAO extends DomainDAO {
      * @return a SeedList based on ResultSet entry.
      * @throws SQLException if unable to get data from database
      */
-    private SeedList getSeedListFromResultset(ResultSet res) throws SQLException {
+    static SeedList getSeedListFromResultset(ResultSet res) throws SQLException {
         final long seedlistId = res.getLong(1);
         final String seedlistName = res.getString(2);
         String seedlistComments = res.getString(3);
 
-        String seedlistContents = "";
-        if (DBSpecifics.getInstance().supportsClob()) {
-            Clob clob = res.getClob(4);
-            seedlistContents = clob.getSubString(1, (int) clob.length());
-        } else {
-            seedlistContents = res.getString(4);
-        }
+        String seedlistContents = getSeedsFromResultset(res, 4);
         final SeedList seedlist = new SeedList(seedlistName, seedlistContents);
         seedlist.setComments(seedlistComments);
         seedlist.setID(seedlistId);
         return seedlist;
     }
 
+    /**
+     * Get the seeds of a seedlist from a column of the seedlists table.
+     *
+     * @param res a Resultset
+     * @param column the column holding the seeds
+     * @return the seeds separated by newlines
+     * @throws SQLException if unable to get data from database
+     */
+    private static String getSeedsFromResultset(ResultSet res, int column) throws SQLException {
+        if (DBSpecifics.getInstance().supportsClob()) {
+            Clob clob = res.getClob(column);
+            return clob.getSubString(1, (int) clob.length());
+        } else {
+            return res.getString(column);
+        }
+    }
+
     @Override
     public synchronized boolean exists(String domainName) {
         ArgumentNotValid.checkNotNullOrEmpty(domainName, "domainName");
@@ -1092,6 +1220,11 @@ public class DomainDBDAO extends DomainDAO {
         return getDomainsInSnapshotHarvestOrder(null);
     }
     
+    @Override
+    public Iterator<DomainConfiguration> getDefaultConfigurationsInSnapshotHarvestOrder() {
+        return new SnapshotConfigurationIterator();
+    }
+
     @Override
     public Iterator<Domain> getDomainsInSnapshotHarvestOrder(Long hid) {
         Connection c = HarvestDBConnection.get();
@@ -1116,7 +1249,7 @@ public class DomainDBDAO extends DomainDAO {
                 log.info("Retrieved all {} domains used for Snapshot harvesting that has attributes for their default configs", domainNamesWithAttributes.size());
                 domainNames = domainNames.stream().filter(DomainUtils::isValidDomainName).collect(Collectors.toList());
                 //  Remove the content of domainNamesWithAttributes from domainNames
-                domainNames.removeAll(domainNamesWithAttributes);
+                domainNames.removeAll(new HashSet<String>(domainNamesWithAttributes));
                 log.info("Removed all {} domains with attributes from the total list, reducing total-list to {}", domainNamesWithAttributes.size(), domainNames.size());
                 // Add the remainder of domainNames to domainNamesWithAttributes, so the domain configs with attributes will be handled first.
                 domainNamesWithAttributes.addAll(domainNames);
@@ -1145,7 +1278,7 @@ public class DomainDBDAO extends DomainDAO {
                 log.info("Retrieved all {} domains harvested in previous snapshot harvest that has attributes for their default configs", domainNamesWithAttributes.size());
                 domainNames = domainNames.stream().filter(DomainUtils::isValidDomainName).collect(Collectors.toList());
                 //  Remove the content of domainNamesWithAttributes from domainNames
-                domainNames.removeAll(domainNamesWithAttributes);
+                domainNames.removeAll(new HashSet<String>(domainNamesWithAttributes));
                 log.info("Removed all {} domains with attributes from the total list, reducing total-list to {}", domainNamesWithAttributes.size(), domainNames.size());
                 // Add the remainder of domainNames to domainNamesWithAttributes, so the domain configs with attributes will be handled first.
                 domainNamesWithAttributes.addAll(domainNames);
@@ -1207,18 +1340,30 @@ public class DomainDBDAO extends DomainDAO {
     public synchronized SparseDomain readSparse(String domainName) {
         ArgumentNotValid.checkNotNullOrEmpty(domainName, "domainName");
         ArgumentNotValid.checkTrue(DomainUtils.isValidDomainName(domainName), "Cannot read invalid domain name " + domainName);
-        Connection c = HarvestDBConnection.get();
-        try {
-            List<String> domainConfigurationNames = DBUtils.selectStringList(c, "SELECT configurations.name "
-                    + " FROM configurations, domains " + "WHERE domains.domain_id = configurations.domain_id "
-                    + " AND domains.name = ?", domainName);
-            if (domainConfigurationNames.size() == 0) {
-                throw new UnknownID("No domain exists with name '" + domainName + "'");
+        return sparseDomainCache.get(domainName, new ReadThroughCache.Loader<SparseDomain>() {
+            @Override
+            public SparseDomain load(String name) {
+                Connection c = HarvestDBConnection.get();
+                try {
+                    List<String> domainConfigurationNames = DBUtils.selectStringList(c, "SELECT configurations.name "
+                            + " FROM configurations, domains " + "WHERE domains.domain_id = configurations.domain_id "
+                            + " AND domains.name = ?", name);
+                    if (domainConfigurationNames.size() == 0) {
+                        throw new UnknownID("No domain exists with name '" + name + "'");
+                    }
+                    return new SparseDomain(name, Collections.unmodifiableList(domainConfigurationNames));
+                } finally {
+                    HarvestDBConnection.release(c);
+                }
             }
-            return new SparseDomain(domainName, domainConfigurationNames);
-        } finally {
-            HarvestDBConnection.release(c);
-        }
+
+            @Override
+            public boolean isCurrent(String name, SparseDomain cached) {
+                // Checking costs as much as reading it again, so changes made by other applications are only seen
+                // when it expires
+                return true;
+            }
+        });
     }
 
     @Override
@@ -1671,24 +1816,7 @@ public class DomainDBDAO extends DomainDAO {
             s.setString(1, domainName);
             ResultSet res = s.executeQuery();
             while (res.next()) {
-                long hiID = res.getLong(1);
-                int stopreasonNum = res.getInt(2);
-                StopReason stopreason = StopReason.getStopReason(stopreasonNum);
-                long objectCount = res.getLong(3);
-                long byteCount = res.getLong(4);
-                String configName = res.getString(5);
-                Long jobId = res.getLong(6);
-                if (res.wasNull()) {
-                    jobId = null;
-                }
-                long harvestId = res.getLong(7);
-                Date harvestTime = new Date(res.getTimestamp(8).getTime());
-                HarvestInfo hi;
-
-                hi = new HarvestInfo(harvestId, jobId, domainName, configName, harvestTime, byteCount, objectCount,
-                        stopreason);
-                hi.setID(hiID);
-                history.addHarvestInfo(hi);
+                history.addHarvestInfo(getHarvestInfoFromResultset(res, domainName));
             }
         } catch (SQLException e) {
             throw new IOFailure("Error while fetching DomainHistory for domain '" + domainName + "': ", e);
@@ -1700,6 +1828,87 @@ public class DomainDBDAO extends DomainDAO {
         return history;
     }
 
+    @Override
+    public List<HarvestInfo> getDomainHistoryPage(String domainName, Date before, int maxCount) {
+        ArgumentNotValid.checkNotNullOrEmpty(domainName, "String domainName");
+        ArgumentNotValid.checkPositive(maxCount, "int maxCount");
+        final String select = "SELECT historyinfo_id, stopreason, objectcount, bytecount, name, job_id, harvest_id, "
+                + "harvest_time FROM historyinfo, configurations "
+                + "WHERE configurations.domain_id = (SELECT domain_id FROM domains WHERE name = ?)"
+                + "  AND historyinfo.config_id = configurations.config_id";
+        Connection c = HarvestDBConnection.get();
+        PreparedStatement s = null;
+        try {
+            List<HarvestInfo> page = new ArrayList<HarvestInfo>();
+            Set<Long> ids = new HashSet<Long>();
+            s = c.prepareStatement(select + (before == null ? "" : "  AND harvest_time < ?")
+                    + " ORDER BY harvest_time DESC");
+            s.setString(1, domainName);
+            if (before != null) {
+                s.setTimestamp(2, new Timestamp(before.getTime()));
+            }
+            s.setMaxRows(maxCount);
+            ResultSet res = s.executeQuery();
+            while (res.next()) {
+                HarvestInfo hi = getHarvestInfoFromResultset(res, domainName);
+                page.add(hi);
+                ids.add(hi.getID());
+            }
+            s.close();
+            if (page.size() == maxCount) {
+                // Add the other harvests made at the time of the last one, so the next page can start before it
+                s = c.prepareStatement(select + "  AND harvest_time = ?");
+                s.setString(1, domainName);
+                s.setTimestamp(2, new Timestamp(page.get(page.size() - 1).getDate().getTime()));
+                res = s.executeQuery();
+                while (res.next()) {
+                    HarvestInfo hi = getHarvestInfoFromResultset(res, domainName);
+                    if (ids.add(hi.getID())) {
+                        page.add(hi);
+                    }
+                }
+            }
+            Collections.sort(page, DomainHistory.DATE_COMPARATOR);
+            return page;
+        } catch (SQLException e) {
+            throw new IOFailure("Error while fetching a page of the DomainHistory for domain '" + domainName + "': ",
+                    e);
+        } finally {
+            DBUtils.closeStatementIfOpen(s);
+            HarvestDBConnection.release(c);
+        }
+    }
+
+    /**
+     * Make HarvestInfo based on entry from historyinfo (historyinfo_id, stopreason, objectcount, bytecount, name of
+     * the configuration, job_id, harvest_id, harvest_time).
+     *
+     * @param res a Resultset
+     * @param domainName the name of the domain harvested
+     * @return a HarvestInfo based on ResultSet entry.
+     * @throws SQLException if unable to get data from database
+     */
+    private static HarvestInfo getHarvestInfoFromResultset(ResultSet res, String domainName) throws SQLException {
+        long hiID = res.getLong(1);
+        int stopreasonNum = res.getInt(2);
+        StopReason stopreason = StopReason.getStopReason(stopreasonNum);
+        long objectCount = res.getLong(3);
+        long byteCount = res.getLong(4);
+        String configName = res.getString(5);
+        Long jobId = res.getLong(6);
+        if (res.wasNull()) {
+            jobId = null;
+        }
+        long harvestId = res.getLong(7);
+        Date harvestTime = new Date(res.getTimestamp(8).getTime());
+        // XML DAOs didn't keep the job id in harvestinfo, so some
+        // entries will be null.
+        HarvestInfo hi = new HarvestInfo(harvestId, jobId, domainName, configName, harvestTime, byteCount,
+                objectCount, stopreason);
+        hi.setID(hiID);
+        return hi;
+    }
+
     @Override
     public List<String> getDomains(String glob, String searchField) {
         ArgumentNotValid.checkNotNullOrEmpty(glob, "glob");
@@ -1744,6 +1953,7 @@ public class DomainDBDAO extends DomainDAO {
 			throw new IOFailure("Error while renaming configuration '" + configOldName + "' to: " + domainConf.getName(), e);
 		}  finally {
             HarvestDBConnection.release(connection);
+            invalidate(domain.getName());
         }
 	}
 
@@ -1757,4 +1967,108 @@ public class DomainDBDAO extends DomainDAO {
             HarvestDBConnection.release(c);
         }   
     }
+
+    @Override
+    public ReadThroughCache<?> getDomainCache() {
+        return domainCache;
+    }
+
+    @Override
+    public ReadThroughCache<?> getSparseDomainCache() {
+        return sparseDomainCache;
+    }
+
+    /**
+     * A domain as read from the database, apart from the seeds of its seedlists and its harvest history. This is what
+     * is kept in the cache of domains. Domains are changed by their users, so a new Domain is built from it for each
+     * read. Not changed after it has been read; the passwords and owner info entries are shared by the domains built
+     * from it, as they cannot be changed outside this package.
+     */
+    private static final class DomainRecord {
+        /** The name of the domain. */
+        final String name;
+        /** The ID of the domain. */
+        final long id;
+        /** The comments of the domain. */
+        final String comments;
+        /** The crawler traps of the domain. */
+        final List<String> crawlerTraps;
+        /** The edition of the domain when it was read. */
+        final long edition;
+        /** The name of the default configuration. */
+        final String defaultConfig;
+        /** The alias info of the domain, or null if it is not an alias. */
+        final AliasInfo aliasInfo;
+        /** The seedlists of the domain. */
+        final List<SeedListRecord> seedlists = new ArrayList<SeedListRecord>();
+        /** The passwords of the domain. */
+        final List<Password> passwords = new ArrayList<Password>();
+        /** The configurations of the domain. */
+        final List<ConfigurationRecord> configurations = new ArrayList<ConfigurationRecord>();
+        /** The owner info entries of the domain. */
+        final List<DomainOwnerInfo> ownerInfos = new ArrayList<DomainOwnerInfo>();
+
+        DomainRecord(String name, long id, String comments, List<String> crawlerTraps, long edition,
+                String defaultConfig, AliasInfo aliasInfo) {
+            this.name = name;
+            this.id = id;
+            this.comments = comments;
+            this.crawlerTraps = crawlerTraps;
+            this.edition = edition;
+            this.defaultConfig = defaultConfig;
+            this.aliasInfo = aliasInfo;
+        }
+    }
+
+    /** A seedlist as read from the database, without its seeds. */
+    private static final class SeedListRecord {
+        /** The ID of the seedlist. */
+        final long id;
+        /** The name of the seedlist. */
+        final String name;
+        /** The comments of the seedlist. */
+        final String comments;
+
+        SeedListRecord(long id, String name, String comments) {
+            this.id = id;
+            this.name = name;
+            this.comments = comments;
+        }
+    }
+
+    /** A domain configuration as read from the database. */
+    private static final class ConfigurationRecord {
+        /** The ID of the configuration. */
+        final long id;
+        /** The name of the configuration. */
+        final String name;
+        /** The comments of the configuration. */
+        final String comments;
+        /** The name of the order template. */
+        final String orderXmlName;
+        /** The maximum number of objects to harvest. */
+        final long maxObjects;
+        /** The maximum request rate. */
+        final int maxRequestRate;
+        /** The maximum number of bytes to harvest. */
+        final long maxBytes;
+        /** The names of the seedlists used. */
+        final List<String> seedlistNames;
+        /** The names of the passwords used. */
+        final List<String> passwordNames;
+
+        ConfigurationRecord(long id, String name, String comments, String orderXmlName, long maxObjects,
+                int maxRequestRate, long maxBytes, List<String> seedlistNames, List<String> passwordNames) {
+            this.id = id;
+            this.name = name;
+            this.comments = comments;
+            this.orderXmlName = orderXmlName;
+            this.maxObjects = maxObjects;
+            this.maxRequestRate = maxRequestRate;
+            this.maxBytes = maxBytes;
+            this.seedlistNames = seedlistNames;
+            this.passwordNames = passwordNames;
+        }
+    }
+
 }
@@ -42,7 +42,7 @@ public class DomainHistory {
      * Sorts HarvestInfo with newest first. Sorting on HarvestID and DomainConfiguration is only to make comparator
      * consistent with equals.
      */
-    private static final Comparator<HarvestInfo> DATE_COMPARATOR = new Comparator<HarvestInfo>() {
+    static final Comparator<HarvestInfo> DATE_COMPARATOR = new Comparator<HarvestInfo>() {
         public int compare(HarvestInfo hi1, HarvestInfo hi2) {
             int i = hi2.getDate().compareTo(hi1.getDate());
             if (i != 0) {
@@ -82,10 +82,9 @@ public class DomainHistory {
     public HarvestInfo getMostRecentHarvestInfo(String cfgName) {
         ArgumentNotValid.checkNotNull(cfgName, "cfgName");
 
-        if (harvestInfo.size() == 0) {
-            return null;
-        }
-        for (HarvestInfo hi : harvestInfo) {
+        Iterator<HarvestInfo> iter = getHarvestInfo();
+        while (iter.hasNext()) {
+            HarvestInfo hi = iter.next();
             if (hi.getDomainConfigurationName().equals(cfgName)) {
                 return hi;
             }
@@ -104,7 +103,7 @@ public class DomainHistory {
         ArgumentNotValid.checkNotNull(oid, "oid");
         ArgumentNotValid.checkNotNull(cfgName, "cfgName");
 
-        Iterator<HarvestInfo> iter = harvestInfo.iterator();
+        Iterator<HarvestInfo> iter = getHarvestInfo();
         HarvestInfo hi;
         while (iter.hasNext()) {
             hi = iter.next();
@@ -125,6 +124,16 @@ public class DomainHistory {
         harvestInfo.add(hi);
     }
 
+    /**
+     * Check whether all the harvest information is held by this object. Histories read from persistent storage may be
+     * read when first used.
+     *
+     * @return true if all the harvest information is held by this object.
+     */
+    boolean isLoaded() {
+        return true;
+    }
+
     /**
      * Return the most recent harvestresult for the configuration identified by name that was a complete harvest of the
      * domain.
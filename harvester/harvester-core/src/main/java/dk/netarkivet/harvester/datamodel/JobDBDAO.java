@@ -30,12 +30,15 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -90,32 +93,57 @@ public class JobDBDAO extends JobDAO {
      */
     public synchronized void create(Job job) {
         ArgumentNotValid.checkNotNull(job, "Job job");
-        // Check that job.getOrigHarvestDefinitionID() refers to existing harvestdefinition.
-        Long harvestId = job.getOrigHarvestDefinitionID();
-        if (!HarvestDefinitionDAO.getInstance().exists(harvestId)) {
-            throw new UnknownID("No harvestdefinition with ID=" + harvestId);
-        }
+        create(Collections.singletonList(job));
+    }
 
-        Connection connection = HarvestDBConnection.get();
-        if (job.getJobID() != null) {
-            log.warn("The jobId for the job is already set. This should probably never happen.");
-        } else {
-            job.setJobID(generateNextID(connection));
+    /**
+     * Creates instances in persistent storage of the given jobs in one transaction. Jobs without an ID get consecutive
+     * IDs, and the harvestnamePrefix of every job is set afterwards. The jobs and their job_configs entries are written
+     * with batch inserts, so the database is only contacted a few times regardless of the number of jobs.
+     *
+     * @param jobs the jobs to add to persistent storage
+     * @throws ArgumentNotValid If jobs is null or contains null
+     * @throws UnknownID If a job refers to a harvestdefinition that does not exist
+     * @throws IOFailure If some SQLException occurs while writing the jobs to persistent storage
+     */
+    @Override
+    public synchronized void create(List<Job> jobs) {
+        ArgumentNotValid.checkNotNull(jobs, "List<Job> jobs");
+        if (jobs.isEmpty()) {
+            return;
         }
-        // Set the harvestNamePrefix. Every current implementation depends on the JobID being set before
-        // being initialized.
-        job.setDefaultHarvestNamePrefix();
-        
-        
-        if (job.getCreationDate() != null) {
-            log.warn("The creation time for the job is already set. This should probably never happen.");
-        } else {
-            job.setCreationDate(new Date());
+        // Check that the jobs refer to existing harvestdefinitions.
+        Set<Long> harvestIds = new HashSet<Long>();
+        for (Job job : jobs) {
+            ArgumentNotValid.checkNotNull(job, "Job job");
+            Long harvestId = job.getOrigHarvestDefinitionID();
+            if (harvestIds.add(harvestId) && !HarvestDefinitionDAO.getInstance().exists(harvestId)) {
+                throw new UnknownID("No harvestdefinition with ID=" + harvestId);
+            }
         }
 
-        log.debug("Creating " + job.toString());
+        Connection connection = HarvestDBConnection.get();
+        long nextID = generateNextID(connection);
+        for (Job job : jobs) {
+            if (job.getJobID() != null) {
+                log.warn("The jobId for the job is already set. This should probably never happen.");
+            } else {
+                job.setJobID(nextID++);
+            }
+            // Set the harvestNamePrefix. Every current implementation depends on the JobID being set before
+            // being initialized.
+            job.setDefaultHarvestNamePrefix();
+
+            if (job.getCreationDate() != null) {
+                log.warn("The creation time for the job is already set. This should probably never happen.");
+            } else {
+                job.setCreationDate(new Date());
+            }
+            log.debug("Creating " + job.toString());
+        }
 
         PreparedStatement statement = null;
+        long initialEdition = 1;
         try {
             connection.setAutoCommit(false);
             statement = connection.prepareStatement("INSERT INTO jobs "
@@ -124,48 +152,86 @@ public class JobDBDAO extends JobDAO {
                     + "harvest_num, startdate, enddate, submitteddate, creationdate, "
                     + "num_configs, edition, resubmitted_as_job, harvestname_prefix, snapshot) "
                     + "VALUES ( ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?," + "?, ?, ?, ?, ?, ?)");
-
-            statement.setLong(1, job.getJobID());
-            statement.setLong(2, job.getOrigHarvestDefinitionID());
-            statement.setInt(3, job.getStatus().ordinal());
-            statement.setString(4, job.getChannel());
-            statement.setLong(5, job.getForceMaxObjectsPerDomain());
-            statement.setLong(6, job.getMaxBytesPerDomain());
-            statement.setLong(7, job.getMaxJobRunningTime());
-            DBUtils.setStringMaxLength(statement, 8, job.getOrderXMLName(), Constants.MAX_NAME_SIZE, job,
-                    "order.xml name");
-            final String orderString = job.getOrderXMLdoc().getXML();
-            DBUtils.setClobMaxLength(statement, 9, orderString, Constants.MAX_ORDERXML_SIZE, job, "order.xml");
-            DBUtils.setClobMaxLength(statement, 10, job.getSeedListAsString(), Constants.MAX_COMBINED_SEED_LIST_SIZE,
-                    job, "seedlist");
-            statement.setInt(11, job.getHarvestNum());
-            DBUtils.setDateMaybeNull(statement, 12, job.getActualStart());
-            DBUtils.setDateMaybeNull(statement, 13, job.getActualStop());
-            DBUtils.setDateMaybeNull(statement, 14, job.getSubmittedDate());
-            DBUtils.setDateMaybeNull(statement, 15, job.getCreationDate());
-
-            // The size of the configuration map == number of configurations
-            statement.setInt(16, job.getDomainConfigurationMap().size());
-            long initialEdition = 1;
-            statement.setLong(17, initialEdition);
-            DBUtils.setLongMaybeNull(statement, 18, job.getResubmittedAsJob());
-            statement.setString(19, job.getHarvestFilenamePrefix());
-            statement.setBoolean(20, job.isSnapshot());
-            statement.executeUpdate();
-            createJobConfigsEntries(connection, job);
+            for (Job job : jobs) {
+                statement.setLong(1, job.getJobID());
+                statement.setLong(2, job.getOrigHarvestDefinitionID());
+                statement.setInt(3, job.getStatus().ordinal());
+                statement.setString(4, job.getChannel());
+                statement.setLong(5, job.getForceMaxObjectsPerDomain());
+                statement.setLong(6, job.getMaxBytesPerDomain());
+                statement.setLong(7, job.getMaxJobRunningTime());
+                DBUtils.setStringMaxLength(statement, 8, job.getOrderXMLName(), Constants.MAX_NAME_SIZE, job,
+                        "order.xml name");
+                final String orderString = job.getOrderXMLdoc().getXML();
+                DBUtils.setClobMaxLength(statement, 9, orderString, Constants.MAX_ORDERXML_SIZE, job, "order.xml");
+                DBUtils.setClobMaxLength(statement, 10, job.getSeedListAsString(),
+                        Constants.MAX_COMBINED_SEED_LIST_SIZE, job, "seedlist");
+                statement.setInt(11, job.getHarvestNum());
+                DBUtils.setDateMaybeNull(statement, 12, job.getActualStart());
+                DBUtils.setDateMaybeNull(statement, 13, job.getActualStop());
+                DBUtils.setDateMaybeNull(statement, 14, job.getSubmittedDate());
+                DBUtils.setDateMaybeNull(statement, 15, job.getCreationDate());
+
+                // The size of the configuration map == number of configurations
+                statement.setInt(16, job.getDomainConfigurationMap().size());
+                statement.setLong(17, initialEdition);
+                DBUtils.setLongMaybeNull(statement, 18, job.getResubmittedAsJob());
+                statement.setString(19, job.getHarvestFilenamePrefix());
+                statement.setBoolean(20, job.isSnapshot());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            statement.close();
+            statement = connection.prepareStatement("INSERT INTO job_configs ( job_id, config_id ) "
+                    + "SELECT ?, configurations.config_id FROM domains, configurations"
+                    + " WHERE domains.name = ? AND domains.domain_id = configurations.domain_id"
+                    + "   AND configurations.name = ?");
+            for (Job job : jobs) {
+                addJobConfigsEntries(statement, job);
+            }
             connection.commit();
-            job.setEdition(initialEdition);
+            for (Job job : jobs) {
+                job.setEdition(initialEdition);
+                job.configsChanged = false;
+            }
         } catch (SQLException e) {
-            String message = "SQL error creating job " + job + " in database" + "\n"
-                    + ExceptionUtils.getSQLExceptionCause(e);
+            String message = "SQL error creating " + jobs.size() + " jobs starting with " + jobs.get(0)
+                    + " in database" + "\n" + ExceptionUtils.getSQLExceptionCause(e);
             log.warn(message, e);
             throw new IOFailure(message, e);
         } finally {
-            DBUtils.rollbackIfNeeded(connection, "create job", job);
+            DBUtils.closeStatementIfOpen(statement);
+            DBUtils.rollbackIfNeeded(connection, "create jobs", jobs);
             HarvestDBConnection.release(connection);
         }
     }
 
+    /**
+     * Add and execute a batch of job_configs entries for a new job, one for each of its domain configurations.
+     *
+     * @param statement The prepared insert statement taking the job ID, domain name and configuration name
+     * @param job The job to store entries for
+     * @throws SQLException If any problems occur during creation of the new entries in the job_configs table.
+     */
+    private void addJobConfigsEntries(PreparedStatement statement, Job job) throws SQLException {
+        final Map<String, String> domainConfigurationMap = job.getDomainConfigurationMap();
+        for (Map.Entry<String, String> entry : domainConfigurationMap.entrySet()) {
+            statement.setLong(1, job.getJobID());
+            statement.setString(2, entry.getKey());
+            statement.setString(3, entry.getValue());
+            statement.addBatch();
+        }
+        int rows = 0;
+        for (int count : statement.executeBatch()) {
+            // Some drivers only report that the statement succeeded.
+            rows += (count == PreparedStatement.SUCCESS_NO_INFO) ? 1 : count;
+        }
+        if (rows != domainConfigurationMap.size()) {
+            log.debug("Domain or configuration in table for {} missing: Should have {}, got {}", job,
+                    domainConfigurationMap.size(), rows);
+        }
+    }
+
     /**
      * Create the entries in the job_configs table for this job. Since some jobs have up to 10000 configs, this must be
      * optimized. The entries are only created, if job.configsChanged is true.
@@ -191,9 +257,9 @@ public class JobDBDAO extends JobDAO {
                 for (Map.Entry<String, String> entry : domainConfigurationMap.entrySet()) {
                     statement.setString(1, entry.getKey());
                     statement.setString(2, entry.getValue());
-                    statement.executeUpdate();
-                    statement.clearParameters();
+                    statement.addBatch();
                 }
+                statement.executeBatch();
                 statement.close();
                 // Now we have a temp table with all the domains and configs
                 statement = dbconnection.prepareStatement("INSERT INTO job_configs " + "( job_id, config_id ) "
@@ -0,0 +1,147 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.datamodel;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * The harvest history of a domain read from persistent storage, read when it is used. Iterating over the history
+ * reads it a page at a time, newest harvests first, so looking at the latest harvests of a domain with a long history
+ * does not read all of it. Every page is kept once read, so each page is read at most once, and when the last page has
+ * been read the history is loaded. The whole history is read when harvest information is added, since the DAO must
+ * then store all of it.
+ */
+class PagedDomainHistory extends DomainHistory {
+
+    /** The name of the domain. */
+    private final String domainName;
+
+    /** The number of harvests to read at a time. */
+    private final int pageSize;
+
+    /** The harvests read so far, in the order they were read, newest first. */
+    private final List<HarvestInfo> read = new ArrayList<HarvestInfo>();
+
+    /** The time of the oldest harvest read so far, or null before the first page. */
+    private Date before = null;
+
+    /** Whether the whole history has been read into this object. */
+    private boolean loaded = false;
+
+    /**
+     * Create the history of a domain in persistent storage.
+     *
+     * @param domainName The name of the domain.
+     * @param pageSize The number of harvests to read at a time.
+     * @throws ArgumentNotValid If domainName is null or empty, or pageSize is not positive.
+     */
+    PagedDomainHistory(String domainName, int pageSize) {
+        ArgumentNotValid.checkNotNullOrEmpty(domainName, "String domainName");
+        ArgumentNotValid.checkPositive(pageSize, "int pageSize");
+        this.domainName = domainName;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Get all harvest information domain history.
+     *
+     * @return Iterator of harvest information registered for this domain. The information is sorted by date with the
+     * most recent information as the first entry. Until the whole history is read, the pages not yet read are read
+     * while iterating.
+     */
+    @Override
+    public Iterator<HarvestInfo> getHarvestInfo() {
+        if (loaded) {
+            return super.getHarvestInfo();
+        }
+        return new PageIterator();
+    }
+
+    /**
+     * Add new harvestinformation to the domainHistory. The whole history is read first.
+     *
+     * @param hi the harvest information to add
+     */
+    @Override
+    public void addHarvestInfo(HarvestInfo hi) {
+        ArgumentNotValid.checkNotNull(hi, "hi");
+        while (!loaded) {
+            readPage();
+        }
+        super.addHarvestInfo(hi);
+    }
+
+    @Override
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Read the next page of the history, and keep it. The history is loaded when a page is not full.
+     */
+    private void readPage() {
+        List<HarvestInfo> infos = DomainDAO.getInstance().getDomainHistoryPage(domainName, before, pageSize);
+        for (HarvestInfo hi : infos) {
+            read.add(hi);
+            super.addHarvestInfo(hi);
+        }
+        if (!infos.isEmpty()) {
+            before = infos.get(infos.size() - 1).getDate();
+        }
+        loaded = infos.size() < pageSize;
+    }
+
+    /** Iterates over the history read so far, reading the following pages from persistent storage when needed. */
+    private class PageIterator implements Iterator<HarvestInfo> {
+        /** The index in the harvests read of the next harvest to return. */
+        private int next = 0;
+
+        @Override
+        public boolean hasNext() {
+            while (next >= read.size() && !loaded) {
+                readPage();
+            }
+            return next < read.size();
+        }
+
+        @Override
+        public HarvestInfo next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more harvests in the history of " + domainName);
+            }
+            return read.get(next++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("The history of a domain cannot be changed while iterating");
+        }
+    }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.datamodel;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.management.SingleMBeanObject;
+
+/**
+ * A bounded cache of values read from the database, keyed by name. Values missing from the cache are read with a
+ * {@link Loader} and kept until they are invalidated, have been in the cache longer than the maximum age, or are the
+ * least recently used when the cache is full. A loader can also tell that a cached value is out of date, typically by
+ * comparing its edition with the one in the database.
+ * <p>
+ * Cached values are shared, so they must not be changed by their users. This class is thread-safe, but values may be
+ * loaded more than once if several threads ask for the same missing value at the same time.
+ * <p>
+ * The statistics of the cache can be exposed as an MBean with {@link #register()}.
+ *
+ * @param <V> The type of the cached values.
+ */
+public class ReadThroughCache<V> implements ReadThroughCacheStatistics {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(ReadThroughCache.class);
+
+    /**
+     * Reads values missing from a cache.
+     *
+     * @param <V> The type of the values.
+     */
+    interface Loader<V> {
+        /**
+         * Read a value.
+         *
+         * @param key The key of the value.
+         * @return The value, never null.
+         */
+        V load(String key);
+
+        /**
+         * Check that a cached value is still up to date.
+         *
+         * @param key The key of the value.
+         * @param value The cached value.
+         * @return true if the value can be used, false if it must be read again.
+         */
+        boolean isCurrent(String key, V value);
+    }
+
+    /** A name for the cache used in log messages. */
+    private final String name;
+
+    /** The maximum number of values in the cache. */
+    private final int maxSize;
+
+    /** The maximum number of milliseconds a value is kept. */
+    private final long maxAge;
+
+    /** The cached values in order of use, least recently used first. */
+    private final LinkedHashMap<String, Entry<V>> entries;
+
+    /** The number of requests answered from the cache. */
+    private long hits = 0;
+
+    /** The number of requests that had to read the value. */
+    private long misses = 0;
+
+    /** The number of cached values found to be out of date. */
+    private long staleEntries = 0;
+
+    /** The number of values dropped to keep the cache within its maximum size. */
+    private long evictions = 0;
+
+    /** The total number of nanoseconds spent reading values. */
+    private long loadNanos = 0;
+
+    /** The statistics of this cache as an mbean, or null if not registered. */
+    private SingleMBeanObject<ReadThroughCacheStatistics> singleMBeanObject;
+
+    /**
+     * Create an empty cache.
+     *
+     * @param name A name for the cache used in log messages.
+     * @param maxSize The maximum number of values in the cache. 0 means that nothing is cached.
+     * @param maxAge The maximum number of milliseconds a value is kept.
+     * @throws ArgumentNotValid If name is null or empty, or maxSize or maxAge is negative.
+     */
+    ReadThroughCache(String name, int maxSize, long maxAge) {
+        ArgumentNotValid.checkNotNullOrEmpty(name, "String name");
+        ArgumentNotValid.checkNotNegative(maxSize, "int maxSize");
+        ArgumentNotValid.checkNotNegative(maxAge, "long maxAge");
+        this.name = name;
+        this.maxSize = maxSize;
+        this.maxAge = maxAge;
+        this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                if (size() > ReadThroughCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get a value from the cache, reading it with the loader if it is missing or out of date.
+     *
+     * @param key The key of the value.
+     * @param loader Reads the value if needed.
+     * @return The value.
+     * @throws ArgumentNotValid If key or loader is null.
+     */
+    V get(String key, Loader<V> loader) {
+        ArgumentNotValid.checkNotNull(key, "String key");
+        ArgumentNotValid.checkNotNull(loader, "Loader<V> loader");
+        Entry<V> entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            if (System.currentTimeMillis() - entry.loadTime < maxAge && loader.isCurrent(key, entry.value)) {
+                synchronized (this) {
+                    ++hits;
+                }
+                return entry.value;
+            }
+            synchronized (this) {
+                ++staleEntries;
+                if (entries.get(key) == entry) {
+                    entries.remove(key);
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        V value = loader.load(key);
+        long nanos = System.nanoTime() - start;
+        log.trace("Read '{}' into the {} cache in {} ms", key, name, TimeUnit.NANOSECONDS.toMillis(nanos));
+        synchronized (this) {
+            ++misses;
+            loadNanos += nanos;
+            if (maxSize > 0) {
+                entries.put(key, new Entry<V>(value, System.currentTimeMillis()));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drop a value from the cache, so it is read again the next time it is asked for. Call this whenever the value is
+     * changed in the database.
+     *
+     * @param key The key of the value.
+     */
+    synchronized void invalidate(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Drop all values from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Registers the statistics of this cache as an mbean, named by the name of the cache. Failing to do so is logged,
+     * but otherwise ignored, since the statistics are not needed for reading values.
+     */
+    public synchronized void register() {
+        if (singleMBeanObject != null) {
+            return;
+        }
+        try {
+            singleMBeanObject = new SingleMBeanObject<ReadThroughCacheStatistics>("dk.netarkivet.harvester.datamodel",
+                    this, ReadThroughCacheStatistics.class, ManagementFactory.getPlatformMBeanServer());
+            singleMBeanObject.getNameProperties().put("cache", name);
+            singleMBeanObject.register();
+        } catch (Exception e) {
+            log.warn("Unable to register the statistics of the {} cache as an mbean", name, e);
+            singleMBeanObject = null;
+        }
+    }
+
+    /**
+     * Unregisters the statistics mbean, if registered.
+     */
+    public synchronized void unregister() {
+        if (singleMBeanObject == null) {
+            return;
+        }
+        try {
+            singleMBeanObject.unregister();
+        } catch (Exception e) {
+            log.warn("Unable to unregister the statistics mbean of the {} cache", name, e);
+        }
+        singleMBeanObject = null;
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public synchronized long getStaleEntries() {
+        return staleEntries;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized long getTotalLoadMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(loadNanos);
+    }
+
+    @Override
+    public synchronized long getAverageLoadMillis() {
+        return misses == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(loadNanos / misses);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "The " + name + " cache holds " + entries.size() + " of at most " + maxSize + " entries. " + hits
+                + " hits, " + misses + " misses (hit rate " + String.format("%.2f", getHitRate()) + "), "
+                + staleEntries + " stale entries, " + evictions + " evictions, " + getAverageLoadMillis()
+                + " ms average load time";
+    }
+
+    /**
+     * A cached value.
+     *
+     * @param <V> The type of the value.
+     */
+    private static final class Entry<V> {
+        /** The value. */
+        final V value;
+        /** When the value was read, in milliseconds since the epoch. */
+        final long loadTime;
+
+        /**
+         * @param value The value.
+         * @param loadTime When the value was read, in milliseconds since the epoch.
+         */
+        Entry(V value, long loadTime) {
+            this.value = value;
+            this.loadTime = loadTime;
+        }
+    }
+
+}
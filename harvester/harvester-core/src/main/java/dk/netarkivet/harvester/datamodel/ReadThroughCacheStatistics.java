@@ -0,0 +1,76 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.datamodel;
+
+/**
+ * An interface for reading how well a {@link ReadThroughCache} answers requests. Exposed as an MBean by the cache.
+ */
+public interface ReadThroughCacheStatistics {
+
+    /**
+     * @return The number of values in the cache.
+     */
+    int getSize();
+
+    /**
+     * @return The maximum number of values in the cache.
+     */
+    int getMaxSize();
+
+    /**
+     * @return The number of requests answered from the cache.
+     */
+    long getHits();
+
+    /**
+     * @return The number of requests that had to read the value.
+     */
+    long getMisses();
+
+    /**
+     * @return The fraction of requests answered from the cache, or 0 if there have been no requests.
+     */
+    double getHitRate();
+
+    /**
+     * @return The number of cached values found to be out of date or too old.
+     */
+    long getStaleEntries();
+
+    /**
+     * @return The number of values dropped to keep the cache within its maximum size.
+     */
+    long getEvictions();
+
+    /**
+     * @return The total number of milliseconds spent reading values missing from the cache.
+     */
+    long getTotalLoadMillis();
+
+    /**
+     * @return The average number of milliseconds spent reading a value missing from the cache, or 0 if nothing has
+     * been read.
+     */
+    long getAverageLoadMillis();
+
+}
@@ -25,6 +25,7 @@ package dk.netarkivet.harvester.datamodel;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.io.StringReader;
@@ -38,6 +39,7 @@ import org.apache.commons.io.IOUtils;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.exceptions.UnknownID;
 import dk.netarkivet.common.utils.Named;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.harvester.HarvesterSettings;
@@ -50,7 +52,10 @@ public class SeedList implements Serializable, Named {
 
     /** The name of the seedlist. Used for sorting. */
     private String name;
-    /** The List of Seeds; Each String in the List holds one seed. */
+    /**
+     * The List of Seeds; Each String in the List holds one seed. Null until read for seedlists read from persistent
+     * storage.
+     */
     private List<String> seeds;
     /** Any comments associated with this seedlist. */
     private String comments;
@@ -69,12 +74,42 @@ public class SeedList implements Serializable, Named {
         ArgumentNotValid.checkNotNullOrEmpty(name, "name");
         ArgumentNotValid.checkNotNull(seedsAsString, "seeds");
 
+        this.seeds = parseSeeds(seedsAsString);
+        this.name = name;
+        this.comments = "";
+    }
+
+    /**
+     * Create a seedlist stored in persistent storage. The seeds are read when first used.
+     *
+     * @param name the name of the seedlist
+     * @param comments the comments of the seedlist
+     * @param id the ID of the seedlist in persistent storage
+     * @throws ArgumentNotValid if name is null or empty
+     */
+    SeedList(String name, String comments, long id) {
+        ArgumentNotValid.checkNotNullOrEmpty(name, "name");
+
+        this.name = name;
+        this.comments = comments;
+        this.id = id;
+    }
+
+    /**
+     * Split newline separated seeds into a list, checking that each of them is valid.
+     *
+     * @param seedsAsString the seeds
+     * @return the seeds as a list
+     * @throws ArgumentNotValid if a seed is not valid
+     */
+    private static List<String> parseSeeds(String seedsAsString) {
+        Pattern validSeedPattern = Pattern.compile(Settings.get(HarvesterSettings.VALID_SEED_REGEX));
         BufferedReader urlreader = new BufferedReader(new StringReader(seedsAsString));
-        seeds = new LinkedList<String>();
+        List<String> seeds = new LinkedList<String>();
         String url;
         try {
             while ((url = urlreader.readLine()) != null) {
-                if (isAcceptableURL(url)) {
+                if (isAcceptableURL(validSeedPattern, url)) {
                     seeds.add(url);
                 } else {
                     throw new ArgumentNotValid("The URL '" + url + "' is not valid");
@@ -83,19 +118,18 @@ public class SeedList implements Serializable, Named {
         } catch (IOException e) {
             throw new IOFailure("Should never happen: " + "IO Failure while reading a string", e);
         }
-        this.name = name;
-        this.comments = "";
+        return seeds;
     }
 
     /**
      * Check urls for validity. Valid seeds are controlled by a configurable regular expression
      *
+     * @param validSeedPattern The regular expression valid seeds match
      * @param url The url to check
      * @return true, if it is accepted
      * @see HarvesterSettings#VALID_SEED_REGEX
      */
-    private boolean isAcceptableURL(String url) {
-        Pattern validSeedPattern = Pattern.compile(Settings.get(HarvesterSettings.VALID_SEED_REGEX));
+    private static boolean isAcceptableURL(Pattern validSeedPattern, String url) {
         if (!validSeedPattern.matcher(url).matches()) {
             return false;
         }
@@ -119,14 +153,27 @@ public class SeedList implements Serializable, Named {
     }
 
     /**
-     * Gets all seeds in a list.
+     * Gets all seeds in a list. The seeds of a seedlist read from persistent storage are read the first time.
      *
      * @return The seeds
+     * @throws UnknownID if the seedlist is no longer in persistent storage
      */
     public List<String> getSeeds() {
+        if (seeds == null) {
+            seeds = parseSeeds(DomainDAO.getInstance().readSeeds(id));
+        }
         return seeds;
     }
 
+    /**
+     * Check whether the seeds are held by this object, or are yet to be read from persistent storage.
+     *
+     * @return true if the seeds are held by this object
+     */
+    boolean isLoaded() {
+        return seeds != null;
+    }
+
     /**
      * Gets the seeds. Seeds are separated by newline,
      *
@@ -135,7 +182,7 @@ public class SeedList implements Serializable, Named {
     public String getSeedsAsString() {
         StringWriter urls = new StringWriter();
         PrintWriter urlwriter = new PrintWriter(urls);
-        for (Iterator<String> i = seeds.iterator(); i.hasNext();) {
+        for (Iterator<String> i = getSeeds().iterator(); i.hasNext();) {
             String url = i.next();
             urlwriter.println(url);
         }
@@ -205,7 +252,7 @@ public class SeedList implements Serializable, Named {
      * @return A readable string
      */
     public String toString() {
-        return getName() + ": " + seeds.toString();
+        return getName() + ": " + getSeeds().toString();
     }
 
     /**
@@ -230,7 +277,7 @@ public class SeedList implements Serializable, Named {
         if (!name.equals(seedList.name)) {
             return false;
         }
-        if (!seeds.equals(seedList.seeds)) {
+        if (!getSeeds().equals(seedList.getSeeds())) {
             return false;
         }
 
@@ -245,9 +292,20 @@ public class SeedList implements Serializable, Named {
     public int hashCode() {
         int result;
         result = name.hashCode();
-        result = 29 * result + seeds.hashCode();
+        result = 29 * result + getSeeds().hashCode();
         result = 29 * result + comments.hashCode();
         return result;
     }
 
+    /**
+     * Read the seeds before serializing, so they are sent along.
+     *
+     * @param out The stream to write to
+     * @throws IOException If writing fails
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getSeeds();
+        out.defaultWriteObject();
+    }
+
 }
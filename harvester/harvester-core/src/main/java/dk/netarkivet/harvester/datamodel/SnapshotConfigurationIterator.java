@@ -0,0 +1,367 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+package dk.netarkivet.harvester.datamodel;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.DBUtils;
+import dk.netarkivet.common.utils.DomainUtils;
+import dk.netarkivet.common.utils.ExceptionUtils;
+import dk.netarkivet.common.utils.StringUtils;
+import dk.netarkivet.harvester.datamodel.eav.EAV;
+import dk.netarkivet.harvester.datamodel.eav.EAV.AttributeAndType;
+
+/**
+ * Streams the default configurations of all domains that are not aliases, in the order expected by snapshot harvest
+ * job generation. Configurations with EAV attributes come first, then all other configurations. Within each group, the
+ * configurations are ordered by template name, then byte limit (descending), then domain name.
+ * <p>
+ * The configurations are read with one query per group, whose rows are fetched from the database as the iterator
+ * proceeds. The seed lists and the harvest history of the configurations are read in blocks of {@link #BLOCK_SIZE}
+ * configurations on another connection. Only what job generation needs is read: the configurations have no passwords,
+ * and their domain history only holds the harvest used for the expected number of objects of the configuration.
+ * <p>
+ * The iterator holds a database connection and its transaction while a query is open. The connection is released when
+ * the iterator is exhausted, or when it is closed, so a caller that may stop before the end must close it.
+ */
+class SnapshotConfigurationIterator implements Iterator<DomainConfiguration>, Closeable {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(SnapshotConfigurationIterator.class);
+
+    /** The number of configurations whose seed lists and history are read together. */
+    static final int BLOCK_SIZE = 1000;
+
+    /** The columns, tables and conditions of the configuration queries. */
+    private static final String SELECT_CONFIGURATIONS = "SELECT configurations.config_id, domains.name,"
+            + " configurations.name, ordertemplates.name, configurations.maxobjects, configurations.maxrate,"
+            + " configurations.maxbytes, domains.crawlertraps" + " FROM domains, configurations, ordertemplates"
+            + " WHERE domains.defaultconfig = configurations.config_id"
+            + " AND configurations.template_id = ordertemplates.template_id"
+            + " AND (domains.alias IS NULL OR domains.lastaliasupdate < ?)";
+
+    /** The order of the configuration queries. */
+    private static final String SNAPSHOT_ORDER = " ORDER BY ordertemplates.name, configurations.maxbytes DESC,"
+            + " domains.name";
+
+    /** The date before which an alias must have been updated to be expired. */
+    private final Date aliasExpiry;
+
+    /** The ids of the default configurations that have EAV attributes. */
+    private final Set<Long> configsWithAttributes;
+
+    /** The attributes of a configuration without EAV attributes, read when first needed. */
+    private List<AttributeAndType> defaultAttributes;
+
+    /** The configurations read but not yet returned. */
+    private final Deque<DomainConfiguration> buffer = new ArrayDeque<DomainConfiguration>();
+
+    /** The group being read: 0 for configurations with attributes, 1 for the others, 2 when done. */
+    private int group;
+
+    /** The connection of the current query, or null if none is open. */
+    private Connection connection;
+
+    /** The current query, or null if none is open. */
+    private PreparedStatement statement;
+
+    /** The rows of the current query, or null if none is open. */
+    private ResultSet rows;
+
+    /** The number of configurations returned. */
+    private long count;
+
+    /** The time the iteration started. */
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * Prepare the iteration. The ids of the configurations with attributes are read here, the configurations when
+     * needed.
+     */
+    SnapshotConfigurationIterator() {
+        aliasExpiry = new Date(System.currentTimeMillis() - Constants.ALIAS_TIMEOUT_IN_MILLISECONDS);
+        Connection c = HarvestDBConnection.get();
+        try {
+            configsWithAttributes = new HashSet<Long>(DBUtils.selectLongList(c, "SELECT DISTINCT"
+                    + " configurations.config_id FROM domains, configurations, eav_attribute"
+                    + " WHERE domains.defaultconfig = configurations.config_id"
+                    + " AND configurations.config_id = eav_attribute.entity_id"));
+        } finally {
+            HarvestDBConnection.release(c);
+        }
+        log.info("Starting to read the snapshot configurations, {} of which have attributes",
+                configsWithAttributes.size());
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (buffer.isEmpty() && group < 2) {
+            try {
+                readBlock();
+            } catch (SQLException e) {
+                close();
+                throw new IOFailure("SQL error reading snapshot configurations\n"
+                        + ExceptionUtils.getSQLExceptionCause(e), e);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+        return !buffer.isEmpty();
+    }
+
+    @Override
+    public DomainConfiguration next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        count++;
+        return buffer.removeFirst();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("This class does not support remove()");
+    }
+
+    /**
+     * Read the next block of configurations of the current group into the buffer, moving on to the next group when the
+     * current one is exhausted.
+     *
+     * @throws SQLException If reading from the database fails.
+     */
+    private void readBlock() throws SQLException {
+        if (rows == null) {
+            connection = HarvestDBConnection.get();
+            if (group == 0) {
+                statement = DBUtils.prepareStatement(connection, BLOCK_SIZE, SELECT_CONFIGURATIONS
+                        + " AND configurations.config_id IN (SELECT entity_id FROM eav_attribute)" + SNAPSHOT_ORDER,
+                        aliasExpiry);
+            } else {
+                statement = DBUtils.prepareStatement(connection, BLOCK_SIZE, SELECT_CONFIGURATIONS + SNAPSHOT_ORDER,
+                        aliasExpiry);
+            }
+            rows = statement.executeQuery();
+        }
+        List<ConfigurationRow> block = new ArrayList<ConfigurationRow>();
+        boolean exhausted = true;
+        while (rows.next()) {
+            long configId = rows.getLong(1);
+            String domainName = rows.getString(2);
+            if (group == 1 && configsWithAttributes.contains(configId)) {
+                continue;
+            }
+            if (!DomainUtils.isValidDomainName(domainName)) {
+                log.debug("Skipping invalid domain name '{}'", domainName);
+                continue;
+            }
+            block.add(new ConfigurationRow(configId, domainName, rows.getString(3), rows.getString(4),
+                    rows.getLong(5), rows.getInt(6), rows.getLong(7), rows.getString(8)));
+            if (block.size() == BLOCK_SIZE) {
+                exhausted = false;
+                break;
+            }
+        }
+        if (exhausted) {
+            closeQuery();
+            group++;
+        }
+        if (!block.isEmpty()) {
+            readConfigurations(block);
+        }
+        if (group == 2) {
+            log.info("Read {} snapshot configurations in {} ms", count + buffer.size(), System.currentTimeMillis()
+                    - startTime);
+        }
+    }
+
+    /**
+     * Read the seed lists of a block of configurations and the harvest history used for their expected number of
+     * objects, and add the configurations to the buffer.
+     *
+     * @param block The configurations to read, in snapshot order.
+     * @throws SQLException If reading from the database fails.
+     */
+    private void readConfigurations(List<ConfigurationRow> block) throws SQLException {
+        Map<Long, ConfigurationRow> byId = new HashMap<Long, ConfigurationRow>();
+        for (ConfigurationRow row : block) {
+            byId.put(row.configId, row);
+        }
+        String ids = StringUtils.conjoin(",", byId.keySet());
+        Connection c = HarvestDBConnection.get();
+        PreparedStatement s = null;
+        try {
+            s = c.prepareStatement("SELECT seedlists.seedlist_id, seedlists.name, seedlists.comments, seedlists.seeds,"
+                    + " config_seedlists.config_id FROM seedlists, config_seedlists"
+                    + " WHERE config_seedlists.seedlist_id = seedlists.seedlist_id"
+                    + " AND config_seedlists.config_id IN (" + ids + ")");
+            ResultSet res = s.executeQuery();
+            while (res.next()) {
+                byId.get(res.getLong(5)).seedlists.add(DomainDBDAO.getSeedListFromResultset(res));
+            }
+            s.close();
+            s = c.prepareStatement("SELECT historyinfo_id, stopreason, objectcount, bytecount, job_id, harvest_id,"
+                    + " harvest_time, config_id FROM historyinfo WHERE config_id IN (" + ids + ")");
+            res = s.executeQuery();
+            while (res.next()) {
+                ConfigurationRow row = byId.get(res.getLong(8));
+                Long jobId = res.getLong(5);
+                if (res.wasNull()) {
+                    jobId = null;
+                }
+                HarvestInfo hi = new HarvestInfo(res.getLong(6), jobId, row.domainName, row.configName, new Date(res
+                        .getTimestamp(7).getTime()), res.getLong(4), res.getLong(3), StopReason.getStopReason(res
+                        .getInt(2)));
+                hi.setID(res.getLong(1));
+                row.history.addHarvestInfo(hi);
+            }
+        } finally {
+            DBUtils.closeStatementIfOpen(s);
+            HarvestDBConnection.release(c);
+        }
+
+        for (ConfigurationRow row : block) {
+            if (row.seedlists.isEmpty()) {
+                log.warn("Configuration {} of domain '{}' has no seedlists and is skipped", row.configName,
+                        row.domainName);
+                continue;
+            }
+            // Only the harvest the expectation is based on is kept
+            DomainHistory history = new DomainHistory();
+            HarvestInfo best = DomainHistory.getBestHarvestInfoExpectation(row.configName, row.history);
+            if (best != null) {
+                history.addHarvestInfo(best);
+            }
+            List<String> crawlertraps = new ArrayList<String>();
+            if (row.crawlertraps != null) {
+                for (String trap : row.crawlertraps.split("\n")) {
+                    if (!trap.trim().isEmpty()) {
+                        crawlertraps.add(trap);
+                    }
+                }
+            }
+            DomainConfiguration dc = new DomainConfiguration(row.configName, row.domainName, history,
+                    Collections.unmodifiableList(crawlertraps), row.seedlists, new ArrayList<Password>());
+            dc.setOrderXmlName(row.orderXmlName);
+            dc.setMaxObjects(row.maxObjects);
+            dc.setMaxRequestRate(row.maxRequestRate);
+            dc.setMaxBytes(row.maxBytes);
+            dc.setID(row.configId);
+            if (configsWithAttributes.contains(row.configId)) {
+                dc.setAttributesAndTypes(EAV.getInstance().getAttributesAndTypes(EAV.DOMAIN_TREE_ID,
+                        (int) row.configId));
+            } else {
+                // All configurations without attributes have the same list of attribute types without values
+                if (defaultAttributes == null) {
+                    defaultAttributes = EAV.getInstance().getAttributesAndTypes(EAV.DOMAIN_TREE_ID,
+                            (int) row.configId);
+                }
+                dc.setAttributesAndTypes(new ArrayList<AttributeAndType>(defaultAttributes));
+            }
+            buffer.addLast(dc);
+        }
+    }
+
+    /**
+     * Close the current query and release its connection.
+     */
+    private void closeQuery() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            if (rows != null) {
+                rows.close();
+            }
+            DBUtils.closeStatementIfOpen(statement);
+            connection.commit();
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            log.warn("Failed to close the snapshot configuration query", e);
+        } finally {
+            HarvestDBConnection.release(connection);
+            connection = null;
+            statement = null;
+            rows = null;
+        }
+    }
+
+    /**
+     * Stop the iteration and release the connection of the current query, if any. Does nothing if the iteration has
+     * already stopped.
+     */
+    @Override
+    public void close() {
+        closeQuery();
+        buffer.clear();
+        group = 2;
+    }
+
+    /** The columns of a configuration row, and the seed lists and history read for it. */
+    private static class ConfigurationRow {
+        final long configId;
+        final String domainName;
+        final String configName;
+        final String orderXmlName;
+        final long maxObjects;
+        final int maxRequestRate;
+        final long maxBytes;
+        final String crawlertraps;
+        final List<SeedList> seedlists = new ArrayList<SeedList>();
+        final DomainHistory history = new DomainHistory();
+
+        ConfigurationRow(long configId, String domainName, String configName, String orderXmlName, long maxObjects,
+                int maxRequestRate, long maxBytes, String crawlertraps) {
+            this.configId = configId;
+            this.domainName = domainName;
+            this.configName = configName;
+            this.orderXmlName = orderXmlName;
+            this.maxObjects = maxObjects;
+            this.maxRequestRate = maxRequestRate;
+            this.maxBytes = maxBytes;
+            this.crawlertraps = crawlertraps;
+        }
+    }
+
+}
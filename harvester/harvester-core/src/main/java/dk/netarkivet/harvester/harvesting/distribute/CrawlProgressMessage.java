@@ -21,11 +21,17 @@
  */
 package dk.netarkivet.harvester.harvesting.distribute;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.netarkivet.common.distribute.BinaryMessageCodec;
+import dk.netarkivet.common.distribute.BinaryMessageFormat;
+import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.Channels;
 import dk.netarkivet.harvester.distribute.HarvesterMessage;
 import dk.netarkivet.harvester.distribute.HarvesterMessageVisitor;
@@ -45,6 +51,10 @@ public class CrawlProgressMessage extends HarvesterMessage implements Serializab
 	/** The logger for this class. */
 	
     private static final Logger log = LoggerFactory.getLogger(CrawlProgressMessage.class);
+
+    static {
+        BinaryMessageCodec.registerFormat(CrawlProgressMessage.class, new CrawlProgressMessageFormat());
+    }
 	
     /**
      * The general status of a job in NAS.
@@ -380,4 +390,76 @@ public class CrawlProgressMessage extends HarvesterMessage implements Serializab
         return false;
     }
 
+    /**
+     * The binary format of crawl progress messages, which are sent by every harvester every few seconds while it is
+     * crawling.
+     */
+    private static class CrawlProgressMessageFormat implements BinaryMessageFormat<CrawlProgressMessage> {
+
+        @Override
+        public int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void write(CrawlProgressMessage msg, DataOutput out) throws IOException {
+            out.writeLong(msg.harvestID);
+            out.writeLong(msg.jobID);
+            BinaryMessageCodec.writeString(out, msg.progressStatisticsLegend);
+            BinaryMessageCodec.writeString(out, msg.hostUrl);
+            BinaryMessageCodec.writeString(out, msg.status == null ? null : msg.status.name());
+
+            CrawlServiceInfo heritrixStatus = msg.heritrixStatus;
+            out.writeInt(heritrixStatus.alertCount);
+            out.writeBoolean(heritrixStatus.isCrawling);
+            BinaryMessageCodec.writeString(out, heritrixStatus.currentJob);
+
+            CrawlServiceJobInfo jobStatus = msg.jobStatus;
+            out.writeLong(jobStatus.discoveredFilesCount);
+            out.writeLong(jobStatus.downloadedFilesCount);
+            BinaryMessageCodec.writeString(out, jobStatus.frontierShortReport);
+            out.writeLong(jobStatus.elapsedSeconds);
+            out.writeLong(jobStatus.currentProcessedKBPerSec);
+            out.writeLong(jobStatus.processedKBPerSec);
+            out.writeDouble(jobStatus.currentProcessedDocsPerSec);
+            out.writeDouble(jobStatus.processedDocsPerSec);
+            out.writeInt(jobStatus.activeToeCount);
+            BinaryMessageCodec.writeString(out, jobStatus.progressStatistics);
+            BinaryMessageCodec.writeString(out, jobStatus.status);
+        }
+
+        @Override
+        public CrawlProgressMessage read(DataInput in, int version, ChannelID to, ChannelID replyTo)
+                throws IOException {
+            if (version != 1) {
+                throw new IOException("Unknown version of crawl progress message format: " + version);
+            }
+            long harvestID = in.readLong();
+            long jobID = in.readLong();
+            CrawlProgressMessage msg = new CrawlProgressMessage(harvestID, jobID, BinaryMessageCodec.readString(in));
+            msg.hostUrl = BinaryMessageCodec.readString(in);
+            String status = BinaryMessageCodec.readString(in);
+            msg.status = status == null ? null : CrawlStatus.valueOf(status);
+
+            CrawlServiceInfo heritrixStatus = msg.heritrixStatus;
+            heritrixStatus.alertCount = in.readInt();
+            heritrixStatus.isCrawling = in.readBoolean();
+            heritrixStatus.currentJob = BinaryMessageCodec.readString(in);
+
+            CrawlServiceJobInfo jobStatus = msg.jobStatus;
+            jobStatus.discoveredFilesCount = in.readLong();
+            jobStatus.downloadedFilesCount = in.readLong();
+            jobStatus.frontierShortReport = BinaryMessageCodec.readString(in);
+            jobStatus.elapsedSeconds = in.readLong();
+            jobStatus.currentProcessedKBPerSec = in.readLong();
+            jobStatus.processedKBPerSec = in.readLong();
+            jobStatus.currentProcessedDocsPerSec = in.readDouble();
+            jobStatus.processedDocsPerSec = in.readDouble();
+            jobStatus.activeToeCount = in.readInt();
+            jobStatus.progressStatistics = BinaryMessageCodec.readString(in);
+            jobStatus.status = BinaryMessageCodec.readString(in);
+            return msg;
+        }
+    }
+
 }
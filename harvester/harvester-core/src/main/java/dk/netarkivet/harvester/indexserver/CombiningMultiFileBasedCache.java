@@ -24,7 +24,9 @@
 package dk.netarkivet.harvester.indexserver;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -63,17 +65,31 @@ public abstract class CombiningMultiFileBasedCache<T extends Comparable<T>> exte
      *
      * @param ids The set of identifiers for which we want the corresponding data
      * @return The set of IDs, or subset if data fetching failed for some IDs. If some IDs failed, the file is not
-     * filled, though some data may be cached at a lower level.
+     * filled, though some data may be cached at a lower level. The files of the underlying cache are not evicted
+     * while they are combined.
      */
     protected Set<T> cacheData(Set<T> ids) {
-        Map<T, File> filesFound = prepareCombine(ids);
-        File resultFile = getCacheFile(ids);
-        if (filesFound.size() == ids.size()) {
-            combine(filesFound);
-        } else {
-            FileUtils.remove(resultFile);
+        FileBasedCacheManager manager = FileBasedCacheManager.getInstance();
+        List<File> rawFiles = new ArrayList<File>(ids.size());
+        for (T id : ids) {
+            File rawFile = rawcache.getCacheFile(id);
+            manager.acquire(rawFile);
+            rawFiles.add(rawFile);
+        }
+        try {
+            Map<T, File> filesFound = prepareCombine(ids);
+            File resultFile = getCacheFile(ids);
+            if (filesFound.size() == ids.size()) {
+                combine(filesFound);
+            } else {
+                FileUtils.remove(resultFile);
+            }
+            return filesFound.keySet();
+        } finally {
+            for (File rawFile : rawFiles) {
+                manager.release(rawFile);
+            }
         }
-        return filesFound.keySet();
     }
 
     /**
@@ -60,6 +60,11 @@ import is.hi.bok.deduplicator.DigestIndexer;
  * software: http://deduplicator.sourceforge.net/apidocs/is/hi/bok/deduplicator/DigestIndexer.html Upon combination of
  * underlying files, each file in the Lucene index is gzipped and the compressed versions are stored in the directory
  * given by getCacheFile(). The subclass has to determine in its constructor call which mime types are included.
+ * <p>
+ * The index of each single job is kept in the directory given by getJobIndex(), and reused whenever the job is part
+ * of a later combination, so only jobs not indexed before have their crawl.log and CDX sorted and indexed. The job
+ * indices are entries of a cache of their own, so the {@link FileBasedCacheManager} counts them in the bytes used and
+ * may evict them, in which case they are built again when next needed. They are not evicted while being combined.
  */
 public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Long> implements JobIndexCache {
 
@@ -82,6 +87,9 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
     /** Number to separate logs the different combine tasks. */
     private int indexingJobCount = 0;
 
+    /** The cache of the indices of single jobs. */
+    private final JobIndexDirCache jobIndices;
+
     /**
      * Constructor for the CrawlLogIndexCache class.
      *
@@ -93,6 +101,60 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
         super(name, new CrawlLogDataCache());
         useBlacklist = blacklist;
         this.mimeFilter = mimeFilter;
+        jobIndices = new JobIndexDirCache(name + File.separator + "jobindices");
+    }
+
+    /**
+     * Get the directory holding the cached index of a single job. The index is immutable once it exists, as it is only
+     * moved into place after having been completely built.
+     *
+     * @param jobId The ID of a job.
+     * @return The directory that holds, or will hold, the index of the job.
+     */
+    protected File getJobIndex(Long jobId) {
+        return jobIndices.getCacheFile(jobId);
+    }
+
+    /**
+     * Build the index of a single job, and move it into its place in the cache once it is complete. Called by the cache
+     * of job indices while it holds the lock of the index.
+     *
+     * @param jobId The ID of the job.
+     * @param crawlLog The crawl.log of the job.
+     * @param taskID String defining this task among the other tasks of a combine task.
+     * @return The ID of the job, or null if the index could not be built.
+     */
+    private Long buildJobIndex(Long jobId, File crawlLog, String taskID) {
+        Long cached = cdxcache.cache(jobId);
+        if (cached == null) {
+            log.warn("Skipping the ingest of logs for job {}. Unable to retrieve cdx-file for job.", jobId);
+            return null;
+        }
+        File cdxFile = cdxcache.getCacheFile(cached);
+        File jobIndex = getJobIndex(jobId);
+        // Generate UUID to ensure a unique filedir for the index.
+        // It is made next to the job index, so it can be moved there.
+        File tmpDir = new File(jobIndices.getCacheDir(), jobId + "-" + UUID.randomUUID().toString() + ".tmp");
+        FileBasedCacheManager manager = FileBasedCacheManager.getInstance();
+        manager.acquire(cdxFile);
+        try {
+            log.debug("Indexing job {} - task {}", jobId, taskID);
+            DigestOptions indexingOptions = new DigestOptions(useBlacklist, false, mimeFilter);
+            if (!new DigestIndexerWorker(tmpDir.getAbsolutePath(), jobId, crawlLog, cdxFile, indexingOptions, taskID)
+                    .call()) {
+                return null;
+            }
+            if (!tmpDir.renameTo(jobIndex)) {
+                log.warn("Unable to move the index of job {} from '{}' to '{}'", jobId, tmpDir.getAbsolutePath(),
+                        jobIndex.getAbsolutePath());
+                return null;
+            }
+            log.debug("Cached the index of job {} in '{}'", jobId, jobIndex.getAbsolutePath());
+            return jobId;
+        } finally {
+            manager.release(cdxFile);
+            FileUtils.removeRecursively(tmpDir);
+        }
     }
 
     /**
@@ -122,7 +184,9 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
 
     /**
      * Combine a number of crawl.log files into one Lucene index. This index is placed as gzip files under the directory
-     * returned by getCacheFile().
+     * returned by getCacheFile(). The index of each job is taken from the cache of job indices if present, otherwise
+     * it is made and added to that cache. The job indices are held until the combined index is made, so they are not
+     * evicted while in use.
      *
      * @param rawfiles The map from job ID into crawl.log contents. No null values are allowed in this map.
      */
@@ -133,13 +197,12 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
                 indexingJobCount, datasetSize, Thread.currentThread().getName());
 
         File resultDir = getCacheFile(rawfiles.keySet());
-        Set<File> tmpfiles = new HashSet<File>();
+        FileBasedCacheManager manager = FileBasedCacheManager.getInstance();
+        Set<File> heldJobIndices = new HashSet<File>();
         String indexLocation = resultDir.getAbsolutePath() + ".luceneDir";
         ThreadPoolExecutor executor = null;
         try {
             DigestIndexer indexer = createStandardIndexer(indexLocation);
-            final boolean verboseIndexing = false;
-            DigestOptions indexingOptions = new DigestOptions(this.useBlacklist, verboseIndexing, this.mimeFilter);
             long count = 0;
             Set<IndexingState> outstandingJobs = new HashSet<IndexingState>();
             final int maxThreads = Settings.getInt(HarvesterSettings.INDEXSERVER_INDEXING_MAXTHREADS);
@@ -148,32 +211,36 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
 
             executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
 
+            // Hold the indices of the jobs until they are part of the combined index, so they are not evicted before.
+            for (Long jobId : rawfiles.keySet()) {
+                File jobIndex = getJobIndex(jobId);
+                manager.acquire(jobIndex);
+                heldJobIndices.add(jobIndex);
+            }
+            int reusedJobIndices = 0;
             for (Map.Entry<Long, File> entry : rawfiles.entrySet()) {
                 Long jobId = entry.getKey();
                 File crawlLog = entry.getValue();
-                // Generate UUID to ensure a unique filedir for the index.
-                File tmpFile = new File(FileUtils.getTempDir(), UUID.randomUUID().toString());
-                tmpfiles.add(tmpFile);
-                String localindexLocation = tmpFile.getAbsolutePath();
-                Long cached = cdxcache.cache(jobId);
-                if (cached == null) {
-                    log.warn("Skipping the ingest of logs for job {}. Unable to retrieve cdx-file for job.",
-                            entry.getKey());
-                    continue;
+                File jobIndex = getJobIndex(jobId);
+                if (jobIndex.isDirectory()) {
+                    log.debug("Reusing the cached index of job {}", jobId);
+                    ++reusedJobIndices;
                 }
-                File cachedCDXFile = cdxcache.getCacheFile(cached);
 
                 // Dispatch this indexing task to a separate thread that
                 // handles the sorting of the logfiles and the generation
-                // of a lucene index for this crawllog and cdxfile.
+                // of a lucene index for this crawllog and cdxfile, unless
+                // the index of the job is cached.
                 ++count;
                 String taskID = count + " out of " + datasetSize;
                 log.debug("Making subthread for indexing job " + jobId + " - task " + taskID);
-                Callable<Boolean> task = new DigestIndexerWorker(localindexLocation, jobId, crawlLog, cachedCDXFile,
-                        indexingOptions, taskID);
+                Callable<Boolean> task = () -> jobId.equals(jobIndices.cache(jobId,
+                        id -> buildJobIndex(id, crawlLog, taskID)));
                 Future<Boolean> result = executor.submit(task);
-                outstandingJobs.add(new IndexingState(jobId, localindexLocation, result));
+                outstandingJobs.add(new IndexingState(jobId, jobIndex.getAbsolutePath(), result));
             }
+            log.info("Combine task #{} reuses the cached indices of {} jobs and indexes {} jobs", indexingJobCount,
+                    reusedJobIndices, count - reusedJobIndices);
 
             // wait for all the outstanding subtasks to complete.
             Set<Directory> subindices = new HashSet<Directory>();
@@ -275,8 +342,8 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
             // close down Threadpool-executor
             closeDownThreadpoolQuietly(executor);
             FileUtils.removeRecursively(new File(indexLocation));
-            for (File temporaryFile : tmpfiles) {
-                FileUtils.removeRecursively(temporaryFile);
+            for (File jobIndex : heldJobIndices) {
+                manager.release(jobIndex);
             }
         }
     }
@@ -416,4 +483,41 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
         return indexer;
     }
 
+    /**
+     * The cache of the indices of single jobs, kept in a directory under the directory of the combined indices. The
+     * indices are built by the combine task that needs them, see {@link CrawlLogIndexCache#buildJobIndex}.
+     */
+    private class JobIndexDirCache extends FileBasedCache<Long> {
+
+        /**
+         * Create the cache.
+         *
+         * @param cacheName The name of the cache.
+         */
+        JobIndexDirCache(String cacheName) {
+            super(cacheName);
+        }
+
+        @Override
+        public File getCacheFile(Long jobId) {
+            return new File(getCacheDir(), jobId + "-index");
+        }
+
+        /**
+         * Build the index of a job from the crawl.log in the underlying cache.
+         *
+         * @param jobId The ID of a job.
+         * @return The ID of the job, or null if the index could not be built.
+         */
+        @Override
+        protected Long cacheData(Long jobId) {
+            Long cached = rawcache.cache(jobId);
+            if (cached == null) {
+                return null;
+            }
+            return buildJobIndex(jobId, rawcache.getCacheFile(cached), "single job");
+        }
+
+    }
+
 }
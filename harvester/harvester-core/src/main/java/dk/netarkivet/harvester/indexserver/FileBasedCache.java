@@ -31,6 +31,7 @@ import java.nio.channels.OverlappingFileLockException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,11 +41,15 @@ import dk.netarkivet.common.distribute.indexserver.Index;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.KeyedLockManager;
 import dk.netarkivet.common.utils.Settings;
 
 /**
  * A generic cache that stores items in files. This abstract superclass handles placement of the cache directory and
  * adding/getting files using the subclasses' methods for generating filenames.
+ * <p>
+ * The files of all caches are accounted by the {@link FileBasedCacheManager}, which evicts the least valuable of them
+ * when they use more bytes than allowed.
  *
  * @param <T> The type of cache.
  */
@@ -53,6 +58,9 @@ public abstract class FileBasedCache<T> {
     /** Logger. */
     private static final Logger log = LoggerFactory.getLogger(FileBasedCache.class);
 
+    /** Locks on the files being cached or evicted, shared by all caches in this JVM. */
+    static final KeyedLockManager CACHE_LOCKS = new KeyedLockManager();
+
     /** Cache directory. */
     protected File cacheDir;
 
@@ -68,6 +76,7 @@ public abstract class FileBasedCache<T> {
         this.cacheDir = new File(new File(Settings.get(CommonSettings.CACHE_DIR)), cacheName).getAbsoluteFile();
         log.info("Metadata cache for '{}' uses directory '{}'", cacheName, getCacheDir().getAbsolutePath());
         FileUtils.createDir(getCacheDir());
+        FileBasedCacheManager.getInstance().register(this);
     }
 
     /**
@@ -117,17 +126,32 @@ public abstract class FileBasedCache<T> {
      * subsets, or a subset of id if it does. This subset should be immediately cacheable.
      */
     public T cache(T id) {
+        return cache(id, this::cacheData);
+    }
+
+    /**
+     * Ensure that a file containing the appropriate content exists for the ID, filling it in with the given function
+     * instead of {@link #cacheData(Object)} if it does not. The locking is the same as for {@link #cache(Object)}.
+     *
+     * @param id Some sort of id that uniquely identifies the item within the cache.
+     * @param builder Fills in the data for the id, as {@link #cacheData(Object)} does.
+     * @return The id given if it was successfully fetched, otherwise null or a subset of id, as for
+     * {@link #cache(Object)}.
+     */
+    T cache(T id, Function<T, T> builder) {
         ArgumentNotValid.checkNotNull(id, "id");
+        ArgumentNotValid.checkNotNull(builder, "Function<T, T> builder");
         File cachedFile = getCacheFile(id);
+        T result;
         try {
             File fileBehindLockFile = new File(cachedFile.getAbsolutePath() + ".working");
             FileOutputStream lockFile = new FileOutputStream(fileBehindLockFile);
             FileLock lock = null;
             // Make sure no other thread tries to create this
-            // FIXME welcome to a memory leak, intern strings are never freed from memory again!
-            log.debug("Waiting to enter synchronization on {}", fileBehindLockFile.getAbsolutePath().intern());
-            // FIXME Potential memory leak. intern() remembers all strings until JVM exits.
-            synchronized (fileBehindLockFile.getAbsolutePath().intern()) {
+            String lockKey = fileBehindLockFile.getAbsolutePath();
+            log.debug("Waiting for the lock on {}", lockKey);
+            CACHE_LOCKS.lock(lockKey);
+            try {
                 try {
                     // Make sure no other process tries to create this.
                     log.debug("locking filechannel for file '{}' (thread = {})", fileBehindLockFile.getAbsolutePath(),
@@ -141,9 +165,14 @@ public abstract class FileBasedCache<T> {
                     // Now we know nobody else touches the file.
                     // If the file already exists, just return it.
                     if (cachedFile.exists()) {
-                        return id;
+                        FileBasedCacheManager.getInstance().recordHit(cachedFile);
+                        result = id;
+                    } else {
+                        long start = System.currentTimeMillis();
+                        result = builder.apply(id);
+                        FileBasedCacheManager.getInstance().recordBuilt(cachedFile,
+                                System.currentTimeMillis() - start);
                     }
-                    return cacheData(id);
                 } finally {
                     if (lock != null) {
                         log.debug("release lock on filechannel {}", lockFile.getChannel());
@@ -151,12 +180,63 @@ public abstract class FileBasedCache<T> {
                     }
                     lockFile.close();
                 }
+            } finally {
+                CACHE_LOCKS.unlock(lockKey);
             }
         } catch (IOException e) {
             String errMsg = "Error obtaining lock for file '" + cachedFile.getAbsolutePath() + "'.";
             log.warn(errMsg, e);
             throw new IOFailure(errMsg, e);
         }
+        // Evict only after the lock is released, as eviction takes the locks of other entries.
+        FileBasedCacheManager.getInstance().evictIfNeeded(cachedFile);
+        return result;
+    }
+
+    /**
+     * Delete a cached file or directory to free space, unless it is being created or has been taken into use. Only
+     * files in the cache directory are deleted. Uses the same locks as {@link #cache(Object)}.
+     *
+     * @param cachedFile A file given by {@link #getCacheFile(Object)}.
+     * @param manager The manager accounting the file.
+     * @return true if the file was deleted.
+     */
+    boolean evict(File cachedFile, FileBasedCacheManager manager) {
+        if (!getCacheDir().getAbsoluteFile().equals(cachedFile.getAbsoluteFile().getParentFile())) {
+            log.warn("Not evicting '{}', which is outside the cache directory '{}'", cachedFile, getCacheDir());
+            return false;
+        }
+        try {
+            File fileBehindLockFile = new File(cachedFile.getAbsolutePath() + ".working");
+            FileOutputStream lockFile = new FileOutputStream(fileBehindLockFile);
+            FileLock lock = null;
+            String lockKey = fileBehindLockFile.getAbsolutePath();
+            CACHE_LOCKS.lock(lockKey);
+            try {
+                try {
+                    try {
+                        lock = lockFile.getChannel().lock();
+                    } catch (OverlappingFileLockException e) {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                    if (!manager.startEviction(cachedFile)) {
+                        return false;
+                    }
+                    FileUtils.removeRecursively(cachedFile);
+                    return true;
+                } finally {
+                    if (lock != null) {
+                        lock.release();
+                    }
+                    lockFile.close();
+                }
+            } finally {
+                CACHE_LOCKS.unlock(lockKey);
+            }
+        } catch (IOException e) {
+            log.warn("Error obtaining lock for evicting file '{}'", cachedFile.getAbsolutePath(), e);
+            return false;
+        }
     }
 
     /**
@@ -0,0 +1,593 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.indexserver;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.management.SingleMBeanObject;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.harvester.HarvesterSettings;
+
+/**
+ * Keeps account of the files and directories held by the {@link FileBasedCache} instances of an application, and
+ * deletes the least valuable of them when they use more bytes than allowed by the setting
+ * {@link HarvesterSettings#INDEXSERVER_CACHE_MAX_BYTES}. Which entries are least valuable is decided by the setting
+ * {@link HarvesterSettings#INDEXSERVER_CACHE_EVICTION_POLICY}: the least recently used (LRU) or the least frequently
+ * used (LFU) entries.
+ * <p>
+ * An entry is never evicted while it is in use. Code that needs a cached file to stay after the call that cached it
+ * must hold a reference to it with {@link #acquire(File)} before caching it, and give it back with
+ * {@link #release(File)}. The entry used last is not evicted either, so the result of a call to
+ * {@link FileBasedCache#cache(Object)} is not deleted by the same call.
+ * <p>
+ * Every access is appended to an access log in the cache directory, so the recency and frequency of use survive a
+ * restart. Entries cached before the access log existed are accounted for the first time they are used. Only entries
+ * inside the directory of a cache created in this application are evicted.
+ * <p>
+ * The counts are exposed over JMX once {@link #register()} has been called.
+ */
+public class FileBasedCacheManager implements FileBasedCacheStatistics {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(FileBasedCacheManager.class);
+
+    /** The name of the access log in the cache directory. */
+    static final String ACCESS_LOG_NAME = "cache-access.log";
+
+    /** The separator between the fields of a line in the access log. */
+    private static final String FIELD_SEPARATOR = "\t";
+
+    /** The number of lines the access log may grow beyond one line per entry before it is compacted. */
+    private static final int MAX_LOG_LINES_BEYOND_ENTRIES = 1000;
+
+    /** The ways of choosing which entries to evict. */
+    public enum EvictionPolicy {
+        /** Evict the least recently used entries first. */
+        LRU,
+        /** Evict the least frequently used entries first, and the least recently used of those. */
+        LFU
+    }
+
+    /** The single instance of this class. */
+    private static FileBasedCacheManager instance;
+
+    /** The maximum number of bytes used by the cached entries, or 0 or less for no limit. */
+    private final long maxBytes;
+
+    /** How to choose the entries to evict. */
+    private final EvictionPolicy policy;
+
+    /** The access log. */
+    private final File accessLog;
+
+    /** The entries known, by cache file. */
+    private final Map<File, Entry> entries = new HashMap<File, Entry>();
+
+    /** The caches created in this application, by cache directory. */
+    private final Map<File, FileBasedCache<?>> caches = new HashMap<File, FileBasedCache<?>>();
+
+    /** The number of bytes used by the known entries. */
+    private long bytesHeld;
+
+    /** The number of lines in the access log. */
+    private long logLines;
+
+    /** The number of requests that found the data cached. */
+    private long hits;
+
+    /** The number of requests that had to build the data. */
+    private long misses;
+
+    /** The milliseconds spent building data. */
+    private long rebuildMillis;
+
+    /** The number of evicted entries. */
+    private long evictions;
+
+    /** The number of bytes freed by evicting entries. */
+    private long evictedBytes;
+
+    /** The MBean this object is exposed as, or null if not registered. */
+    private SingleMBeanObject<FileBasedCacheStatistics> singleMBeanObject;
+
+    /**
+     * Create a manager and read the access log.
+     *
+     * @param accessLog The file to log accesses in.
+     * @param maxBytes The maximum number of bytes used by the cached entries, or 0 or less for no limit.
+     * @param policy How to choose the entries to evict.
+     * @throws ArgumentNotValid If accessLog or policy is null.
+     */
+    FileBasedCacheManager(File accessLog, long maxBytes, EvictionPolicy policy) {
+        ArgumentNotValid.checkNotNull(accessLog, "File accessLog");
+        ArgumentNotValid.checkNotNull(policy, "EvictionPolicy policy");
+        this.accessLog = accessLog.getAbsoluteFile();
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        try {
+            readAccessLog();
+        } catch (IOFailure e) {
+            log.warn("Unable to read the cache access log '{}'. Entries are accounted when next used", accessLog, e);
+        }
+        log.info("Cache entries use {} bytes in {} entries. Limit: {} bytes, eviction policy: {}", bytesHeld,
+                entries.size(), maxBytes > 0 ? maxBytes : "none", policy);
+    }
+
+    /**
+     * Get the single instance of this class, created from the settings when first asked for.
+     *
+     * @return The instance.
+     */
+    public static synchronized FileBasedCacheManager getInstance() {
+        if (instance == null) {
+            File cacheDir = new File(Settings.get(CommonSettings.CACHE_DIR));
+            FileUtils.createDir(cacheDir);
+            instance = new FileBasedCacheManager(new File(cacheDir, ACCESS_LOG_NAME),
+                    Settings.getLong(HarvesterSettings.INDEXSERVER_CACHE_MAX_BYTES), EvictionPolicy.valueOf(Settings
+                            .get(HarvesterSettings.INDEXSERVER_CACHE_EVICTION_POLICY).trim().toUpperCase()));
+        }
+        return instance;
+    }
+
+    /**
+     * Forget the single instance, so the next call to {@link #getInstance()} creates a new one from the settings. The
+     * MBean of the old instance is unregistered.
+     */
+    public static synchronized void cleanup() {
+        if (instance != null) {
+            instance.unregister();
+            instance = null;
+        }
+    }
+
+    /**
+     * Make a cache known, so entries in its directory can be evicted.
+     *
+     * @param cache A cache.
+     */
+    synchronized void register(FileBasedCache<?> cache) {
+        ArgumentNotValid.checkNotNull(cache, "FileBasedCache cache");
+        caches.put(cache.getCacheDir().getAbsoluteFile(), cache);
+    }
+
+    /**
+     * Hold a reference to a cache file, so it is not evicted until it is released. The file need not exist yet.
+     *
+     * @param cacheFile The cache file.
+     */
+    public synchronized void acquire(File cacheFile) {
+        ArgumentNotValid.checkNotNull(cacheFile, "File cacheFile");
+        File file = cacheFile.getAbsoluteFile();
+        Entry entry = entries.get(file);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(file, entry);
+            setBytes(file, entry);
+        }
+        entry.references++;
+    }
+
+    /**
+     * Give back a reference to a cache file obtained with {@link #acquire(File)}.
+     *
+     * @param cacheFile The cache file.
+     */
+    public synchronized void release(File cacheFile) {
+        ArgumentNotValid.checkNotNull(cacheFile, "File cacheFile");
+        File file = cacheFile.getAbsoluteFile();
+        Entry entry = entries.get(file);
+        if (entry == null || entry.references == 0) {
+            log.warn("Release of cache file '{}' which was not acquired", file);
+            return;
+        }
+        entry.references--;
+        if (entry.references == 0 && entry.accesses == 0 && !file.exists()) {
+            // Acquired, but never created
+            entries.remove(file);
+        }
+    }
+
+    /**
+     * Note that a request found its data in a cache file.
+     *
+     * @param cacheFile The cache file.
+     */
+    synchronized void recordHit(File cacheFile) {
+        hits++;
+        recordAccess(cacheFile.getAbsoluteFile(), false);
+    }
+
+    /**
+     * Note that a request had to build the data for a cache file.
+     *
+     * @param cacheFile The cache file. If it was not created, only the time spent is noted.
+     * @param millis The milliseconds spent building the data.
+     */
+    synchronized void recordBuilt(File cacheFile, long millis) {
+        misses++;
+        rebuildMillis += millis;
+        File file = cacheFile.getAbsoluteFile();
+        if (file.exists()) {
+            recordAccess(file, true);
+        }
+    }
+
+    /**
+     * Update the entry of an accessed cache file, and log the access.
+     *
+     * @param file The absolute cache file.
+     * @param created Whether the file has just been created, so its size must be found again.
+     */
+    private void recordAccess(File file, boolean created) {
+        Entry entry = entries.get(file);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(file, entry);
+            created = true;
+        }
+        if (created) {
+            setBytes(file, entry);
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        entry.accesses++;
+        FileUtils.appendToFile(accessLog, toLogLine(file, entry));
+        logLines++;
+        if (logLines > entries.size() + MAX_LOG_LINES_BEYOND_ENTRIES) {
+            try {
+                writeAccessLog();
+            } catch (IOFailure e) {
+                log.warn("Unable to compact the cache access log '{}'", accessLog, e);
+            }
+        }
+    }
+
+    /**
+     * Find the number of bytes used by a cache file, and update the total.
+     *
+     * @param file The cache file.
+     * @param entry The entry of the file.
+     */
+    private void setBytes(File file, Entry entry) {
+        long bytes = sizeOf(file);
+        bytesHeld += bytes - entry.bytes;
+        entry.bytes = bytes;
+    }
+
+    /**
+     * Evict entries until the cached entries are within the limit, if there is one. Entries in use are not evicted, and
+     * neither is the given entry. Must not be called while holding the lock of an entry.
+     *
+     * @param keep A cache file not to evict, or null.
+     */
+    void evictIfNeeded(File keep) {
+        if (maxBytes <= 0) {
+            return;
+        }
+        File kept = keep == null ? null : keep.getAbsoluteFile();
+        Set<File> failed = new HashSet<File>();
+        while (true) {
+            File victim;
+            FileBasedCache<?> owner;
+            synchronized (this) {
+                if (bytesHeld <= maxBytes) {
+                    return;
+                }
+                victim = chooseVictim(kept, failed);
+                if (victim == null) {
+                    log.warn("Cache entries use {} bytes, more than the limit of {} bytes, but none can be evicted",
+                            bytesHeld, maxBytes);
+                    return;
+                }
+                owner = caches.get(victim.getParentFile());
+            }
+            if (!owner.evict(victim, this)) {
+                failed.add(victim);
+            }
+        }
+    }
+
+    /**
+     * Choose the next entry to evict according to the eviction policy.
+     *
+     * @param keep A cache file not to evict, or null.
+     * @param failed Cache files that could not be evicted.
+     * @return The cache file to evict, or null if no entry can be evicted.
+     */
+    private File chooseVictim(File keep, Set<File> failed) {
+        File victim = null;
+        Entry victimEntry = null;
+        for (Map.Entry<File, Entry> candidate : entries.entrySet()) {
+            File file = candidate.getKey();
+            Entry entry = candidate.getValue();
+            if (entry.references > 0 || file.equals(keep) || failed.contains(file)
+                    || !caches.containsKey(file.getParentFile())) {
+                continue;
+            }
+            if (victimEntry == null || isLessValuable(entry, victimEntry)) {
+                victim = file;
+                victimEntry = entry;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * Compare two entries according to the eviction policy.
+     *
+     * @param entry An entry.
+     * @param other Another entry.
+     * @return Whether entry should be evicted before other.
+     */
+    private boolean isLessValuable(Entry entry, Entry other) {
+        if (policy == EvictionPolicy.LFU && entry.accesses != other.accesses) {
+            return entry.accesses < other.accesses;
+        }
+        return entry.lastAccess < other.lastAccess;
+    }
+
+    /**
+     * Remove an entry about to be evicted, unless it has been taken into use. Called by the owning cache while it
+     * holds the lock of the entry.
+     *
+     * @param cacheFile The cache file to evict.
+     * @return Whether the file may be deleted.
+     */
+    synchronized boolean startEviction(File cacheFile) {
+        File file = cacheFile.getAbsoluteFile();
+        Entry entry = entries.get(file);
+        if (entry == null || entry.references > 0) {
+            return false;
+        }
+        entries.remove(file);
+        bytesHeld -= entry.bytes;
+        evictions++;
+        evictedBytes += entry.bytes;
+        log.info("Evicting cache entry '{}' of {} bytes, last used {}, used {} times", file, entry.bytes,
+                new Date(entry.lastAccess), entry.accesses);
+        return true;
+    }
+
+    /**
+     * Read the access log, creating entries for the cache files that still exist, and write it again with one line per
+     * entry.
+     */
+    private void readAccessLog() {
+        if (!accessLog.isFile()) {
+            return;
+        }
+        for (String line : FileUtils.readListFromFile(accessLog)) {
+            String[] fields = line.split(FIELD_SEPARATOR, 3);
+            try {
+                if (fields.length != 3) {
+                    throw new NumberFormatException("Expected 3 fields");
+                }
+                File file = new File(fields[2]);
+                Entry entry = entries.get(file);
+                if (entry == null) {
+                    if (!file.exists()) {
+                        continue;
+                    }
+                    entry = new Entry();
+                    entries.put(file, entry);
+                }
+                entry.lastAccess = Math.max(entry.lastAccess, Long.parseLong(fields[0]));
+                entry.accesses = Math.max(entry.accesses, Long.parseLong(fields[1]));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid line '{}' in the cache access log '{}'", line, accessLog, e);
+            }
+        }
+        for (Map.Entry<File, Entry> entry : entries.entrySet()) {
+            setBytes(entry.getKey(), entry.getValue());
+        }
+        writeAccessLog();
+    }
+
+    /**
+     * Write the access log with one line for each entry.
+     */
+    private void writeAccessLog() {
+        List<String> lines = new ArrayList<String>(entries.size());
+        for (Map.Entry<File, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().accesses > 0) {
+                lines.add(toLogLine(entry.getKey(), entry.getValue()));
+            }
+        }
+        File tmpLog = new File(accessLog.getPath() + ".tmp");
+        FileUtils.writeCollectionToFile(tmpLog, lines);
+        if (!tmpLog.renameTo(accessLog)) {
+            FileUtils.remove(accessLog);
+            if (!tmpLog.renameTo(accessLog)) {
+                throw new IOFailure("Unable to replace the cache access log '" + accessLog + "' with '" + tmpLog
+                        + "'");
+            }
+        }
+        logLines = lines.size();
+    }
+
+    /**
+     * @param file A cache file.
+     * @param entry Its entry.
+     * @return The line to log for the entry.
+     */
+    private static String toLogLine(File file, Entry entry) {
+        return entry.lastAccess + FIELD_SEPARATOR + entry.accesses + FIELD_SEPARATOR + file.getPath();
+    }
+
+    /**
+     * Find the number of bytes used by a file, or by all the files in a directory.
+     *
+     * @param file A file or directory.
+     * @return The number of bytes, or 0 if the file does not exist.
+     */
+    private static long sizeOf(File file) {
+        if (!file.isDirectory()) {
+            return file.length();
+        }
+        long size = 0;
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                size += sizeOf(f);
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return maxBytes > 0 ? maxBytes : 0;
+    }
+
+    @Override
+    public synchronized long getBytesHeld() {
+        return bytesHeld;
+    }
+
+    @Override
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized int getEntriesInUse() {
+        int inUse = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.references > 0) {
+                inUse++;
+            }
+        }
+        return inUse;
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public synchronized long getTotalRebuildMillis() {
+        return rebuildMillis;
+    }
+
+    @Override
+    public synchronized long getAverageRebuildMillis() {
+        return misses == 0 ? 0 : rebuildMillis / misses;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    @Override
+    public long getLockAcquisitions() {
+        return FileBasedCache.CACHE_LOCKS.getAcquisitions();
+    }
+
+    @Override
+    public long getContendedLockAcquisitions() {
+        return FileBasedCache.CACHE_LOCKS.getContendedAcquisitions();
+    }
+
+    @Override
+    public long getTotalLockWaitMillis() {
+        return FileBasedCache.CACHE_LOCKS.getTotalWaitMillis();
+    }
+
+    /**
+     * Registers this object as an mbean. Failing to do so is logged, but otherwise ignored, since the statistics are
+     * not essential to the application.
+     */
+    public synchronized void register() {
+        if (singleMBeanObject != null) {
+            return;
+        }
+        try {
+            singleMBeanObject = new SingleMBeanObject<FileBasedCacheStatistics>("dk.netarkivet.harvester.indexserver",
+                    this, FileBasedCacheStatistics.class, ManagementFactory.getPlatformMBeanServer());
+            singleMBeanObject.register();
+        } catch (Exception e) {
+            log.warn("Unable to register the cache statistics as an mbean", e);
+            singleMBeanObject = null;
+        }
+    }
+
+    /**
+     * Unregisters this object as an mbean, if registered.
+     */
+    private synchronized void unregister() {
+        if (singleMBeanObject == null) {
+            return;
+        }
+        try {
+            singleMBeanObject.unregister();
+        } catch (Exception e) {
+            log.warn("Unable to unregister the cache statistics mbean", e);
+        }
+        singleMBeanObject = null;
+    }
+
+    /** What is known about a cached file or directory. */
+    private static class Entry {
+        /** The number of bytes used. */
+        long bytes;
+        /** The time of the last access, in milliseconds since the epoch. */
+        long lastAccess;
+        /** The number of accesses. */
+        long accesses;
+        /** The number of references held with {@link FileBasedCacheManager#acquire(File)}. */
+        int references;
+    }
+
+}
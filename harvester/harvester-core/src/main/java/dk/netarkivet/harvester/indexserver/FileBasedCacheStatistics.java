@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.indexserver;
+
+/**
+ * An interface for reading the state of the files held by the {@link FileBasedCache} instances of an application.
+ * Exposed as an MBean by {@link FileBasedCacheManager}.
+ */
+public interface FileBasedCacheStatistics {
+
+    /**
+     * @return The maximum number of bytes the cached files may use, or 0 if there is no limit.
+     */
+    long getMaxBytes();
+
+    /**
+     * @return The number of bytes used by the cached files.
+     */
+    long getBytesHeld();
+
+    /**
+     * @return The number of cached files and directories.
+     */
+    int getEntryCount();
+
+    /**
+     * @return The number of cached files and directories currently in use, which cannot be evicted.
+     */
+    int getEntriesInUse();
+
+    /**
+     * @return The number of requests that found the data already cached.
+     */
+    long getHits();
+
+    /**
+     * @return The number of requests that had to build the data.
+     */
+    long getMisses();
+
+    /**
+     * @return The fraction of requests that found the data already cached, or 0 if there have been no requests.
+     */
+    double getHitRate();
+
+    /**
+     * @return The total number of milliseconds spent building data missing from the caches.
+     */
+    long getTotalRebuildMillis();
+
+    /**
+     * @return The average number of milliseconds spent building data missing from a cache, or 0 if nothing has been
+     * built.
+     */
+    long getAverageRebuildMillis();
+
+    /**
+     * @return The number of cached files and directories deleted to keep the caches within their limit.
+     */
+    long getEvictions();
+
+    /**
+     * @return The number of bytes freed by deleting cached files and directories.
+     */
+    long getEvictedBytes();
+
+    /**
+     * @return The number of times a lock on a cached file has been taken.
+     */
+    long getLockAcquisitions();
+
+    /**
+     * @return The number of times a lock on a cached file had to be waited for, because another thread held it.
+     */
+    long getContendedLockAcquisitions();
+
+    /**
+     * @return The total number of milliseconds spent waiting for locks on cached files.
+     */
+    long getTotalLockWaitMillis();
+
+}
@@ -46,6 +46,7 @@ public class IndexServer implements CleanupIF {
 
     /** Instantiates the two handlers, and starts listening for requests. */
     protected IndexServer() {
+        FileBasedCacheManager.getInstance().register();
         FileBasedCache<Set<Long>> cdxCache = new CDXIndexCache();
         FileBasedCache<Set<Long>> dedupCrawlLogCache = new DedupCrawlLogIndexCache();
         FileBasedCache<Set<Long>> fullCrawlLogCache = new FullCrawlLogIndexCache();
@@ -80,6 +81,7 @@ public class IndexServer implements CleanupIF {
      */
     public void cleanup() {
         remoteServer.close();
+        FileBasedCacheManager.cleanup();
         instance = null;
     }
 
@@ -57,12 +57,14 @@ import dk.netarkivet.common.exceptions.UnknownID;
 import dk.netarkivet.common.utils.ChecksumCalculator;
 import dk.netarkivet.common.utils.CleanupIF;
 import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.KeyedLockManager;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.common.utils.StringUtils;
 import dk.netarkivet.harvester.HarvesterSettings;
 import dk.netarkivet.harvester.distribute.HarvesterMessageHandler;
 import dk.netarkivet.harvester.distribute.IndexReadyMessage;
 import dk.netarkivet.harvester.indexserver.FileBasedCache;
+import dk.netarkivet.harvester.indexserver.FileBasedCacheManager;
 import dk.netarkivet.harvester.indexserver.IndexRequestServerInterface;
 
 /**
@@ -80,6 +82,8 @@ public final class IndexRequestServer extends HarvesterMessageHandler implements
 
     /** The unique instance. */
     private static IndexRequestServer instance;
+    /** Locks on the indexing jobs in progress, by checksum of the requested job IDs. */
+    private static final KeyedLockManager INDEXING_LOCKS = new KeyedLockManager();
     /** The handlers for index request types. */
     private Map<RequestType, FileBasedCache<Set<Long>>> handlers;
 
@@ -311,6 +315,8 @@ public final class IndexRequestServer extends HarvesterMessageHandler implements
      */
     private void doProcessIndexRequestMessage(final IndexRequestMessage irMsg) {
         final boolean mustReturnIndex = irMsg.mustReturnIndex();
+        // The cache files used, which must not be evicted before the reply has been sent
+        List<File> acquiredFiles = new ArrayList<File>();
         try {
             checkMessage(irMsg);
             RequestType type = irMsg.getRequestType();
@@ -330,9 +336,11 @@ public final class IndexRequestServer extends HarvesterMessageHandler implements
             log.debug("Waiting to enter the synchronization zone for the indexing job of size {} with checksum '{}'",
                     jobIDs.size(), checksum);
             // Begin synchronization
-            synchronized (checksum.intern()) {
+            INDEXING_LOCKS.lock(checksum);
+            try {
                 log.debug("The indexing job of size {} with checksum '{}' is now in the synchronization zone",
                         jobIDs.size(), checksum);
+                acquire(handler.getCacheFile(jobIDs), acquiredFiles);
                 Set<Long> foundIDs = handler.cache(jobIDs);
                 irMsg.setFoundJobs(foundIDs);
                 if (foundIDs.equals(jobIDs)) {
@@ -349,6 +357,7 @@ public final class IndexRequestServer extends HarvesterMessageHandler implements
                             + "but satisfactoryTreshold reached, so assuming presence of all data", jobIDs.size(),
                             foundIDs.size());
                     // Make sure that the index of the data available is generated
+                    acquire(handler.getCacheFile(foundIDs), acquiredFiles);
                     Set<Long> theFoundIDs = handler.cache(foundIDs);
                     // TheFoundIDS should be identical to foundIDs
                     // Lets make sure of that
@@ -393,6 +402,8 @@ public final class IndexRequestServer extends HarvesterMessageHandler implements
                             type, StringUtils.conjoin(",", jobIDs), StringUtils.conjoin(",", missingJobIds));
                 }
 
+            } finally {
+                INDEXING_LOCKS.unlock(checksum);
             } // End of synchronization block
         } catch (Throwable t) {
             log.warn("Unable to generate index for jobs [" + StringUtils.conjoin(",", irMsg.getRequestedJobs()) + "]",
@@ -422,9 +433,23 @@ public final class IndexRequestServer extends HarvesterMessageHandler implements
                         Channels.getTheIndexServer());
                 JMSConnectionFactory.getInstance().send(irm);
             }
+            for (File acquiredFile : acquiredFiles) {
+                FileBasedCacheManager.getInstance().release(acquiredFile);
+            }
         }
     }
 
+    /**
+     * Hold a reference to a cache file, so it is not evicted while the request is processed.
+     *
+     * @param cacheFile The cache file.
+     * @param acquiredFiles The cache files acquired for the request, which the file is added to.
+     */
+    private void acquire(File cacheFile, List<File> acquiredFiles) {
+        FileBasedCacheManager.getInstance().acquire(cacheFile);
+        acquiredFiles.add(cacheFile);
+    }
+
     /**
      * Package the result files with the message reply.
      *
@@ -0,0 +1,171 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *       the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.datamodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link ReadThroughCache} class.
+ */
+public class ReadThroughCacheTest {
+
+    /** Loads a new object for each key, remembering how many loads were made. */
+    private static class CountingLoader implements ReadThroughCache.Loader<Object> {
+        final Map<String, Integer> loads = new HashMap<String, Integer>();
+        boolean current = true;
+
+        @Override
+        public Object load(String key) {
+            Integer count = loads.get(key);
+            loads.put(key, count == null ? 1 : count + 1);
+            return new Object();
+        }
+
+        @Override
+        public boolean isCurrent(String key, Object value) {
+            return current;
+        }
+
+        int getLoads(String key) {
+            Integer count = loads.get(key);
+            return count == null ? 0 : count;
+        }
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        ReadThroughCache<Object> cache = new ReadThroughCache<Object>("test", 10, 60000L);
+        CountingLoader loader = new CountingLoader();
+        Object first = cache.get("a", loader);
+        assertSame("Second get should give the cached value", first, cache.get("a", loader));
+        assertEquals(1, loader.getLoads("a"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getSize());
+        assertEquals(0.5, cache.getHitRate(), 0.0);
+    }
+
+    @Test
+    public void testStaleEntriesAreLoadedAgain() {
+        ReadThroughCache<Object> cache = new ReadThroughCache<Object>("test", 10, 60000L);
+        CountingLoader loader = new CountingLoader();
+        Object first = cache.get("a", loader);
+        loader.current = false;
+        Object second = cache.get("a", loader);
+        assertNotSame("An entry that is no longer current should be loaded again", first, second);
+        assertEquals(2, loader.getLoads("a"));
+        assertEquals(1, cache.getStaleEntries());
+        loader.current = true;
+        assertSame(second, cache.get("a", loader));
+    }
+
+    @Test
+    public void testOldEntriesAreLoadedAgain() throws InterruptedException {
+        ReadThroughCache<Object> cache = new ReadThroughCache<Object>("test", 10, 1L);
+        CountingLoader loader = new CountingLoader();
+        cache.get("a", loader);
+        Thread.sleep(5L);
+        cache.get("a", loader);
+        assertEquals("An entry older than the maximum age should be loaded again", 2, loader.getLoads("a"));
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        ReadThroughCache<Object> cache = new ReadThroughCache<Object>("test", 2, 60000L);
+        CountingLoader loader = new CountingLoader();
+        cache.get("a", loader);
+        cache.get("b", loader);
+        cache.get("a", loader);
+        cache.get("c", loader);
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        cache.get("a", loader);
+        assertEquals("Recently used entry should be kept", 1, loader.getLoads("a"));
+        cache.get("b", loader);
+        assertEquals("Least recently used entry should be evicted", 2, loader.getLoads("b"));
+    }
+
+    @Test
+    public void testInvalidateAndClear() {
+        ReadThroughCache<Object> cache = new ReadThroughCache<Object>("test", 10, 60000L);
+        CountingLoader loader = new CountingLoader();
+        cache.get("a", loader);
+        cache.get("b", loader);
+        cache.invalidate("a");
+        cache.get("a", loader);
+        cache.get("b", loader);
+        assertEquals(2, loader.getLoads("a"));
+        assertEquals(1, loader.getLoads("b"));
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        cache.get("b", loader);
+        assertEquals(2, loader.getLoads("b"));
+    }
+
+    @Test
+    public void testSizeZeroDisablesCache() {
+        ReadThroughCache<Object> cache = new ReadThroughCache<Object>("test", 0, 60000L);
+        CountingLoader loader = new CountingLoader();
+        cache.get("a", loader);
+        cache.get("a", loader);
+        assertEquals(2, loader.getLoads("a"));
+        assertEquals(0, cache.getSize());
+    }
+    @Test
+    public void testStatisticsAreExposedAsMBean() throws Exception {
+        ReadThroughCache<Object> cache = new ReadThroughCache<Object>("mbean test", 10, 60000L);
+        CountingLoader loader = new CountingLoader();
+        cache.get("a", loader);
+        cache.get("a", loader);
+        cache.get("b", loader);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("dk.netarkivet.harvester.datamodel:cache=mbean test,*");
+
+        cache.register();
+        try {
+            Set<ObjectName> names = server.queryNames(pattern, null);
+            assertEquals("The statistics should be registered once", 1, names.size());
+            ObjectName name = names.iterator().next();
+            assertEquals(1L, server.getAttribute(name, "Hits"));
+            assertEquals(2L, server.getAttribute(name, "Misses"));
+            assertEquals(10, server.getAttribute(name, "MaxSize"));
+        } finally {
+            cache.unregister();
+        }
+        assertEquals("The statistics should be unregistered", 0, server.queryNames(pattern, null).size());
+    }
+
+}
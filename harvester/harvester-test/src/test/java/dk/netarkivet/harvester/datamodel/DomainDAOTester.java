@@ -25,6 +25,7 @@ package dk.netarkivet.harvester.datamodel;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -709,6 +710,107 @@ public class DomainDAOTester extends DataModelTestCase {
         assertTrue("Should have configs", domainConfigurationNames.hasNext());
         assertEquals("Should have right config", "fuld_dybde", domainConfigurationNames.next());
         assertFalse("Should have no more configs", domainConfigurationNames.hasNext());
+
+        dao.readSparse(domainName);
+        assertEquals("Second read should be answered from the cache", 1, dao.getSparseDomainCache().getMisses());
+    }
+
+    /**
+     * Test that domains read twice are taken from the cache, but are separate objects, and that updates are seen.
+     */
+    @Category(SlowTest.class)
+    @Test
+    public void testReadUsesCache() {
+        DomainDAO dao = DomainDAO.getInstance();
+        ReadThroughCache<?> cache = dao.getDomainCache();
+        Domain d1 = dao.read("dr.dk");
+        long misses = cache.getMisses();
+        Domain d2 = dao.read("dr.dk");
+        assertEquals("Second read should be answered from the cache", misses, cache.getMisses());
+        assertTrue("Second read should be a cache hit", cache.getHits() > 0);
+        assertTrue("Each read should give a new domain", d1 != d2);
+
+        SeedList seedList = d2.getAllSeedLists().next();
+        assertFalse("Seeds should not be read with the domain", seedList.isLoaded());
+        assertEquals("Seeds read later should be the stored seeds", d1.getSeedList(seedList.getName()).getSeeds(),
+                seedList.getSeeds());
+        assertTrue("Seeds should be read when used", seedList.isLoaded());
+
+        d1.setComments("Changed comments");
+        dao.update(d1);
+        assertEquals("Update should be seen by the next read", "Changed comments", dao.read("dr.dk").getComments());
+        assertEquals("Seeds should be kept by the update", d1.getSeedList(seedList.getName()).getSeeds(),
+                dao.read("dr.dk").getSeedList(seedList.getName()).getSeeds());
+    }
+
+    /**
+     * Test that the history of a domain can be read in pages, also when harvests were made at the same time.
+     */
+    @Category(SlowTest.class)
+    @Test
+    public void testGetDomainHistoryPage() {
+        DomainDAO dao = DomainDAO.getInstance();
+        Domain domain = dao.read("dr.dk");
+        domain.getHistory().addHarvestInfo(
+                new HarvestInfo(1L, domain.getName(), "fuld_dybde", new Date(100000L), 10, 1, StopReason.OBJECT_LIMIT));
+        domain.getHistory().addHarvestInfo(
+                new HarvestInfo(2L, domain.getName(), "fuld_dybde", new Date(200000L), 20, 2, StopReason.OBJECT_LIMIT));
+        domain.getHistory().addHarvestInfo(
+                new HarvestInfo(3L, domain.getName(), "fuld_dybde", new Date(200000L), 30, 3, StopReason.OBJECT_LIMIT));
+        domain.getHistory().addHarvestInfo(
+                new HarvestInfo(4L, domain.getName(), "fuld_dybde", new Date(300000L), 40, 4,
+                        StopReason.DOWNLOAD_COMPLETE));
+        dao.update(domain);
+
+        List<HarvestInfo> page = dao.getDomainHistoryPage(domain.getName(), null, 2);
+        assertEquals("Page should include all harvests made at the time of its last harvest", 3, page.size());
+        assertEquals(Long.valueOf(4L), page.get(0).getHarvestID());
+        assertEquals(new Date(200000L), page.get(2).getDate());
+        page = dao.getDomainHistoryPage(domain.getName(), page.get(2).getDate(), 2);
+        assertEquals("Last page should have the remaining harvest", 1, page.size());
+        assertEquals(Long.valueOf(1L), page.get(0).getHarvestID());
+
+        DomainHistory history = dao.read(domain.getName()).getHistory();
+        assertFalse("History should not be read with the domain", history.isLoaded());
+        assertEquals("Most recent harvest should be found in the first page", Long.valueOf(4L),
+                history.getMostRecentHarvestInfo("fuld_dybde").getHarvestID());
+        assertEquals("Paged history should be the whole history",
+                IteratorUtils.toList(dao.getDomainHistory(domain.getName()).getHarvestInfo()),
+                IteratorUtils.toList(history.getHarvestInfo()));
+    }
+
+    /**
+     * Test that a paged history keeps the pages it has read, so they are not read again, and is loaded once the last
+     * page has been read.
+     */
+    @Category(SlowTest.class)
+    @Test
+    public void testPagedDomainHistoryKeepsPages() {
+        DomainDAO dao = DomainDAO.getInstance();
+        Domain domain = dao.read("dr.dk");
+        for (long i = 1; i <= 4; i++) {
+            domain.getHistory().addHarvestInfo(new HarvestInfo(i, domain.getName(), "fuld_dybde",
+                    new Date(100000L * i), 10 * i, i, StopReason.OBJECT_LIMIT));
+        }
+        dao.update(domain);
+
+        PagedDomainHistory history = new PagedDomainHistory(domain.getName(), 2);
+        assertEquals(Long.valueOf(4L), history.getHarvestInfo().next().getHarvestID());
+        assertFalse("Only the first page should have been read", history.isLoaded());
+
+        // A harvest stored after the first page was read is not seen, since the page is not read again
+        domain = dao.read(domain.getName());
+        domain.getHistory().addHarvestInfo(new HarvestInfo(5L, domain.getName(), "fuld_dybde", new Date(500000L),
+                50, 5, StopReason.OBJECT_LIMIT));
+        dao.update(domain);
+        assertEquals("The first page should not be read again", Long.valueOf(4L),
+                history.getHarvestInfo().next().getHarvestID());
+
+        List<HarvestInfo> all = IteratorUtils.toList(history.getHarvestInfo());
+        assertTrue("History should be loaded when the last page has been read", history.isLoaded());
+        assertEquals("Should read the harvests stored when reading started", 4, all.size());
+        assertEquals("Loaded history should be the same as the paged history", all,
+                IteratorUtils.toList(history.getHarvestInfo()));
     }
 
     /**
@@ -754,6 +856,82 @@ public class DomainDAOTester extends DataModelTestCase {
         }
     }
 
+    /**
+     * Test that the streamed snapshot configurations are the default configurations of the domains that are not
+     * aliases, in snapshot harvest order, with the limits, seeds and expectations of the full domains.
+     */
+    @Category(SlowTest.class)
+    @Test
+    public void testGetDefaultConfigurationsInSnapshotHarvestOrder() {
+        DomainDAO dao = DomainDAO.getInstance();
+        Domain d1 = dao.read("dr.dk");
+        d1.getDefaultConfiguration().setOrderXmlName("FullSite-order");
+        d1.getDefaultConfiguration().setMaxBytes(2000000);
+        String configName = d1.getDefaultConfiguration().getName();
+        d1.getHistory().addHarvestInfo(new HarvestInfo(1L, d1.getName(), configName, new Date(200000L), 400, 20,
+                StopReason.OBJECT_LIMIT));
+        d1.getHistory().addHarvestInfo(new HarvestInfo(2L, d1.getName(), configName, new Date(100000L), 1000, 10,
+                StopReason.DOWNLOAD_COMPLETE));
+        dao.update(d1);
+        Domain d2 = dao.read("kb.dk");
+        d2.updateAlias("statsbiblioteket.dk");
+        dao.update(d2);
+
+        List<DomainConfiguration> expected = new ArrayList<DomainConfiguration>();
+        Iterator<Domain> domains = dao.getAllDomainsInSnapshotHarvestOrder();
+        while (domains.hasNext()) {
+            Domain d = domains.next();
+            if (d.getAliasInfo() == null || d.getAliasInfo().isExpired()) {
+                expected.add(d.getDefaultConfiguration());
+            }
+        }
+        List<DomainConfiguration> streamed = IteratorUtils.toList(dao.getDefaultConfigurationsInSnapshotHarvestOrder());
+
+        assertEquals("Should get the configurations in the same order", domainNames(expected), domainNames(streamed));
+        assertFalse("Should not get the alias", domainNames(streamed).contains("kb.dk"));
+        for (int i = 0; i < expected.size(); i++) {
+            DomainConfiguration cfg1 = expected.get(i);
+            DomainConfiguration cfg2 = streamed.get(i);
+            assertEquals(cfg1.getName(), cfg2.getName());
+            assertEquals(cfg1.getID(), cfg2.getID());
+            assertEquals(cfg1.getOrderXmlName(), cfg2.getOrderXmlName());
+            assertEquals(cfg1.getMaxBytes(), cfg2.getMaxBytes());
+            assertEquals(cfg1.getMaxObjects(), cfg2.getMaxObjects());
+            assertEquals(cfg1.getMaxRequestRate(), cfg2.getMaxRequestRate());
+            assertEquals(cfg1.getCrawlertraps(), cfg2.getCrawlertraps());
+            assertEquals(IteratorUtils.toList(cfg1.getSeedLists()), IteratorUtils.toList(cfg2.getSeedLists()));
+            assertEquals("Should expect the same number of objects for " + cfg1.getDomainName(),
+                    cfg1.getExpectedNumberOfObjects(-1, -1), cfg2.getExpectedNumberOfObjects(-1, -1));
+        }
+    }
+
+    /**
+     * Test that closing the streamed snapshot configurations before the end stops the iteration and leaves no
+     * connection held.
+     */
+    @Category(SlowTest.class)
+    @Test
+    public void testCloseDefaultConfigurationsInSnapshotHarvestOrder() throws Exception {
+        SnapshotConfigurationIterator configurations = (SnapshotConfigurationIterator) DomainDAO.getInstance()
+                .getDefaultConfigurationsInSnapshotHarvestOrder();
+        configurations.next();
+        assertTrue("Should have more than one snapshot configuration", configurations.hasNext());
+
+        configurations.close();
+        assertFalse("Should stop the iteration when closed", configurations.hasNext());
+        Field connection = ReflectUtils.getPrivateField(SnapshotConfigurationIterator.class, "connection");
+        assertNull("Should not hold a connection when closed", connection.get(configurations));
+        configurations.close();
+    }
+
+    private static List<String> domainNames(List<DomainConfiguration> configurations) {
+        List<String> names = new ArrayList<String>();
+        for (DomainConfiguration cfg : configurations) {
+            names.add(cfg.getDomainName());
+        }
+        return names;
+    }
+
     /** Check constructor of DomainHarvestInfo(). */
     @Category(SlowTest.class)
     @Test
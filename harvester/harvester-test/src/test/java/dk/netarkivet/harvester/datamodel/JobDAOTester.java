@@ -148,6 +148,47 @@ public class JobDAOTester extends DataModelTestCase {
         jobDAO.create(job);
     }
 
+    /** Test that several jobs are created in one go with consecutive IDs and their configurations. */
+    @Test
+    public void testCreateSeveralJobs() {
+        Job job1 = createDefaultJob(1);
+        Job job2 = createDefaultJob(2);
+        job2.addConfiguration(TestInfo.getDefaultConfig(DomainDAOTester.getDomain(TestInfo.DEFAULTNEWDOMAINNAME)));
+        HarvestDefinitionDAOTester.ensureHarvestDefinitionExists(TestInfo.HARVESTID);
+
+        jobDAO.create(Arrays.asList(job1, job2));
+
+        assertNotNull("The first job should have an ID", job1.getJobID());
+        assertEquals("The jobs should have consecutive IDs", job1.getJobID() + 1, (long) job2.getJobID());
+        assertEquals("The jobs should have the initial edition", 1L, job2.getEdition());
+        for (Job job : Arrays.asList(job1, job2)) {
+            Job read = jobDAO.read(job.getJobID());
+            assertEquals("The job should be read with the harvest number it was created with", job.getHarvestNum(),
+                    read.getHarvestNum());
+            assertEquals("The job should be read with the configurations it was created with",
+                    job.getDomainConfigurationMap(), read.getDomainConfigurationMap());
+            assertEquals("The job should be read with the harvestname prefix it was created with",
+                    job.getHarvestFilenamePrefix(), read.getHarvestFilenamePrefix());
+        }
+    }
+
+    /** Test that no jobs are created, if one of them refers to an unknown harvest definition. */
+    @Test
+    public void testCreateSeveralJobsWithUnknownHarvestId() {
+        HarvestDefinitionDAOTester.ensureHarvestDefinitionExists(TestInfo.HARVESTID);
+        HeritrixTemplate ht = new H1HeritrixTemplate(OrderXmlBuilder.createDefault().getDoc());
+        Job job = new Job(5679L, DomainConfigurationTest.createDefaultDomainConfiguration(), ht, FOCUSED_CHANNEL,
+                Constants.HERITRIX_MAXOBJECTS_INFINITY, Constants.HERITRIX_MAXBYTES_INFINITY,
+                Constants.HERITRIX_MAXJOBRUNNINGTIME_INFINITY, 0);
+        try {
+            jobDAO.create(Arrays.asList(createDefaultJob(0), job));
+            fail("Should throw UnknownID on the unknown harvest definition");
+        } catch (UnknownID e) {
+            // expected
+        }
+        assertEquals("No jobs should have been created", 0, jobDAO.getCountJobs());
+    }
+
     @Test
     public void testJobUpdate() throws SQLException {
         DomainConfiguration domainConfiguration =
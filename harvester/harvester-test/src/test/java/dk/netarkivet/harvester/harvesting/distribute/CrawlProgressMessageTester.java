@@ -26,6 +26,7 @@ import static org.junit.Assert.assertEquals;
 
 import org.junit.Test;
 
+import dk.netarkivet.common.distribute.BinaryMessageCodec;
 import dk.netarkivet.harvester.harvesting.distribute.CrawlProgressMessage.CrawlStatus;
 
 /**
@@ -43,4 +44,48 @@ public class CrawlProgressMessageTester {
         assertEquals(CrawlStatus.PRE_CRAWL, msg.getStatus());
         assertEquals("", msg.getProgressStatisticsLegend());
     }
+
+    @Test
+    public void testBinaryCodec() {
+        CrawlProgressMessage msg = new CrawlProgressMessage(2L, 42L, "legend");
+        msg.setHostUrl("http://harvester:8192");
+        msg.setStatus(CrawlStatus.CRAWLER_ACTIVE);
+        msg.getHeritrixStatus().setAlertCount(3);
+        msg.getHeritrixStatus().setCrawling(true);
+        msg.getHeritrixStatus().setCurrentJob("job-42");
+        msg.getJobStatus().setDiscoveredFilesCount(1000L);
+        msg.getJobStatus().setDownloadedFilesCount(400L);
+        msg.getJobStatus().setFrontierShortReport("report");
+        msg.getJobStatus().setElapsedSeconds(60L);
+        msg.getJobStatus().setCurrentProcessedKBPerSec(12L);
+        msg.getJobStatus().setProcessedKBPerSec(10L);
+        msg.getJobStatus().setCurrentProcessedDocsPerSec(1.5);
+        msg.getJobStatus().setProcessedDocsPerSec(2.5);
+        msg.getJobStatus().setActiveToeCount(7);
+        msg.getJobStatus().setProgressStatistics("statistics");
+        msg.getJobStatus().setStatus("RUNNING");
+
+        BinaryMessageCodec codec = new BinaryMessageCodec(-1);
+        CrawlProgressMessage decoded = (CrawlProgressMessage) codec.fromBytes(codec.toBytes(msg));
+        assertEquals(2L, decoded.getHarvestID());
+        assertEquals(42L, decoded.getJobID());
+        assertEquals("legend", decoded.getProgressStatisticsLegend());
+        assertEquals("http://harvester:8192", decoded.getHostUrl());
+        assertEquals(CrawlStatus.CRAWLER_ACTIVE, decoded.getStatus());
+        assertEquals(3, decoded.getHeritrixStatus().getAlertCount());
+        assertEquals(true, decoded.getHeritrixStatus().isCrawling());
+        assertEquals("job-42", decoded.getHeritrixStatus().getCurrentJob());
+        assertEquals(1000L, decoded.getJobStatus().getDiscoveredFilesCount());
+        assertEquals(400L, decoded.getJobStatus().getDownloadedFilesCount());
+        assertEquals("report", decoded.getJobStatus().getFrontierShortReport());
+        assertEquals(60L, decoded.getJobStatus().getElapsedSeconds());
+        assertEquals(12L, decoded.getJobStatus().getCurrentProcessedKBPerSec());
+        assertEquals(10L, decoded.getJobStatus().getProcessedKBPerSec());
+        assertEquals(1.5, decoded.getJobStatus().getCurrentProcessedDocsPerSec(), 0.0);
+        assertEquals(2.5, decoded.getJobStatus().getProcessedDocsPerSec(), 0.0);
+        assertEquals(7, decoded.getJobStatus().getActiveToeCount());
+        assertEquals("statistics", decoded.getJobStatus().getProgressStatistics());
+        assertEquals("RUNNING", decoded.getJobStatus().getStatus());
+        assertEquals(msg.getTo(), decoded.getTo());
+    }
 }
@@ -0,0 +1,166 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester - test
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting.distribute;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.archive.bitarchive.distribute.BatchMessage;
+import dk.netarkivet.archive.bitarchive.distribute.HeartBeatMessage;
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.distribute.BinaryMessageCodec;
+import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.common.distribute.NetarkivetMessage;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.SlowTest;
+import dk.netarkivet.common.utils.batch.ChecksumJob;
+import dk.netarkivet.harvester.datamodel.HarvestDefinitionInfo;
+import dk.netarkivet.harvester.datamodel.JobTest;
+import dk.netarkivet.testutils.preconfigured.ReloadSettings;
+
+/**
+ * Compares the binary message codec with plain Java serialization for the message classes sent most often, or with
+ * the largest content.
+ */
+public class MessageCodecBenchmarkTester {
+    private static final Logger log = LoggerFactory.getLogger(MessageCodecBenchmarkTester.class);
+
+    ReloadSettings rs = new ReloadSettings();
+
+    @Before
+    public void setUp() {
+        rs.setUp();
+        Channels.reset();
+    }
+
+    @After
+    public void tearDown() {
+        Channels.reset();
+        rs.tearDown();
+    }
+
+    /**
+     * Log the size on the wire and the time to encode and decode each message class with both codecs. The number of
+     * iterations is given by the system property messagecodec.benchmark.iterations, default 10000. Only run with the
+     * fullTest profile.
+     */
+    @Test
+    @Category(SlowTest.class)
+    public void benchmarkCodecs() throws Exception {
+        int iterations = Integer.getInteger("messagecodec.benchmark.iterations", 10000);
+        BinaryMessageCodec codec = new BinaryMessageCodec();
+        for (NetarkivetMessage msg : createMessages()) {
+            byte[] serialized = serialize(msg);
+            byte[] binary = codec.toBytes(msg);
+            assertEquals(msg.getClass(), deserialize(serialized).getClass());
+            assertEquals(msg.getClass(), codec.fromBytes(binary).getClass());
+
+            // Warm up before timing.
+            for (int i = 0; i < iterations / 10; i++) {
+                deserialize(serialize(msg));
+                codec.fromBytes(codec.toBytes(msg));
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                serialize(msg);
+            }
+            long serializeTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                deserialize(serialized);
+            }
+            long deserializeTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                codec.toBytes(msg);
+            }
+            long encodeTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                codec.fromBytes(binary);
+            }
+            long decodeTime = System.nanoTime() - start;
+
+            log.info("{}: serialization {} bytes, {} us encode, {} us decode; "
+                    + "binary {} bytes, {} us encode, {} us decode", msg.getClass().getSimpleName(), serialized.length,
+                    serializeTime / iterations / 1000.0, deserializeTime / iterations / 1000.0, binary.length,
+                    encodeTime / iterations / 1000.0, decodeTime / iterations / 1000.0);
+        }
+    }
+
+    /**
+     * @return One message of each class to compare.
+     */
+    private List<NetarkivetMessage> createMessages() {
+        HeartBeatMessage heartBeat = new HeartBeatMessage(Channels.getTheBamon(), "BA_ID");
+
+        CrawlProgressMessage progress = new CrawlProgressMessage(2L, 42L, "legend");
+        progress.setHostUrl("http://harvester.example.org:8192");
+        progress.setStatus(CrawlProgressMessage.CrawlStatus.CRAWLER_ACTIVE);
+        progress.getHeritrixStatus().setCrawling(true);
+        progress.getHeritrixStatus().setCurrentJob("42_1500000000000");
+        progress.getJobStatus().setDiscoveredFilesCount(123456L);
+        progress.getJobStatus().setDownloadedFilesCount(65432L);
+        progress.getJobStatus().setFrontierShortReport("1234 queues: 50 active (50 in-process; 0 ready; 0 snoozed); "
+                + "1100 inactive; 0 retired; 84 exhausted");
+        progress.getJobStatus().setElapsedSeconds(3600L);
+        progress.getJobStatus().setProgressStatistics("2018-01-01T12:00:00Z 123456 65432 12.5 10.2 250 200 50 58000 "
+                + "1234 50 1100 0");
+        progress.getJobStatus().setStatus("RUNNING");
+
+        DoOneCrawlMessage crawl = new DoOneCrawlMessage(JobTest.createDefaultJob(), Channels.getThisReposClient(),
+                new HarvestDefinitionInfo("test", "test", "test"), TestInfo.emptyMetadata);
+
+        BatchMessage batch = new BatchMessage(Channels.getTheBamon(), new ChecksumJob(),
+                Settings.get(CommonSettings.USE_REPLICA_ID));
+
+        return Arrays.<NetarkivetMessage>asList(heartBeat, progress, crawl, batch);
+    }
+
+    private static byte[] serialize(NetarkivetMessage msg) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(msg);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static NetarkivetMessage deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        return (NetarkivetMessage) in.readObject();
+    }
+}
@@ -58,7 +58,9 @@ import org.junit.Test;
 
 import dk.netarkivet.common.utils.AllDocsCollector;
 import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.common.utils.StringUtils;
+import dk.netarkivet.harvester.HarvesterSettings;
 import is.hi.bok.deduplicator.DigestIndexer;
 
 /**
@@ -113,25 +115,7 @@ public class DedupCrawlLogIndexCacheTester extends CacheTestCase {
         assertTrue("Result file should have contents after combining", resultFile.length() > 0);
         assertFalse("Should not have left an unzipped lucene index",
                 new File(resultFile.getAbsolutePath().substring(0, resultFile.getAbsolutePath().length() - 4)).exists());
-        File unzipDir = new File(TestInfo.WORKING_DIR, "luceneindex");
-        if (!unzipDir.mkdir()) {
-            fail("Unable to create unzipDir '" + unzipDir.getAbsolutePath() + "' for luceneindex: ");
-        }
-        File[] resultFiles = resultFile.listFiles();
-        for (File f : resultFiles) {
-            if (f.getName().endsWith(".gz")) {
-                InputStream in = new GZIPInputStream(new FileInputStream(f));
-                FileUtils.writeStreamToFile(in,
-                        new File(unzipDir, f.getName().substring(0, f.getName().length() - ".gz".length())));
-                in.close();
-            }
-        }
-
-        Directory luceneDirectory = new MMapDirectory(unzipDir);
-        IndexReader reader = DirectoryReader.open(luceneDirectory);
-
-        // System.out.println("doc-count: " + reader.maxDoc());
-        IndexSearcher index = new IndexSearcher(reader);
+        IndexSearcher index = openCombinedIndex(resultFile, new File(TestInfo.WORKING_DIR, "luceneindex"));
         // QueryParser queryParser = new QueryParser("url",
         // new WhitespaceAnalyzer(dk.netarkivet.common.constants.LUCENE_VERSION));
         // QueryParser queryParser = new QueryParser(dk.netarkivet.common.Constants.LUCENE_VERSION, "url",
@@ -158,6 +142,98 @@ public class DedupCrawlLogIndexCacheTester extends CacheTestCase {
                 origins.isEmpty());
     }
 
+    /**
+     * Test that the index of a job is cached by one combine task and reused by the next.
+     */
+    @Test
+    public void testCombineReusesJobIndices() throws Exception {
+        Map<Long, File> files = new HashMap<Long, File>();
+        files.put(1L, TestInfo.CRAWL_LOG_1);
+        files.put(4L, TestInfo.CRAWL_LOG_4);
+        DedupCrawlLogIndexCache cache = new DedupCrawlLogIndexCache();
+        cache.combine(files);
+        assertTrue("The index of job 1 should be cached", cache.getJobIndex(1L).isDirectory());
+        assertTrue("The index of job 4 should be cached", cache.getJobIndex(4L).isDirectory());
+
+        // The crawl log is not needed when the index of the job is cached
+        Map<Long, File> reusedFiles = new HashMap<Long, File>();
+        reusedFiles.put(1L, new File(TestInfo.WORKING_DIR, "no-such-crawl.log"));
+        File resultFile = cache.getCacheFile(reusedFiles.keySet());
+        cache.combine(reusedFiles);
+
+        Map<String, String> origins = new HashMap<String, String>(3);
+        origins.put("http://www.kb.dk/clear.gif", "54-8-20050620183552-00016-kb-prod-har-001.kb.dk.arc,55983420,20050506114732000");
+        origins.put("http://www.kb.dk/dither.gif", "54-8-20050620183552-00016-kb-prod-har-001.kb.dk.arc,53985420,20050506114736000");
+        origins.put("http://www.kb.dk/dither_blaa.gif", "54-8-20050620183552-00016-kb-prod-har-001.kb.dk.arc,58593420,20050506114734000");
+        verifySearchResult(origins, openCombinedIndex(resultFile, new File(TestInfo.WORKING_DIR, "reusedindex")));
+        assertTrue("Should have found all origins from the cached index, but have still " + origins.size()
+                + " left: " + origins, origins.isEmpty());
+    }
+
+    /**
+     * Test that the indices of jobs are evicted when the cache is full, but not while being combined, and are built
+     * again when needed.
+     */
+    @Test
+    public void testJobIndicesAreEvictedAndRebuilt() throws Exception {
+        Settings.set(HarvesterSettings.INDEXSERVER_CACHE_MAX_BYTES, "1");
+        FileBasedCacheManager.cleanup();
+        try {
+            // Keep the CDX files, which cannot be fetched again in this test
+            CDXDataCache cdxCache = new CDXDataCache();
+            FileBasedCacheManager.getInstance().acquire(cdxCache.getCacheFile(1L));
+            FileBasedCacheManager.getInstance().acquire(cdxCache.getCacheFile(4L));
+            DedupCrawlLogIndexCache cache = new DedupCrawlLogIndexCache();
+            cache.combine(Collections.singletonMap(1L, TestInfo.CRAWL_LOG_1));
+            assertTrue("The index of job 1 should be cached", cache.getJobIndex(1L).isDirectory());
+
+            Map<Long, File> files = new HashMap<Long, File>();
+            files.put(1L, TestInfo.CRAWL_LOG_1);
+            files.put(4L, TestInfo.CRAWL_LOG_4);
+            cache.combine(files);
+            assertTrue("The index of job 1 should not be evicted while combined",
+                    cache.getJobIndex(1L).isDirectory());
+            assertTrue("The index of job 4 should be cached", cache.getJobIndex(4L).isDirectory());
+
+            cache.combine(Collections.singletonMap(4L, TestInfo.CRAWL_LOG_4));
+            assertFalse("The index of job 1 should be evicted when not in use", cache.getJobIndex(1L).exists());
+            assertTrue("The index of job 4 should be kept while combined", cache.getJobIndex(4L).isDirectory());
+            assertTrue("The evicted index should be accounted",
+                    FileBasedCacheManager.getInstance().getEvictions() > 0);
+
+            cache.combine(Collections.singletonMap(1L, TestInfo.CRAWL_LOG_1));
+            assertTrue("The evicted index of job 1 should be built again", cache.getJobIndex(1L).isDirectory());
+        } finally {
+            FileBasedCacheManager.cleanup();
+        }
+    }
+
+    /**
+     * Unzip a combined index and open it for searching.
+     *
+     * @param resultFile The directory holding the gzipped index files.
+     * @param unzipDir The directory to unzip the index files to.
+     * @return A searcher for the index.
+     */
+    private IndexSearcher openCombinedIndex(File resultFile, File unzipDir) throws IOException {
+        if (!unzipDir.mkdir()) {
+            fail("Unable to create unzipDir '" + unzipDir.getAbsolutePath() + "' for luceneindex: ");
+        }
+        File[] resultFiles = resultFile.listFiles();
+        for (File f : resultFiles) {
+            if (f.getName().endsWith(".gz")) {
+                InputStream in = new GZIPInputStream(new FileInputStream(f));
+                FileUtils.writeStreamToFile(in,
+                        new File(unzipDir, f.getName().substring(0, f.getName().length() - ".gz".length())));
+                in.close();
+            }
+        }
+
+        Directory luceneDirectory = new MMapDirectory(unzipDir);
+        IndexReader reader = DirectoryReader.open(luceneDirectory);
+        return new IndexSearcher(reader);
+    }
+
     private void verifySearchResult(Map<String, String> origins, IndexSearcher index) throws IOException {
         Set<String> urls = new HashSet<String>(origins.keySet());
         List<String> errors = new ArrayList<String>();
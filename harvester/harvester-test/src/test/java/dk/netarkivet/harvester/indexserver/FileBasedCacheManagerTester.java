@@ -0,0 +1,197 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester - test
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.indexserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.harvester.indexserver.FileBasedCacheManager.EvictionPolicy;
+import dk.netarkivet.testutils.preconfigured.ReloadSettings;
+
+/**
+ * Unit tests for the FileBasedCacheManager.
+ */
+public class FileBasedCacheManagerTester {
+
+    private static final File CACHE_DIR = new File(TestInfo.WORKING_DIR, "managercache");
+
+    private static final File ACCESS_LOG = new File(CACHE_DIR, FileBasedCacheManager.ACCESS_LOG_NAME);
+
+    private ReloadSettings rs = new ReloadSettings();
+
+    private FileBasedCache<String> cache;
+
+    @Before
+    public void setUp() {
+        rs.setUp();
+        FileUtils.removeRecursively(CACHE_DIR);
+        Settings.set(CommonSettings.CACHE_DIR, CACHE_DIR.getAbsolutePath());
+        FileBasedCacheManager.cleanup();
+        cache = new FileBasedCache<String>("test") {
+            @Override
+            public File getCacheFile(String id) {
+                return new File(getCacheDir(), id);
+            }
+
+            @Override
+            protected String cacheData(String id) {
+                return null;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        FileBasedCacheManager.cleanup();
+        FileUtils.removeRecursively(CACHE_DIR);
+        rs.tearDown();
+    }
+
+    /**
+     * Test that the least recently used entries are evicted when the limit is exceeded.
+     */
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        FileBasedCacheManager manager = newManager(25, EvictionPolicy.LRU);
+        File a = build(manager, "a");
+        File b = build(manager, "b");
+        hit(manager, a);
+        File c = build(manager, "c");
+        manager.evictIfNeeded(c);
+        assertTrue("Recently used entry should be kept", a.exists());
+        assertFalse("Least recently used entry should be evicted", b.exists());
+        assertTrue("The entry just used should be kept", c.exists());
+        assertEquals("Bytes held should be updated", 20, manager.getBytesHeld());
+        assertEquals("One entry should be evicted", 1, manager.getEvictions());
+        assertEquals("Evicted bytes should be counted", 10, manager.getEvictedBytes());
+    }
+
+    /**
+     * Test that entries in use are not evicted, and can be evicted once released.
+     */
+    @Test
+    public void testDoesNotEvictAcquired() throws Exception {
+        FileBasedCacheManager manager = newManager(15, EvictionPolicy.LRU);
+        File a = cache.getCacheFile("a");
+        manager.acquire(a);
+        build(manager, "a");
+        File b = build(manager, "b");
+        manager.evictIfNeeded(b);
+        assertTrue("Acquired entry should be kept", a.exists());
+        assertTrue("The entry just used should be kept", b.exists());
+        assertEquals("One entry should be in use", 1, manager.getEntriesInUse());
+        manager.release(a);
+        manager.evictIfNeeded(b);
+        assertFalse("Released entry should be evicted", a.exists());
+    }
+
+    /**
+     * Test that the least frequently used entries are evicted first with the LFU policy.
+     */
+    @Test
+    public void testEvictsLeastFrequentlyUsed() throws Exception {
+        FileBasedCacheManager manager = newManager(25, EvictionPolicy.LFU);
+        File a = build(manager, "a");
+        hit(manager, a);
+        hit(manager, a);
+        File b = build(manager, "b");
+        File c = build(manager, "c");
+        manager.evictIfNeeded(c);
+        assertTrue("Frequently used entry should be kept", a.exists());
+        assertFalse("Least frequently used entry should be evicted", b.exists());
+    }
+
+    /**
+     * Test that recency and sizes are read from the access log by a new manager.
+     */
+    @Test
+    public void testAccessLogSurvivesRestart() throws Exception {
+        FileBasedCacheManager manager = newManager(0, EvictionPolicy.LRU);
+        File a = build(manager, "a");
+        File b = build(manager, "b");
+        hit(manager, a);
+        assertEquals("Should count hits", 1, manager.getHits());
+        assertEquals("Should count misses", 2, manager.getMisses());
+        assertEquals("Should compute hit rate", 1.0 / 3, manager.getHitRate(), 0.0001);
+        manager.evictIfNeeded(null);
+        assertTrue("Nothing should be evicted without a limit", a.exists() && b.exists());
+
+        FileBasedCacheManager restarted = newManager(15, EvictionPolicy.LRU);
+        assertEquals("Entries should be read from the access log", 2, restarted.getEntryCount());
+        assertEquals("Sizes should be found again", 20, restarted.getBytesHeld());
+        restarted.evictIfNeeded(null);
+        assertTrue("Entry used last before the restart should be kept", a.exists());
+        assertFalse("Entry used first before the restart should be evicted", b.exists());
+    }
+
+    /**
+     * Create a manager using the test access log, accounting the test cache.
+     *
+     * @param maxBytes The limit.
+     * @param policy The eviction policy.
+     * @return The manager.
+     */
+    private FileBasedCacheManager newManager(long maxBytes, EvictionPolicy policy) {
+        FileBasedCacheManager manager = new FileBasedCacheManager(ACCESS_LOG, maxBytes, policy);
+        manager.register(cache);
+        return manager;
+    }
+
+    /**
+     * Create a cache file of 10 bytes, as if the data had been built.
+     *
+     * @param manager The manager to tell.
+     * @param id The id of the cache file.
+     * @return The cache file.
+     */
+    private File build(FileBasedCacheManager manager, String id) throws InterruptedException {
+        File file = cache.getCacheFile(id);
+        FileUtils.writeBinaryFile(file, new byte[10]);
+        manager.recordBuilt(file, 1);
+        // Make sure the next access happens at a later time
+        Thread.sleep(5);
+        return file;
+    }
+
+    /**
+     * Access a cache file.
+     *
+     * @param manager The manager to tell.
+     * @param file The cache file.
+     */
+    private void hit(FileBasedCacheManager manager, File file) throws InterruptedException {
+        manager.recordHit(file);
+        Thread.sleep(5);
+    }
+
+}
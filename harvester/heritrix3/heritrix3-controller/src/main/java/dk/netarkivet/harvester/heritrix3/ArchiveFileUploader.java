@@ -0,0 +1,318 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.heritrix3;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.distribute.arcrepository.HarvesterArcRepositoryClient;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.FileUtils;
+
+/**
+ * Uploads the archive files of a harvest job to the archive repository, several files at a time. Each call to
+ * {@link #uploadFiles(List, StringBuilder, List, File)} returns when all the given files have been uploaded or have failed,
+ * so files given in a later call, like the metadata files, are only uploaded after the files of the earlier calls.
+ * <p>
+ * The name, size and upload time of every uploaded file is appended to a state file in the crawl directory. When the
+ * upload of a job is resumed, for instance by {@link PostProcessing#processOldJobs()}, the files recorded there are not
+ * uploaded again.
+ */
+public class ArchiveFileUploader {
+
+    /** The logger to use. */
+    private static final Logger log = LoggerFactory.getLogger(ArchiveFileUploader.class);
+
+    /** The separator between the fields of a line in the state file. */
+    private static final String STATE_SEPARATOR = "\t";
+
+    /** The client used to store the files. */
+    private final HarvesterArcRepositoryClient arcRepController;
+
+    /** The maximum number of files uploaded at the same time. */
+    private final int concurrentUploads;
+
+    /** The limiter of the upload rate, shared by all uploads of the harvester. */
+    private final UploadRateLimiter rateLimiter;
+
+    /** The file recording the files uploaded. */
+    private final File stateFile;
+
+    /** The names of the files recorded as uploaded. */
+    private final Set<String> uploadedFiles = new HashSet<String>();
+
+    /**
+     * Create an uploader for the files of a job.
+     *
+     * @param arcRepController The client used to store the files.
+     * @param concurrentUploads The maximum number of files uploaded at the same time.
+     * @param rateLimiter The limiter of the upload rate, shared by all uploads of the harvester.
+     * @param stateFile The file recording the files uploaded, read if it exists.
+     * @throws ArgumentNotValid If an argument is null, or concurrentUploads is not positive.
+     */
+    public ArchiveFileUploader(HarvesterArcRepositoryClient arcRepController, int concurrentUploads,
+            UploadRateLimiter rateLimiter, File stateFile) {
+        ArgumentNotValid.checkNotNull(arcRepController, "HarvesterArcRepositoryClient arcRepController");
+        ArgumentNotValid.checkPositive(concurrentUploads, "int concurrentUploads");
+        ArgumentNotValid.checkNotNull(rateLimiter, "UploadRateLimiter rateLimiter");
+        ArgumentNotValid.checkNotNull(stateFile, "File stateFile");
+        this.arcRepController = arcRepController;
+        this.concurrentUploads = concurrentUploads;
+        this.rateLimiter = rateLimiter;
+        this.stateFile = stateFile;
+        if (stateFile.exists()) {
+            for (String line : FileUtils.readListFromFile(stateFile)) {
+                String[] fields = line.split(STATE_SEPARATOR);
+                if (fields.length > 0 && !fields[0].isEmpty()) {
+                    uploadedFiles.add(fields[0]);
+                }
+            }
+            log.info("Resuming upload, {} files are recorded as uploaded in '{}'", uploadedFiles.size(),
+                    stateFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Upload the given files to the archive repository, and wait until all have been uploaded or have failed. Files
+     * recorded as uploaded by an earlier attempt are skipped. Failures are reported in the order the files are given.
+     *
+     * @param files List of (ARC/WARC) files to upload.
+     * @param errorMessage Accumulator for error messages.
+     * @param failedFiles Accumulator for failed files.
+     * @param oldJobsDir The directory failed files will be moved to, for the error messages.
+     * @throws IOFailure If interrupted while waiting for the uploads.
+     */
+    public void uploadFiles(List<File> files, StringBuilder errorMessage, List<File> failedFiles, File oldJobsDir) {
+        if (files == null || files.isEmpty()) {
+            return;
+        }
+        List<File> toUpload = new ArrayList<File>();
+        for (File f : files) {
+            if (isUploaded(f)) {
+                log.info("File '{}' was uploaded by an earlier attempt, skipping it.", f.getName());
+            } else {
+                toUpload.add(f);
+            }
+        }
+        if (toUpload.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long totalBytes = 0;
+        int threads = Math.min(concurrentUploads, toUpload.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Exception>> uploads = new ArrayList<Future<Exception>>();
+            int count = 0;
+            for (final File f : toUpload) {
+                final int number = ++count;
+                totalBytes += f.length();
+                uploads.add(executor.submit(new Callable<Exception>() {
+                    @Override
+                    public Exception call() throws InterruptedException {
+                        return upload(f, number);
+                    }
+                }));
+            }
+            for (int i = 0; i < toUpload.size(); i++) {
+                File f = toUpload.get(i);
+                Exception failure;
+                try {
+                    failure = uploads.get(i).get();
+                } catch (ExecutionException e) {
+                    failure = new IOFailure("Unexpected error uploading '" + f.getName() + "'", e.getCause());
+                }
+                if (failure != null) {
+                    String errorMsg = "Error uploading file '" + f.getAbsolutePath()
+                            + "' Will be moved to the oldjobs directory '" + oldJobsDir.getAbsolutePath() + "'";
+                    errorMessage.append(errorMsg).append("\n").append(failure.toString()).append("\n");
+                    log.warn(errorMsg, failure);
+                    failedFiles.add(f);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new IOFailure("Interrupted while uploading files", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        long time = System.currentTimeMillis() - start;
+        log.info("Uploaded {} files of {} bytes in {} ms using {} concurrent uploads", toUpload.size(), totalBytes,
+                time, threads);
+    }
+
+    /**
+     * Upload one file, when the upload rate allows it.
+     *
+     * @param f The file to upload.
+     * @param number The number of the file in the files being uploaded, for logging.
+     * @return null if the file was uploaded, otherwise the reason it failed.
+     * @throws InterruptedException If interrupted while waiting for the upload rate to allow the upload.
+     */
+    private Exception upload(File f, int number) throws InterruptedException {
+        long bytes = f.length();
+        long waited = rateLimiter.acquire(bytes);
+        long start = System.currentTimeMillis();
+        try {
+            log.info("Uploading file #{} - '{}' to arcrepository.", number, f.getName());
+            arcRepController.store(f);
+        } catch (Exception e) {
+            return e;
+        }
+        long time = System.currentTimeMillis() - start;
+        log.info("File '{}' of {} bytes uploaded successfully to the arcrepository in {} ms, after waiting {} ms "
+                + "for the upload rate limit.", f.getName(), bytes, time, waited);
+        recordUploaded(f, bytes, time);
+        return null;
+    }
+
+    /**
+     * @param f A file.
+     * @return true if the file is recorded as uploaded.
+     */
+    private synchronized boolean isUploaded(File f) {
+        return uploadedFiles.contains(f.getName());
+    }
+
+    /**
+     * Record that a file has been uploaded.
+     *
+     * @param f The file.
+     * @param bytes The size of the file.
+     * @param millis The time the upload took.
+     */
+    private synchronized void recordUploaded(File f, long bytes, long millis) {
+        uploadedFiles.add(f.getName());
+        FileUtils.appendToFile(stateFile, f.getName() + STATE_SEPARATOR + bytes + STATE_SEPARATOR + millis);
+    }
+
+    /**
+     * Limits the average rate of bytes uploaded, by delaying the start of uploads. Every upload reserves the time it
+     * takes to send its bytes at the maximum rate, and is started when the uploads started before it have had their
+     * time. As the archive repository fetches the files itself, the rate cannot be limited while a file is uploaded.
+     */
+    public static class UploadRateLimiter {
+
+        /** The source of time used by limiters, unless another is given. */
+        static final Ticker SYSTEM_TICKER = new Ticker() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+
+            @Override
+            public void sleep(long nanos) throws InterruptedException {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            }
+        };
+
+        /** The maximum number of bytes per second, or 0 for no limit. */
+        private final long maxBytesPerSecond;
+
+        /** The source of time, and the way to wait for it to pass. */
+        private final Ticker ticker;
+
+        /** The time, in nanoseconds from {@link Ticker#nanoTime()}, when the next upload may start. */
+        private long nextStart;
+
+        /**
+         * Create a limiter.
+         *
+         * @param maxBytesPerSecond The maximum number of bytes per second, or 0 for no limit.
+         * @throws ArgumentNotValid If maxBytesPerSecond is negative.
+         */
+        public UploadRateLimiter(long maxBytesPerSecond) {
+            this(maxBytesPerSecond, SYSTEM_TICKER);
+        }
+
+        /**
+         * Create a limiter using the given source of time.
+         *
+         * @param maxBytesPerSecond The maximum number of bytes per second, or 0 for no limit.
+         * @param ticker The source of time.
+         * @throws ArgumentNotValid If maxBytesPerSecond is negative, or ticker is null.
+         */
+        UploadRateLimiter(long maxBytesPerSecond, Ticker ticker) {
+            ArgumentNotValid.checkNotNegative(maxBytesPerSecond, "long maxBytesPerSecond");
+            ArgumentNotValid.checkNotNull(ticker, "Ticker ticker");
+            this.maxBytesPerSecond = maxBytesPerSecond;
+            this.ticker = ticker;
+            this.nextStart = ticker.nanoTime();
+        }
+
+        /**
+         * Wait until an upload of the given number of bytes may start.
+         *
+         * @param bytes The number of bytes to upload.
+         * @return The number of milliseconds waited.
+         * @throws InterruptedException If interrupted while waiting.
+         */
+        public long acquire(long bytes) throws InterruptedException {
+            if (maxBytesPerSecond == 0) {
+                return 0;
+            }
+            long start;
+            synchronized (this) {
+                long now = ticker.nanoTime();
+                start = Math.max(now, nextStart);
+                nextStart = start + (long) (bytes * (double) TimeUnit.SECONDS.toNanos(1) / maxBytesPerSecond);
+            }
+            long wait = start - ticker.nanoTime();
+            if (wait > 0) {
+                ticker.sleep(wait);
+            }
+            return TimeUnit.NANOSECONDS.toMillis(Math.max(0, wait));
+        }
+
+        /**
+         * A source of time for a limiter.
+         */
+        interface Ticker {
+            /**
+             * @return The current time in nanoseconds, from an arbitrary origin.
+             */
+            long nanoTime();
+
+            /**
+             * Wait for the given time to pass.
+             *
+             * @param nanos The number of nanoseconds to wait.
+             * @throws InterruptedException If interrupted while waiting.
+             */
+            void sleep(long nanos) throws InterruptedException;
+        }
+    }
+
+}
@@ -192,6 +192,14 @@ public class Heritrix3Files {
 	public File getCrawlLog() {
 		return new File(h3LogDir, "crawl.log");
 	}
+
+	/**
+	 * @return the file in the crawl directory recording the archive files uploaded, used for resuming an interrupted
+	 * upload.
+	 */
+	public File getUploadStateFile() {
+		return new File(crawlDir, "uploads.txt");
+	}
 	
 	public File getHeritrixZip() {
 		return this.h3ZipBall;
@@ -61,6 +61,9 @@ public class PostProcessing {
     /** The ArcRepositoryClient used to communicate with the ArcRepository to store the generated arc-files. */
     private HarvesterArcRepositoryClient arcRepController;
 
+    /** The limiter of the upload rate of this harvester. */
+    private final ArchiveFileUploader.UploadRateLimiter uploadRateLimiter;
+
     /** The singleton instance of this class. Calling cleanup() on the instance will null this field. */
     private static PostProcessing instance;
 
@@ -70,6 +73,8 @@ public class PostProcessing {
     private PostProcessing(JMSConnection jmsConnection) {
         arcRepController = ArcRepositoryClientFactory.getHarvesterInstance();
         this.jmsConnection = jmsConnection;
+        uploadRateLimiter = new ArchiveFileUploader.UploadRateLimiter(
+                Settings.getLong(HarvesterSettings.HARVEST_UPLOAD_MAX_BYTES_PER_SECOND));
     }
 
     /**
@@ -262,6 +267,10 @@ public class PostProcessing {
             // Create a metadata archive file
             HarvestDocumentation.documentHarvest(inf);
             // Upload all files 
+            ArchiveFileUploader uploader = new ArchiveFileUploader(arcRepController,
+                    Settings.getInt(HarvesterSettings.HARVEST_UPLOAD_CONCURRENT_UPLOADS), uploadRateLimiter,
+                    files.getUploadStateFile());
+            File oldJobsDir = new File(Settings.get(HarvesterSettings.HARVEST_CONTROLLER_OLDJOBSDIR));
 
             // Check, if arcsdir or warcsdir is empty
             // Send a notification, if this is the case
@@ -271,20 +280,17 @@ public class PostProcessing {
                 log.warn(errMsg);
                 NotificationsFactory.getInstance().notify(errMsg, NotificationType.WARNING);
             } else {
-                if (!inf.getArcFiles().isEmpty()) {
-                	log.info("Beginning upload of {} ARC files", inf.getArcFiles().size());
-                    uploadFiles(inf.getArcFiles(), errorMessage, failedFiles);
-                }
-                if (!inf.getWarcFiles().isEmpty()) {
-                	log.info("Beginning upload of {} WARC files", inf.getWarcFiles().size());
-                    uploadFiles(inf.getWarcFiles(), errorMessage, failedFiles);
-                }
+                log.info("Beginning upload of {} ARC files and {} WARC files", inf.getArcFiles().size(),
+                        inf.getWarcFiles().size());
+                List<File> archiveFiles = new ArrayList<File>(inf.getArcFiles());
+                archiveFiles.addAll(inf.getWarcFiles());
+                uploader.uploadFiles(archiveFiles, errorMessage, failedFiles, oldJobsDir);
             }
 
             // Now the ARC/WARC files have been uploaded,
             // we finally upload the metadata archive file.
             log.info("Beginning upload of the {} metadafile(s) ", inf.getMetadataArcFiles().size());
-            uploadFiles(inf.getMetadataArcFiles(), errorMessage, failedFiles);
+            uploader.uploadFiles(inf.getMetadataArcFiles(), errorMessage, failedFiles, oldJobsDir);
             
             // Make the harvestReport ready for transfer back to the scheduler 
             DomainStatsReport dsr =  HarvestReportGenerator.getDomainStatsReport(files);
@@ -297,33 +303,4 @@ public class PostProcessing {
         }
     }
 
-    /**
-     * Upload given files to the archive repository.
-     *
-     * @param files List of (ARC/WARC) files to upload.
-     * @param errorMessage Accumulator for error messages.
-     * @param failedFiles Accumulator for failed files.
-     */
-    private void uploadFiles(List<File> files, StringBuilder errorMessage, List<File> failedFiles) {
-        // Upload all archive files
-        if (files != null) {
-        	int count=0;
-            for (File f : files) {
-            	count++;
-                try {
-                    log.info("Uploading file #{} - '{}' to arcrepository.", count, f.getName());
-                    arcRepController.store(f);
-                    log.info("File '{}' uploaded successfully to the arcrepository.", f.getName());
-                } catch (Exception e) {
-                    File oldJobsDir = new File(Settings.get(HarvesterSettings.HARVEST_CONTROLLER_OLDJOBSDIR));
-                    String errorMsg = "Error uploading file '" + f.getAbsolutePath() + "' Will be moved to the oldjobs directory '"
-                            + oldJobsDir.getAbsolutePath() + "'";
-                    errorMessage.append(errorMsg).append("\n").append(e.toString()).append("\n");
-                    log.warn(errorMsg, e);
-                    failedFiles.add(f);
-                }
-            }
-        }
-    }
-
 }
@@ -24,12 +24,22 @@ package dk.netarkivet.harvester.heritrix3.report;
 
 import gnu.inet.encoding.IDNA;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.httpclient.URIException;
 import org.archive.url.UsableURI;
@@ -63,6 +73,15 @@ public class HarvestReportGenerator {
     private static final String BYTE_LIMIT_REACHED_ANNOTATION = "Q:groupMaxAllKb";
     private static final String OBJECT_LIMIT_REACHED_ANNOTATION = "Q:groupMaxFetchSuccesses";
 
+    /** The maximum number of fields in a crawl.log line. The last field holds the annotations. */
+    private static final int MAX_PARTS = 12;
+
+    /** Crawl logs are only split into chunks of at least this many bytes, to be parsed in parallel. */
+    private static final long MIN_CHUNK_SIZE = 16L * 1024 * 1024;
+
+    /** The number of hosts and seeds whose domain name is remembered while parsing a chunk of a crawl.log. */
+    private static final int DOMAIN_CACHE_SIZE = 10000;
+
     /**
      * Strings found in the progress-statistics.log, used to devise the default stop reason for domains.
      */
@@ -116,6 +135,15 @@ public class HarvestReportGenerator {
     public HarvestReportGenerator() {
     }
 
+    /**
+     * Constructor for parsing a crawl.log without any other Heritrix report files.
+     *
+     * @param defaultStopReason The stop reason of domains for which the crawl.log gives no other reason.
+     */
+    HarvestReportGenerator(StopReason defaultStopReason) {
+        this.defaultStopReason = defaultStopReason;
+    }
+
     /**
      * Constructor from Heritrix report files. Subclasses might use a different set of Heritrix reports.
      *
@@ -159,10 +187,22 @@ public class HarvestReportGenerator {
      * @return a DomainStats object for the given domain-name.
      */
     protected DomainStats getOrCreateDomainStats(String domainName) {
-        DomainStats dhi = domainstats.get(domainName);
+        return getOrCreateDomainStats(domainstats, domainName);
+    }
+
+    /**
+     * Attempts to get an already existing {@link DomainStats} object for that domain from the given statistics, and if
+     * not found creates one with zero values.
+     *
+     * @param stats The statistics to look in.
+     * @param domainName the name of the domain to get DomainStats for.
+     * @return a DomainStats object for the given domain-name.
+     */
+    private DomainStats getOrCreateDomainStats(Map<String, DomainStats> stats, String domainName) {
+        DomainStats dhi = stats.get(domainName);
         if (dhi == null) {
             dhi = new DomainStats(0L, 0L, defaultStopReason);
-            domainstats.put(domainName, dhi);
+            stats.put(domainName, dhi);
         }
 
         return dhi;
@@ -205,36 +245,255 @@ public class HarvestReportGenerator {
         // in the crawl.log
         boolean disregardSeedUrls = Settings.getBoolean(HarvesterSettings.DISREGARD_SEEDURL_INFORMATION_IN_CRAWLLOG);
         log.info("DISREGARD_SEEDURL_INFORMATION_IN_CRAWLLOG: " + disregardSeedUrls); 
-        BufferedReader in = null;
+        int threads = Settings.getInt(HarvesterSettings.HARVEST_REPORT_PARSER_THREADS);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        parseCrawlLog(file, disregardSeedUrls, threads, MIN_CHUNK_SIZE);
+    }
 
+    /**
+     * Computes the domain statistics for a crawl.log. The file is split at line boundaries into chunks of at least
+     * minChunkSize bytes, which are parsed in parallel. The statistics of the chunks are merged in the order of the
+     * chunks, so the result is the same as when parsing the file line by line.
+     *
+     * @param file the local file to be processed
+     * @param disregardSeedUrls Whether to disregard the seed URL information in the crawl.log
+     * @param threads The maximum number of chunks to parse in parallel
+     * @param minChunkSize The minimum number of bytes in a chunk
+     * @throws IOFailure if there is problem reading the file
+     */
+    void parseCrawlLog(final File file, final boolean disregardSeedUrls, int threads, long minChunkSize)
+            throws IOFailure {
+        List<Map<String, DomainStats>> chunkStats = new ArrayList<Map<String, DomainStats>>();
         try {
-            in = new BufferedReader(new FileReader(file));
-            String line;
-            int lineCnt = 0;
-            while ((line = in.readLine()) != null) {
-                ++lineCnt;
+            final List<Long> chunkStarts = findChunkStarts(file, threads, minChunkSize);
+            int chunks = chunkStarts.size() - 1;
+            if (chunks == 1) {
+                chunkStats.add(parseChunk(file, chunkStarts.get(0), chunkStarts.get(1), disregardSeedUrls));
+            } else {
+                log.info("Parsing crawl.log '{}' of {} bytes in {} chunks", file.getAbsolutePath(),
+                        chunkStarts.get(chunks), chunks);
+                ExecutorService executor = Executors.newFixedThreadPool(chunks);
                 try {
-                    processHarvestLine(line, disregardSeedUrls);
-                } catch (ArgumentNotValid e) {
-                    log.debug("Invalid line in '{}' line {}: '{}'. Ignoring due to reason: {}", file.getAbsolutePath(),
-                            lineCnt, line, e.getMessage(), e);
+                    List<Future<Map<String, DomainStats>>> futures = new ArrayList<Future<Map<String, DomainStats>>>();
+                    for (int i = 0; i < chunks; i++) {
+                        final long start = chunkStarts.get(i);
+                        final long end = chunkStarts.get(i + 1);
+                        futures.add(executor.submit(new Callable<Map<String, DomainStats>>() {
+                            @Override
+                            public Map<String, DomainStats> call() throws IOException {
+                                return parseChunk(file, start, end, disregardSeedUrls);
+                            }
+                        }));
+                    }
+                    for (Future<Map<String, DomainStats>> future : futures) {
+                        chunkStats.add(future.get());
+                    }
+                } finally {
+                    executor.shutdownNow();
                 }
             }
+        } catch (ExecutionException e) {
+            String msg = "Unable to open/read crawl.log file '" + file.getAbsolutePath() + "'.";
+            log.warn(msg, e.getCause());
+            throw new IOFailure(msg, e.getCause());
+        } catch (InterruptedException e) {
+            String msg = "Interrupted while parsing crawl.log file '" + file.getAbsolutePath() + "'.";
+            log.warn(msg, e);
+            throw new IOFailure(msg, e);
         } catch (IOException e) {
             String msg = "Unable to open/read crawl.log file '" + file.getAbsolutePath() + "'.";
             log.warn(msg, e);
             throw new IOFailure(msg, e);
+        }
+        for (Map<String, DomainStats> stats : chunkStats) {
+            mergeDomainStats(stats);
+        }
+    }
+
+    /**
+     * Find where to split a file into chunks, so every chunk starts at the beginning of a line.
+     *
+     * @param file The file to split.
+     * @param maxChunks The maximum number of chunks.
+     * @param minChunkSize The minimum number of bytes in a chunk, except for the last one.
+     * @return The offset where each chunk starts, followed by the length of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    private static List<Long> findChunkStarts(File file, int maxChunks, long minChunkSize) throws IOException {
+        long length = file.length();
+        int chunks = (int) Math.max(1, Math.min(maxChunks, length / Math.max(1, minChunkSize)));
+        List<Long> chunkStarts = new ArrayList<Long>();
+        chunkStarts.add(0L);
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] buffer = new byte[8192];
+            for (int i = 1; i < chunks; i++) {
+                long previous = chunkStarts.get(chunkStarts.size() - 1);
+                long pos = Math.max(previous, length / chunks * i);
+                long start = -1;
+                in.seek(pos);
+                int read;
+                while (start < 0 && (read = in.read(buffer)) > 0) {
+                    for (int j = 0; j < read; j++) {
+                        if (buffer[j] == '\n') {
+                            start = pos + j + 1;
+                            break;
+                        }
+                    }
+                    pos += read;
+                }
+                if (start < 0 || start >= length) {
+                    break;
+                }
+                chunkStarts.add(start);
+            }
         } finally {
-        	
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    log.debug("Unable to close {}", file, e);
-                    // Can't throw here, as would destroy the real exception
+            in.close();
+        }
+        chunkStarts.add(length);
+        return chunkStarts;
+    }
+
+    /**
+     * Computes the domain statistics for the lines of a crawl.log between two offsets. Each chunk remembers the domain
+     * names of the hosts and seeds it has seen, as the lines of a crawl.log mostly refer to a few hosts at a time.
+     *
+     * @param file The crawl.log.
+     * @param start The offset of the first line of the chunk.
+     * @param end The offset after the last line of the chunk.
+     * @param disregardSeedUrls Whether to disregard the seed URL information in the crawl.log
+     * @return The statistics of the domains found in the chunk.
+     * @throws IOException If the file cannot be read.
+     */
+    private Map<String, DomainStats> parseChunk(File file, long start, long end, boolean disregardSeedUrls)
+            throws IOException {
+        Map<String, DomainStats> stats = new HashMap<String, DomainStats>();
+        Map<String, String> hostDomains = createDomainCache();
+        Map<String, String> seedDomains = createDomainCache();
+        String[] parts = new String[MAX_PARTS];
+        Charset charset = Charset.defaultCharset();
+        FileInputStream in = new FileInputStream(file);
+        try {
+            in.getChannel().position(start);
+            byte[] buffer = new byte[64 * 1024];
+            byte[] line = new byte[1024];
+            int lineLength = 0;
+            long lineStart = start;
+            long pos = start;
+            int read;
+            while (pos < end && (read = in.read(buffer, 0, (int) Math.min(buffer.length, end - pos))) > 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        processChunkLine(file, lineStart, new String(line, 0, lineLength, charset), disregardSeedUrls,
+                                parts, stats, hostDomains, seedDomains);
+                        lineLength = 0;
+                        lineStart = pos + i + 1;
+                    } else if (b != '\r') {
+                        if (lineLength == line.length) {
+                            line = Arrays.copyOf(line, line.length * 2);
+                        }
+                        line[lineLength++] = b;
+                    }
                 }
+                pos += read;
+            }
+            if (lineLength > 0) {
+                processChunkLine(file, lineStart, new String(line, 0, lineLength, charset), disregardSeedUrls, parts,
+                        stats, hostDomains, seedDomains);
+            }
+        } finally {
+            in.close();
+        }
+        return stats;
+    }
+
+    /**
+     * Processes a line of a chunk, logging and ignoring invalid lines.
+     */
+    private void processChunkLine(File file, long offset, String line, boolean disregardSeedUrls, String[] parts,
+            Map<String, DomainStats> stats, Map<String, String> hostDomains, Map<String, String> seedDomains) {
+        try {
+            processHarvestLine(line, disregardSeedUrls, parts, stats, hostDomains, seedDomains);
+        } catch (ArgumentNotValid e) {
+            log.debug("Invalid line in '{}' at offset {}: '{}'. Ignoring due to reason: {}", file.getAbsolutePath(),
+                    offset, line, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return A map for remembering the domain names of the most recently seen hosts or seeds.
+     */
+    private static Map<String, String> createDomainCache() {
+        return new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > DOMAIN_CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * Add the statistics of a chunk of the crawl.log to the statistics of the harvest. The chunks must be merged in
+     * the order they appear in the crawl.log, as the first stop reason found for a domain is kept.
+     *
+     * @param chunkStats The statistics of a chunk.
+     */
+    private void mergeDomainStats(Map<String, DomainStats> chunkStats) {
+        for (Map.Entry<String, DomainStats> entry : chunkStats.entrySet()) {
+            DomainStats chunk = entry.getValue();
+            DomainStats dhi = domainstats.get(entry.getKey());
+            if (dhi == null) {
+                domainstats.put(entry.getKey(), chunk);
+                continue;
+            }
+            dhi.setObjectCount(dhi.getObjectCount() + chunk.getObjectCount());
+            dhi.setByteCount(dhi.getByteCount() + chunk.getByteCount());
+            // Only if reason not set
+            if (dhi.getStopReason() == defaultStopReason) {
+                dhi.setStopReason(chunk.getStopReason());
+            }
+        }
+    }
+
+    /**
+     * Split a line into at most parts.length whitespace separated fields, the same way as
+     * <code>line.split("\\s+", parts.length)</code>, but without compiling a regular expression or allocating an array
+     * for every line.
+     *
+     * @param line The line to split.
+     * @param parts The array to put the fields in.
+     * @return The number of fields found.
+     */
+    static int splitFields(String line, String[] parts) {
+        int count = 0;
+        int start = 0;
+        int length = line.length();
+        while (count < parts.length - 1) {
+            int separator = start;
+            while (separator < length && !isCrawlLogWhitespace(line.charAt(separator))) {
+                separator++;
+            }
+            if (separator == length) {
+                break;
+            }
+            parts[count++] = line.substring(start, separator);
+            start = separator;
+            while (start < length && isCrawlLogWhitespace(line.charAt(start))) {
+                start++;
             }
         }
+        parts[count++] = line.substring(start);
+        return count;
+    }
+
+    /**
+     * @return true if c is matched by <code>\s</code> in a regular expression.
+     */
+    private static boolean isCrawlLogWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
     }
 
     /**
@@ -242,17 +501,21 @@ public class HarvestReportGenerator {
      *
      * @param line the line to process.
      * @param disregardSeedUrlInfo Boolean saying whether or not to disregard SeedURL Information
+     * @param parts An array of {@link #MAX_PARTS} strings, reused for splitting the line.
+     * @param stats The statistics to update.
+     * @param hostDomains The domain names of recently seen hosts.
+     * @param seedDomains The domain names of recently seen seeds.
      */
-    private void processHarvestLine(final String line, boolean disregardSeedUrlInfo) {
+    private void processHarvestLine(final String line, boolean disregardSeedUrlInfo, String[] parts,
+            Map<String, DomainStats> stats, Map<String, String> hostDomains, Map<String, String> seedDomains) {
         // A legal crawl log line has at least 11 parts, + optional annotations
 
         final int MIN_CRAWL_LOG_PARTS = 11;
-        final int MAX_PARTS = 12;
         final int ANNOTATION_PART_INDEX = 11;
-        String[] parts = line.split("\\s+", MAX_PARTS);
-        if (parts.length < MIN_CRAWL_LOG_PARTS) {
+        int partCount = splitFields(line, parts);
+        if (partCount < MIN_CRAWL_LOG_PARTS) {
             throw new ArgumentNotValid("Not enough fields for line in crawl.log: '" + line + "'. Was only "
-                    + parts.length + " fields. Should have been at least " + MIN_CRAWL_LOG_PARTS);
+                    + partCount + " fields. Should have been at least " + MIN_CRAWL_LOG_PARTS);
         }
 
         // Check the seed url (part 11 of the crawl-log-line).
@@ -270,15 +533,16 @@ public class HarvestReportGenerator {
         String seedDomain = null;
 
         if (sourceTagEnabled) {
-            try {
-                seedDomain = getDomainNameFromURIString(seedURL);
-                if (seedDomain != null) {
-                    // Transform any IDNA encoded seedDomain back to Unicode
-                    seedDomain = IDNA.toUnicode(seedDomain);
+            if (seedDomains.containsKey(seedURL)) {
+                seedDomain = seedDomains.get(seedURL);
+            } else {
+                try {
+                    seedDomain = getUnicodeDomainName(seedURL, hostDomains);
+                    seedDomains.put(seedURL, seedDomain);
+                } catch (URIException e) {
+                    log.debug("Unable to extract a domain from the seedURL found in field 11 of crawl.log: '{}'.",
+                            seedURL, e);
                 }
-            } catch (URIException e) {
-                log.debug("Unable to extract a domain from the seedURL found in field 11 of crawl.log: '{}'.", seedURL,
-                        e);
             }
         }
 
@@ -287,11 +551,7 @@ public class HarvestReportGenerator {
         String objectUrl = parts[3];
 
         try {
-            objectDomain = getDomainNameFromURIString(objectUrl);
-            if (objectDomain != null) {
-                // Transform the any IDNA encoded domain back to Unicode
-                objectDomain = IDNA.toUnicode(objectDomain);
-            }
+            objectDomain = getUnicodeDomainName(objectUrl, hostDomains);
         } catch (URIException e) {
             log.debug("Unable to extract a domain from the object URL found in field 4 of crawl.log: '{}'.", objectUrl,
                     e);
@@ -323,7 +583,7 @@ public class HarvestReportGenerator {
         // and the stop reason from annotation field if status code is -5003
         StopReason stopReason = getDefaultStopReason();
         long byteCounter = 0;
-        if (parts.length > MIN_CRAWL_LOG_PARTS) {
+        if (partCount > MIN_CRAWL_LOG_PARTS) {
             // test if any annotations exist
             String[] annotations = parts[ANNOTATION_PART_INDEX].split(",");
             for (String annotation : annotations) {
@@ -349,7 +609,7 @@ public class HarvestReportGenerator {
         }
 
         // Update stats for domain
-        DomainStats dhi = getOrCreateDomainStats(domainName);
+        DomainStats dhi = getOrCreateDomainStats(stats, domainName);
 
         // Only count harvested URIs
         if (response >= 0) {
@@ -365,20 +625,30 @@ public class HarvestReportGenerator {
     }
 
 	/**
-     * Extract DomainName from URI string. Does not handle Danish characters in URI.
+     * Extract the domain name from a URI string, transforming any IDNA encoded domain name back to Unicode. Does not
+     * handle Danish characters in URI.
      *
      * @param uriAsString a given URI as string.
+     * @param hostDomains The domain names of recently seen hosts, used and updated by this method.
      * @return the domainName if possible or null, if not possible
      * @throws URIException If unable to create valid URI from the given string
      */
-    private String getDomainNameFromURIString(String uriAsString) throws URIException {
+    private String getUnicodeDomainName(String uriAsString, Map<String, String> hostDomains) throws URIException {
         UsableURI uuri = new FixedUURI(uriAsString, false);
         String hostName = uuri.getReferencedHost();
         if (hostName == null) {
             log.debug("Not possible to extract domainname from URL: {}", uriAsString);
             return null;
         }
-        return DomainUtils.domainNameFromHostname(hostName);
+        if (hostDomains.containsKey(hostName)) {
+            return hostDomains.get(hostName);
+        }
+        String domainName = DomainUtils.domainNameFromHostname(hostName);
+        if (domainName != null) {
+            domainName = IDNA.toUnicode(domainName);
+        }
+        hostDomains.put(hostName, domainName);
+        return domainName;
     }
     
     /**
@@ -0,0 +1,161 @@
+package dk.netarkivet.harvester.heritrix3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.distribute.arcrepository.HarvesterArcRepositoryClient;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.FileUtils;
+
+public class ArchiveFileUploaderTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = new File(FileUtils.getTempDir(), "ArchiveFileUploaderTest");
+        FileUtils.removeRecursively(dir);
+        FileUtils.createDir(dir);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.removeRecursively(dir);
+    }
+
+    @Test
+    public void testUploadsConcurrentlyAndReportsFailuresInOrder() {
+        BlockingClient client = new BlockingClient(3);
+        ArchiveFileUploader uploader = new ArchiveFileUploader(client, 3,
+                new ArchiveFileUploader.UploadRateLimiter(0), new File(dir, "uploads.txt"));
+        List<File> files = createFiles("fail-1.warc", "a.warc", "b.warc", "fail-2.warc", "c.warc", "d.warc");
+        StringBuilder errors = new StringBuilder();
+        List<File> failed = new ArrayList<File>();
+
+        uploader.uploadFiles(files, errors, failed, new File(dir, "oldjobs"));
+
+        assertEquals("Every file should be stored once", 6, client.stored.size());
+        assertEquals("Three files should be stored at the same time", 3, client.maxConcurrent);
+        assertEquals(Arrays.asList(files.get(0), files.get(3)), failed);
+        assertTrue(errors.toString().contains("fail-1.warc"));
+    }
+
+    @Test
+    public void testResumeSkipsUploadedFiles() {
+        File stateFile = new File(dir, "uploads.txt");
+        BlockingClient client = new BlockingClient(2);
+        new ArchiveFileUploader(client, 2, new ArchiveFileUploader.UploadRateLimiter(0), stateFile).uploadFiles(
+                createFiles("a.warc", "fail-1.warc"), new StringBuilder(), new ArrayList<File>(), dir);
+        assertEquals(2, client.stored.size());
+
+        // The uploaded file is left behind, as if it could not be deleted before the upload was interrupted.
+        client = new BlockingClient(2);
+        List<File> failed = new ArrayList<File>();
+        new ArchiveFileUploader(client, 2, new ArchiveFileUploader.UploadRateLimiter(0), stateFile).uploadFiles(
+                createFiles("a.warc", "fail-1.warc", "b.warc"), new StringBuilder(), failed, dir);
+        Collections.sort(client.stored);
+        assertEquals("Only files not uploaded before should be stored", Arrays.asList("b.warc", "fail-1.warc"),
+                client.stored);
+        assertEquals(1, failed.size());
+    }
+
+    @Test
+    public void testRateLimiterDelaysUploads() throws InterruptedException {
+        FakeTicker ticker = new FakeTicker();
+        ArchiveFileUploader.UploadRateLimiter limiter = new ArchiveFileUploader.UploadRateLimiter(1000, ticker);
+        assertEquals("The first upload should not wait", 0, limiter.acquire(500));
+        assertEquals("500 bytes at 1000 bytes per second should take half a second", 500, limiter.acquire(500));
+        assertEquals("The third upload should wait for the two before it", 500, limiter.acquire(10));
+        assertEquals("1000 bytes at 1000 bytes per second should take a second", TimeUnit.SECONDS.toNanos(1),
+                ticker.now);
+
+        ticker.now += TimeUnit.SECONDS.toNanos(5);
+        assertEquals("An upload after a pause should not wait", 0, limiter.acquire(500));
+    }
+
+    @Test
+    public void testRateLimiterWithoutLimitDoesNotWait() throws InterruptedException {
+        FakeTicker ticker = new FakeTicker();
+        ArchiveFileUploader.UploadRateLimiter limiter = new ArchiveFileUploader.UploadRateLimiter(0, ticker);
+        assertEquals(0, limiter.acquire(Long.MAX_VALUE));
+        assertEquals(0, limiter.acquire(Long.MAX_VALUE));
+        assertEquals("No time should pass", 0, ticker.now);
+    }
+
+    private List<File> createFiles(String... names) {
+        List<File> files = new ArrayList<File>();
+        for (String name : names) {
+            File f = new File(dir, name);
+            FileUtils.writeBinaryFile(f, name.getBytes());
+            files.add(f);
+        }
+        return files;
+    }
+
+    /** A source of time that only moves when slept on. */
+    private static class FakeTicker implements ArchiveFileUploader.UploadRateLimiter.Ticker {
+        long now;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void sleep(long nanos) {
+            now += nanos;
+        }
+    }
+
+    /**
+     * Stores files, failing for files whose names start with "fail". The first stores wait until a given number of
+     * stores are in progress at the same time, or until a timeout if the files are not stored concurrently.
+     */
+    private static class BlockingClient implements HarvesterArcRepositoryClient {
+        final List<String> stored = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger concurrent = new AtomicInteger();
+        final CountDownLatch started;
+        volatile int maxConcurrent;
+
+        BlockingClient(int expectedConcurrent) {
+            started = new CountDownLatch(expectedConcurrent);
+        }
+
+        @Override
+        public void store(File file) {
+            int now = concurrent.incrementAndGet();
+            synchronized (this) {
+                maxConcurrent = Math.max(maxConcurrent, now);
+            }
+            try {
+                started.countDown();
+                started.await(10, TimeUnit.SECONDS);
+                stored.add(file.getName());
+                if (file.getName().startsWith("fail")) {
+                    throw new IOFailure("Failed storing " + file.getName());
+                }
+            } catch (InterruptedException e) {
+                throw new IOFailure("Interrupted", e);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
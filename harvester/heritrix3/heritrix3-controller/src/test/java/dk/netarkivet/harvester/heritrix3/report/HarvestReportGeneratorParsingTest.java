@@ -0,0 +1,130 @@
+package dk.netarkivet.harvester.heritrix3.report;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.SlowTest;
+import dk.netarkivet.harvester.datamodel.StopReason;
+import dk.netarkivet.harvester.harvesting.distribute.DomainStats;
+
+/**
+ * Tests that parsing a crawl.log in parallel chunks gives the same domain statistics as parsing it line by line.
+ */
+public class HarvestReportGeneratorParsingTest {
+
+    private static final Logger log = LoggerFactory.getLogger(HarvestReportGeneratorParsingTest.class);
+
+    @Test
+    public void testSplitFieldsLikeRegex() {
+        String[] lines = {
+                "2015-05-22T15:01:09.465Z     1         56 dns:netarkivet.dk P http://netarkivet.dk/adgang/ text/dns "
+                        + "#002 20150522150108890+70 sha1:CWOQBT5TEKSRCWTVAJWJQ3EVKWQBLVRZ - content-size:56",
+                "a b c d e f g h i j k l m n", " leading", "trailing ", "tabs\tand\u000Bother\fwhitespace\r", "",
+                "single", "a  b   c"};
+        String[] parts = new String[12];
+        for (String line : lines) {
+            int count = HarvestReportGenerator.splitFields(line, parts);
+            assertArrayEquals("Fields of '" + line + "'", line.split("\\s+", 12), Arrays.copyOf(parts, count));
+        }
+    }
+
+    @Test
+    public void testChunkedParsingGivesSameStatistics() throws IOException {
+        File crawlLog = File.createTempFile("crawl", ".log");
+        try {
+            writeCrawlLog(crawlLog, 5000, false);
+            Map<String, DomainStats> sequential = parse(crawlLog, 1, Long.MAX_VALUE);
+            Map<String, DomainStats> chunked = parse(crawlLog, 7, 1000);
+            assertEquals("Domains in the crawl.log", 201, sequential.size());
+            assertEquals(sequential.keySet(), chunked.keySet());
+            for (String domain : sequential.keySet()) {
+                DomainStats expected = sequential.get(domain);
+                DomainStats actual = chunked.get(domain);
+                assertEquals("Objects of " + domain, expected.getObjectCount(), actual.getObjectCount());
+                assertEquals("Bytes of " + domain, expected.getByteCount(), actual.getByteCount());
+                assertEquals("Stop reason of " + domain, expected.getStopReason(), actual.getStopReason());
+            }
+            DomainStats blocked = chunked.get("domain3.dk");
+            assertNotNull(blocked);
+            assertEquals(StopReason.SIZE_LIMIT, blocked.getStopReason());
+        } finally {
+            FileUtils.remove(crawlLog);
+        }
+    }
+
+    /**
+     * Log the time to parse a synthetic crawl.log with one thread and with one thread per processor. The number of
+     * lines is given by the system property crawllog.benchmark.lines, default 500000. Only run with the fullTest
+     * profile.
+     */
+    @Test
+    @Category(SlowTest.class)
+    public void benchmarkParsing() throws IOException {
+        int lines = Integer.getInteger("crawllog.benchmark.lines", 500000);
+        File crawlLog = File.createTempFile("crawl", ".log");
+        try {
+            writeCrawlLog(crawlLog, lines, true);
+            int processors = Runtime.getRuntime().availableProcessors();
+            // Warm up before timing.
+            Map<String, DomainStats> expected = parse(crawlLog, 1, Long.MAX_VALUE);
+            for (int threads : new int[] {1, processors}) {
+                long start = System.nanoTime();
+                Map<String, DomainStats> stats = parse(crawlLog, threads, 1024 * 1024);
+                long time = System.nanoTime() - start;
+                log.info("{} lines, {} bytes, {} threads: {} ms", lines, crawlLog.length(), threads, time / 1000000);
+                assertEquals("Domains found with " + threads + " threads", expected.keySet(), stats.keySet());
+            }
+        } finally {
+            FileUtils.remove(crawlLog);
+        }
+    }
+
+    private static Map<String, DomainStats> parse(File crawlLog, int threads, long minChunkSize) {
+        HarvestReportGenerator generator = new HarvestReportGenerator(StopReason.DOWNLOAD_COMPLETE);
+        generator.parseCrawlLog(crawlLog, false, threads, minChunkSize);
+        return generator.getDomainStatsMap();
+    }
+
+    /**
+     * Write a crawl.log with lines for 100 domains, a few invalid lines, quota blocked URIs and no newline at the end.
+     * The lines of a domain are either all on the www host, or spread over many hosts.
+     */
+    private static void writeCrawlLog(File file, int lines, boolean manyHosts) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            for (int i = 0; i < lines; i++) {
+                int domain = i % 100;
+                String host = (manyHosts ? "host" + (i % 5000) + "." : "www.") + "domain" + domain + ".dk";
+                String seed = (i % 3 == 0) ? "-" : "http://seed" + domain + ".dk/";
+                if (i % 997 == 0) {
+                    out.print("not a crawl.log line\n");
+                } else if (domain == 3 && i > lines / 2) {
+                    out.print("2015-05-22T15:01:09.465Z -5003 - http://" + host + "/page" + i + " LL http://" + host
+                            + "/ text/html #002 - - " + seed + " Q:groupMaxAllKb\n");
+                } else {
+                    out.print("2015-05-22T15:01:09.465Z   200  " + (i % 10000) + " http://" + host + "/page" + i
+                            + " L http://" + host + "/ text/html #002 20150522150108890+70 sha1:CWOQBT5TEKSRCWTV "
+                            + seed + " content-size:" + (i % 10000 + 300) + ",3t\n");
+                }
+            }
+            out.print("2015-05-22T15:01:09.465Z   200  42 http://www.last.dk/ - - text/html #002 - - - "
+                    + "content-size:42");
+        } finally {
+            out.close();
+        }
+    }
+}
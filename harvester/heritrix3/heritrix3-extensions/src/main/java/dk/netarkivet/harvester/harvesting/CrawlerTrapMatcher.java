@@ -0,0 +1,403 @@
+/*
+ * #%L
+ * Netarchivesuite - Heritrix 3 extensions
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Tells whether a string is matched in full by any of a list of regular expressions, without trying every expression
+ * on every string. Made for long lists of crawler traps like <code>.*www\.example\.com/calendar.*</code>.
+ * <p>
+ * The longest literal text that every match must contain is extracted from each expression. Typically this is a host
+ * name or a path. All these literals go into one Aho-Corasick automaton, which finds the literals that occur in a
+ * string in a single pass. Only the expressions whose literal occurs are then tried. The expressions without such a
+ * literal are combined into one alternation, where possible.
+ * <p>
+ * Instances are immutable and can be used by several threads at once.
+ */
+public class CrawlerTrapMatcher {
+
+    /** Literals shorter than this are not selective enough to be worth looking up. */
+    static final int MIN_LITERAL_LENGTH = 3;
+
+    /** The root of the automaton of the literals. */
+    private final Node root = new Node();
+
+    /** The expressions with a literal, by index. */
+    private final List<Pattern> indexed = new ArrayList<Pattern>();
+
+    /** The expressions without a literal combined into one alternation, or null if there are none. */
+    private final Pattern combined;
+
+    /** The expressions without a literal that are tried one by one. */
+    private final List<Pattern> unindexed = new ArrayList<Pattern>();
+
+    /**
+     * Create a matcher for the given expressions.
+     *
+     * @param patterns The expressions. A string is matched if any of them matches all of it.
+     */
+    public CrawlerTrapMatcher(List<Pattern> patterns) {
+        StringBuilder alternation = new StringBuilder();
+        List<Pattern> combinable = new ArrayList<Pattern>();
+        for (Pattern pattern : patterns) {
+            String literal = pattern.flags() == 0 ? requiredLiteral(pattern.pattern()) : null;
+            if (literal != null && literal.length() >= MIN_LITERAL_LENGTH) {
+                add(literal, indexed.size());
+                indexed.add(pattern);
+            } else if (pattern.flags() == 0 && isCombinable(pattern.pattern())) {
+                if (alternation.length() > 0) {
+                    alternation.append('|');
+                }
+                alternation.append("(?:").append(pattern.pattern()).append(')');
+                combinable.add(pattern);
+            } else {
+                unindexed.add(pattern);
+            }
+        }
+        Pattern alternatives = null;
+        if (combinable.size() > 1) {
+            try {
+                alternatives = Pattern.compile(alternation.toString());
+            } catch (PatternSyntaxException e) {
+                // E.g. the same group name in two expressions. Try them one by one instead.
+                unindexed.addAll(combinable);
+            }
+        } else {
+            unindexed.addAll(combinable);
+        }
+        combined = alternatives;
+        buildSuffixLinks();
+    }
+
+    /**
+     * @return The number of expressions only tried on strings containing their literal.
+     */
+    public int getIndexedCount() {
+        return indexed.size();
+    }
+
+    /**
+     * Check whether a string is matched in full by any of the expressions.
+     *
+     * @param s The string to check.
+     * @return true if at least one of the expressions matches all of s.
+     */
+    public boolean matchesAny(String s) {
+        if (!indexed.isEmpty()) {
+            BitSet tried = new BitSet(indexed.size());
+            Node node = root;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                Node next = node.children.get(c);
+                while (next == null && node != root) {
+                    node = node.failure;
+                    next = node.children.get(c);
+                }
+                node = (next == null) ? root : next;
+                Node output = (node.patterns.length > 0) ? node : node.output;
+                for (; output != null; output = output.output) {
+                    for (int index : output.patterns) {
+                        if (!tried.get(index)) {
+                            tried.set(index);
+                            if (indexed.get(index).matcher(s).matches()) {
+                                return true;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (combined != null && combined.matcher(s).matches()) {
+            return true;
+        }
+        for (Pattern pattern : unindexed) {
+            if (pattern.matcher(s).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the longest literal text that every match of a regular expression contains. Only the top level of the
+     * expression is inspected: groups, character classes, escapes of letters and other constructs end a literal.
+     * Expressions with alternatives at the top level, quoting, back references or embedded flags have no literal.
+     *
+     * @param regex A regular expression without flags.
+     * @return The literal text, or null if none was found.
+     */
+    static String requiredLiteral(String regex) {
+        if (regex.contains("\\Q")) {
+            return null;
+        }
+        String best = null;
+        StringBuilder current = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            int literalChar = -1;
+            int next = i + 1;
+            if (c == '\\') {
+                if (next >= regex.length()) {
+                    return null;
+                }
+                char escaped = regex.charAt(next);
+                if (Character.isDigit(escaped) || escaped == 'k') {
+                    // Back references and octal escapes are not handled.
+                    return null;
+                }
+                if (!Character.isLetterOrDigit(escaped)) {
+                    literalChar = escaped;
+                }
+                next = skipEscape(regex, i);
+            } else if (c == '|') {
+                return null;
+            } else if (c == '(') {
+                if (next + 1 < regex.length() && regex.charAt(next) == '?'
+                        && (Character.isLetter(regex.charAt(next + 1)) || regex.charAt(next + 1) == '-')) {
+                    // Embedded flags like (?i) change what the rest of the expression matches.
+                    return null;
+                }
+                next = skipGroup(regex, i);
+            } else if (c == '[') {
+                next = skipClass(regex, i);
+            } else if (".^$*+?{}()[]".indexOf(c) < 0) {
+                literalChar = c;
+            }
+            if (next < 0) {
+                return null;
+            }
+
+            // A quantifier after the element may make it optional or repeat it.
+            boolean optional = false;
+            boolean repeated = false;
+            if (next < regex.length()) {
+                char q = regex.charAt(next);
+                if (q == '*' || q == '?' || q == '+') {
+                    optional = q != '+';
+                    repeated = q != '?';
+                    next++;
+                } else if (q == '{') {
+                    int end = regex.indexOf('}', next);
+                    if (end < 0) {
+                        return null;
+                    }
+                    String bounds = regex.substring(next + 1, end).trim();
+                    optional = bounds.isEmpty() || bounds.startsWith("0") || bounds.startsWith(",");
+                    repeated = !bounds.equals("1") && !bounds.equals("1,1");
+                    next = end + 1;
+                }
+                // Skip lazy and possessive modifiers.
+                if ((optional || repeated) && next < regex.length()
+                        && (regex.charAt(next) == '?' || regex.charAt(next) == '+')) {
+                    next++;
+                }
+            }
+
+            if (literalChar >= 0 && !optional) {
+                current.append((char) literalChar);
+            }
+            if (literalChar < 0 || optional || repeated) {
+                best = longest(best, current);
+                current.setLength(0);
+            }
+            i = next;
+        }
+        return longest(best, current);
+    }
+
+    /**
+     * Check whether an expression can be put in an alternation with other expressions without changing what it
+     * matches.
+     *
+     * @param regex A regular expression.
+     * @return true if the expression has no back references.
+     */
+    static boolean isCombinable(String regex) {
+        for (int i = 0; i < regex.length() - 1; i++) {
+            if (regex.charAt(i) == '\\') {
+                char escaped = regex.charAt(i + 1);
+                if ((Character.isDigit(escaped) && escaped != '0') || escaped == 'k') {
+                    return false;
+                }
+                i++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The longer of best and the current literal.
+     */
+    private static String longest(String best, StringBuilder current) {
+        if (current.length() > 0 && (best == null || current.length() > best.length())) {
+            return current.toString();
+        }
+        return best;
+    }
+
+    /**
+     * @return The index after the escape sequence starting at i.
+     */
+    private static int skipEscape(String regex, int i) {
+        char escaped = regex.charAt(i + 1);
+        int next;
+        if ((escaped == 'x' || escaped == 'p' || escaped == 'P' || escaped == 'N') && i + 2 < regex.length()
+                && regex.charAt(i + 2) == '{') {
+            next = regex.indexOf('}', i + 2) + 1;
+            return next == 0 ? -1 : next;
+        } else if (escaped == 'x') {
+            next = i + 4;
+        } else if (escaped == 'u') {
+            next = i + 6;
+        } else if (escaped == 'c' || escaped == 'p' || escaped == 'P') {
+            next = i + 3;
+        } else {
+            next = i + 2;
+        }
+        return Math.min(next, regex.length());
+    }
+
+    /**
+     * @return The index after the group starting at i, or -1 if it is not closed.
+     */
+    private static int skipGroup(String regex, int i) {
+        int depth = 0;
+        for (int j = i; j < regex.length(); j++) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                j++;
+            } else if (c == '[') {
+                j = skipClass(regex, j);
+                if (j < 0) {
+                    return -1;
+                }
+                j--;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return j + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The index after the character class starting at i, or -1 if it is not closed.
+     */
+    private static int skipClass(String regex, int i) {
+        int depth = 0;
+        for (int j = i; j < regex.length(); j++) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                j++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return j + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Add a literal to the automaton.
+     *
+     * @param literal The literal.
+     * @param index The index of the expression the literal belongs to.
+     */
+    private void add(String literal, int index) {
+        Node node = root;
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            Node child = node.children.get(c);
+            if (child == null) {
+                child = new Node();
+                node.children.put(c, child);
+            }
+            node = child;
+        }
+        node.addPattern(index);
+    }
+
+    /**
+     * Link every node to the node of the longest proper suffix of its text in the automaton, and to the node of the
+     * longest proper suffix where a literal ends.
+     */
+    private void buildSuffixLinks() {
+        Deque<Node> queue = new ArrayDeque<Node>();
+        for (Node child : root.children.values()) {
+            child.failure = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            Node node = queue.remove();
+            for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+                char c = entry.getKey();
+                Node child = entry.getValue();
+                Node failure = node.failure;
+                while (failure != root && !failure.children.containsKey(c)) {
+                    failure = failure.failure;
+                }
+                Node target = failure.children.get(c);
+                child.failure = (target == null) ? root : target;
+                child.output = (child.failure.patterns.length > 0) ? child.failure : child.failure.output;
+                queue.add(child);
+            }
+        }
+    }
+
+    /** A node of the automaton, representing the literal text leading to it. */
+    private static final class Node {
+        /** The nodes following this one, by the next character. */
+        final Map<Character, Node> children = new HashMap<Character, Node>();
+        /** The indexes of the expressions whose literal ends here. */
+        int[] patterns = new int[0];
+        /** The node of the longest proper suffix of this node's text. */
+        Node failure;
+        /** The node of the longest proper suffix of this node's text where a literal ends, if any. */
+        Node output;
+
+        /**
+         * Add an expression whose literal ends here.
+         *
+         * @param index The index of the expression.
+         */
+        void addPattern(int index) {
+            int[] newPatterns = new int[patterns.length + 1];
+            System.arraycopy(patterns, 0, newPatterns, 0, patterns.length);
+            newPatterns[patterns.length] = index;
+            patterns = newPatterns;
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * Netarchivesuite - Heritrix 3 extensions
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.archive.modules.CrawlURI;
+import org.archive.modules.deciderules.MatchesListRegexDecideRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drop-in replacement for {@link MatchesListRegexDecideRule} for long lists of crawler traps. When the list is
+ * combined with a logical or, as crawler traps are, a URI is checked with a {@link CrawlerTrapMatcher}, which only
+ * tries the expressions whose literal text occurs in the URI. With a logical and, the rule works like its superclass.
+ * <p>
+ * Use it in a template by replacing the class of the bean holding the crawler traps:
+ * <pre>
+ * &lt;bean class="dk.netarkivet.harvester.harvesting.CrawlerTrapsDecideRule"&gt;
+ *  &lt;property name="decision" value="REJECT"/&gt;
+ *  &lt;property name="listLogicalOr" value="true" /&gt;
+ *  &lt;property name="regexList"&gt;
+ *   ...
+ * </pre>
+ */
+public class CrawlerTrapsDecideRule extends MatchesListRegexDecideRule {
+
+    private static final long serialVersionUID = -2873615367810349472L;
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(CrawlerTrapsDecideRule.class);
+
+    /** The matcher, and the list of expressions it was built from. */
+    private transient volatile BuiltMatcher built;
+
+    /**
+     * Evaluate whether the given URI is matched by any of the expressions, or by all of them if the list is not
+     * combined with a logical or.
+     *
+     * @param uri The URI to check.
+     * @return true if the URI is matched.
+     */
+    @Override
+    protected boolean evaluate(CrawlURI uri) {
+        if (!getListLogicalOr()) {
+            return super.evaluate(uri);
+        }
+        return getMatcher().matchesAny(uri.toString());
+    }
+
+    /**
+     * @return A matcher for the current list of expressions, built anew if the list has been replaced. The list is
+     * compared by reference, as the configuration replaces the list rather than changing it, and comparing the
+     * expressions would cost time proportional to their number for every URI.
+     */
+    private CrawlerTrapMatcher getMatcher() {
+        List<Pattern> regexList = getRegexList();
+        BuiltMatcher current = built;
+        if (current == null || current.source != regexList) {
+            synchronized (this) {
+                current = built;
+                if (current == null || current.source != regexList) {
+                    CrawlerTrapMatcher matcher = new CrawlerTrapMatcher(new ArrayList<Pattern>(regexList));
+                    log.info("Built crawler trap matcher for {} expressions, {} of them indexed by literal text",
+                            regexList.size(), matcher.getIndexedCount());
+                    current = new BuiltMatcher(regexList, matcher);
+                    built = current;
+                }
+            }
+        }
+        return current.matcher;
+    }
+
+    /** A matcher together with the list of expressions it was built from. */
+    private static class BuiltMatcher {
+        /** The list of expressions, as returned by {@link #getRegexList()}. */
+        final List<Pattern> source;
+        /** The matcher built from the expressions. */
+        final CrawlerTrapMatcher matcher;
+
+        BuiltMatcher(List<Pattern> source, CrawlerTrapMatcher matcher) {
+            this.source = source;
+            this.matcher = matcher;
+        }
+    }
+
+}
@@ -31,11 +31,15 @@ import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,7 +49,6 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TermRangeFilter;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.BytesRef;
@@ -59,8 +62,6 @@ import org.archive.util.Base32;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import dk.netarkivet.common.utils.AllDocsCollector;
-
 /**
  * Heritrix compatible processor.
  * <p>
@@ -357,6 +358,26 @@ public class DeDuplicator extends Processor implements InitializingBean {
     protected Statistics stats = null;
     protected HashMap<String, Statistics> perHostStats = null;
 
+    /** The stored fields needed to compare a hit on URL with the current content digest. */
+    protected static final Set<String> DIGEST_FIELDS = Collections.singleton(DigestIndexer.FIELD_DIGEST);
+    /** The stored fields needed to compare a hit on content digest with the current URL. */
+    protected static final Set<String> URL_FIELDS = new HashSet<String>(Arrays.asList(DigestIndexer.FIELD_URL,
+            DigestIndexer.FIELD_URL_NORMALIZED));
+    /** The stored fields needed to find the most recent hit on URL. */
+    protected static final Set<String> TIMESTAMP_FIELDS = Collections.singleton(DigestIndexer.FIELD_TIMESTAMP);
+
+    /**
+     * The exact term lookups of each ToeThread, by field name. They are kept per thread, as a lookup reuses its state
+     * between calls.
+     */
+    protected final ThreadLocal<Map<String, ExactTermLookup>> termLookups =
+            new ThreadLocal<Map<String, ExactTermLookup>>() {
+                @Override
+                protected Map<String, ExactTermLookup> initialValue() {
+                    return new HashMap<String, ExactTermLookup>();
+                }
+            };
+
 
     public void afterPropertiesSet() throws Exception {
         if (!getEnabled()) {
@@ -608,52 +629,40 @@ public class DeDuplicator extends Processor implements InitializingBean {
     protected Document lookupByURL(CrawlURI curi, Statistics currHostStats) {
         // Look the CrawlURI's URL up in the index.
         try {
-            Query query = queryField(DigestIndexer.FIELD_URL, curi.toString());
-            AllDocsCollector collectAllCollector = new AllDocsCollector();
-            indexSearcher.search(query, collectAllCollector);
-
-            List<ScoreDoc> hits = collectAllCollector.getHits();
-            Document doc = null;
+            ExactTermLookup urlLookup = getTermLookup(DigestIndexer.FIELD_URL);
+            urlLookup.seek(curi.toString());
             String currentDigest = getDigestAsString(curi);
-            if (hits != null && hits.size() > 0) {
-                // Typically there should only be one it, but we'll allow for
-                // multiple hits.
-                for (ScoreDoc hit : hits) {
-                    // for(int i=0 ; i < hits.size() ; i++){
-                    // Multiple hits on same exact URL should be rare
-                    // See if any have matching content digests
-                    int docId = hit.doc;
-                    doc = indexSearcher.doc(docId);
-                    String oldDigest = doc.get(DigestIndexer.FIELD_DIGEST);
-
-                    if (oldDigest.equalsIgnoreCase(currentDigest)) {
-                        stats.exactURLDuplicates++;
-                        if (statsPerHost) {
-                            currHostStats.exactURLDuplicates++;
-                        }
+            // Typically there should only be one it, but we'll allow for
+            // multiple hits.
+            for (int docId = urlLookup.nextDoc(); docId != ExactTermLookup.NO_MORE_DOCS; docId = urlLookup
+                    .nextDoc()) {
+                // Multiple hits on same exact URL should be rare
+                // See if any have matching content digests
+                String oldDigest = indexReader.document(docId, DIGEST_FIELDS).get(DigestIndexer.FIELD_DIGEST);
+
+                if (oldDigest.equalsIgnoreCase(currentDigest)) {
+                    stats.exactURLDuplicates++;
+                    if (statsPerHost) {
+                        currHostStats.exactURLDuplicates++;
+                    }
 
-                        logger.finest("Found exact match for " + curi.toString());
+                    logger.finest("Found exact match for " + curi.toString());
 
-                        // If we found a hit, no need to look at other hits.
-                        return doc;
-                    }
+                    // If we found a hit, no need to look at other hits.
+                    return indexSearcher.doc(docId);
                 }
             }
             if (getTryEquivalent()) {
                 // No exact hits. Let's try lenient matching.
                 String normalizedURL = DigestIndexer.stripURL(curi.toString());
-                query = queryField(DigestIndexer.FIELD_URL_NORMALIZED, normalizedURL);
-                collectAllCollector.reset(); // reset collector
-                indexSearcher.search(query, collectAllCollector);
-                hits = collectAllCollector.getHits();
-
-                for (ScoreDoc hit : hits) {
-                    // int i=0 ; i < hits.length ; i++){
+                ExactTermLookup normalizedUrlLookup = getTermLookup(DigestIndexer.FIELD_URL_NORMALIZED);
+                normalizedUrlLookup.seek(normalizedURL);
 
-                    int docId = hit.doc;
-                    Document doc1 = indexSearcher.doc(docId);
-                    String indexDigest = doc1.get(DigestIndexer.FIELD_DIGEST);
+                for (int docId = normalizedUrlLookup.nextDoc(); docId != ExactTermLookup.NO_MORE_DOCS;
+                        docId = normalizedUrlLookup.nextDoc()) {
+                    String indexDigest = indexReader.document(docId, DIGEST_FIELDS).get(DigestIndexer.FIELD_DIGEST);
                     if (indexDigest.equals(currentDigest)) {
+                        Document doc1 = indexSearcher.doc(docId);
                         // Make note in log
                         String equivURL = doc1.get(DigestIndexer.FIELD_URL);
                         curi.getAnnotations().add("equivalentURL:\"" + equivURL + "\"");
@@ -696,29 +705,24 @@ public class DeDuplicator extends Processor implements InitializingBean {
             return null;
         }
 
-        Query query = queryField(DigestIndexer.FIELD_DIGEST, currentDigest);
         try {
-            AllDocsCollector collectAllCollector = new AllDocsCollector();
-            indexSearcher.search(query, collectAllCollector);
+            ExactTermLookup digestLookup = getTermLookup(DigestIndexer.FIELD_DIGEST);
+            digestLookup.seek(currentDigest);
 
-            List<ScoreDoc> hits = collectAllCollector.getHits();
-
-            StringBuffer mirrors = new StringBuffer();
-            mirrors.append("mirrors: ");
-            if (hits != null && hits.size() > 0) {
+            // Only collect the mirror URLs, if they are going to be logged.
+            StringBuilder mirrors = logger.isLoggable(Level.FINEST) ? new StringBuilder("mirrors: ") : null;
+            int docId = digestLookup.nextDoc();
+            if (docId != ExactTermLookup.NO_MORE_DOCS) {
                 // Can definitely be more then one
                 // Note: We may find an equivalent match before we find an
                 // (existing) exact match.
                 // TODO: Ensure that an exact match is recorded if it exists.
-                Iterator<ScoreDoc> hitsIterator = hits.iterator();
-                while (hitsIterator.hasNext() && duplicate == null) {
-                    ScoreDoc hit = hitsIterator.next();
-                    int docId = hit.doc;
-                    Document doc = indexSearcher.doc(docId);
+                for (; docId != ExactTermLookup.NO_MORE_DOCS && duplicate == null; docId = digestLookup.nextDoc()) {
+                    Document doc = indexReader.document(docId, URL_FIELDS);
                     String indexURL = doc.get(DigestIndexer.FIELD_URL);
                     // See if the current hit is an exact match.
                     if (curi.toString().equals(indexURL)) {
-                        duplicate = doc;
+                        duplicate = indexSearcher.doc(docId);
                         stats.exactURLDuplicates++;
                         if (statsPerHost) {
                             currHostStats.exactURLDuplicates++;
@@ -732,7 +736,7 @@ public class DeDuplicator extends Processor implements InitializingBean {
                         String normalURL = DigestIndexer.stripURL(curi.toString());
                         String indexNormalURL = doc.get(DigestIndexer.FIELD_URL_NORMALIZED);
                         if (normalURL.equals(indexNormalURL)) {
-                            duplicate = doc;
+                            duplicate = indexSearcher.doc(docId);
                             stats.equivalentURLDuplicates++;
                             if (statsPerHost) {
                                 currHostStats.equivalentURLDuplicates++;
@@ -743,10 +747,10 @@ public class DeDuplicator extends Processor implements InitializingBean {
                         }
                     }
 
-                    if (duplicate == null) {
+                    if (duplicate == null && mirrors != null) {
                         // Will only be used if no exact (or equivalent) match
                         // is found.
-                        mirrors.append(indexURL + " ");
+                        mirrors.append(indexURL).append(' ');
                     }
                 }
                 if (duplicate == null) {
@@ -887,31 +891,27 @@ public class DeDuplicator extends Processor implements InitializingBean {
 	protected void doAnalysis(CrawlURI curi, Statistics currHostStats,
             boolean isDuplicate) {
 		try{
-    		Query query = queryField(DigestIndexer.FIELD_URL, curi.toString());
-            AllDocsCollector collectAllCollector = new AllDocsCollector();
-			indexSearcher.search(query, collectAllCollector);
-            List<ScoreDoc> hits = collectAllCollector.getHits();
-
-            Document doc = null;
-    	
-            if(hits != null && hits.size() > 0){
-                // If there are multiple hits, use the one with the most
-                // recent date.
-                Document docToEval = null;
-                for (ScoreDoc hit : hits) {
-                    int docId = hit.doc;
-                    doc = indexSearcher.doc(docId);
-                    // The format of the timestamp ("yyyyMMddHHmmssSSS") allows
-                    // us to do a greater then (later) or lesser than (earlier)
-                    // comparison of the strings.
-                    String timestamp = doc.get(DigestIndexer.FIELD_TIMESTAMP);
-                    if (docToEval == null || docToEval.get(DigestIndexer.FIELD_TIMESTAMP).compareTo(timestamp) > 0) {
-                        // Found a more recent hit.
-                        docToEval = doc;
-                    }
+            ExactTermLookup urlLookup = getTermLookup(DigestIndexer.FIELD_URL);
+            urlLookup.seek(curi.toString());
+
+            // If there are multiple hits, use the one with the most
+            // recent date.
+            int docToEval = ExactTermLookup.NO_MORE_DOCS;
+            String docToEvalTimestamp = null;
+            for (int docId = urlLookup.nextDoc(); docId != ExactTermLookup.NO_MORE_DOCS; docId = urlLookup.nextDoc()) {
+                // The format of the timestamp ("yyyyMMddHHmmssSSS") allows
+                // us to do a greater then (later) or lesser than (earlier)
+                // comparison of the strings.
+                String timestamp = indexReader.document(docId, TIMESTAMP_FIELDS).get(DigestIndexer.FIELD_TIMESTAMP);
+                if (docToEvalTimestamp == null || docToEvalTimestamp.compareTo(timestamp) > 0) {
+                    // Found a more recent hit.
+                    docToEval = docId;
+                    docToEvalTimestamp = timestamp;
                 }
-                doTimestampAnalysis(curi,docToEval, currHostStats, isDuplicate);
-    		}
+            }
+            if (docToEval != ExactTermLookup.NO_MORE_DOCS) {
+                doTimestampAnalysis(curi, indexSearcher.doc(docToEval), currHostStats, isDuplicate);
+            }
         } catch(IOException e){
             logger.log(Level.SEVERE,"Error accessing index.",e);
         }
@@ -1000,6 +1000,23 @@ public class DeDuplicator extends Processor implements InitializingBean {
         
 	}
 
+    /**
+     * Get the exact term lookup of the current thread for a field of the index.
+     *
+     * @param fieldName name of the field to look in.
+     * @return A lookup of terms in the given field, only to be used by the current thread.
+     * @throws IOException If the terms of the index cannot be read.
+     */
+    protected ExactTermLookup getTermLookup(String fieldName) throws IOException {
+        Map<String, ExactTermLookup> lookups = termLookups.get();
+        ExactTermLookup lookup = lookups.get(fieldName);
+        if (lookup == null) {
+            lookup = new ExactTermLookup(indexReader, fieldName);
+            lookups.put(fieldName, lookup);
+        }
+        return lookup;
+    }
+
     /** Run a simple Lucene query for a single term in a single field.
      *
      * @param fieldName name of the field to look in.
@@ -0,0 +1,144 @@
+/* ExactTermLookup
+ * 
+ * Copyright (C) 2006-2010 National and University Library of Iceland
+ * 
+ * This file is part of the DeDuplicator (Heritrix add-on module).
+ * 
+ * DeDuplicator is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * any later version.
+ * 
+ * DeDuplicator is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser Public License
+ * along with DeDuplicator; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package is.hi.bok.deduplicator;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Iterates over the documents that contain an exact term in one field of an index, by seeking the term directly in the
+ * term dictionary of each index segment and reading its postings. This gives the same documents, in the same order, as
+ * searching with a <code>ConstantScoreQuery(TermRangeFilter)</code> from the term to itself, but without building a
+ * query, a filter and a list of hits for every lookup.
+ * <p>
+ * The term and the enumerations are reused between lookups, so an instance must only be used by one thread at a time.
+ * Usage:
+ * <pre>
+ * lookup.seek(value);
+ * for (int doc = lookup.nextDoc(); doc != ExactTermLookup.NO_MORE_DOCS; doc = lookup.nextDoc()) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class ExactTermLookup {
+
+    /** Returned by {@link #nextDoc()} when there are no more documents with the term. */
+    public static final int NO_MORE_DOCS = DocIdSetIterator.NO_MORE_DOCS;
+
+    /** The segments of the index. */
+    private final List<AtomicReaderContext> leaves;
+
+    /** The field to look up terms in. */
+    private final String field;
+
+    /** The term enumeration of the field for each segment, or null if the segment has no terms in the field. */
+    private final TermsEnum[] termsEnums;
+
+    /** The last used postings enumeration for each segment, reused for the next lookup. */
+    private final DocsEnum[] docsEnums;
+
+    /** The term currently looked up, as UTF-8. */
+    private final BytesRef term = new BytesRef();
+
+    /** The segment currently read from. */
+    private int leaf;
+
+    /** The postings of the term in the current segment, or null if not positioned in a segment. */
+    private DocsEnum current;
+
+    /**
+     * Create a lookup of terms in a field of an index.
+     *
+     * @param reader The index to look in.
+     * @param field The field to look up terms in.
+     * @throws IOException If the terms of the index cannot be read.
+     */
+    public ExactTermLookup(IndexReader reader, String field) throws IOException {
+        this.leaves = reader.leaves();
+        this.field = field;
+        this.termsEnums = new TermsEnum[leaves.size()];
+        this.docsEnums = new DocsEnum[leaves.size()];
+        for (int i = 0; i < termsEnums.length; i++) {
+            Terms terms = leaves.get(i).reader().terms(field);
+            if (terms != null) {
+                termsEnums[i] = terms.iterator(null);
+            }
+        }
+        this.leaf = leaves.size();
+    }
+
+    /**
+     * @return The field terms are looked up in.
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * Start a lookup of a new term. Any documents not yet returned for the previous term are skipped.
+     *
+     * @param value The exact value of the term.
+     */
+    public void seek(String value) {
+        term.copyChars(value);
+        leaf = -1;
+        current = null;
+    }
+
+    /**
+     * Get the next document containing the term given to {@link #seek(String)}. Deleted documents are skipped.
+     *
+     * @return The id of the document in the whole index, or {@link #NO_MORE_DOCS} if there are no more documents.
+     * @throws IOException If the index cannot be read.
+     */
+    public int nextDoc() throws IOException {
+        while (true) {
+            if (current != null) {
+                int doc = current.nextDoc();
+                if (doc != DocIdSetIterator.NO_MORE_DOCS) {
+                    return leaves.get(leaf).docBase + doc;
+                }
+                current = null;
+            }
+            if (++leaf >= leaves.size()) {
+                leaf = leaves.size();
+                return NO_MORE_DOCS;
+            }
+            TermsEnum termsEnum = termsEnums[leaf];
+            if (termsEnum != null && termsEnum.seekExact(term, true)) {
+                AtomicReader reader = leaves.get(leaf).reader();
+                // Only the document ids are needed, no frequencies.
+                current = termsEnum.docs(reader.getLiveDocs(), docsEnums[leaf], 0);
+                docsEnums[leaf] = current;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * #%L
+ * Netarchivesuite - Heritrix 3 extensions
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.apache.commons.httpclient.URIException;
+import org.archive.modules.CrawlURI;
+import org.archive.modules.deciderules.MatchesListRegexDecideRule;
+import org.archive.net.UURIFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.utils.SlowTest;
+import dk.netarkivet.testutils.ReflectUtils;
+
+public class CrawlerTrapMatcherTester {
+
+    private static final Logger log = LoggerFactory.getLogger(CrawlerTrapMatcherTester.class);
+
+    /** Crawler traps from the distributed templates. */
+    private static final String[] TRAPS = {
+            ".*core\\.UserAdmin.*core\\.UserLogin.*",
+            ".*\\/w\\/index\\.php\\?title=Speci[ae]l:Recentchanges.*",
+            ".*act=calendar&cal_id=.*",
+            ".*cal\\.asp\\?date=.*",
+            ".*cal\\.asp\\?view=monthly&date=.*",
+            ".*calendar\\.php\\?Y=.*",
+            ".*index\\.php\\?option=com_events&task=view_day&year=.*",
+            ".*modules\\.php\\?name=vwar&file=calendar.*",
+            ".*action.add_product.*",
+            ".*login.*login.*login.*login.*",
+            ".*comcast\\.net.*othastar.*",
+            ".*\\/(\\w+)\\/\\1\\/\\1\\/.*",
+            ".*[0-9]{8}.*",
+            "(?i).*SESSIONID=.*"
+    };
+
+    @Test
+    public void testRequiredLiteral() {
+        Assert.assertEquals("cal.asp?date=", CrawlerTrapMatcher.requiredLiteral(".*cal\\.asp\\?date=.*"));
+        Assert.assertEquals("core.UserAdmin",
+                CrawlerTrapMatcher.requiredLiteral(".*core\\.UserAdmin.*core\\.UserLogin.*"));
+        Assert.assertEquals("add_product", CrawlerTrapMatcher.requiredLiteral(".*action.add_product.*"));
+        Assert.assertEquals("/w/index.php?title=Speci",
+                CrawlerTrapMatcher.requiredLiteral(".*\\/w\\/index\\.php\\?title=Speci[ae]l:Recentchanges.*"));
+        Assert.assertEquals("abc", CrawlerTrapMatcher.requiredLiteral("x?abcd*"));
+        Assert.assertEquals("abc", CrawlerTrapMatcher.requiredLiteral("abc+d"));
+        Assert.assertNull(CrawlerTrapMatcher.requiredLiteral(".*[0-9]{8}.*"));
+        Assert.assertNull(CrawlerTrapMatcher.requiredLiteral(".*foo.*|.*bar.*"));
+        Assert.assertNull(CrawlerTrapMatcher.requiredLiteral("(?i).*sessionid=.*"));
+        Assert.assertNull(CrawlerTrapMatcher.requiredLiteral(".*\\/(\\w+)\\/\\1\\/.*"));
+        Assert.assertNull(CrawlerTrapMatcher.requiredLiteral(".*\\Qa.b\\E.*"));
+    }
+
+    @Test
+    public void testMatchesAny() {
+        CrawlerTrapMatcher matcher = new CrawlerTrapMatcher(compile(TRAPS));
+        Assert.assertEquals(11, matcher.getIndexedCount());
+        Assert.assertTrue(matcher.matchesAny("http://www.example.dk/cal.asp?date=20180101"));
+        Assert.assertTrue(matcher.matchesAny("http://www.example.dk/index.php?option=com_events&task=view_day&year=1"));
+        Assert.assertTrue(matcher.matchesAny("http://www.example.dk/login/login/login/login"));
+        Assert.assertTrue(matcher.matchesAny("http://home.comcast.net/~othastar/"));
+        Assert.assertTrue(matcher.matchesAny("http://www.example.dk/a/b/b/b/c"));
+        Assert.assertTrue(matcher.matchesAny("http://www.example.dk/archive/20180101/"));
+        Assert.assertTrue(matcher.matchesAny("http://www.example.dk/index.jsp;jsessionid=1234"));
+        Assert.assertFalse(matcher.matchesAny("http://www.example.dk/cal.asp"));
+        Assert.assertFalse(matcher.matchesAny("http://www.example.dk/login/login/login"));
+        Assert.assertFalse(matcher.matchesAny("http://www.example.dk/"));
+        Assert.assertFalse(new CrawlerTrapMatcher(new ArrayList<Pattern>()).matchesAny("http://www.example.dk/"));
+    }
+
+    /**
+     * Check that the matcher gives the same answers as trying every expression, for expressions and strings built
+     * from overlapping parts.
+     */
+    @Test
+    public void testMatchesAnyLikeEveryExpression() {
+        String[] parts = {"ab", "abc", "bca", "\\.", "c", "[ab]", "(ab)", "a*", "b+", "c?", "a{2}", ".*", "\\1", "x|"};
+        String alphabet = "abcx.";
+        Random random = new Random(4711);
+        for (int list = 0; list < 500; list++) {
+            List<Pattern> patterns = new ArrayList<Pattern>();
+            int size = random.nextInt(20);
+            for (int i = 0; i < size; i++) {
+                StringBuilder regex = new StringBuilder(".*");
+                int length = 1 + random.nextInt(5);
+                for (int j = 0; j < length; j++) {
+                    regex.append(parts[random.nextInt(parts.length)]);
+                }
+                try {
+                    patterns.add(Pattern.compile(regex.append(".*").toString()));
+                } catch (RuntimeException e) {
+                    // Not a valid expression, e.g. a back reference to a missing group.
+                }
+            }
+            CrawlerTrapMatcher matcher = new CrawlerTrapMatcher(patterns);
+            for (int k = 0; k < 100; k++) {
+                StringBuilder s = new StringBuilder();
+                int length = random.nextInt(12);
+                for (int j = 0; j < length; j++) {
+                    s.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                boolean expected = false;
+                for (Pattern pattern : patterns) {
+                    expected |= pattern.matcher(s).matches();
+                }
+                Assert.assertEquals(patterns + " on '" + s + "'", expected, matcher.matchesAny(s.toString()));
+            }
+        }
+    }
+
+    @Test
+    public void testDecideRule() throws URIException {
+        CrawlerTrapsDecideRule decideRule = new CrawlerTrapsDecideRule();
+        decideRule.setListLogicalOr(true);
+        decideRule.setRegexList(compile(TRAPS));
+        Assert.assertTrue(decideRule.evaluate(crawlURI("http://www.example.dk/cal.asp?date=20180101")));
+        Assert.assertFalse(decideRule.evaluate(crawlURI("http://www.example.dk/cal.asp")));
+
+        decideRule.setRegexList(compile(".*example\\.dk.*"));
+        Assert.assertTrue(decideRule.evaluate(crawlURI("http://www.example.dk/cal.asp")));
+
+        decideRule.setListLogicalOr(false);
+        decideRule.setRegexList(compile(".*example.*", ".*cal.*"));
+        Assert.assertTrue(decideRule.evaluate(crawlURI("http://www.example.dk/cal.asp")));
+        Assert.assertFalse(decideRule.evaluate(crawlURI("http://www.example.dk/")));
+    }
+
+    @Test
+    public void testDecideRuleReusesMatcherForSameList() throws Exception {
+        CrawlerTrapsDecideRule decideRule = new CrawlerTrapsDecideRule();
+        decideRule.setListLogicalOr(true);
+        decideRule.setRegexList(compile(TRAPS));
+        Field built = ReflectUtils.getPrivateField(CrawlerTrapsDecideRule.class, "built");
+        decideRule.evaluate(crawlURI("http://www.example.dk/cal.asp?date=20180101"));
+        Object matcher = built.get(decideRule);
+        decideRule.evaluate(crawlURI("http://www.example.dk/cal.asp"));
+        Assert.assertSame("The matcher should be reused while the list is the same", matcher, built.get(decideRule));
+
+        decideRule.setRegexList(compile(TRAPS));
+        decideRule.evaluate(crawlURI("http://www.example.dk/cal.asp"));
+        Assert.assertNotSame("The matcher should be rebuilt for a new list", matcher, built.get(decideRule));
+    }
+
+    /**
+     * Log the time used by the decide rule and by MatchesListRegexDecideRule to evaluate the same URIs against the
+     * crawler traps of the distributed templates and a global list of domain specific traps. The number of domain
+     * specific traps is given by the system property crawlertraps.benchmark.traps, default 1000, and the number of
+     * times the URIs are evaluated by crawlertraps.benchmark.rounds, default 20. Only run with the fullTest profile.
+     */
+    @Test
+    @Category(SlowTest.class)
+    public void benchmarkAgainstMatchesListRegexDecideRule() throws URIException {
+        int traps = Integer.getInteger("crawlertraps.benchmark.traps", 1000);
+        int rounds = Integer.getInteger("crawlertraps.benchmark.rounds", 20);
+        List<String> regexes = new ArrayList<String>(Arrays.asList(TRAPS));
+        for (int i = 0; i < traps; i++) {
+            regexes.add(".*www\\.site" + i + "\\.dk\\/calendar\\/.*");
+        }
+        List<Pattern> patterns = compile(regexes.toArray(new String[regexes.size()]));
+        PlainDecideRule plainRule = new PlainDecideRule();
+        plainRule.setListLogicalOr(true);
+        plainRule.setRegexList(patterns);
+        CrawlerTrapsDecideRule decideRule = new CrawlerTrapsDecideRule();
+        decideRule.setListLogicalOr(true);
+        decideRule.setRegexList(patterns);
+
+        Random random = new Random(42);
+        List<CrawlURI> uris = new ArrayList<CrawlURI>();
+        for (int i = 0; i < 10000; i++) {
+            String site = "http://www.site" + random.nextInt(2 * traps + 1) + ".dk/";
+            switch (random.nextInt(4)) {
+            case 0:
+                uris.add(crawlURI(site + "calendar/" + random.nextInt(100000)));
+                break;
+            case 1:
+                uris.add(crawlURI(site + "cal.asp?date=" + random.nextInt(100000)));
+                break;
+            default:
+                uris.add(crawlURI(site + "news/article" + random.nextInt(1000) + ".html?page=" + random.nextInt(10)));
+            }
+        }
+        for (CrawlURI uri : uris) {
+            Assert.assertEquals("Decision on " + uri, plainRule.matches(uri), decideRule.evaluate(uri));
+        }
+
+        // The loop above warms up both rules before timing.
+        long start = System.nanoTime();
+        int matched = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (CrawlURI uri : uris) {
+                matched += plainRule.matches(uri) ? 1 : 0;
+            }
+        }
+        long plainTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (CrawlURI uri : uris) {
+                matched -= decideRule.evaluate(uri) ? 1 : 0;
+            }
+        }
+        long trapsTime = System.nanoTime() - start;
+        Assert.assertEquals("Both rules should match the same URIs", 0, matched);
+        long evaluations = (long) rounds * uris.size();
+        log.info("{} crawler traps, {} evaluations: MatchesListRegexDecideRule {} us per URI, "
+                + "CrawlerTrapsDecideRule {} us per URI", patterns.size(), evaluations,
+                plainTime / evaluations / 1000.0, trapsTime / evaluations / 1000.0);
+    }
+
+    private static List<Pattern> compile(String... regexes) {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String regex : Arrays.asList(regexes)) {
+            patterns.add(Pattern.compile(regex));
+        }
+        return patterns;
+    }
+
+    private static CrawlURI crawlURI(String uri) throws URIException {
+        return new CrawlURI(UURIFactory.getInstance(uri));
+    }
+
+    /** Gives access to the evaluation of MatchesListRegexDecideRule. */
+    @SuppressWarnings("serial")
+    private static class PlainDecideRule extends MatchesListRegexDecideRule {
+        boolean matches(CrawlURI uri) {
+            return evaluate(uri);
+        }
+    }
+
+}
@@ -4,8 +4,23 @@ import static org.junit.Assert.*;
 import is.hi.bok.deduplicator.DeDuplicator;
 import is.hi.bok.deduplicator.DeDuplicator.FilterMode;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
 import org.junit.Test;
 
+import dk.netarkivet.common.Constants;
+
 public class DeDuplicatorTester {
 
 	@Test
@@ -37,6 +52,53 @@ public class DeDuplicatorTester {
 		*/
 	}
 	
+	/**
+	 * Test looking up exact terms in an index with several segments: a term found in more than one segment, a term
+	 * missing from the index, and a term that sorts between two indexed terms.
+	 */
+	@Test
+	public void testExactTermLookup() throws IOException {
+		RAMDirectory directory = new RAMDirectory();
+		IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Constants.LUCENE_VERSION,
+				new WhitespaceAnalyzer(Constants.LUCENE_VERSION)));
+		addDocument(writer, "http://a.dk/");
+		addDocument(writer, "http://c.dk/");
+		// Commit to start a new segment
+		writer.commit();
+		addDocument(writer, "http://c.dk/");
+		addDocument(writer, "http://d.dk/");
+		writer.close();
+
+		DirectoryReader reader = DirectoryReader.open(directory);
+		try {
+			assertTrue("The index should have more than one segment", reader.leaves().size() > 1);
+			ExactTermLookup lookup = new ExactTermLookup(reader, DigestIndexer.FIELD_URL);
+			assertEquals("Should find the term in both segments", Arrays.asList(1, 2), lookup(lookup, "http://c.dk/"));
+			assertEquals("Should not find a term missing from the index", new ArrayList<Integer>(),
+					lookup(lookup, "http://z.dk/"));
+			assertEquals("Should not find a term sorting between two indexed terms", new ArrayList<Integer>(),
+					lookup(lookup, "http://b.dk/"));
+			assertEquals("Should find a term after a miss", Arrays.asList(0), lookup(lookup, "http://a.dk/"));
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static void addDocument(IndexWriter writer, String url) throws IOException {
+		Document doc = new Document();
+		doc.add(new StringField(DigestIndexer.FIELD_URL, url, Field.Store.YES));
+		writer.addDocument(doc);
+	}
+
+	private static List<Integer> lookup(ExactTermLookup lookup, String value) throws IOException {
+		List<Integer> docs = new ArrayList<Integer>();
+		lookup.seek(value);
+		for (int doc = lookup.nextDoc(); doc != ExactTermLookup.NO_MORE_DOCS; doc = lookup.nextDoc()) {
+			docs.add(doc);
+		}
+		return docs;
+	}
+
 	public void testFilterMethod() {
 		/*
 		FilterMode correct1 = FilterMode.BLACKLIST;
@@ -30,14 +30,15 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.utils.ExternalSorter;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.wayback.WaybackSettings;
 
 /**
- * Encapsulates the functionality for sorting and merging index files. Uses the Unix sort cmd for optimized sorting and
- * file merging. Operations in this class are synchronized to avoid multiple jobs running at the same time (by the same
- * object at least).
+ * Encapsulates the functionality for sorting and merging index files. Uses an external merge sort inside the JVM for
+ * sorting and file merging. Operations in this class are synchronized to avoid multiple jobs running at the same time
+ * (by the same object at least).
  */
 public class IndexAggregator {
     /** The logger for this class. */
@@ -53,7 +54,7 @@ public class IndexAggregator {
      * @param outputFile Name of the output file. In case of a empty filesNames array no outputFiles will be generated
      */
     public void sortAndMergeFiles(File[] files, File outputFile) {
-        processFiles(files, outputFile, null);
+        processFiles(files, outputFile, false);
     }
 
     /**
@@ -65,69 +66,88 @@ public class IndexAggregator {
      */
 
     public void mergeFiles(File[] files, File outputFile) {
-        List<String> args = new LinkedList<String>();
-        args.add("-m");
-        processFiles(files, outputFile, args);
+        processFiles(files, outputFile, true);
     }
 
     /**
-     * Calls the Unix sort command with the options <code>$filesNames -o
-     * $outputfile -T WaybackSettings#WAYBACK_AGGREGATOR_TEMP_DIR.
-     * <p>
-     * Sets the LC_ALL environment variable before making the call.
+     * Sorts or merges the files into the output file in byte order, using WaybackSettings#WAYBACK_AGGREGATOR_TEMP_DIR
+     * for temporary files. The files are sorted inside the JVM by an {@link ExternalSorter}, or by the Unix sort command
+     * if CommonSettings#SORT_USE_UNIX_SORT is true.
      *
      * @param files The files to merge and sort
      * @param outputFile The resulting sorted file
-     * @param additionalArgs A list af extra arguments, which (if different from null) are added to the sort call.<p>
-     * Note: If any of the args contain a whitespace the call will fail.
+     * @param merge If true the files are already sorted and only merged.
      */
-    private void processFiles(File[] files, File outputFile, List<String> additionalArgs) {
+    private void processFiles(File[] files, File outputFile, boolean merge) {
         if (files.length == 0) {
             // Empty file list will cause sort to wait for further input,
             // and the call will therefore never return
             return;
         }
 
-        Process p = null;
-
         try {
-            List<String> inputFileList = new LinkedList<String>();
+            List<File> inputFileList = new LinkedList<File>();
             for (int i = 0; i < files.length; i++) {
                 if (files[i].exists() && files[i].isFile()) {
-                    inputFileList.add(files[i].getCanonicalPath());
+                    inputFileList.add(files[i].getCanonicalFile());
                 } else {
                     log.warn("File " + files[i] + " doesn't exist or isn't a regular file, "
                             + "dropping from list of files to " + "sort and merge");
                 }
             }
-            List<String> cmd = new LinkedList<String>();
-            // Prepare to run the unix sort command, see sort manual page for
-            // details
-            cmd.add("sort");
-            cmd.addAll(inputFileList);
-            cmd.add("-o");
-            cmd.add(outputFile.getCanonicalPath());
-            cmd.add("-T");
-            cmd.add(Settings.get(WaybackSettings.WAYBACK_AGGREGATOR_TEMP_DIR));
-            if (additionalArgs != null && !additionalArgs.isEmpty()) {
-                for (String argument : additionalArgs) {
-                    ArgumentNotValid.checkTrue(argument.indexOf(' ') == -1, "The argument '" + argument
-                            + "' contains spaces, this isn't allowed ");
-                }
-                cmd.addAll(additionalArgs);
+            File tempDir = new File(Settings.get(WaybackSettings.WAYBACK_AGGREGATOR_TEMP_DIR));
+            if (Settings.getBoolean(CommonSettings.SORT_USE_UNIX_SORT)) {
+                runUnixSort(inputFileList, outputFile, tempDir, merge);
+                return;
             }
-            ProcessBuilder pb = new ProcessBuilder(cmd);
-            // Reset all locale definitions
-            pb.environment().put("LC_ALL", "C");
-            // Run the command in the user.dir directory
-            pb.directory(new File(System.getProperty("user.dir")));
-            p = pb.start();
-            p.waitFor();
-            if (p.exitValue() != 0) {
-                log.error("Failed to sort index files, sort exited with " + "return code " + p.exitValue());
+            boolean sortLikeCrawllog = false;
+            ExternalSorter sorter = ExternalSorter.fromSettings(tempDir, sortLikeCrawllog);
+            if (merge) {
+                sorter.merge(inputFileList, outputFile);
+            } else {
+                sorter.sort(inputFileList, outputFile);
             }
         } catch (Exception e) {
             log.error("Failed to aggregate indexes ", e);
         }
     }
+
+    /**
+     * Calls the Unix sort command with the options <code>$filesNames -o
+     * $outputfile -T $tempDir [-m]</code>.
+     * <p>
+     * Sets the LC_ALL environment variable before making the call.
+     *
+     * @param files The files to merge and sort
+     * @param outputFile The resulting sorted file
+     * @param tempDir The directory for temporary files of sort
+     * @param merge If true the files are already sorted and only merged.
+     * @throws Exception If the sort command could not be run.
+     */
+    private void runUnixSort(List<File> files, File outputFile, File tempDir, boolean merge) throws Exception {
+        List<String> cmd = new LinkedList<String>();
+        // Prepare to run the unix sort command, see sort manual page for
+        // details
+        cmd.add("sort");
+        for (File file : files) {
+            cmd.add(file.getPath());
+        }
+        cmd.add("-o");
+        cmd.add(outputFile.getCanonicalPath());
+        cmd.add("-T");
+        cmd.add(tempDir.getPath());
+        if (merge) {
+            cmd.add("-m");
+        }
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        // Reset all locale definitions
+        pb.environment().put("LC_ALL", "C");
+        // Run the command in the user.dir directory
+        pb.directory(new File(System.getProperty("user.dir")));
+        Process p = pb.start();
+        p.waitFor();
+        if (p.exitValue() != 0) {
+            log.error("Failed to sort index files, sort exited with " + "return code " + p.exitValue());
+        }
+    }
 }
@@ -0,0 +1,208 @@
+/*
+ * #%L
+ * Netarchivesuite - wayback
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.wayback.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.Constants;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.arc.ARCUtils;
+import dk.netarkivet.common.utils.batch.FileBatchJob;
+import dk.netarkivet.common.utils.warc.WARCUtils;
+
+/**
+ * Returns the wayback cdx lines of several archive files in one batch job. Metadata files are processed by a
+ * {@link DeduplicationCDXExtractionBatchJob}, ARC files by a {@link WaybackCDXExtractionARCBatchJob} and WARC files by
+ * a {@link WaybackCDXExtractionWARCBatchJob}, exactly as if each file had been sent in a job of its own.
+ * <p>
+ * The output of each file is preceded by a line consisting of {@link #FILE_MARKER} and the name of the file, so the
+ * combined output can be split into the cdx lines of each file with {@link #getMarkedFilename(byte[], int)}. Files
+ * that are neither metadata, ARC nor WARC files are not processed and get no marker line.
+ */
+@SuppressWarnings({"serial"})
+public class MultiFileCDXExtractionBatchJob extends FileBatchJob {
+
+    /** Logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(MultiFileCDXExtractionBatchJob.class);
+
+    /**
+     * The start of the line written before the output of each file. Canonicalized urls never start with '#', so this
+     * cannot be confused with a cdx line.
+     */
+    public static final String FILE_MARKER = "#netarchivesuite-cdx-of ";
+
+    /** The marker as bytes. */
+    private static final byte[] FILE_MARKER_BYTES = FILE_MARKER.getBytes(StandardCharsets.UTF_8);
+
+    /** The regular expression matching the names of metadata files. */
+    private final String metadataFilenameRegex;
+
+    /** The job processing metadata files. */
+    private final DeduplicationCDXExtractionBatchJob metadataJob = new DeduplicationCDXExtractionBatchJob();
+
+    /** The job processing ARC files. */
+    private final WaybackCDXExtractionARCBatchJob arcJob = new WaybackCDXExtractionARCBatchJob();
+
+    /** The job processing WARC files. */
+    private final WaybackCDXExtractionWARCBatchJob warcJob = new WaybackCDXExtractionWARCBatchJob();
+
+    /** The compiled metadataFilenameRegex. */
+    private transient Pattern metadataFilenamePattern;
+
+    /**
+     * Constructor which sets the timeout to one day.
+     *
+     * @param metadataFilenameRegex A regular expression matching the whole name of metadata files.
+     * @throws ArgumentNotValid If metadataFilenameRegex is null or empty.
+     */
+    public MultiFileCDXExtractionBatchJob(String metadataFilenameRegex) {
+        ArgumentNotValid.checkNotNullOrEmpty(metadataFilenameRegex, "String metadataFilenameRegex");
+        this.metadataFilenameRegex = metadataFilenameRegex;
+        batchJobTimeout = Constants.ONE_DAY_IN_MILLIES;
+    }
+
+    /**
+     * Initializes the jobs for each type of file.
+     *
+     * @param os the OutputStream to which output is written
+     */
+    @Override
+    public void initialize(OutputStream os) {
+        log.info("Starting a {}", this.getClass().getName());
+        metadataFilenamePattern = Pattern.compile(metadataFilenameRegex);
+        metadataJob.initialize(os);
+        arcJob.initialize(os);
+        warcJob.initialize(os);
+    }
+
+    /**
+     * Writes the marker line of the file followed by the cdx lines of the file. Exceptions recorded while processing
+     * the file are added to the exceptions of this job.
+     *
+     * @param file the archive file to be indexed.
+     * @param os the OutputStream to which output is written.
+     * @return true if the file was processed without errors.
+     */
+    @Override
+    public boolean processFile(File file, OutputStream os) {
+        FileBatchJob job = getJob(file.getName());
+        if (job == null) {
+            log.warn("Skipping indexing of file with filename '{}'", file.getName());
+            return false;
+        }
+        try {
+            os.write(FILE_MARKER_BYTES);
+            os.write(file.getName().getBytes(StandardCharsets.UTF_8));
+            os.write('\n');
+        } catch (IOException e) {
+            throw new IOFailure("Unable to write the marker of '" + file.getName() + "'", e);
+        }
+        boolean success = job.processFile(file, os);
+        List<ExceptionOccurrence> occurrences = job.getExceptions();
+        for (ExceptionOccurrence occurrence : occurrences) {
+            addException(file, occurrence.getFileOffset(), occurrence.getOutputOffset(), occurrence.getException());
+        }
+        occurrences.clear();
+        return success;
+    }
+
+    /**
+     * Finishes the jobs for each type of file.
+     *
+     * @param os the OutputStream to which output is written
+     */
+    @Override
+    public void finish(OutputStream os) {
+        metadataJob.finish(os);
+        arcJob.finish(os);
+        warcJob.finish(os);
+        log.info("Finishing the {}", this.getClass().getName());
+    }
+
+    /**
+     * The jobs for the types of file are record based and keep state between records.
+     *
+     * @return false
+     */
+    @Override
+    public boolean allowsConcurrentProcessing() {
+        return false;
+    }
+
+    /**
+     * Get the job which processes files with a given name.
+     *
+     * @param filename The name of an archive file.
+     * @return The job, or null if the file is neither a metadata file, an ARC file nor a WARC file.
+     */
+    private FileBatchJob getJob(String filename) {
+        if (metadataFilenamePattern.matcher(filename).matches()) {
+            return metadataJob;
+        } else if (ARCUtils.isARC(filename)) {
+            return arcJob;
+        } else if (WARCUtils.isWarc(filename)) {
+            return warcJob;
+        }
+        return null;
+    }
+
+    /**
+     * Tells whether a file can be indexed by this job.
+     *
+     * @param filename The name of an archive file.
+     * @param metadataFilenameRegex A regular expression matching the whole name of metadata files.
+     * @return true if the file is a metadata file, an ARC file or a WARC file.
+     */
+    public static boolean isIndexable(String filename, String metadataFilenameRegex) {
+        return filename.matches(metadataFilenameRegex) || ARCUtils.isARC(filename) || WARCUtils.isWarc(filename);
+    }
+
+    /**
+     * Get the name of the file whose output follows a line of the output of this job.
+     *
+     * @param line The bytes of the line, without the line terminator.
+     * @param length The number of bytes of the line.
+     * @return The name of the file if the line is a marker line, otherwise null.
+     */
+    public static String getMarkedFilename(byte[] line, int length) {
+        if (length < FILE_MARKER_BYTES.length) {
+            return null;
+        }
+        for (int i = 0; i < FILE_MARKER_BYTES.length; i++) {
+            if (line[i] != FILE_MARKER_BYTES[i]) {
+                return null;
+            }
+        }
+        return new String(line, FILE_MARKER_BYTES.length, length - FILE_MARKER_BYTES.length, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * #%L
+ * Netarchivesuite - wayback
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.wayback.indexer;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.distribute.arcrepository.ArcRepositoryClientFactory;
+import dk.netarkivet.common.distribute.arcrepository.BatchStatus;
+import dk.netarkivet.common.distribute.arcrepository.PreservationArcRepositoryClient;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.batch.FileBatchJob.ExceptionOccurrence;
+import dk.netarkivet.wayback.WaybackSettings;
+import dk.netarkivet.wayback.batch.MultiFileCDXExtractionBatchJob;
+
+/**
+ * Indexes a group of archive files with a single batch job. The combined output of the job is split into one unsorted
+ * cdx file per archive file, so each ArchiveFile gets its own index file and its own count of failed attempts, as if it
+ * had been indexed by itself. The states of the files are then persisted in one transaction.
+ */
+public class ArchiveFileBatchIndexer {
+
+    /** Logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(ArchiveFileBatchIndexer.class);
+
+    /**
+     * Utility class, do not instantiate.
+     */
+    private ArchiveFileBatchIndexer() {
+    }
+
+    /**
+     * Run one batch job to index the given files, storing the results locally. For each file indexed successfully, the
+     * isIndexed flag is set to true and the originalIndexFileName field is set to the (arbitrary) name of the file
+     * containing its results. For each file that could not be indexed, the number of failed attempts is incremented.
+     * Files which are already indexed, or which are not archive files, are skipped. The values are persisted to the
+     * datastore.
+     *
+     * @param files The files to index.
+     * @throws ArgumentNotValid If files is null.
+     */
+    public static void index(List<ArchiveFile> files) {
+        ArgumentNotValid.checkNotNull(files, "List<ArchiveFile> files");
+        String metadataFilenameRegex = "(.*)" + Settings.get(CommonSettings.METADATAFILE_REGEX_SUFFIX);
+        Map<String, ArchiveFile> filesToIndex = new LinkedHashMap<String, ArchiveFile>();
+        for (ArchiveFile file : files) {
+            if (file.isIndexed()) {
+                log.warn("Skipping indexing of file '{}' which is already indexed", file.getFilename());
+            } else if (!MultiFileCDXExtractionBatchJob.isIndexable(file.getFilename(), metadataFilenameRegex)) {
+                log.warn("Skipping indexing of file with filename '{}'", file.getFilename());
+            } else {
+                filesToIndex.put(file.getFilename(), file);
+            }
+        }
+        if (filesToIndex.isEmpty()) {
+            return;
+        }
+
+        MultiFileCDXExtractionBatchJob theJob = new MultiFileCDXExtractionBatchJob(metadataFilenameRegex);
+        theJob.processOnlyFilesNamed(new ArrayList<String>(filesToIndex.keySet()));
+        PreservationArcRepositoryClient client = ArcRepositoryClientFactory.getPreservationInstance();
+        String replicaId = Settings.get(WaybackSettings.WAYBACK_REPLICA);
+        log.info("Submitting {} for {} files to {}", theJob.getClass().getName(), filesToIndex.size(), replicaId);
+        BatchStatus batchStatus = client.batch(theJob, replicaId);
+        log.info("Batch job for {} files returned", filesToIndex.size());
+
+        // Split the results into a file per archive file in the temporary directory.
+        final File tempDir = new File(Settings.get(WaybackSettings.WAYBACK_INDEX_TEMPDIR));
+        FileUtils.createDir(tempDir);
+        Map<String, File> outputFiles = new HashMap<String, File>();
+        Map<String, Integer> outputCounts = new HashMap<String, Integer>();
+        boolean collected = false;
+        if (batchStatus.hasResultFile()) {
+            File batchOutputFile = new File(tempDir, UUID.randomUUID().toString());
+            try {
+                log.info("Collecting index for {} files to '{}'", filesToIndex.size(),
+                        batchOutputFile.getAbsolutePath());
+                batchStatus.copyResults(batchOutputFile);
+                splitResults(batchOutputFile, tempDir, filesToIndex.keySet(), outputFiles, outputCounts);
+                collected = true;
+            } catch (Exception e) {
+                log.error("Failed to retrieve results", e);
+            } finally {
+                FileUtils.remove(batchOutputFile);
+            }
+        }
+
+        // Attribute the failures and exceptions of the job to the files.
+        Set<String> filesFailed = new HashSet<String>();
+        for (File file : batchStatus.getFilesFailed()) {
+            filesFailed.add(file.getName());
+        }
+        Map<String, List<ExceptionOccurrence>> exceptions = new HashMap<String, List<ExceptionOccurrence>>();
+        List<ExceptionOccurrence> jobExceptions = new ArrayList<ExceptionOccurrence>();
+        for (ExceptionOccurrence e : batchStatus.getExceptions()) {
+            if (e.getFileName() == null) {
+                jobExceptions.add(e);
+            } else {
+                if (!exceptions.containsKey(e.getFileName())) {
+                    exceptions.put(e.getFileName(), new ArrayList<ExceptionOccurrence>());
+                }
+                exceptions.get(e.getFileName()).add(e);
+            }
+        }
+
+        // Move the output of each successfully indexed file to the final directory.
+        final File finalDirectory = new File(Settings.get(WaybackSettings.WAYBACK_BATCH_OUTPUTDIR));
+        FileUtils.createDir(finalDirectory);
+        for (ArchiveFile file : filesToIndex.values()) {
+            String filename = file.getFilename();
+            File outputFile = outputFiles.get(filename);
+            List<ExceptionOccurrence> fileExceptions = new ArrayList<ExceptionOccurrence>(jobExceptions);
+            if (exceptions.containsKey(filename)) {
+                fileExceptions.addAll(exceptions.get(filename));
+            }
+            if (!collected || outputFile == null || filesFailed.contains(filename) || !fileExceptions.isEmpty()) {
+                logBatchError(file, outputCounts.containsKey(filename) ? outputCounts.get(filename) : 0,
+                        filesFailed.contains(filename), fileExceptions);
+                file.setIndexingFailedAttempts(file.getIndexingFailedAttempts() + 1);
+                if (outputFile != null) {
+                    FileUtils.remove(outputFile);
+                }
+                continue;
+            }
+            if (outputCounts.get(filename) > 1) {
+                log.warn(
+                        "Processed '{}' files for {}.\n This may indicate a doublet in the arcrepository. Proceeding with caution.",
+                        outputCounts.get(filename), filename);
+            }
+            File finalFile = new File(finalDirectory, outputFile.getName());
+            outputFile.renameTo(finalFile);
+            file.setOriginalIndexFileName(outputFile.getName());
+            file.setIndexed(true);
+            log.info("Indexed '{}' to '{}'", filename, finalFile.getAbsolutePath());
+        }
+        // Update the file statuses in the object store
+        (new ArchiveFileDAO()).updateAll(filesToIndex.values());
+    }
+
+    /**
+     * Split the output of a MultiFileCDXExtractionBatchJob into a file per archive file. The output of an archive file
+     * found in more than one bitarchive is appended to the same file.
+     *
+     * @param batchOutputFile The output of the batch job.
+     * @param dir The directory to create the files in. They get arbitrary names.
+     * @param filenames The names of the archive files the job was run on. Output for other files is discarded.
+     * @param outputFiles The created files are put here, by the name of the archive file.
+     * @param outputCounts The number of times the output of an archive file was found, by the name of the archive file.
+     * @throws IOFailure If the files cannot be read or written.
+     */
+    static void splitResults(File batchOutputFile, File dir, Collection<String> filenames,
+            Map<String, File> outputFiles, Map<String, Integer> outputCounts) {
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(batchOutputFile));
+            byte[] line = new byte[1024];
+            int length = 0;
+            int b;
+            do {
+                b = in.read();
+                if (b != '\n' && b != -1) {
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, length * 2);
+                    }
+                    line[length++] = (byte) b;
+                    continue;
+                }
+                if (length == 0) {
+                    continue;
+                }
+                String filename = MultiFileCDXExtractionBatchJob.getMarkedFilename(line, length);
+                if (filename != null) {
+                    IOUtils.closeQuietly(out);
+                    out = null;
+                    if (filenames.contains(filename)) {
+                        if (!outputFiles.containsKey(filename)) {
+                            outputFiles.put(filename, new File(dir, UUID.randomUUID().toString()));
+                            outputCounts.put(filename, 0);
+                        }
+                        outputCounts.put(filename, outputCounts.get(filename) + 1);
+                        out = new FileOutputStream(outputFiles.get(filename), true);
+                    } else {
+                        log.warn("Discarding batch output for unexpected file '{}'", filename);
+                    }
+                } else if (out != null) {
+                    out.write(line, 0, length);
+                    out.write('\n');
+                }
+                length = 0;
+            } while (b != -1);
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        } catch (IOException e) {
+            throw new IOFailure("Error splitting batch output '" + batchOutputFile + "'", e);
+        } finally {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Logs the error of indexing a file.
+     *
+     * @param file The file that could not be indexed.
+     * @param outputCount The number of times output was found for the file.
+     * @param failed Whether the batch job reported the file as failed.
+     * @param exceptions The exceptions thrown while processing the file or the whole job.
+     */
+    private static void logBatchError(ArchiveFile file, int outputCount, boolean failed,
+            List<ExceptionOccurrence> exceptions) {
+        String message = "Error indexing file '" + file.getFilename() + "'\n" + "Number of times processed: '"
+                + outputCount + "'\n" + "Reported as failed: '" + failed + "'";
+        if (!exceptions.isEmpty()) {
+            message += "\n Exceptions thrown: " + "\n";
+            for (ExceptionOccurrence e : exceptions) {
+                message += e.toString() + "\n";
+            }
+        }
+        log.error(message);
+    }
+
+}
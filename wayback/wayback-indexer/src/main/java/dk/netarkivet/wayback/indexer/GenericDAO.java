@@ -23,6 +23,7 @@
 package dk.netarkivet.wayback.indexer;
 
 import java.io.Serializable;
+import java.util.Collection;
 
 /**
  * A generic class for managing storage and retrieval of persistent objects.
@@ -55,6 +56,13 @@ public interface GenericDAO<T, PK extends Serializable> {
      */
     void update(T transientObject);
 
+    /**
+     * Save changes made to several persistent objects in one transaction.
+     *
+     * @param transientObjects the objects to be updated.
+     */
+    void updateAll(Collection<T> transientObjects);
+
     /**
      * Remove an object from persistent storage in the database.
      *
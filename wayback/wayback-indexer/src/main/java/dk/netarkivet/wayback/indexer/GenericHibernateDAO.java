@@ -23,6 +23,7 @@
 package dk.netarkivet.wayback.indexer;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 
 import org.hibernate.Criteria;
@@ -76,6 +77,17 @@ public class GenericHibernateDAO<T, PK extends Serializable> implements GenericD
         sess.close();
     }
 
+    @Override
+    public void updateAll(Collection<T> objects) {
+        Session sess = getSession();
+        sess.beginTransaction();
+        for (T o : objects) {
+            sess.update(o);
+        }
+        sess.getTransaction().commit();
+        sess.close();
+    }
+
     @Override
     public void delete(T o) {
         Session sess = getSession();
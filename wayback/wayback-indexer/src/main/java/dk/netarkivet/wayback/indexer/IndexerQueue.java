@@ -22,12 +22,16 @@
  */
 package dk.netarkivet.wayback.indexer;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.wayback.WaybackSettings;
+
 /**
  * Singleton class which maintains the basic data structure and methods for the indexer.
  */
@@ -81,20 +85,24 @@ public class IndexerQueue {
 
     /**
      * Sequentially take objects from the queue and index them, blocking indefinitely while waiting for new objects to
-     * be added to the queue. It is intended that multiple threads should run this method simultaneously.
+     * be added to the queue. Files waiting in the queue are indexed together, up to the configured batch size, with a
+     * single batch job. It is intended that multiple threads should run this method simultaneously.
      */
     public void consume() {
+        int batchSize = Math.max(1, Settings.getInt(WaybackSettings.WAYBACK_INDEXER_BATCH_SIZE));
         while (true) {
             try {
-                ArchiveFile file = null;
+                List<ArchiveFile> files = new ArrayList<ArchiveFile>();
                 try {
-                    file = queue.take();
-                    log.info("Taken file '{}' from indexing queue.", file.getFilename());
+                    files.add(queue.take());
+                    queue.drainTo(files, batchSize - 1);
+                    log.info("Taken {} files from indexing queue, starting with '{}'.", files.size(), files.get(0)
+                            .getFilename());
                     log.info("Files in queue: '{}'", queue.size());
                 } catch (InterruptedException e) {
                     log.error("Unexpected interrupt in indexer while waiting for new elements", e);
                 }
-                file.index();
+                ArchiveFileBatchIndexer.index(files);
             } catch (Exception e) { // Fault Barrier
                 log.warn("Caught exception at fault barrier for {}", Thread.currentThread().getName(), e);
             }
@@ -23,94 +23,154 @@
 package dk.netarkivet.wayback;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.Settings;
 
 /**
- * An LRU cache, based on <code>LinkedHashMap</code>.
+ * An LRU cache of files, based on <code>LinkedHashMap</code>.
  * <p>
  * <p>
- * This cache has a fixed maximum number of elements (<code>cacheSize</code>). If the cache is full and another entry is
- * added, the LRU (least recently used) entry is dropped.
+ * This cache has a fixed maximum number of elements (<code>cacheSize</code>) and a maximum number of bytes used by the
+ * cached files (<code>maxBytes</code>). If either is exceeded when another entry is added, the LRU (least recently
+ * used) entries are dropped and their files deleted.
  * <p>
  * <p>
- * This class is thread-safe. All methods of this class are synchronized.
+ * This class is thread-safe. The map is only locked while it is read or updated, never while a file is fetched or
+ * deleted. Files missing from the cache are fetched with {@link #get(String, FileFetcher)}, which fetches each file
+ * only once, even when it is requested by several threads at the same time.
  * <p>
  * <p>
  * Author: Christian d'Heureuse, Inventec Informatik AG, Zurich, Switzerland<br>
  * Multi-licensed: EPL / LGPL / GPL / AL / BSD.
  * <p>
- * Modified slightly to fit the use of a wayback file cache.
+ * Modified to fit the use of a wayback file cache.
  */
 public class LRUCache {
     /** The hashtable loadfactor used here. */
     private static final float hashTableLoadFactor = 0.75f;
+    /** The suffix of files that are being fetched into the cache directory. */
+    private static final String PARTIAL_SUFFIX = ".part";
     /** The instance of this class. */
     private static LRUCache instance = null;
     /** The map containing pointers to the cache itself. */
     private LinkedHashMap<String, File> map;
+    /** The size in bytes of each file in the map. */
+    private Map<String, Long> sizes = new HashMap<String, Long>();
     /** The size of the cache. */
     private int cacheSize;
+    /** The maximum number of bytes used by the files in the cache. */
+    private final long maxBytes;
+    /** The number of bytes used by the files in the cache. */
+    private long usedBytes;
     /** The cache containing the files. */
     private File cacheDir;
 
+    /** The fetches in progress, by key. */
+    private final ConcurrentMap<String, FutureTask<File>> fetches = new ConcurrentHashMap<String, FutureTask<File>>();
+    /** The number of requests for files found in the cache. */
+    private final AtomicLong hits = new AtomicLong();
+    /** The number of requests for files that had to be fetched. */
+    private final AtomicLong misses = new AtomicLong();
+    /** The number of requests that waited for a fetch started by another request. */
+    private final AtomicLong joinedFetches = new AtomicLong();
+    /** The number of bytes fetched into the cache. */
+    private final AtomicLong bytesFetched = new AtomicLong();
+
     /** Logger. */
     private Log logger = LogFactory.getLog(getClass().getName());
 
+    /**
+     * Fetches a file that is missing from the cache.
+     */
+    public interface FileFetcher {
+        /**
+         * Fetch a file.
+         *
+         * @param key The key of the file in the cache.
+         * @param destination Where to put the file.
+         * @throws IOFailure If the file cannot be fetched.
+         */
+        void fetch(String key, File destination) throws IOFailure;
+    }
+
     /**
      * Creates a new LRU cache. Using filename as the key, and the cached file as the value.
      *
      * @param dir The directory where the file is stored.
      * @param cacheSize the maximum number of entries that will be kept in this cache.
+     * @param maxBytes the maximum number of bytes used by the files kept in this cache.
      */
-    public LRUCache(File dir, int cacheSize) {
+    public LRUCache(File dir, int cacheSize, long maxBytes) {
         // Validate args
         ArgumentNotValid.checkPositive(cacheSize, "int cacheSize");
+        ArgumentNotValid.checkPositive(maxBytes, "long maxBytes");
         ArgumentNotValid.checkNotNull(dir, "File dir");
         dir.mkdirs();
         ArgumentNotValid.checkTrue(dir.exists(), "Cachedir '" + dir.getAbsolutePath() + "' does not exist");
 
         this.cacheSize = cacheSize;
+        this.maxBytes = maxBytes;
         this.cacheDir = dir;
 
         int hashTableCapacity = (int) Math.ceil(cacheSize / hashTableLoadFactor) + 1;
-        map = new LinkedHashMap<String, File>(hashTableCapacity, hashTableLoadFactor, true) {
-            // (an anonymous inner class)
-            private static final long serialVersionUID = 1;
-
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<String, File> eldest) {
-                boolean removeEldest = size() > LRUCache.this.cacheSize;
-                if (removeEldest) {
-                    logger.info("Deleting file '" + eldest.getValue().getAbsolutePath() + "' from cache.");
-                    boolean deleted = eldest.getValue().delete();
-                    if (!deleted) {
-                        logger.warn("Unable to deleted LRU file from cache: " + eldest.getValue());
-                    }
-                }
-                return removeEldest;
-            }
-        };
+        map = new LinkedHashMap<String, File>(hashTableCapacity, hashTableLoadFactor, true);
 
         // fill up the map with the contents in cachedir
         // if the contents in cachedir exceeds the given cachesize,
         // change the size of the cache
-        String[] cachedirFiles = cacheDir.list();
         logger.info("Initializing the cache with the contents of the cachedir '" + cacheDir.getAbsolutePath() + "'");
-        if (cachedirFiles.length > this.cacheSize) {
-            logger.warn("Changed the cachesize from " + cacheSize + " to " + cachedirFiles.length);
-            this.cacheSize = cachedirFiles.length;
+        List<String> cachedirFiles = new ArrayList<String>();
+        for (String cachefile : cacheDir.list()) {
+            if (cachefile.endsWith(PARTIAL_SUFFIX)) {
+                // Left over from a fetch that was interrupted
+                logger.info("Deleting partially fetched file '" + cachefile + "' from cache.");
+                new File(cacheDir, cachefile).delete();
+            } else {
+                cachedirFiles.add(cachefile);
+            }
+        }
+        if (cachedirFiles.size() > this.cacheSize) {
+            logger.warn("Changed the cachesize from " + cacheSize + " to " + cachedirFiles.size());
+            this.cacheSize = cachedirFiles.size();
         }
         for (String cachefile : cachedirFiles) {
-            map.put(cachefile, new File(cacheDir, cachefile));
+            File file = new File(cacheDir, cachefile);
+            map.put(cachefile, file);
+            sizes.put(cachefile, file.length());
+            usedBytes += file.length();
+        }
+        if (usedBytes > maxBytes) {
+            logger.warn("The files in the cache use " + usedBytes + " bytes, more than the maximum of " + maxBytes
+                    + " bytes. The least recently used files will be deleted when new files are added.");
         }
-        logger.info("The contents of the cache is now " + map.size() + " files");
+        logger.info("The contents of the cache is now " + map.size() + " files using " + usedBytes + " bytes");
+    }
+
+    /**
+     * Creates a new LRU cache without a limit on the number of bytes used.
+     *
+     * @param dir The directory where the file is stored.
+     * @param cacheSize the maximum number of entries that will be kept in this cache.
+     */
+    public LRUCache(File dir, int cacheSize) {
+        this(dir, cacheSize, Long.MAX_VALUE);
     }
 
     /**
@@ -118,7 +178,8 @@ public class LRUCache {
      */
     public LRUCache() {
         this(new File(Settings.get(WaybackSettings.WAYBACK_RESOURCESTORE_CACHE_DIR)), Settings
-                .getInt(WaybackSettings.WAYBACK_RESOURCESTORE_CACHE_MAXFILES));
+                .getInt(WaybackSettings.WAYBACK_RESOURCESTORE_CACHE_MAXFILES), Settings
+                .getLong(WaybackSettings.WAYBACK_RESOURCESTORE_CACHE_MAXBYTES));
     }
 
     /**
@@ -142,16 +203,127 @@ public class LRUCache {
         return map.get(key);
     }
 
+    /**
+     * Retrieves a file from the cache, fetching it first if it is not there. Only one fetch of a file is done at a
+     * time; other requests for the same file wait for that fetch to finish, while requests for other files are served
+     * meanwhile. The retrieved entry becomes the MRU (most recently used) entry.
+     *
+     * @param key the key of the file.
+     * @param fetcher Fetches the file, if it is not in the cache.
+     * @return the file in the cache.
+     * @throws IOFailure If the file could not be fetched.
+     */
+    public File get(final String key, final FileFetcher fetcher) throws IOFailure {
+        ArgumentNotValid.checkNotNullOrEmpty(key, "String key");
+        ArgumentNotValid.checkNotNull(fetcher, "FileFetcher fetcher");
+        File cached = get(key);
+        if (cached != null && cached.exists()) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        FutureTask<File> fetch = new FutureTask<File>(new Callable<File>() {
+            @Override
+            public File call() {
+                return fetchAndPut(key, fetcher);
+            }
+        });
+        FutureTask<File> inProgress = fetches.putIfAbsent(key, fetch);
+        if (inProgress == null) {
+            try {
+                fetch.run();
+            } finally {
+                fetches.remove(key, fetch);
+            }
+            inProgress = fetch;
+        } else {
+            joinedFetches.incrementAndGet();
+            logger.debug("Waiting for the fetch of '" + key + "' already in progress.");
+        }
+        try {
+            return inProgress.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOFailure("Interrupted while waiting for '" + key + "' to be fetched", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOFailure("Could not fetch '" + key + "' into the cache", e.getCause());
+        }
+    }
+
+    /**
+     * Fetch a file into the cache directory, and add it to the cache. The file is fetched under a temporary name, so
+     * a file in the cache directory is always complete.
+     *
+     * @param key the key of the file.
+     * @param fetcher Fetches the file.
+     * @return the file in the cache.
+     * @throws IOFailure If the file could not be fetched.
+     */
+    private File fetchAndPut(String key, FileFetcher fetcher) throws IOFailure {
+        // Another fetch of the file may have finished since we looked.
+        File cached = get(key);
+        if (cached != null && cached.exists()) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        File destination = new File(cacheDir, key);
+        File partial = new File(cacheDir, key + PARTIAL_SUFFIX);
+        partial.delete();
+        try {
+            fetcher.fetch(key, partial);
+        } catch (RuntimeException e) {
+            partial.delete();
+            throw e;
+        }
+        destination.delete();
+        if (!partial.renameTo(destination)) {
+            partial.delete();
+            throw new IOFailure("Could not move fetched file '" + partial.getAbsolutePath() + "' to '"
+                    + destination.getAbsolutePath() + "'");
+        }
+        long size = destination.length();
+        bytesFetched.addAndGet(size);
+        put(key, destination);
+        logger.info("Fetched '" + key + "' (" + size + " bytes) into the cache. " + getStatistics());
+        return destination;
+    }
+
     /**
      * Adds an entry to this cache. The new entry becomes the MRU (most recently used) entry. If an entry with the
      * specified key already exists in the cache, it is replaced by the new entry. If the cache is full, the LRU (least
-     * recently used) entry is removed from the cache.
+     * recently used) entries are removed from the cache, and their files deleted.
      *
      * @param key the key with which the specified value is to be associated.
      * @param value a value to be associated with the specified key.
      */
-    public synchronized void put(String key, File value) {
-        map.put(key, value);
+    public void put(String key, File value) {
+        long size = value.length();
+        List<File> evicted = new ArrayList<File>();
+        synchronized (this) {
+            map.put(key, value);
+            Long oldSize = sizes.put(key, size);
+            if (oldSize != null) {
+                usedBytes -= oldSize;
+            }
+            usedBytes += size;
+            // The new entry is the most recently used, so it is last and never removed here.
+            Iterator<Map.Entry<String, File>> eldest = map.entrySet().iterator();
+            while ((map.size() > cacheSize || usedBytes > maxBytes) && map.size() > 1) {
+                Map.Entry<String, File> entry = eldest.next();
+                eldest.remove();
+                usedBytes -= sizes.remove(entry.getKey());
+                evicted.add(entry.getValue());
+            }
+        }
+        for (File file : evicted) {
+            logger.info("Deleting file '" + file.getAbsolutePath() + "' from cache.");
+            if (!file.delete()) {
+                logger.warn("Unable to deleted LRU file from cache: " + file);
+            }
+        }
     }
 
     /**
@@ -159,6 +331,8 @@ public class LRUCache {
      */
     public synchronized void clear() {
         map.clear();
+        sizes.clear();
+        usedBytes = 0;
     }
 
     /**
@@ -170,6 +344,50 @@ public class LRUCache {
         return map.size();
     }
 
+    /**
+     * @return the number of bytes used by the files in the cache.
+     */
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return the number of requests for files found in the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of requests for files that had to be fetched.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of requests that waited for a fetch of the same file started by another request.
+     */
+    public long getJoinedFetches() {
+        return joinedFetches.get();
+    }
+
+    /**
+     * @return the number of bytes fetched into the cache.
+     */
+    public long getBytesFetched() {
+        return bytesFetched.get();
+    }
+
+    /**
+     * @return A summary of the use of the cache, for logging.
+     */
+    public String getStatistics() {
+        return "Hits: " + getHits() + ", misses: " + getMisses() + ", joined fetches: " + getJoinedFetches()
+                + ", bytes fetched: " + getBytesFetched() + ", entries: " + usedEntries() + ", bytes used: "
+                + usedBytes() + " of " + maxBytes;
+    }
+
     /**
      * @return the cacheDir
      */
@@ -54,6 +54,16 @@ public class NetarchiveCacheResourceStore implements ResourceStore {
     private final LRUCache fileCache;
     /** The replica being used by this class. */
     private Replica replicaUsed;
+    /** Fetches the files missing from the cache from the bitarchive. */
+    private final LRUCache.FileFetcher fetcher = new LRUCache.FileFetcher() {
+        @Override
+        public void fetch(String arcfile, File destination) {
+            logger.debug("The file '" + arcfile + "' was not found in the cache. ");
+            client.getFile(arcfile, replicaUsed, destination);
+            logger.info("File '" + arcfile + "' downloaded from archive and put into the cache '"
+                    + fileCache.getCacheDir().getAbsolutePath() + "'.");
+        }
+    };
 
     /**
      * Constructor. Initiates the caching mechanism.
@@ -79,32 +89,15 @@ public class NetarchiveCacheResourceStore implements ResourceStore {
 
         logger.info("Received request for resource from file '" + arcfile + "' at offset '" + offset + "'");
 
-        // Try to lookup the file in the cache
-        // make synchronized to disallow more than one using
-        // the cache at any one time
-        synchronized (fileCache) {
-            File wantedFile = fileCache.get(arcfile);
-            try {
-                if (wantedFile != null && wantedFile.exists()) {
-                    logger.debug("Found the file '" + arcfile + "' in the cache. ");
-                    return ResourceFactory.getResource(wantedFile, offset);
-                } else {
-                    logger.debug("The file '" + arcfile + "' was not found in the cache. ");
-                    // Get file from bitarchive, and place it in the cachedir
-                    // directory
-                    File fileFromBitarchive = new File(fileCache.getCacheDir(), arcfile);
-                    client.getFile(arcfile, replicaUsed, fileFromBitarchive);
-                    // put into the cache
-                    fileCache.put(arcfile, fileFromBitarchive);
-                    logger.info("File '" + arcfile + "' downloaded from archive and put into the cache '"
-                            + fileCache.getCacheDir().getAbsolutePath() + "'.");
-                    return ResourceFactory.getResource(fileFromBitarchive, offset);
-                }
-            } catch (IOException e) {
-                logger.error("Error looking for non existing resource", e);
-                throw new ResourceNotAvailableException(this.getClass().getName() + "Throws Exception when accessing "
-                        + "CaptureResult given from Wayback.");
-            }
+        // Lookup the file in the cache, getting it from the bitarchive if it is not there. Only requests for a file
+        // being fetched wait for the fetch, other requests are served meanwhile.
+        File wantedFile = fileCache.get(arcfile, fetcher);
+        try {
+            return ResourceFactory.getResource(wantedFile, offset);
+        } catch (IOException e) {
+            logger.error("Error looking for non existing resource", e);
+            throw new ResourceNotAvailableException(this.getClass().getName() + "Throws Exception when accessing "
+                    + "CaptureResult given from Wayback.");
         }
     }
 
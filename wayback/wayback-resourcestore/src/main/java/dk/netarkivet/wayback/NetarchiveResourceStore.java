@@ -26,6 +26,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -43,10 +47,16 @@ import dk.netarkivet.common.distribute.arcrepository.ArcRepositoryClient;
 import dk.netarkivet.common.distribute.arcrepository.ArcRepositoryClientFactory;
 import dk.netarkivet.common.distribute.arcrepository.BitarchiveRecord;
 import dk.netarkivet.common.distribute.arcrepository.ViewerArcRepositoryClient;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.exceptions.UnknownID;
+import dk.netarkivet.common.utils.Settings;
 
 /**
  * This is the connector between netarchivesuite and wayback. And is based on PrototypeNetarchiveResourceStore.java
  * which was made as a prototype connector.
+ * <p>
+ * Concurrent requests for records in the same file are fetched from the archive together, see
+ * {@link RecordRequestCoalescer}.
  */
 public class NetarchiveResourceStore implements ResourceStore {
 
@@ -56,11 +66,36 @@ public class NetarchiveResourceStore implements ResourceStore {
     /** Logger. */
     private Log logger = LogFactory.getLog(getClass().getName());
 
+    /** Groups concurrent requests for records in the same file. */
+    private final RecordRequestCoalescer coalescer;
+
+    /** The default number of milliseconds to wait for a record, if not set. */
+    private static final long DEFAULT_RECORD_TIMEOUT = TimeUnit.MINUTES.toMillis(6);
+
+    /** The number of milliseconds to wait for a record. */
+    private final long recordTimeout;
+
     /**
      * Constructor.
      */
     public NetarchiveResourceStore() {
         client = ArcRepositoryClientFactory.getViewerInstance();
+        long window = 0;
+        int maxRecordsPerRequest = 1;
+        try {
+            window = Settings.getLong(WaybackSettings.WAYBACK_RESOURCESTORE_COALESCE_WINDOW);
+            maxRecordsPerRequest = Settings.getInt(WaybackSettings.WAYBACK_RESOURCESTORE_MAX_RECORDS_PER_REQUEST);
+        } catch (UnknownID e) {
+            logger.info("No settings for grouping record requests. Every record is requested on its own.");
+        }
+        coalescer = new RecordRequestCoalescer(window, maxRecordsPerRequest);
+        long timeout = DEFAULT_RECORD_TIMEOUT;
+        try {
+            timeout = Settings.getLong(WaybackSettings.WAYBACK_RESOURCESTORE_RECORD_TIMEOUT);
+        } catch (UnknownID e) {
+            logger.info("No setting for the record timeout. Waiting at most " + timeout + " ms for a record.");
+        }
+        recordTimeout = timeout;
     }
 
     /**
@@ -89,7 +124,7 @@ public class NetarchiveResourceStore implements ResourceStore {
                     + "throws NullPointerException when accessing " + "CaptureResult given from Wayback.");
         }
         logger.info("Received request for resource from file '" + filename + "' at offset '" + offset + "'");
-        BitarchiveRecord bitarchiveRecord = client.get(filename, offset);
+        BitarchiveRecord bitarchiveRecord = getRecord(filename, offset);
         if (bitarchiveRecord == null) {
             logger.warn(client.getClass() + " instance returned null. Connection may have been closed. Trying to refresh instance.");
             client.close();
@@ -154,6 +189,33 @@ public class NetarchiveResourceStore implements ResourceStore {
         return resource;
     }
 
+    /**
+     * Get a record from the archive, together with other records requested from the same file at the same time.
+     *
+     * @param filename The name of the file containing the record.
+     * @param offset The offset of the record in the file.
+     * @return the record, or null if the request timed out or the record was not found.
+     * @throws IOFailure If the record could not be fetched.
+     */
+    private BitarchiveRecord getRecord(String filename, long offset) throws IOFailure {
+        CompletableFuture<BitarchiveRecord> record = coalescer.get(client, filename, offset);
+        try {
+            return record.get(recordTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            record.cancel(false);
+            logger.warn("No record (" + filename + ":" + offset + ") received within " + recordTimeout + " ms");
+            return null;
+        } catch (InterruptedException e) {
+            record.cancel(false);
+            throw new IOFailure("Interrupted while waiting for record (" + filename + ":" + offset + ")", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOFailure) {
+                throw (IOFailure) e.getCause();
+            }
+            throw new IOFailure("Get of record (" + filename + ":" + offset + ") failed", e.getCause());
+        }
+    }
+
     /**
      * Shuts down this resource store, closing the arcrepository client.
      *
@@ -162,6 +224,7 @@ public class NetarchiveResourceStore implements ResourceStore {
     public void shutdown() throws IOException {
         // Close JMS connection.
         logger.info("Closing JMSConnection for " + this.getClass());
+        coalescer.close();
         client.close();
     }
 }
@@ -0,0 +1,327 @@
+/*
+ * #%L
+ * Netarchivesuite - wayback
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.wayback;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import dk.netarkivet.common.distribute.arcrepository.BitarchiveRecord;
+import dk.netarkivet.common.distribute.arcrepository.ViewerArcRepositoryClient;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * Groups requests for records in the same file that arrive within a short window, so they are fetched from the archive
+ * with one request instead of one request each. A wayback page typically needs many records from the same file at the
+ * same time (the page and its embedded resources), and each request to the archive costs a round trip through the
+ * ArcRepository to the bitarchives.
+ * <p>
+ * The first request for a file starts a batch, which is sent when the window has passed or when it holds the maximum
+ * number of records. A batch of one record is fetched with {@link ViewerArcRepositoryClient#getAsync(String, long)},
+ * larger batches with {@link ViewerArcRepositoryClient#getRecordsAsync(String, long[])}. If a batch fails, its records
+ * are fetched one by one, so a bad offset only fails its own request. The same is done if the reply does not have a
+ * record for each offset, for instance because it timed out. Requests for the same offset are not merged, since the
+ * data of a large record can only be read once.
+ * <p>
+ * This class is thread-safe.
+ */
+public class RecordRequestCoalescer {
+
+    /** Logger. */
+    private static final Log log = LogFactory.getLog(RecordRequestCoalescer.class);
+
+    /** The number of milliseconds a batch waits for more requests. 0 disables coalescing. */
+    private final long window;
+
+    /** The maximum number of records in one batch. */
+    private final int maxRecordsPerRequest;
+
+    /** The batches waiting to be sent, by file name. Also used as lock for the batches. */
+    private final Map<String, Batch> pending = new HashMap<String, Batch>();
+
+    /** Sends the batches when their window has passed. Null if coalescing is disabled. */
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    /** True when this coalescer has been closed. Guarded by the lock on {@link #pending}. */
+    private boolean closed;
+
+    /**
+     * Create a coalescer.
+     *
+     * @param window The number of milliseconds a request waits for other requests for the same file. If 0, every
+     * request is sent at once.
+     * @param maxRecordsPerRequest The maximum number of records fetched in one request. If 1, every request is sent at
+     * once.
+     * @throws ArgumentNotValid If window is negative or maxRecordsPerRequest is not positive.
+     */
+    public RecordRequestCoalescer(long window, int maxRecordsPerRequest) {
+        ArgumentNotValid.checkNotNegative(window, "long window");
+        ArgumentNotValid.checkPositive(maxRecordsPerRequest, "int maxRecordsPerRequest");
+        this.window = window;
+        this.maxRecordsPerRequest = maxRecordsPerRequest;
+        if (isEnabled()) {
+            scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "RecordRequestCoalescer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return true if requests are grouped, false if every request is sent at once.
+     */
+    public boolean isEnabled() {
+        return window > 0 && maxRecordsPerRequest > 1;
+    }
+
+    /**
+     * Request a record. The request is sent together with other requests for the same file made with the same client
+     * within the window.
+     *
+     * @param client The client to fetch the record with.
+     * @param filename The name of the file containing the record.
+     * @param offset The offset of the record in the file.
+     * @return a future completed with the record, or with null if the request times out or the record is not found. If
+     * the get operation fails, the future is completed exceptionally.
+     * @throws ArgumentNotValid If client is null or filename is null or empty.
+     */
+    public CompletableFuture<BitarchiveRecord> get(ViewerArcRepositoryClient client, String filename, long offset) {
+        ArgumentNotValid.checkNotNull(client, "ViewerArcRepositoryClient client");
+        ArgumentNotValid.checkNotNullOrEmpty(filename, "String filename");
+        if (!isEnabled()) {
+            return client.getAsync(filename, offset);
+        }
+        CompletableFuture<BitarchiveRecord> record = new CompletableFuture<BitarchiveRecord>();
+        Batch full = null;
+        Batch replaced = null;
+        synchronized (pending) {
+            if (closed) {
+                record = null;
+            } else {
+                Batch batch = pending.get(filename);
+                if (batch != null && batch.client != client) {
+                    // The client has been replaced, so the old batch is sent with its own client at once.
+                    replaced = takeBatch(batch);
+                    batch = null;
+                }
+                if (batch == null) {
+                    batch = new Batch(client, filename);
+                    pending.put(filename, batch);
+                    final Batch scheduled = batch;
+                    batch.timer = scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            Batch expired;
+                            synchronized (pending) {
+                                expired = takeBatch(scheduled);
+                            }
+                            if (expired != null) {
+                                send(expired);
+                            }
+                        }
+                    }, window, TimeUnit.MILLISECONDS);
+                }
+                batch.offsets.add(offset);
+                batch.records.add(record);
+                if (batch.offsets.size() >= maxRecordsPerRequest) {
+                    full = takeBatch(batch);
+                }
+            }
+        }
+        if (record == null) {
+            return client.getAsync(filename, offset);
+        }
+        if (replaced != null) {
+            send(replaced);
+        }
+        if (full != null) {
+            send(full);
+        }
+        return record;
+    }
+
+    /**
+     * Remove a batch from the pending batches, unless it has already been taken. Must be called while holding the lock
+     * on {@link #pending}.
+     *
+     * @param batch The batch to take.
+     * @return the batch, or null if it has already been taken for sending.
+     */
+    private Batch takeBatch(Batch batch) {
+        if (pending.get(batch.filename) != batch) {
+            return null;
+        }
+        pending.remove(batch.filename);
+        if (batch.timer != null) {
+            batch.timer.cancel(false);
+        }
+        return batch;
+    }
+
+    /**
+     * Fetch the records of a batch and complete their futures.
+     *
+     * @param batch The batch to send.
+     */
+    private void send(final Batch batch) {
+        if (batch.offsets.size() == 1) {
+            sendOne(batch.client, batch.filename, batch.offsets.get(0), batch.records.get(0));
+            return;
+        }
+        long[] offsets = new long[batch.offsets.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = batch.offsets.get(i);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Requesting " + offsets.length + " records from file '" + batch.filename + "' in one request");
+        }
+        CompletableFuture<List<BitarchiveRecord>> result;
+        try {
+            result = batch.client.getRecordsAsync(batch.filename, offsets);
+        } catch (RuntimeException e) {
+            log.warn("Could not request " + offsets.length + " records from file '" + batch.filename
+                    + "'. Requesting them one by one", e);
+            sendEach(batch);
+            return;
+        }
+        result.whenComplete(new BiConsumer<List<BitarchiveRecord>, Throwable>() {
+            @Override
+            public void accept(List<BitarchiveRecord> records, Throwable failure) {
+                if (failure != null) {
+                    log.warn("Request for " + batch.offsets.size() + " records from file '" + batch.filename
+                            + "' failed. Requesting them one by one", failure);
+                    sendEach(batch);
+                } else if (records == null || records.size() != batch.records.size()) {
+                    log.warn("Request for " + batch.offsets.size() + " records from file '" + batch.filename
+                            + "' returned " + (records == null ? "no" : String.valueOf(records.size()))
+                            + " records. Requesting them one by one");
+                    sendEach(batch);
+                } else {
+                    for (int i = 0; i < batch.records.size(); i++) {
+                        batch.records.get(i).complete(records.get(i));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Fetch each record of a batch with its own request.
+     *
+     * @param batch The batch to send.
+     */
+    private void sendEach(Batch batch) {
+        for (int i = 0; i < batch.offsets.size(); i++) {
+            sendOne(batch.client, batch.filename, batch.offsets.get(i), batch.records.get(i));
+        }
+    }
+
+    /**
+     * Fetch one record and complete its future.
+     *
+     * @param client The client to fetch the record with.
+     * @param filename The name of the file containing the record.
+     * @param offset The offset of the record in the file.
+     * @param record The future to complete with the record.
+     */
+    private void sendOne(ViewerArcRepositoryClient client, String filename, long offset,
+            final CompletableFuture<BitarchiveRecord> record) {
+        try {
+            client.getAsync(filename, offset).whenComplete(new BiConsumer<BitarchiveRecord, Throwable>() {
+                @Override
+                public void accept(BitarchiveRecord result, Throwable failure) {
+                    if (failure != null) {
+                        record.completeExceptionally(failure);
+                    } else {
+                        record.complete(result);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            record.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Send all waiting batches and stop the scheduler. Requests made after this are sent at once.
+     */
+    public void close() {
+        List<Batch> batches;
+        synchronized (pending) {
+            closed = true;
+            batches = new ArrayList<Batch>(pending.values());
+            for (Batch batch : batches) {
+                takeBatch(batch);
+            }
+        }
+        for (Batch batch : batches) {
+            send(batch);
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /** The requests for records in one file that wait to be sent together. */
+    private static class Batch {
+        /** The client to send the requests with. */
+        final ViewerArcRepositoryClient client;
+        /** The file containing the records. */
+        final String filename;
+        /** The offsets of the records, in the order they were requested. */
+        final List<Long> offsets = new ArrayList<Long>();
+        /** The futures to complete with the records, one for each offset. */
+        final List<CompletableFuture<BitarchiveRecord>> records = new ArrayList<CompletableFuture<BitarchiveRecord>>();
+        /** The scheduled sending of this batch. */
+        ScheduledFuture<?> timer;
+
+        /**
+         * Create an empty batch.
+         *
+         * @param client The client to send the requests with.
+         * @param filename The file containing the records.
+         */
+        Batch(ViewerArcRepositoryClient client, String filename) {
+            this.client = client;
+            this.filename = filename;
+        }
+    }
+
+}
@@ -122,6 +122,11 @@ public class WaybackSettings {
      */
     public static String WAYBACK_INDEXER_CONSUMER_THREADS = "settings.wayback.indexer.consumerThreads";
 
+    /**
+     * The maximum number of files each consumer thread indexes with a single batch job.
+     */
+    public static String WAYBACK_INDEXER_BATCH_SIZE = "settings.wayback.indexer.batchSize";
+
     /**
      * A file containing a list of files which have been archived and therefore do not need to be archived again. This
      * key may be unset.
@@ -157,7 +162,32 @@ public class WaybackSettings {
      */
     public static String WAYBACK_RESOURCESTORE_CACHE_MAXFILES = "settings.wayback.resourcestore.maxfiles";
 
+    /**
+     * The maximum number of bytes used by the files in the resourcestore cache. The default is 100 GB.
+     */
+    public static String WAYBACK_RESOURCESTORE_CACHE_MAXBYTES = "settings.wayback.resourcestore.maxbytes";
+
     /** The cachedirectory. */
     public static String WAYBACK_RESOURCESTORE_CACHE_DIR = "settings.wayback.resourcestore.cachedir";
 
+    /**
+     * The number of milliseconds a record request from the resourcestore waits for other requests for records in the
+     * same file, so they can all be fetched from the archive in one request. The value 0 means that every record is
+     * fetched on its own. The default is 10.
+     */
+    public static String WAYBACK_RESOURCESTORE_COALESCE_WINDOW = "settings.wayback.resourcestore.coalesceWindow";
+
+    /**
+     * The maximum number of records the resourcestore fetches from the archive in one request. The default is 20.
+     */
+    public static String WAYBACK_RESOURCESTORE_MAX_RECORDS_PER_REQUEST =
+            "settings.wayback.resourcestore.maxRecordsPerRequest";
+
+    /**
+     * The number of milliseconds the resourcestore waits for a record from the archive before giving up on it. It
+     * should be longer than the timeout of the arcrepository client, which is used for each request to the archive.
+     * The default is 360000 (6 minutes).
+     */
+    public static String WAYBACK_RESOURCESTORE_RECORD_TIMEOUT = "settings.wayback.resourcestore.recordTimeout";
+
 }
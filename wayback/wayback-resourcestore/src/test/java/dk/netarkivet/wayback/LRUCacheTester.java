@@ -22,13 +22,42 @@
  */
 package dk.netarkivet.wayback;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import dk.netarkivet.common.utils.FileUtils;
+
 /** TODO complete unittests. */
 @SuppressWarnings({"unused"})
 public class LRUCacheTester {
 
+    private static final File CACHE_DIR = new File(TestInfo.WORKING_DIR, "lrucache");
+
+    @Before
+    public void setUp() {
+        FileUtils.removeRecursively(CACHE_DIR);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.removeRecursively(CACHE_DIR);
+    }
+
     @Test
     @Ignore
     public void testConstructor() {
@@ -37,4 +66,106 @@ public class LRUCacheTester {
         LRUCache cache = new LRUCache();
     }
 
+    /**
+     * Test that the least recently used files are deleted when the files use more bytes than allowed.
+     */
+    @Test
+    public void testEvictsByBytes() {
+        LRUCache cache = new LRUCache(CACHE_DIR, 100, 25);
+        LRUCache.FileFetcher fetcher = new BytesFetcher(10, new AtomicInteger());
+        File first = cache.get("first", fetcher);
+        File second = cache.get("second", fetcher);
+        // Make "first" the most recently used
+        assertEquals(first, cache.get("first", fetcher));
+        File third = cache.get("third", fetcher);
+
+        assertEquals("Only two files fit in the cache", 2, cache.usedEntries());
+        assertEquals(20, cache.usedBytes());
+        assertNull("The least recently used file should be evicted", cache.get("second"));
+        assertFalse("The evicted file should be deleted", second.exists());
+        assertTrue(first.exists());
+        assertTrue(third.exists());
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(30, cache.getBytesFetched());
+    }
+
+    /**
+     * Test that concurrent requests for a file fetch it only once.
+     */
+    @Test
+    public void testFetchesFileOnce() throws Exception {
+        final LRUCache cache = new LRUCache(CACHE_DIR, 10);
+        final AtomicInteger fetches = new AtomicInteger();
+        final CountDownLatch fetchStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFetch = new CountDownLatch(1);
+        final LRUCache.FileFetcher slowFetcher = new BytesFetcher(10, fetches) {
+            @Override
+            public void fetch(String key, File destination) {
+                fetchStarted.countDown();
+                try {
+                    releaseFetch.await(TestInfo.SHORT_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // Just fetch it
+                }
+                super.fetch(key, destination);
+            }
+        };
+        cache.put("other", new BytesFetcher(5, new AtomicInteger()).fetchInto(new File(CACHE_DIR, "other")));
+
+        List<Thread> threads = new ArrayList<Thread>();
+        final List<File> results = new ArrayList<File>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread() {
+                public void run() {
+                    File file = cache.get("wanted", slowFetcher);
+                    synchronized (results) {
+                        results.add(file);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        assertTrue(fetchStarted.await(TestInfo.SHORT_TIMEOUT, TimeUnit.MILLISECONDS));
+        long hitsBefore = cache.getHits();
+        assertNotNull("Other files should be served during the fetch", cache.get("other", slowFetcher));
+        assertEquals("The other file should be a hit", hitsBefore + 1, cache.getHits());
+        hitsBefore = cache.getHits();
+        releaseFetch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals("The file should only be fetched once", 1, fetches.get());
+        assertEquals(4, results.size());
+        for (File file : results) {
+            assertEquals(new File(CACHE_DIR, "wanted"), file);
+        }
+        assertEquals("The threads not fetching should either join the fetch or find the file in the cache", 3,
+                cache.getJoinedFetches() + cache.getHits() - hitsBefore);
+    }
+
+    /** Fetches files of a fixed number of bytes. */
+    private static class BytesFetcher implements LRUCache.FileFetcher {
+        private final int size;
+        private final AtomicInteger fetches;
+
+        BytesFetcher(int size, AtomicInteger fetches) {
+            this.size = size;
+            this.fetches = fetches;
+        }
+
+        @Override
+        public void fetch(String key, File destination) {
+            fetches.incrementAndGet();
+            fetchInto(destination);
+        }
+
+        File fetchInto(File destination) {
+            FileUtils.writeBinaryFile(destination, new byte[size]);
+            return destination;
+        }
+    }
+
 }
@@ -0,0 +1,258 @@
+/*
+ * #%L
+ * Netarchivesuite - wayback - test
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.wayback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.distribute.arcrepository.BatchStatus;
+import dk.netarkivet.common.distribute.arcrepository.BitarchiveRecord;
+import dk.netarkivet.common.distribute.arcrepository.LocalArcRepositoryClient;
+import dk.netarkivet.common.distribute.arcrepository.Replica;
+import dk.netarkivet.common.distribute.arcrepository.ViewerArcRepositoryClient;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.batch.FileBatchJob;
+import dk.netarkivet.testutils.preconfigured.ReloadSettings;
+
+/** Unit tests for {@link RecordRequestCoalescer}. */
+public class RecordRequestCoalescerTester {
+
+    private static final String FILE = "Upload4.ARC";
+
+    private ReloadSettings rs = new ReloadSettings();
+
+    private CountingClient client;
+
+    @Before
+    public void setUp() {
+        rs.setUp();
+        Settings.set("settings.common.arcrepositoryClient.fileDir", "test/testdata/archive");
+        client = new CountingClient(new LocalArcRepositoryClient(), BatchReply.NORMAL);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        rs.tearDown();
+    }
+
+    /**
+     * Test that requests for the same file are sent as one request when the batch is full, and that each request gets
+     * its own record, also when the same offset is requested twice.
+     */
+    @Test
+    public void testGroupsRequestsForSameFile() throws Exception {
+        RecordRequestCoalescer coalescer = new RecordRequestCoalescer(TimeUnit.MINUTES.toMillis(1), 3);
+        try {
+            List<CompletableFuture<BitarchiveRecord>> records = new ArrayList<CompletableFuture<BitarchiveRecord>>();
+            records.add(coalescer.get(client, FILE, 2041L));
+            records.add(coalescer.get(client, FILE, 0L));
+            records.add(coalescer.get(client, FILE, 2041L));
+            for (CompletableFuture<BitarchiveRecord> record : records) {
+                assertNotNull("Should get a record", record.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals("All records should be fetched in one request", 1, client.batchRequests.get());
+            assertEquals("No records should be fetched alone", 0, client.singleRequests.get());
+            assertFalse("Records for the same offset should not be shared", records.get(0).get() == records.get(2)
+                    .get());
+            assertEquals("Records for the same offset should have the same length", records.get(0).get()
+                    .getLength(), records.get(2).get().getLength());
+        } finally {
+            coalescer.close();
+        }
+    }
+
+    /**
+     * Test that a request that is not joined by others is sent when the window has passed.
+     */
+    @Test
+    public void testSendsAfterWindow() throws Exception {
+        RecordRequestCoalescer coalescer = new RecordRequestCoalescer(20, 20);
+        try {
+            assertNotNull("Should get the record", coalescer.get(client, FILE, 2041L).get(10, TimeUnit.SECONDS));
+            assertEquals("A single record should be fetched alone", 1, client.singleRequests.get());
+            assertEquals("No batch should be sent for a single record", 0, client.batchRequests.get());
+        } finally {
+            coalescer.close();
+        }
+    }
+
+    /**
+     * Test that a window of 0 sends every request at once.
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        RecordRequestCoalescer coalescer = new RecordRequestCoalescer(0, 20);
+        try {
+            assertFalse("Coalescing should be disabled", coalescer.isEnabled());
+            CompletableFuture<BitarchiveRecord> record = coalescer.get(client, FILE, 2041L);
+            assertEquals("The request should be sent at once", 1, client.singleRequests.get());
+            assertNotNull("Should get the record", record.get(10, TimeUnit.SECONDS));
+        } finally {
+            coalescer.close();
+        }
+    }
+
+    /**
+     * Test that the records of a failed batch are requested one by one.
+     */
+    @Test
+    public void testFallsBackWhenBatchFails() throws Exception {
+        client.close();
+        client = new CountingClient(new LocalArcRepositoryClient(), BatchReply.FAIL);
+        RecordRequestCoalescer coalescer = new RecordRequestCoalescer(TimeUnit.MINUTES.toMillis(1), 2);
+        try {
+            CompletableFuture<BitarchiveRecord> first = coalescer.get(client, FILE, 2041L);
+            CompletableFuture<BitarchiveRecord> second = coalescer.get(client, FILE, 0L);
+            assertNotNull("Should get the first record", first.get(10, TimeUnit.SECONDS));
+            assertNotNull("Should get the second record", second.get(10, TimeUnit.SECONDS));
+            assertEquals("The batch should have been tried", 1, client.batchRequests.get());
+            assertEquals("Each record should be fetched alone", 2, client.singleRequests.get());
+        } finally {
+            coalescer.close();
+        }
+    }
+
+    /**
+     * Test that the records of a batch whose reply has fewer records than requested, as from a bitarchive that only
+     * knows about single offsets, are requested one by one.
+     */
+    @Test
+    public void testFallsBackWhenReplyIsShort() throws Exception {
+        client.close();
+        client = new CountingClient(new LocalArcRepositoryClient(), BatchReply.SHORT);
+        RecordRequestCoalescer coalescer = new RecordRequestCoalescer(TimeUnit.MINUTES.toMillis(1), 2);
+        try {
+            CompletableFuture<BitarchiveRecord> first = coalescer.get(client, FILE, 2041L);
+            CompletableFuture<BitarchiveRecord> second = coalescer.get(client, FILE, 0L);
+            assertNotNull("Should get the first record", first.get(10, TimeUnit.SECONDS));
+            assertNotNull("Should get the second record", second.get(10, TimeUnit.SECONDS));
+            assertEquals("The batch should have been tried", 1, client.batchRequests.get());
+            assertEquals("Each record should be fetched alone", 2, client.singleRequests.get());
+        } finally {
+            coalescer.close();
+        }
+    }
+
+    /**
+     * Test that the records of a batch whose reply has no records, as when the request times out, are requested one by
+     * one.
+     */
+    @Test
+    public void testFallsBackWhenReplyIsMissing() throws Exception {
+        client.close();
+        client = new CountingClient(new LocalArcRepositoryClient(), BatchReply.NONE);
+        RecordRequestCoalescer coalescer = new RecordRequestCoalescer(TimeUnit.MINUTES.toMillis(1), 2);
+        try {
+            CompletableFuture<BitarchiveRecord> first = coalescer.get(client, FILE, 2041L);
+            CompletableFuture<BitarchiveRecord> second = coalescer.get(client, FILE, 0L);
+            assertNotNull("Should get the first record", first.get(10, TimeUnit.SECONDS));
+            assertNotNull("Should get the second record", second.get(10, TimeUnit.SECONDS));
+            assertEquals("Each record should be fetched alone", 2, client.singleRequests.get());
+        } finally {
+            coalescer.close();
+        }
+    }
+
+    /** How the client answers requests for several records. */
+    private enum BatchReply {
+        /** With the records. */
+        NORMAL,
+        /** With a failure. */
+        FAIL,
+        /** With only the first record. */
+        SHORT,
+        /** With null, as when the request times out. */
+        NONE
+    }
+
+    /** A client that counts the requests made to it and passes them on to another client. */
+    private static class CountingClient implements ViewerArcRepositoryClient {
+        final ViewerArcRepositoryClient delegate;
+        final BatchReply batchReply;
+        final AtomicInteger singleRequests = new AtomicInteger();
+        final AtomicInteger batchRequests = new AtomicInteger();
+
+        CountingClient(ViewerArcRepositoryClient delegate, BatchReply batchReply) {
+            this.delegate = delegate;
+            this.batchReply = batchReply;
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+
+        @Override
+        public BitarchiveRecord get(String arcfile, long index) {
+            return delegate.get(arcfile, index);
+        }
+
+        @Override
+        public CompletableFuture<BitarchiveRecord> getAsync(String arcfile, long index) {
+            singleRequests.incrementAndGet();
+            return delegate.getAsync(arcfile, index);
+        }
+
+        @Override
+        public CompletableFuture<List<BitarchiveRecord>> getRecordsAsync(String arcfile, long[] indices) {
+            batchRequests.incrementAndGet();
+            switch (batchReply) {
+            case FAIL:
+                CompletableFuture<List<BitarchiveRecord>> failed = new CompletableFuture<List<BitarchiveRecord>>();
+                failed.completeExceptionally(new IOFailure("Batch failed"));
+                return failed;
+            case SHORT:
+                return delegate.getRecordsAsync(arcfile, new long[] {indices[0]});
+            case NONE:
+                return CompletableFuture.completedFuture(null);
+            default:
+                return delegate.getRecordsAsync(arcfile, indices);
+            }
+        }
+
+        @Override
+        public void getFile(String arcfilename, Replica replica, File toFile) {
+            delegate.getFile(arcfilename, replica, toFile);
+        }
+
+        @Override
+        public BatchStatus batch(FileBatchJob job, String replicaId, String... args) {
+            return delegate.batch(job, replicaId, args);
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * #%L
+ * Netarchivesuite - wayback - test
+ * %%
+ * Copyright (C) 2005 - 2018 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.wayback.indexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.wayback.TestInfo;
+import dk.netarkivet.wayback.WaybackSettings;
+import dk.netarkivet.wayback.batch.MultiFileCDXExtractionBatchJob;
+
+public class ArchiveFileBatchIndexerTester extends IndexerTestCase {
+    private final File destDir = Settings.getFile(WaybackSettings.WAYBACK_BATCH_OUTPUTDIR);
+
+    @Override
+    @Before
+    public void setUp() {
+        super.setUp();
+        FileUtils.removeRecursively(destDir);
+    }
+
+    @Override
+    @After
+    public void tearDown() {
+        super.tearDown();
+        FileUtils.removeRecursively(destDir);
+    }
+
+    /**
+     * Test that indexing several files in one batch gives each file its own index, and that a file which cannot be
+     * indexed does not fail the others.
+     */
+    @Test
+    public void testIndexSeveralFiles() {
+        ArchiveFileDAO dao = new ArchiveFileDAO();
+        List<ArchiveFile> files = new ArrayList<ArchiveFile>();
+        for (String filename : Arrays.asList("arcfile_withredirects.arc", "12345-metadata-4.arc", "Upload4.WARC",
+                "missing.arc")) {
+            ArchiveFile file = new ArchiveFile();
+            file.setFilename(filename);
+            dao.create(file);
+            files.add(file);
+        }
+        ArchiveFileBatchIndexer.index(files);
+
+        for (ArchiveFile file : files.subList(0, 3)) {
+            assertTrue("Should have indexed " + file.getFilename(), file.isIndexed());
+            assertTrue("Should have stored that " + file.getFilename() + " is indexed",
+                    dao.read(file.getFilename()).isIndexed());
+        }
+        assertTrue("Should have a resonable numer of lines in output file", FileUtils.countLines(new File(destDir,
+                files.get(0).getOriginalIndexFileName())) > 5);
+        assertEquals("Should find all duplicates in original.", 15, FileUtils.countLines(new File(destDir, files.get(1)
+                .getOriginalIndexFileName())));
+        assertEquals("Should have an index file per archive file", 3, destDir.listFiles().length);
+
+        ArchiveFile missing = dao.read("missing.arc");
+        assertFalse("Should not have indexed missing file", missing.isIndexed());
+        assertEquals("Should have counted the failure of the missing file", 1, missing.getIndexingFailedAttempts());
+        assertEquals("Should not count failures of indexed files", 0, dao.read("Upload4.WARC")
+                .getIndexingFailedAttempts());
+    }
+
+    /**
+     * Test that the output of a batch job is split at the marker lines.
+     */
+    @Test
+    public void testSplitResults() throws IOException {
+        File batchOutput = new File(TestInfo.WORKING_DIR, "batchoutput");
+        String marker = MultiFileCDXExtractionBatchJob.FILE_MARKER;
+        FileUtils.writeBinaryFile(batchOutput, ("stray line\n" + marker + "a.arc\nline a1\nline a2\n" + marker
+                + "b.warc\n" + marker + "other.arc\nline o1\n" + marker + "a.arc\nline a3").getBytes());
+        Map<String, File> outputFiles = new HashMap<String, File>();
+        Map<String, Integer> outputCounts = new HashMap<String, Integer>();
+        ArchiveFileBatchIndexer.splitResults(batchOutput, TestInfo.WORKING_DIR, Arrays.asList("a.arc", "b.warc",
+                "c.arc"), outputFiles, outputCounts);
+
+        assertEquals("Should get output for the marked files only", 2, outputFiles.size());
+        assertNotNull("Should get output for the empty file", outputFiles.get("b.warc"));
+        assertEquals("Should get no lines of the empty file", 0, FileUtils.countLines(outputFiles.get("b.warc")));
+        assertEquals("Should get the lines of the file from both parts", "line a1\nline a2\nline a3\n", FileUtils
+                .readFile(outputFiles.get("a.arc")));
+        assertEquals("Should count the parts", Integer.valueOf(2), outputCounts.get("a.arc"));
+    }
+
+}